@@ -0,0 +1,202 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2017 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.ascanrules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An Aho-Corasick automaton, finds which of several literals occur in a text with a single pass over the text.
+ * <p>
+ * The literals are matched ignoring the case of US-ASCII characters, as done by {@link java.util.regex.Pattern}s compiled
+ * with {@link java.util.regex.Pattern#CASE_INSENSITIVE CASE_INSENSITIVE} (and without
+ * {@link java.util.regex.Pattern#UNICODE_CASE UNICODE_CASE}).
+ */
+class LiteralsAutomaton {
+
+	private static final char[] NO_KEYS = new char[0];
+	private static final int[] NO_STATES = new int[0];
+
+	/**
+	 * The transitions of the initial state for US-ASCII characters, where most of the text is scanned.
+	 */
+	private final int[] asciiTargets;
+
+	/**
+	 * The characters of the transitions of each state, sorted.
+	 */
+	private final char[][] keys;
+
+	/**
+	 * The target states of the transitions, in the same order as the {@link #keys}.
+	 */
+	private final int[][] targets;
+
+	private final int[] failures;
+
+	/**
+	 * The literals recognised in each state, including the ones of its failure states, {@code null} if none.
+	 */
+	private final BitSet[] outputs;
+
+	/**
+	 * @param literals the literals, might contain {@code null} elements which are ignored; the index of each literal is
+	 *			used as its identifier
+	 */
+	LiteralsAutomaton(String[] literals) {
+		List<Map<Character, Integer>> transitions = new ArrayList<>();
+		List<BitSet> stateOutputs = new ArrayList<>();
+		transitions.add(new HashMap<Character, Integer>());
+		stateOutputs.add(new BitSet());
+
+		for (int i = 0; i < literals.length; i++) {
+			String literal = literals[i];
+			if (literal == null) {
+				continue;
+			}
+			int state = 0;
+			for (int j = 0; j < literal.length(); j++) {
+				Character c = Character.valueOf(toLowerCase(literal.charAt(j)));
+				Integer next = transitions.get(state).get(c);
+				if (next == null) {
+					next = Integer.valueOf(transitions.size());
+					transitions.get(state).put(c, next);
+					transitions.add(new HashMap<Character, Integer>());
+					stateOutputs.add(new BitSet());
+				}
+				state = next.intValue();
+			}
+			stateOutputs.get(state).set(i);
+		}
+
+		int count = transitions.size();
+		keys = new char[count][];
+		targets = new int[count][];
+		failures = new int[count];
+		outputs = stateOutputs.toArray(new BitSet[count]);
+		for (int state = 0; state < count; state++) {
+			Map<Character, Integer> stateTransitions = transitions.get(state);
+			if (stateTransitions.isEmpty()) {
+				keys[state] = NO_KEYS;
+				targets[state] = NO_STATES;
+				continue;
+			}
+			char[] stateKeys = new char[stateTransitions.size()];
+			int k = 0;
+			for (Character c : stateTransitions.keySet()) {
+				stateKeys[k++] = c.charValue();
+			}
+			Arrays.sort(stateKeys);
+			int[] stateTargets = new int[stateKeys.length];
+			for (k = 0; k < stateKeys.length; k++) {
+				stateTargets[k] = stateTransitions.get(Character.valueOf(stateKeys[k])).intValue();
+			}
+			keys[state] = stateKeys;
+			targets[state] = stateTargets;
+		}
+
+		asciiTargets = new int[128];
+		Arrays.fill(asciiTargets, -1);
+		for (int k = 0; k < keys[0].length; k++) {
+			if (keys[0][k] < 128) {
+				asciiTargets[keys[0][k]] = targets[0][k];
+			}
+		}
+
+		// Breadth-first, the failure state of a state is always shallower.
+		int[] queue = new int[count];
+		int head = 0;
+		int tail = 0;
+		for (int target : targets[0]) {
+			failures[target] = 0;
+			queue[tail++] = target;
+		}
+		while (head < tail) {
+			int state = queue[head++];
+			for (int k = 0; k < keys[state].length; k++) {
+				char c = keys[state][k];
+				int target = targets[state][k];
+				int failure = failures[state];
+				int next;
+				while ((next = transition(failure, c)) < 0 && failure != 0) {
+					failure = failures[failure];
+				}
+				failures[target] = next < 0 ? 0 : next;
+				outputs[target].or(outputs[failures[target]]);
+				queue[tail++] = target;
+			}
+		}
+
+		for (int state = 0; state < count; state++) {
+			if (outputs[state].isEmpty()) {
+				outputs[state] = null;
+			}
+		}
+	}
+
+	private static char toLowerCase(char c) {
+		if (c >= 'A' && c <= 'Z') {
+			return (char) (c + ('a' - 'A'));
+		}
+		return c;
+	}
+
+	private int transition(int state, char c) {
+		if (state == 0 && c < 128) {
+			return asciiTargets[c];
+		}
+		int idx = Arrays.binarySearch(keys[state], c);
+		if (idx < 0) {
+			return -1;
+		}
+		return targets[state][idx];
+	}
+
+	/**
+	 * Finds the literals that occur in the given text.
+	 *
+	 * @param text the text to search
+	 * @return the indexes of the literals found, never {@code null}
+	 */
+	BitSet findAll(CharSequence text) {
+		BitSet found = new BitSet();
+		if (outputs[0] != null) {
+			// Empty literal, always found.
+			found.or(outputs[0]);
+		}
+		int state = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = toLowerCase(text.charAt(i));
+			int next;
+			while ((next = transition(state, c)) < 0 && state != 0) {
+				state = failures[state];
+			}
+			state = next < 0 ? 0 : next;
+			if (outputs[state] != null) {
+				found.or(outputs[state]);
+			}
+		}
+		return found;
+	}
+}
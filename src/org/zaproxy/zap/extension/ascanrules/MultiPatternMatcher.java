@@ -0,0 +1,272 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2017 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.ascanrules;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Several {@link Pattern}s compiled into a single matcher, that tells which of them are found in a text.
+ * <p>
+ * The literals the patterns are made of (for example, {@code \Qorg.postgresql\E}) are searched all at once with a
+ * {@link LiteralsAutomaton}, a single pass over the text. The patterns that are not a literal are prefiltered with the
+ * longest literal they require, if any, and then evaluated one by one with the {@code Pattern}.
+ * <p>
+ * The matcher is immutable and thread-safe.
+ */
+class MultiPatternMatcher {
+
+	private static final String UNSUPPORTED_METACHARACTERS = "|()[]{}";
+
+	private static final int NO_LITERAL = 0;
+	private static final int PREFILTER_LITERAL = 1;
+	private static final int LITERAL_PATTERN = 2;
+
+	private final Pattern[] patterns;
+
+	/**
+	 * The patterns that are fully matched with the {@link #literalsAutomaton}.
+	 */
+	private final BitSet literalPatterns;
+
+	/**
+	 * The patterns that have a literal, all of them except the ones that must always be evaluated with the
+	 * {@code Pattern}.
+	 */
+	private final BitSet prefilteredPatterns;
+
+	private final LiteralsAutomaton literalsAutomaton;
+
+	/**
+	 * @param patterns the patterns, the index of each pattern is used as its identifier
+	 */
+	MultiPatternMatcher(List<Pattern> patterns) {
+		this.patterns = patterns.toArray(new Pattern[patterns.size()]);
+		literalPatterns = new BitSet(this.patterns.length);
+		prefilteredPatterns = new BitSet(this.patterns.length);
+
+		String[] literals = new String[this.patterns.length];
+		StringBuilder literal = new StringBuilder();
+		for (int i = 0; i < this.patterns.length; i++) {
+			Pattern pattern = this.patterns[i];
+			literal.setLength(0);
+			int result = extractLiteral(pattern, literal);
+			if (result == NO_LITERAL) {
+				continue;
+			}
+			literals[i] = literal.toString();
+			prefilteredPatterns.set(i);
+			if (result == LITERAL_PATTERN) {
+				literalPatterns.set(i);
+			}
+		}
+		literalsAutomaton = new LiteralsAutomaton(literals);
+	}
+
+	/**
+	 * Gets the number of patterns of the matcher.
+	 *
+	 * @return the number of patterns
+	 */
+	int size() {
+		return patterns.length;
+	}
+
+	/**
+	 * Gets the pattern with the given index.
+	 *
+	 * @param index the index of the pattern
+	 * @return the pattern
+	 */
+	Pattern getPattern(int index) {
+		return patterns[index];
+	}
+
+	/**
+	 * Finds the patterns that occur in the given text, the same as calling {@link java.util.regex.Matcher#find()} with
+	 * each pattern.
+	 *
+	 * @param text the text to search
+	 * @return the indexes of the patterns found, never {@code null}
+	 */
+	BitSet findAll(CharSequence text) {
+		BitSet literalsFound = literalsAutomaton.findAll(text);
+		BitSet found = new BitSet(patterns.length);
+		for (int i = 0; i < patterns.length; i++) {
+			if (literalPatterns.get(i)) {
+				if (literalsFound.get(i)) {
+					found.set(i);
+				}
+			} else if (!prefilteredPatterns.get(i) || literalsFound.get(i)) {
+				if (patterns[i].matcher(text).find()) {
+					found.set(i);
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Extracts the longest literal that a match of the given pattern must contain.
+	 * <p>
+	 * Only simple regular expressions are analysed: literal characters, quotes, escapes, character classes like
+	 * {@code .} or {@code \d}, anchors and quantifiers. No literal is extracted from expressions with groups, alternations,
+	 * bracket classes or bounded quantifiers.
+	 *
+	 * @param pattern the pattern to analyse
+	 * @param literal where the literal is appended
+	 * @return {@link #LITERAL_PATTERN} if the pattern is exactly the literal (and can be matched with the
+	 *		 {@code LiteralsAutomaton}), {@link #PREFILTER_LITERAL} if the pattern requires the literal, or
+	 *		 {@link #NO_LITERAL} if no literal could be extracted
+	 */
+	private static int extractLiteral(Pattern pattern, StringBuilder literal) {
+		int flags = pattern.flags();
+		if ((flags & (Pattern.LITERAL | Pattern.COMMENTS | Pattern.CANON_EQ)) != 0) {
+			return NO_LITERAL;
+		}
+
+		String regex = pattern.pattern();
+		boolean exact = (flags & Pattern.CASE_INSENSITIVE) != 0 && (flags & Pattern.UNICODE_CASE) == 0;
+		StringBuilder run = new StringBuilder();
+		int i = 0;
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				if (i + 1 >= regex.length()) {
+					return NO_LITERAL;
+				}
+				char escaped = regex.charAt(i + 1);
+				if (escaped == 'Q') {
+					int end = regex.indexOf("\\E", i + 2);
+					if (end < 0) {
+						end = regex.length();
+					}
+					run.append(regex, i + 2, end);
+					i = Math.min(end + 2, regex.length());
+				} else if (Character.isLetterOrDigit(escaped)) {
+					// character classes, boundaries, back references and characters by code (e.g. \x41), the
+					// characters of the escape are not part of the literal
+					exact = false;
+					keepLongest(run, literal);
+					i = skipEscape(regex, i);
+					if (i < 0) {
+						return NO_LITERAL;
+					}
+				} else {
+					run.append(escaped);
+					i += 2;
+				}
+			} else if (UNSUPPORTED_METACHARACTERS.indexOf(c) != -1) {
+				return NO_LITERAL;
+			} else if (c == '.' || c == '^' || c == '$') {
+				exact = false;
+				keepLongest(run, literal);
+				i++;
+			} else if (c == '*' || c == '+' || c == '?') {
+				exact = false;
+				if (c != '+' && run.length() > 0) {
+					// the quantified character is optional
+					run.setLength(run.length() - 1);
+				}
+				keepLongest(run, literal);
+				i++;
+			} else {
+				run.append(c);
+				i++;
+			}
+		}
+		keepLongest(run, literal);
+
+		if (literal.length() == 0) {
+			return NO_LITERAL;
+		}
+		return exact ? LITERAL_PATTERN : PREFILTER_LITERAL;
+	}
+
+	/**
+	 * Skips the escape, starting with a backslash followed by a letter or digit, at the given index.
+	 *
+	 * @param regex the regular expression
+	 * @param start the index of the backslash
+	 * @return the index after the escape, or -1 if the escape is not known or malformed
+	 */
+	private static int skipEscape(String regex, int start) {
+		int i = start + 2;
+		char escaped = regex.charAt(start + 1);
+		switch (escaped) {
+		case 'x':
+			if (i < regex.length() && regex.charAt(i) == '{') {
+				return skipTo(regex, i, '}');
+			}
+			i += 2;
+			break;
+		case 'u':
+			i += 4;
+			break;
+		case 'c':
+			i++;
+			break;
+		case '0':
+			// \0n, \0nn or \0mnn (with m <= 3)
+			int maxDigits = i < regex.length() && regex.charAt(i) <= '3' ? 3 : 2;
+			for (int n = 0; n < maxDigits && i < regex.length() && isOctalDigit(regex.charAt(i)); n++) {
+				i++;
+			}
+			break;
+		case 'p':
+		case 'P':
+			if (i < regex.length() && regex.charAt(i) == '{') {
+				return skipTo(regex, i, '}');
+			}
+			i++;
+			break;
+		case 'N':
+			return skipTo(regex, i, '}');
+		case 'k':
+			return skipTo(regex, i, '>');
+		default:
+			if (Character.isDigit(escaped)) {
+				// back reference, might use the following digits too
+				while (i < regex.length() && Character.isDigit(regex.charAt(i))) {
+					i++;
+				}
+			}
+		}
+		return i <= regex.length() ? i : -1;
+	}
+
+	private static int skipTo(String regex, int start, char end) {
+		int i = regex.indexOf(end, start);
+		return i < 0 ? -1 : i + 1;
+	}
+
+	private static boolean isOctalDigit(char c) {
+		return c >= '0' && c <= '7';
+	}
+
+	private static void keepLongest(StringBuilder run, StringBuilder literal) {
+		if (run.length() > literal.length()) {
+			literal.setLength(0);
+			literal.append(run);
+		}
+		run.setLength(0);
+	}
+}
@@ -18,10 +18,12 @@
 package org.zaproxy.zap.extension.ascanrules;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.collections.map.ReferenceMap;
 import org.apache.log4j.Logger;
@@ -31,13 +33,45 @@ import org.parosproxy.paros.model.Model;
 import org.parosproxy.paros.network.HttpMalformedHeaderException;
 import org.parosproxy.paros.network.HttpMessage;
 
+/**
+ * Tracks the sources (messages and parameters) of the unique values injected by the persistent XSS rules and the messages
+ * where those values are later found (the sinks).
+ * <p>
+ * The state is shared by the scanner threads, all the methods are thread-safe. The memory used is bounded, only the latest
+ * {@value #MAX_SOURCE_VALUES} unique values are tracked and each source keeps at most {@value #MAX_SINKS_PER_SOURCE}
+ * sinks. The sink messages are kept in the session database, each one is persisted only once no matter how many sources
+ * are found in it.
+ */
 public class PersistentXSSUtils {
 
-    private static int uniqueIndex;
+    /**
+     * The maximum number of unique values tracked, the older values are no longer recognised in the sink messages.
+     */
+    static final int MAX_SOURCE_VALUES = 100000;
+
+    /**
+     * The maximum number of sink messages kept per source.
+     */
+    static final int MAX_SINKS_PER_SOURCE = 100;
+
+    private static final AtomicInteger uniqueIndex = new AtomicInteger();
     public static String PXSS_PREFIX = "zApPX";
     public static String PXSS_POSTFIX = "sS";
-    private static Map<String, UserDataSource> map;
-    private static Map<String, HashSet<Integer>> sourceToSinks;
+    private static final PersistentXSSValueScanner valueScanner = new PersistentXSSValueScanner(PXSS_PREFIX, PXSS_POSTFIX);
+    /**
+     * The sources of the unique values, keyed by the index of the value.
+     */
+    private static ConcurrentMap<Integer, UserDataSource> map;
+    private static ConcurrentMap<UserDataSource, Set<Integer>> sourceToSinks;
+    /**
+     * A {@code Map} to cache the IDs of the sink messages already persisted, keyed by their request.
+     * <p>
+     * The same sink message is usually found for several sources (and spidered several times), the message is persisted
+     * just once. The cache uses soft references, if cleared the message is persisted again.
+     * 
+     * @see #getSinkKey(HttpMessage)
+     */
+    private static Map<String, Integer> cachedSinks;
     /**
      * A {@code Map} to cache the URIs used by source messages ({@code UserDataSource}).
      * <p>
@@ -68,52 +102,90 @@ public class PersistentXSSUtils {
     }
 
     public static String getUniqueValue(HttpMessage msg, String param) {
-        String uniqueVal = PXSS_PREFIX + uniqueIndex++ + PXSS_POSTFIX;
-        map.put(uniqueVal, new UserDataSource(msg, param));
-        return uniqueVal;
+        int index = uniqueIndex.getAndIncrement();
+        map.put(Integer.valueOf(index), new UserDataSource(msg, param));
+        if (index >= MAX_SOURCE_VALUES) {
+            map.remove(Integer.valueOf(index - MAX_SOURCE_VALUES));
+        }
+        return PXSS_PREFIX + index + PXSS_POSTFIX;
     }
 
     public static void testForSink(HttpMessage msg) {
-        String body = msg.getResponseBody().toString();
-        int start = body.indexOf(PXSS_PREFIX);
-        while (start > 0) {
-            int end = body.indexOf(PXSS_POSTFIX, start);
-            if (end > 0) {
-                String uniqueVal = body.substring(start, end + PXSS_POSTFIX.length());
-                UserDataSource source = map.get(uniqueVal);
-                if (source != null) {
-                    setSinkForSource(source, msg);
-                }
-                start = body.indexOf(PXSS_PREFIX, end);
-            } else {
-            	break;
-            }
+        SourcesCollector collector = new SourcesCollector();
+        valueScanner.scan(msg.getResponseBody().getBytes(), msg.getResponseBody().length(), collector);
+        if (collector.sources != null) {
+            setSinkForSources(collector.sources, msg);
         }
     }
 
     public static void setSinkForSource(HttpMessage sourceMsg, String param, HttpMessage sinkMsg) {
-        setSinkForSource(new UserDataSource(sourceMsg, param), sinkMsg);
+        setSinkForSources(Collections.singleton(new UserDataSource(sourceMsg, param)), sinkMsg);
     }
 
-    private static void setSinkForSource(UserDataSource source, HttpMessage sinkMsg) {
+    private static void setSinkForSources(Set<UserDataSource> sources, HttpMessage sinkMsg) {
         if (log.isDebugEnabled()) {
-            log.debug("setSinkForSource src=" + source.getUri()
-                    + " param=" + source.getParam() + " sink=" + sinkMsg.getRequestHeader().getURI());
+            log.debug("setSinkForSources src=" + sources + " sink=" + sinkMsg.getRequestHeader().getURI());
         }
-        HashSet<Integer> sinks = sourceToSinks.get(source.toString());
-        if (sinks == null) {
-            sinks = new HashSet<>();
+        Integer sinkId = getSinkId(sinkMsg);
+        if (sinkId == null) {
+            return;
+        }
+
+        for (UserDataSource source : sources) {
+            Set<Integer> sinks = sourceToSinks.get(source);
+            if (sinks == null) {
+                Set<Integer> newSinks = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+                sinks = sourceToSinks.putIfAbsent(source, newSinks);
+                if (sinks == null) {
+                    sinks = newSinks;
+                }
+            }
+            if (sinks.size() < MAX_SINKS_PER_SOURCE) {
+                sinks.add(sinkId);
+            } else if (log.isDebugEnabled()) {
+                log.debug("Maximum number of sinks reached for src=" + source);
+            }
+        }
+    }
+
+    /**
+     * Gets the ID of the given sink message, persisting it if not already.
+     *
+     * @param sinkMsg the sink message
+     * @return the ID of the message, or {@code null} if it was not possible to persist the message
+     */
+    private static Integer getSinkId(HttpMessage sinkMsg) {
+        String key = getSinkKey(sinkMsg);
+        Integer sinkId = cachedSinks.get(key);
+        if (sinkId != null) {
+            return sinkId;
         }
+
         try {
             HistoryReference hRef = new HistoryReference(
                     Model.getSingleton().getSession(),
                     HistoryReference.TYPE_SCANNER_TEMPORARY,
                     sinkMsg);
-            sinks.add(Integer.valueOf(hRef.getHistoryId()));
-            sourceToSinks.put(source.toString(), sinks);
+            sinkId = Integer.valueOf(hRef.getHistoryId());
+            cachedSinks.put(key, sinkId);
+            return sinkId;
         } catch (HttpMalformedHeaderException | DatabaseException e) {
             log.warn("Failed to persist HTTP message to database:", e);
         }
+        return null;
+    }
+
+    /**
+     * Gets the key of the given sink message, its method, URI and request body.
+     * <p>
+     * The sink messages are always sent again (and checked) when attacking, the response is not part of the key.
+     *
+     * @param sinkMsg the sink message
+     * @return the key of the message
+     */
+    private static String getSinkKey(HttpMessage sinkMsg) {
+        return sinkMsg.getRequestHeader().getMethod() + " " + sinkMsg.getRequestHeader().getURI().toString() + "\n"
+                + sinkMsg.getRequestBody().toString();
     }
 
     /**
@@ -126,11 +198,14 @@ public class PersistentXSSUtils {
      */
     public static Set<Integer> getSinksIdsForSource(HttpMessage sourceMsg, String param) {
         UserDataSource source = new UserDataSource(sourceMsg, param);
+        Set<Integer> sinks = sourceToSinks.get(source);
         if (log.isDebugEnabled()) {
-            log.debug("getSinksIdsForSource src=" + source.getUri()
-                    + " param=" + param + " sinks=" + sourceToSinks.get(source.toString()));
+            log.debug("getSinksIdsForSource src=" + source.getUri() + " param=" + param + " sinks=" + sinks);
+        }
+        if (sinks == null) {
+            return null;
         }
-        return sourceToSinks.get(source.toString());
+        return Collections.unmodifiableSet(sinks);
     }
 
     /**
@@ -138,9 +213,10 @@ public class PersistentXSSUtils {
      */
     @SuppressWarnings("unchecked")
     public static void reset() {
-        uniqueIndex = 0;
-        map = new HashMap<>();
-        sourceToSinks = new HashMap<>();
+        uniqueIndex.set(0);
+        map = new ConcurrentHashMap<>();
+        sourceToSinks = new ConcurrentHashMap<>();
+        cachedSinks = Collections.synchronizedMap(new ReferenceMap(ReferenceMap.SOFT, ReferenceMap.HARD));
         cachedUris = Collections.synchronizedMap(new ReferenceMap(ReferenceMap.SOFT, ReferenceMap.SOFT));
         cachedParams = Collections.synchronizedMap(new ReferenceMap(ReferenceMap.SOFT, ReferenceMap.SOFT));
     }
@@ -170,22 +246,40 @@ public class PersistentXSSUtils {
         return item;
     }
 
+    /**
+     * Collects the sources of the unique values found in a sink message.
+     */
+    private static class SourcesCollector implements PersistentXSSValueScanner.Listener {
+
+        private Set<UserDataSource> sources;
+
+        @Override
+        public void valueFound(int index) {
+            UserDataSource source = map.get(Integer.valueOf(index));
+            if (source == null) {
+                return;
+            }
+            if (sources == null) {
+                sources = new HashSet<>();
+            }
+            sources.add(source);
+        }
+    }
+
     private static class UserDataSource {
 
         private final String uri;
         private final String param;
-        private final String stringRepresentation;
 
         public UserDataSource(HttpMessage sourceMsg, String param) {
             super();
             this.uri = getCachedItem(cachedUris, sourceMsg.getRequestHeader().getURI().toString());
             this.param = getCachedItem(cachedParams, param);
-            this.stringRepresentation = uri + "#" + param;
         }
 
         @Override
         public String toString() {
-            return stringRepresentation;
+            return uri + "#" + param;
         }
 
         public String getUri() {
@@ -196,5 +290,22 @@ public class PersistentXSSUtils {
             return param;
         }
 
+        @Override
+        public int hashCode() {
+            return 31 * uri.hashCode() + param.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            UserDataSource other = (UserDataSource) obj;
+            return uri.equals(other.uri) && param.equals(other.param);
+        }
+
     }
 }
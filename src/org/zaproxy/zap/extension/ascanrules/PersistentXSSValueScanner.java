@@ -0,0 +1,141 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2017 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.ascanrules;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Finds the unique values injected by the persistent XSS rules, that is, a prefix followed by the index of the value and a
+ * postfix (for example, {@code zApPX42sS}).
+ * <p>
+ * The values are searched directly in the bytes of the response, in a single pass and without allocations. The bytes are
+ * compared with the first byte of the prefix in a tight loop (which the JIT compiles to just a few instructions per byte),
+ * only at those positions the rest of the prefix, the index and the postfix are read. The prefix and the postfix must be
+ * US-ASCII, which is encoded the same in all the ASCII-compatible charsets.
+ * <p>
+ * The scanner is immutable and thread-safe.
+ */
+class PersistentXSSValueScanner {
+
+	/**
+	 * The maximum number of digits of an index, to not overflow an {@code int}.
+	 */
+	private static final int MAX_INDEX_DIGITS = 9;
+
+	private final byte[] prefix;
+	private final byte[] postfix;
+
+	/**
+	 * Constructs a {@code PersistentXSSValueScanner} for the values with the given prefix and postfix.
+	 *
+	 * @param prefix the prefix of the values, must not be empty
+	 * @param postfix the postfix of the values
+	 * @throws IllegalArgumentException if the prefix is empty
+	 */
+	PersistentXSSValueScanner(String prefix, String postfix) {
+		if (prefix.isEmpty()) {
+			throw new IllegalArgumentException("Parameter prefix must not be empty.");
+		}
+		this.prefix = prefix.getBytes(StandardCharsets.US_ASCII);
+		this.postfix = postfix.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Scans the given data for values, notifying the given listener of each value found.
+	 * <p>
+	 * The values do not overlap, the scan continues after the value found.
+	 *
+	 * @param data the data to scan
+	 * @param length the number of bytes of the data to scan
+	 * @param listener the listener notified of the values found
+	 * @return the number of values found
+	 */
+	int scan(byte[] data, int length, Listener listener) {
+		int count = 0;
+		byte first = prefix[0];
+		int lastStart = length - prefix.length;
+		int i = 0;
+		while (i <= lastStart) {
+			if (data[i] != first || !matchesPrefix(data, i)) {
+				i++;
+				continue;
+			}
+			int end = readValue(data, i + prefix.length, length, listener);
+			if (end != -1) {
+				count++;
+				i = end;
+			} else {
+				i++;
+			}
+		}
+		return count;
+	}
+
+	private boolean matchesPrefix(byte[] data, int start) {
+		for (int j = 1; j < prefix.length; j++) {
+			if (data[start + j] != prefix[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the index and the postfix of a value, notifying the listener if the value is complete.
+	 *
+	 * @param data the data
+	 * @param start the start of the index
+	 * @param length the number of bytes of the data
+	 * @param listener the listener to notify
+	 * @return the end of the value (exclusive), or {@code -1} if not a value
+	 */
+	private int readValue(byte[] data, int start, int length, Listener listener) {
+		int index = 0;
+		int i = start;
+		int maxEnd = Math.min(length, start + MAX_INDEX_DIGITS);
+		while (i < maxEnd && data[i] >= '0' && data[i] <= '9') {
+			index = index * 10 + (data[i] - '0');
+			i++;
+		}
+		if (i == start || i + postfix.length > length) {
+			return -1;
+		}
+		for (int j = 0; j < postfix.length; j++) {
+			if (data[i + j] != postfix[j]) {
+				return -1;
+			}
+		}
+		listener.valueFound(index);
+		return i + postfix.length;
+	}
+
+	/**
+	 * A listener of the values found.
+	 */
+	interface Listener {
+
+		/**
+		 * Notifies that a value was found.
+		 *
+		 * @param index the index of the value
+		 */
+		void valueFound(int index);
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2017 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.ascanrules;
+
+import java.util.BitSet;
+
+/**
+ * Compares response bodies with a normal (unattacked) response body, ignoring the dynamic tokens of the normal response.
+ * <p>
+ * The dynamic tokens (for example, timestamps, anti-CSRF tokens or nonces) are learned from two samples of the normal
+ * response, the tokens that differ between the samples are not compared. A token is a run of letters and digits, the text
+ * between the tokens is always compared. If the samples do not have the same structure (that is, same number of tokens
+ * and same text between them) no token is considered dynamic and the bodies are compared as is.
+ * <p>
+ * The comparisons are done in a single pass over the bodies, without creating intermediate strings.
+ */
+class ResponseComparator {
+
+	private final String body;
+
+	/**
+	 * The indexes of the tokens of the {@link #body} that are dynamic, never {@code null}.
+	 */
+	private final BitSet dynamicTokens;
+
+	/**
+	 * Constructs a {@code ResponseComparator} with the given normal response body.
+	 *
+	 * @param body the normal response body
+	 * @param otherSample another sample of the normal response body, to learn the dynamic tokens, might be {@code null}
+	 */
+	ResponseComparator(String body, String otherSample) {
+		this.body = body;
+		BitSet tokens = otherSample != null ? findDynamicTokens(body, otherSample) : null;
+		this.dynamicTokens = tokens != null ? tokens : new BitSet(0);
+	}
+
+	/**
+	 * Gets the normal response body.
+	 *
+	 * @return the normal response body
+	 */
+	String getBody() {
+		return body;
+	}
+
+	/**
+	 * Gets the number of tokens of the normal response body that are ignored in the comparisons.
+	 *
+	 * @return the number of dynamic tokens
+	 */
+	int getDynamicTokensCount() {
+		return dynamicTokens.cardinality();
+	}
+
+	/**
+	 * Tells whether or not the given response body is the same as the normal response body, ignoring the dynamic tokens.
+	 *
+	 * @param other the response body to compare
+	 * @return {@code true} if the bodies are the same, {@code false} otherwise
+	 */
+	boolean isSame(String other) {
+		if (body.equals(other)) {
+			return true;
+		}
+		if (dynamicTokens.isEmpty()) {
+			return false;
+		}
+
+		int i = 0;
+		int j = 0;
+		int token = 0;
+		while (true) {
+			int separatorEnd = skipSeparator(body, i);
+			int otherSeparatorEnd = skipSeparator(other, j);
+			if (!regionEquals(body, i, separatorEnd, other, j, otherSeparatorEnd)) {
+				return false;
+			}
+			i = separatorEnd;
+			j = otherSeparatorEnd;
+			if (i == body.length() || j == other.length()) {
+				return i == body.length() && j == other.length();
+			}
+
+			int tokenEnd = skipToken(body, i);
+			int otherTokenEnd = skipToken(other, j);
+			if (!dynamicTokens.get(token) && !regionEquals(body, i, tokenEnd, other, j, otherTokenEnd)) {
+				return false;
+			}
+			i = tokenEnd;
+			j = otherTokenEnd;
+			token++;
+		}
+	}
+
+	/**
+	 * Finds the tokens that differ between the given samples.
+	 *
+	 * @param sample a sample of the response body
+	 * @param otherSample another sample of the response body
+	 * @return the indexes of the tokens that differ, or {@code null} if the samples do not have the same structure
+	 */
+	private static BitSet findDynamicTokens(String sample, String otherSample) {
+		BitSet tokens = new BitSet();
+		int i = 0;
+		int j = 0;
+		int token = 0;
+		while (true) {
+			int separatorEnd = skipSeparator(sample, i);
+			int otherSeparatorEnd = skipSeparator(otherSample, j);
+			if (!regionEquals(sample, i, separatorEnd, otherSample, j, otherSeparatorEnd)) {
+				return null;
+			}
+			i = separatorEnd;
+			j = otherSeparatorEnd;
+			if (i == sample.length() || j == otherSample.length()) {
+				return (i == sample.length() && j == otherSample.length()) ? tokens : null;
+			}
+
+			int tokenEnd = skipToken(sample, i);
+			int otherTokenEnd = skipToken(otherSample, j);
+			if (!regionEquals(sample, i, tokenEnd, otherSample, j, otherTokenEnd)) {
+				tokens.set(token);
+			}
+			i = tokenEnd;
+			j = otherTokenEnd;
+			token++;
+		}
+	}
+
+	private static int skipSeparator(String text, int start) {
+		int i = start;
+		while (i < text.length() && !Character.isLetterOrDigit(text.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private static int skipToken(String text, int start) {
+		int i = start;
+		while (i < text.length() && Character.isLetterOrDigit(text.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean regionEquals(String text, int start, int end, String other, int otherStart, int otherEnd) {
+		int length = end - start;
+		return length == otherEnd - otherStart && text.regionMatches(start, other, otherStart, length);
+	}
+
+	/**
+	 * Removes all the occurrences of the given literals from the given text, in a single pass.
+	 * <p>
+	 * The text is searched for all the literals at the same time, the occurrence that starts first (and is longest) is
+	 * removed and the search continues after it.
+	 *
+	 * @param text the text
+	 * @param literals the literals to remove, {@code null} or empty literals are ignored
+	 * @return the text without the literals
+	 */
+	static String removeAll(String text, String... literals) {
+		int[] positions = new int[literals.length];
+		boolean found = false;
+		for (int k = 0; k < literals.length; k++) {
+			positions[k] = -1;
+			if (literals[k] == null || literals[k].isEmpty() || isDuplicated(literals, k)) {
+				continue;
+			}
+			positions[k] = text.indexOf(literals[k]);
+			found |= positions[k] != -1;
+		}
+		if (!found) {
+			return text;
+		}
+
+		StringBuilder strBuilder = new StringBuilder(text.length());
+		int position = 0;
+		while (true) {
+			int next = -1;
+			for (int k = 0; k < literals.length; k++) {
+				if (positions[k] == -1) {
+					continue;
+				}
+				if (next == -1 || positions[k] < positions[next]
+						|| (positions[k] == positions[next] && literals[k].length() > literals[next].length())) {
+					next = k;
+				}
+			}
+			if (next == -1) {
+				break;
+			}
+
+			strBuilder.append(text, position, positions[next]);
+			position = positions[next] + literals[next].length();
+			for (int k = 0; k < literals.length; k++) {
+				if (positions[k] != -1 && positions[k] < position) {
+					positions[k] = text.indexOf(literals[k], position);
+				}
+			}
+		}
+		strBuilder.append(text, position, text.length());
+		return strBuilder.toString();
+	}
+
+	private static boolean isDuplicated(String[] literals, int index) {
+		for (int k = 0; k < index; k++) {
+			if (literals[index].equals(literals[k])) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
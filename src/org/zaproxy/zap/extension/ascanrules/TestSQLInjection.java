@@ -22,8 +22,8 @@ import java.net.SocketException;
 import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -80,6 +80,19 @@ public class TestSQLInjection extends AbstractAppParamPlugin {
 	private HttpMessage refreshedmessage = null;
 	private String mResBodyNormalUnstripped = null;
 	private String mResBodyNormalStripped = null;
+	/**
+	 * The comparators of the (refreshed) original response, unstripped and stripped, used by the boolean based checks to
+	 * ignore its dynamic tokens.
+	 */
+	private ResponseComparator normalUnstrippedComparator;
+	private ResponseComparator normalStrippedComparator;
+	/**
+	 * The RDBMS errors found in the response of the base message, found once per base message.
+	 * 
+	 * @see #getBaseMsgErrors()
+	 */
+	private BitSet baseMsgErrors;
+	private HttpMessage baseMsgErrorsMsg;
 	//what do we do at each attack strength?
 	//(some SQL Injection vulns would be picked up by multiple types of checks, and we skip out after the first alert for a URL)
 	private boolean doSpecificErrorBased = false;
@@ -268,11 +281,44 @@ public class TestSQLInjection extends AbstractAppParamPlugin {
 					 "\\Qjava.sql.SQLException\\E" // in case more specific messages were not detected!
 		);
 
+		/**
+		 * The error patterns of all RDBMS, to scan a response once for all of them.
+		 */
+		private static final MultiPatternMatcher ERROR_PATTERNS_MATCHER;
+
+		/**
+		 * The UNION error patterns of all RDBMS, to scan a response once for all of them.
+		 */
+		private static final MultiPatternMatcher UNION_ERROR_PATTERNS_MATCHER;
+
+		static {
+			List<Pattern> errorPatterns = new ArrayList<>();
+			List<Pattern> unionErrorPatterns = new ArrayList<>();
+			for (RDBMS rdbms : values()) {
+				rdbms.errorPatternsOffset = errorPatterns.size();
+				errorPatterns.addAll(rdbms.errorPatterns);
+				rdbms.unionErrorPatternsOffset = unionErrorPatterns.size();
+				unionErrorPatterns.addAll(rdbms.unionErrorPatterns);
+			}
+			ERROR_PATTERNS_MATCHER = new MultiPatternMatcher(errorPatterns);
+			UNION_ERROR_PATTERNS_MATCHER = new MultiPatternMatcher(unionErrorPatterns);
+		}
+
 		private final String name;
 		private final Tech tech;
 		private final List<Pattern> errorPatterns;
 		private final List<Pattern> unionErrorPatterns;
 
+		/**
+		 * The index of the first error pattern in the {@link #ERROR_PATTERNS_MATCHER}.
+		 */
+		private int errorPatternsOffset;
+
+		/**
+		 * The index of the first UNION error pattern in the {@link #UNION_ERROR_PATTERNS_MATCHER}.
+		 */
+		private int unionErrorPatternsOffset;
+
 		private RDBMS(String name, Tech tech, String... errorRegexes) {
 			this(name, tech, asList(errorRegexes), Collections.<String> emptyList());
 		}
@@ -320,6 +366,56 @@ public class TestSQLInjection extends AbstractAppParamPlugin {
 			return unionErrorPatterns;
 		}
 
+		/**
+		 * Gets the first error pattern of this RDBMS that is in the given errors.
+		 * 
+		 * @param errors the errors found, as returned by {@link #findErrors(String)}
+		 * @return the error pattern, or {@code null} if none
+		 */
+		public Pattern getErrorPattern(BitSet errors) {
+			return getPattern(errorPatterns, errorPatternsOffset, errors);
+		}
+
+		/**
+		 * Gets the first UNION error pattern of this RDBMS that is in the given errors.
+		 * 
+		 * @param errors the errors found, as returned by {@link #findUnionErrors(String)}
+		 * @return the UNION error pattern, or {@code null} if none
+		 */
+		public Pattern getUnionErrorPattern(BitSet errors) {
+			return getPattern(unionErrorPatterns, unionErrorPatternsOffset, errors);
+		}
+
+		private static Pattern getPattern(List<Pattern> patterns, int offset, BitSet errors) {
+			int index = errors.nextSetBit(offset);
+			if (index == -1 || index >= offset + patterns.size()) {
+				return null;
+			}
+			return patterns.get(index - offset);
+		}
+
+		/**
+		 * Finds the error patterns, of all RDBMS, that occur in the given response body.
+		 * 
+		 * @param body the response body
+		 * @return the errors found, never {@code null}
+		 * @see #getErrorPattern(BitSet)
+		 */
+		public static BitSet findErrors(String body) {
+			return ERROR_PATTERNS_MATCHER.findAll(body);
+		}
+
+		/**
+		 * Finds the UNION error patterns, of all RDBMS, that occur in the given response body.
+		 * 
+		 * @param body the response body
+		 * @return the errors found, never {@code null}
+		 * @see #getUnionErrorPattern(BitSet)
+		 */
+		public static BitSet findUnionErrors(String body) {
+			return UNION_ERROR_PATTERNS_MATCHER.findAll(body);
+		}
+
 		private static List<String> asList(String... strings) {
 			if (strings == null || strings.length == 0) {
 				return Collections.emptyList();
@@ -569,6 +665,8 @@ public class TestSQLInjection extends AbstractAppParamPlugin {
 		refreshedmessage = null;
 		mResBodyNormalUnstripped = null;
 		mResBodyNormalStripped = null;
+		normalUnstrippedComparator = null;
+		normalStrippedComparator = null;
 
 		try {
 			//reinitialise the count for each type of request, for each parameter.  We will be sticking to limits defined in the attach strength logic
@@ -612,10 +710,14 @@ public class TestSQLInjection extends AbstractAppParamPlugin {
 					}
 					countErrorBasedRequests++;
 
-					//now check the results against each pattern in turn, to try to identify a database, or even better: a specific database.
+					//now check the results against the patterns, to try to identify a database, or even better: a specific database.
 					//Note: do NOT check the HTTP error code just yet, as the result could come back with one of various codes.
+					//if the "error message" occurs in the result of sending the modified query, but did NOT occur in the original result of the original query
+					//then we may may have a SQL Injection vulnerability
+					BitSet newErrors = RDBMS.findErrors(msg1.getResponseBody().toString());
+					newErrors.andNot(getBaseMsgErrors());
 					for (RDBMS rdbms : RDBMS.values()) {
-						if (getTechSet().includes(rdbms.getTech()) && checkSpecificErrors(rdbms, msg1, param, sqlErrValue)) {
+						if (getTechSet().includes(rdbms.getTech()) && checkSpecificErrors(rdbms, msg1, newErrors, param, sqlErrValue)) {
 							sqlInjectionFoundForUrl = true;
 							// Save the attack string for the "Authentication Bypass" alert, if necessary
 							sqlInjectionAttack = sqlErrValue;
@@ -629,38 +731,25 @@ public class TestSQLInjection extends AbstractAppParamPlugin {
 					} //end of the loop to check for RDBMS specific error messages
 					
 					if (this.doGenericErrorBased && !sqlInjectionFoundForUrl) {
-					    Iterator<Pattern> errorPatternIterator = RDBMS.GenericRDBMS.getErrorPatterns().iterator();
-
-						while (errorPatternIterator.hasNext() && !sqlInjectionFoundForUrl) {
-							Pattern errorPattern = errorPatternIterator.next();
+						Pattern errorPattern = RDBMS.GenericRDBMS.getErrorPattern(newErrors);
+						if (errorPattern != null) {
 							String errorPatternRDBMS = RDBMS.GenericRDBMS.getName();
-
-							//if the "error message" occurs in the result of sending the modified query, but did NOT occur in the original result of the original query
-							//then we may may have a SQL Injection vulnerability
+							//Likely a SQL Injection. Raise it
 							StringBuilder sb = new StringBuilder();
-							if (!matchBodyPattern(getBaseMsg(), errorPattern, null) && matchBodyPattern(msg1, errorPattern, sb)) {
-								//Likely a SQL Injection. Raise it
-								String extraInfo = Constant.messages.getString(MESSAGE_PREFIX + "alert.errorbased.extrainfo", errorPatternRDBMS, errorPattern.toString());
-								//raise the alert, and save the attack string for the "Authentication Bypass" alert, if necessary
-								sqlInjectionAttack = sqlErrValue;
-								bingo(Alert.RISK_HIGH, Alert.CONFIDENCE_MEDIUM, getName() + " - " + errorPatternRDBMS, getDescription(),
-										null,
-										param, sqlInjectionAttack,
-										extraInfo, getSolution(), sb.toString(), msg1);
+							matchBodyPattern(msg1, errorPattern, sb);
+							String extraInfo = Constant.messages.getString(MESSAGE_PREFIX + "alert.errorbased.extrainfo", errorPatternRDBMS, errorPattern.toString());
+							//raise the alert, and save the attack string for the "Authentication Bypass" alert, if necessary
+							sqlInjectionAttack = sqlErrValue;
+							bingo(Alert.RISK_HIGH, Alert.CONFIDENCE_MEDIUM, getName() + " - " + errorPatternRDBMS, getDescription(),
+									null,
+									param, sqlInjectionAttack,
+									extraInfo, getSolution(), sb.toString(), msg1);
 
-								//log it, as the RDBMS may be useful to know later (in subsequent checks, when we need to determine RDBMS specific behaviour, for instance)
-								getKb().add(getBaseMsg().getRequestHeader().getURI(), "sql/" + errorPatternRDBMS, Boolean.TRUE);
+							//log it, as the RDBMS may be useful to know later (in subsequent checks, when we need to determine RDBMS specific behaviour, for instance)
+							getKb().add(getBaseMsg().getRequestHeader().getURI(), "sql/" + errorPatternRDBMS, Boolean.TRUE);
 
-								sqlInjectionFoundForUrl = true;
-								continue;
-							}
-							//bale out if we were asked nicely
-							if (isStop()) { 
-								log.debug("Stopping the scan due to a user request");
-								return;
-							}
-						} //end of the loop to check for RDBMS specific error messages
-						
+							sqlInjectionFoundForUrl = true;
+						}
 					}
 
 				}  //for each of the SQL_CHECK_ERR values (SQL metacharacters)
@@ -797,6 +886,17 @@ public class TestSQLInjection extends AbstractAppParamPlugin {
 			mResBodyNormalUnstripped = refreshedmessage.getResponseBody().toString();
 			mResBodyNormalStripped = this.stripOff(mResBodyNormalUnstripped, origParamValue);
 
+			if (doBooleanBased) {
+				//the original response is a second sample of the normal output, the tokens that differ (timestamps, anti-CSRF tokens, nonces...)
+				//are not under our control, ignore them when comparing the outputs
+				String baseBodyUnstripped = getBaseMsg().getResponseBody().toString();
+				normalUnstrippedComparator = new ResponseComparator(mResBodyNormalUnstripped, baseBodyUnstripped);
+				normalStrippedComparator = new ResponseComparator(mResBodyNormalStripped, this.stripOff(baseBodyUnstripped, origParamValue));
+				if (this.debugEnabled) {
+					log.debug("Check 2, ignoring " + normalUnstrippedComparator.getDynamicTokensCount() + " unstripped and " + normalStrippedComparator.getDynamicTokensCount() + " stripped dynamic tokens of the (refreshed) original results for " + refreshedmessage.getRequestHeader().getURI());
+				}
+			}
+
 			//boolean booleanBasedSqlInjectionFoundForParam = false;
 
 			//try each of the AND syntax values in turn. 
@@ -829,12 +929,13 @@ public class TestSQLInjection extends AbstractAppParamPlugin {
 
 				//set up two little arrays to ease the work of checking the unstripped output, and then the stripped output
 				String normalBodyOutput[] = {mResBodyNormalUnstripped, mResBodyNormalStripped};
+				ResponseComparator normalBodyComparator[] = {normalUnstrippedComparator, normalStrippedComparator};
 				String andTrueBodyOutput[] = {resBodyANDTrueUnstripped, resBodyANDTrueStripped};
 				boolean strippedOutput[] = {false, true};
 
 				for (int booleanStrippedUnstrippedIndex = 0; booleanStrippedUnstrippedIndex < 2; booleanStrippedUnstrippedIndex++) {
 					//if the results of the "AND 1=1" match the original query (using either the stipped or unstripped versions), we may be onto something. 
-					if (andTrueBodyOutput[booleanStrippedUnstrippedIndex].compareTo(normalBodyOutput[booleanStrippedUnstrippedIndex]) == 0) {
+					if (normalBodyComparator[booleanStrippedUnstrippedIndex].isSame(andTrueBodyOutput[booleanStrippedUnstrippedIndex])) {
 						if (this.debugEnabled) {
 							log.debug("Check 2, " + (strippedOutput[booleanStrippedUnstrippedIndex] ? "STRIPPED" : "UNSTRIPPED") + " html output for AND TRUE condition [" + sqlBooleanAndTrueValue + "] matched (refreshed) original results for " + refreshedmessage.getRequestHeader().getURI());
 						}
@@ -863,7 +964,7 @@ public class TestSQLInjection extends AbstractAppParamPlugin {
 						//depends on which one we used to get to here.. use the same as that..						
 
 						// build an always false AND query.  Result should be different to prove the SQL works.
-						if (andFalseBodyOutput[booleanStrippedUnstrippedIndex].compareTo(normalBodyOutput[booleanStrippedUnstrippedIndex]) != 0) {
+						if (!normalBodyComparator[booleanStrippedUnstrippedIndex].isSame(andFalseBodyOutput[booleanStrippedUnstrippedIndex])) {
 							if (this.debugEnabled) {
 								log.debug("Check 2, " + (strippedOutput[booleanStrippedUnstrippedIndex] ? "STRIPPED" : "UNSTRIPPED") + " html output for AND FALSE condition [" + sqlBooleanAndFalseValue + "] differed from (refreshed) original results for " + refreshedmessage.getRequestHeader().getURI());
 							}
@@ -920,8 +1021,7 @@ public class TestSQLInjection extends AbstractAppParamPlugin {
 
 							String orTrueBodyOutput[] = {resBodyORTrueUnstripped, resBodyORTrueStripped};
 
-							int compareOrToOriginal = orTrueBodyOutput[booleanStrippedUnstrippedIndex].compareTo(normalBodyOutput[booleanStrippedUnstrippedIndex]);
-							if (compareOrToOriginal != 0) {
+							if (!normalBodyComparator[booleanStrippedUnstrippedIndex].isSame(orTrueBodyOutput[booleanStrippedUnstrippedIndex])) {
 
 								if (this.debugEnabled) {
 									log.debug("Check 2, " + (strippedOutput[booleanStrippedUnstrippedIndex] ? "STRIPPED" : "UNSTRIPPED") + " html output for OR TRUE condition [" + orValue + "] different to (refreshed) original results for " + refreshedmessage.getRequestHeader().getURI());
@@ -1039,8 +1139,8 @@ public class TestSQLInjection extends AbstractAppParamPlugin {
 					String resBodyANDFalseStripped = this.stripOff(resBodyANDFalseUnstripped, sqlBooleanAndFalseValue);
 					
 					//does the "AND 1=2" version produce the same as the original (for stripped/unstripped versions)
-					boolean verificationUsingUnstripped = resBodyANDFalseUnstripped.compareTo(mResBodyNormalUnstripped) == 0;
-					boolean verificationUsingStripped = resBodyANDFalseStripped.compareTo(mResBodyNormalStripped) == 0;
+					boolean verificationUsingUnstripped = normalUnstrippedComparator.isSame(resBodyANDFalseUnstripped);
+					boolean verificationUsingStripped = normalStrippedComparator.isSame(resBodyANDFalseStripped);
 					if ( verificationUsingUnstripped || verificationUsingStripped ) {
 						if (this.debugEnabled) {
 							log.debug("Check 2, " + (verificationUsingStripped ? "STRIPPED" : "UNSTRIPPED") + " html output for AND FALSE condition [" + sqlBooleanAndFalseValue + "] matches the (refreshed) original results");
@@ -1071,6 +1171,8 @@ public class TestSQLInjection extends AbstractAppParamPlugin {
 
 
 			//Check 3: UNION based
+			//the UNION error messages in the (refreshed) original output, found once for all the UNION attacks
+			BitSet normalUnionErrors = null;
 			//for each SQL UNION combination to try
 			for (int sqlUnionStringIndex = 0;
 					sqlUnionStringIndex < SQL_UNION_APPENDAGES.length && !sqlInjectionFoundForUrl && doUnionBased && countUnionBasedRequests < doUnionMaxRequests;
@@ -1093,11 +1195,18 @@ public class TestSQLInjection extends AbstractAppParamPlugin {
 				//now check the results.. look first for UNION specific error messages in the output that were not there in the original output
 				//and failing that, look for generic RDBMS specific error messages
 				//TODO: maybe also try looking at a differentiation based approach?? Prone to false positives though.
+				String sqlUnionBodyStripped = this.stripOff(msg3.getResponseBody().toString(), sqlUnionValue);
+				BitSet newUnionErrors = RDBMS.findUnionErrors(sqlUnionBodyStripped);
+				if (normalUnionErrors == null) {
+					normalUnionErrors = RDBMS.findUnionErrors(mResBodyNormalStripped);
+				}
+				newUnionErrors.andNot(normalUnionErrors);
 				for (RDBMS rdbms : RDBMS.values()) {
 					if (getTechSet().includes(rdbms.getTech()) && checkUnionErrors(
 							rdbms,
 							msg3,
-							mResBodyNormalStripped,
+							sqlUnionBodyStripped,
+							newUnionErrors,
 							refreshedmessage.getRequestHeader().getURI(),
 							param,
 							sqlUnionValue)) {
@@ -1296,69 +1405,65 @@ public class TestSQLInjection extends AbstractAppParamPlugin {
 		}
 	}
 
-	private boolean checkSpecificErrors(RDBMS rdbms, HttpMessage msg1, String parameter, String attack) {
+	private boolean checkSpecificErrors(RDBMS rdbms, HttpMessage msg1, BitSet newErrors, String parameter, String attack) {
 		if (rdbms.isGeneric()) {
 			return false;
 		}
 
-		for (Pattern errorPattern : rdbms.getErrorPatterns()) {
-			if (isStop()) {
-				return false;
-			}
+		Pattern errorPattern = rdbms.getErrorPattern(newErrors);
+		if (errorPattern == null) {
+			return false;
+		}
 
-			//if the "error message" occurs in the result of sending the modified query, but did NOT occur in the original result of the original query
-			//then we may may have a SQL Injection vulnerability
-			StringBuilder sb = new StringBuilder();
-			if (!matchBodyPattern(getBaseMsg(), errorPattern, null) && matchBodyPattern(msg1, errorPattern, sb)) {
-				//Likely a SQL Injection. Raise it
-				String extraInfo = Constant.messages.getString(MESSAGE_PREFIX + "alert.errorbased.extrainfo", rdbms.getName(), errorPattern.toString());
-				bingo(Alert.RISK_HIGH, Alert.CONFIDENCE_MEDIUM, getName() + " - " + rdbms.getName(), getDescription(),
-						null,
-						parameter, attack,
-						extraInfo, getSolution(), sb.toString(), msg1);
+		//Likely a SQL Injection. Raise it
+		StringBuilder sb = new StringBuilder();
+		matchBodyPattern(msg1, errorPattern, sb);
+		String extraInfo = Constant.messages.getString(MESSAGE_PREFIX + "alert.errorbased.extrainfo", rdbms.getName(), errorPattern.toString());
+		bingo(Alert.RISK_HIGH, Alert.CONFIDENCE_MEDIUM, getName() + " - " + rdbms.getName(), getDescription(),
+				null,
+				parameter, attack,
+				extraInfo, getSolution(), sb.toString(), msg1);
 
-				//log it, as the RDBMS may be useful to know later (in subsequent checks, when we need to determine RDBMS specific behaviour, for instance)
-				getKb().add(getBaseMsg().getRequestHeader().getURI(), "sql/" + rdbms.getName(), Boolean.TRUE);
+		//log it, as the RDBMS may be useful to know later (in subsequent checks, when we need to determine RDBMS specific behaviour, for instance)
+		getKb().add(getBaseMsg().getRequestHeader().getURI(), "sql/" + rdbms.getName(), Boolean.TRUE);
 
-				return true;
-			}
-		}
-
-		return false;
+		return true;
 	}
 
-	private boolean checkUnionErrors(RDBMS rdbms, HttpMessage msg, String response, URI uri, String parameter, String attack) {
-		for (Pattern errorPattern : rdbms.getUnionErrorPatterns()) {
-			if (isStop()) {
-				return false;
-			}
+	/**
+	 * Gets the RDBMS errors found in the response of the base message.
+	 * <p>
+	 * The response is scanned only once, not for each attack.
+	 * 
+	 * @return the errors found in the base message, never {@code null}
+	 */
+	private BitSet getBaseMsgErrors() {
+		HttpMessage baseMsg = getBaseMsg();
+		if (baseMsgErrors == null || baseMsgErrorsMsg != baseMsg) {
+			baseMsgErrors = RDBMS.findErrors(baseMsg.getResponseBody().toString());
+			baseMsgErrorsMsg = baseMsg;
+		}
+		return baseMsgErrors;
+	}
 
-			//if the "error message" occurs in the result of sending the modified query, but did NOT occur in the original result of the original query
-			//then we may may have a SQL Injection vulnerability
-			String sqlUnionBodyUnstripped = msg.getResponseBody().toString();
-			String sqlUnionBodyStripped = this.stripOff(sqlUnionBodyUnstripped, attack);
-
-			Matcher matcherOrig = errorPattern.matcher(response);
-			Matcher matcherSQLUnion = errorPattern.matcher(sqlUnionBodyStripped);
-			boolean patternInOrig = matcherOrig.find();
-			boolean patternInSQLUnion = matcherSQLUnion.find();
-
-			//if (! matchBodyPattern(getBaseMsg(), errorPattern, null) && matchBodyPattern(msg, errorPattern, sb)) {
-			if (!patternInOrig && patternInSQLUnion) {
-				//Likely a UNION Based SQL Injection (by error message). Raise it
-				String extraInfo = Constant.messages.getString(MESSAGE_PREFIX + "alert.unionbased.extrainfo", rdbms.getName(), errorPattern.toString());
-				bingo(Alert.RISK_HIGH, Alert.CONFIDENCE_MEDIUM, getName() + " - " + rdbms.getName(), getDescription(),
-						uri.getEscapedURI(),
-						parameter, attack,
-						extraInfo, getSolution(), matcherSQLUnion.group(), msg);
-
-				//log it, as the RDBMS may be useful to know later (in subsequent checks, when we need to determine RDBMS specific behaviour, for instance)
-				getKb().add(uri, "sql/" + rdbms.getName(), Boolean.TRUE);
-				return true;
-			}
+	private boolean checkUnionErrors(RDBMS rdbms, HttpMessage msg, String sqlUnionBodyStripped, BitSet newUnionErrors, URI uri, String parameter, String attack) {
+		Pattern errorPattern = rdbms.getUnionErrorPattern(newUnionErrors);
+		if (errorPattern == null) {
+			return false;
 		}
 
-		return false;
+		//Likely a UNION Based SQL Injection (by error message). Raise it
+		Matcher matcherSQLUnion = errorPattern.matcher(sqlUnionBodyStripped);
+		matcherSQLUnion.find();
+		String extraInfo = Constant.messages.getString(MESSAGE_PREFIX + "alert.unionbased.extrainfo", rdbms.getName(), errorPattern.toString());
+		bingo(Alert.RISK_HIGH, Alert.CONFIDENCE_MEDIUM, getName() + " - " + rdbms.getName(), getDescription(),
+				uri.getEscapedURI(),
+				parameter, attack,
+				extraInfo, getSolution(), matcherSQLUnion.group(), msg);
+
+		//log it, as the RDBMS may be useful to know later (in subsequent checks, when we need to determine RDBMS specific behaviour, for instance)
+		getKb().add(uri, "sql/" + rdbms.getName(), Boolean.TRUE);
+		return true;
 	}
 
 	private void expressionBasedAttack(String param, String modifiedParamValue, String modifiedParamValueConfirm) throws IOException {
@@ -1453,6 +1558,8 @@ public class TestSQLInjection extends AbstractAppParamPlugin {
 	 * character) This is mainly used for stripping off a testing string in HTTP
 	 * response for comparison against the original response. Reference:
 	 * TestInjectionSQL
+	 * <p>
+	 * The pattern and its encodings are removed in a single pass over the body.
 	 *
 	 * @param body
 	 * @param pattern
@@ -1466,9 +1573,7 @@ public class TestSQLInjection extends AbstractAppParamPlugin {
 		String urlEncodePattern = getURLEncode(pattern);
 		String htmlEncodePattern1 = getHTMLEncode(pattern);
 		String htmlEncodePattern2 = getHTMLEncode(urlEncodePattern);
-		String result = body.replaceAll("\\Q" + pattern + "\\E", "").replaceAll("\\Q" + urlEncodePattern + "\\E", "");
-		result = result.replaceAll("\\Q" + htmlEncodePattern1 + "\\E", "").replaceAll("\\Q" + htmlEncodePattern2 + "\\E", "");
-		return result;
+		return ResponseComparator.removeAll(body, pattern, urlEncodePattern, htmlEncodePattern1, htmlEncodePattern2);
 	}
 
 	/**
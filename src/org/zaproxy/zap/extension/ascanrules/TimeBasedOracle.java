@@ -0,0 +1,335 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2017 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.ascanrules;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.httpclient.URI;
+import org.apache.commons.httpclient.URIException;
+import org.parosproxy.paros.network.HttpMessage;
+
+/**
+ * An oracle for time-based (blind) injections, tells whether or not the attacks delay the responses.
+ * <p>
+ * The responses of the attacks are compared with the {@link LatencyModel latency model} of the endpoint, built from the
+ * responses of normal requests (or of attacks that are not expected to delay the response). The attacks are sent with
+ * short delays and the observed times are evaluated with a sequential probability ratio test, which stops as soon as
+ * there's enough evidence to accept or reject the delay. The delay is increased, up to the maximum, only while the
+ * results are ambiguous.
+ * <p>
+ * A delay is never accepted with a single attack, the attack is always repeated, with a longer delay, to confirm it. Nor
+ * is it accepted without a latency model, the responses of a few normal requests are obtained first, if needed.
+ */
+class TimeBasedOracle {
+
+	/**
+	 * The maximum number of latency models kept, one per endpoint.
+	 */
+	private static final int MAX_LATENCY_MODELS = 500;
+
+	private static final Map<String, LatencyModel> LATENCY_MODELS = new LinkedHashMap<String, LatencyModel>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, LatencyModel> eldest) {
+			return size() > MAX_LATENCY_MODELS;
+		}
+	};
+
+	/**
+	 * The standard deviation, in milliseconds, assumed when the latency model has less (or lower) samples, to not be
+	 * overconfident with stable (or few) responses.
+	 */
+	static final double MIN_STANDARD_DEVIATION = 100;
+
+	/**
+	 * The probability of wrongly accepting a delay.
+	 */
+	private static final double FALSE_POSITIVE_RATE = 0.0001;
+
+	/**
+	 * The probability of wrongly rejecting a delay.
+	 */
+	private static final double FALSE_NEGATIVE_RATE = 0.01;
+
+	private static final double ACCEPT_THRESHOLD = Math.log((1 - FALSE_NEGATIVE_RATE) / FALSE_POSITIVE_RATE);
+	private static final double REJECT_THRESHOLD = Math.log(FALSE_NEGATIVE_RATE / (1 - FALSE_POSITIVE_RATE));
+
+	/**
+	 * The minimum number of attacks to accept a delay.
+	 */
+	private static final int MIN_ATTACKS = 2;
+
+	/**
+	 * The maximum number of attacks sent, if still ambiguous the delay is rejected.
+	 */
+	private static final int MAX_ATTACKS = 4;
+
+	/**
+	 * The minimum number of response times in the latency model to evaluate the attacks.
+	 */
+	static final int MIN_SAMPLES = 3;
+
+	private final LatencyModel latencyModel;
+	private final int maxDelay;
+	private final int delayTolerance;
+
+	/**
+	 * Constructs a {@code TimeBasedOracle} with the given latency model and maximum delay.
+	 *
+	 * @param latencyModel the latency model of the endpoint attacked
+	 * @param maxDelay the maximum delay, in seconds, used in the attacks
+	 * @throws IllegalArgumentException if the {@code maxDelay} is not positive
+	 */
+	TimeBasedOracle(LatencyModel latencyModel, int maxDelay) {
+		this(latencyModel, maxDelay, 0);
+	}
+
+	/**
+	 * Constructs a {@code TimeBasedOracle} with the given latency model, maximum delay and delay tolerance.
+	 * <p>
+	 * The tolerance is for attacks whose delay is not exact, for example, Windows {@code timeout /T n} counts clock
+	 * ticks and might return almost a second sooner than requested. The attacks are then sent with a delay longer than
+	 * the tolerance and are expected to delay the response only by the delay minus the tolerance.
+	 *
+	 * @param latencyModel the latency model of the endpoint attacked
+	 * @param maxDelay the maximum delay, in seconds, used in the attacks
+	 * @param delayTolerance how much sooner, in seconds, the attacks might return
+	 * @throws IllegalArgumentException if the {@code maxDelay} is not positive or the {@code delayTolerance} is negative
+	 */
+	TimeBasedOracle(LatencyModel latencyModel, int maxDelay, int delayTolerance) {
+		if (maxDelay <= 0) {
+			throw new IllegalArgumentException("Parameter maxDelay must be greater than zero.");
+		}
+		if (delayTolerance < 0) {
+			throw new IllegalArgumentException("Parameter delayTolerance must not be negative.");
+		}
+		this.latencyModel = latencyModel;
+		this.maxDelay = maxDelay;
+		this.delayTolerance = delayTolerance;
+	}
+
+	/**
+	 * Gets the latency model of the endpoint of the given message, shared by all the rules.
+	 * <p>
+	 * The endpoint is identified by the scheme, host, port and path of the request, the query is ignored.
+	 *
+	 * @param msg the message to the endpoint
+	 * @return the latency model, never {@code null}
+	 */
+	static LatencyModel getLatencyModel(HttpMessage msg) {
+		String endpoint = getEndpoint(msg.getRequestHeader().getURI());
+		synchronized (LATENCY_MODELS) {
+			LatencyModel latencyModel = LATENCY_MODELS.get(endpoint);
+			if (latencyModel == null) {
+				latencyModel = new LatencyModel();
+				LATENCY_MODELS.put(endpoint, latencyModel);
+			}
+			return latencyModel;
+		}
+	}
+
+	private static String getEndpoint(URI uri) {
+		StringBuilder strBuilder = new StringBuilder();
+		strBuilder.append(uri.getScheme()).append("://");
+		try {
+			strBuilder.append(uri.getHost()).append(':').append(uri.getPort()).append(uri.getPath());
+		} catch (URIException e) {
+			return uri.toString();
+		}
+		return strBuilder.toString();
+	}
+
+	/**
+	 * Gets the delay, in seconds, of the first attack.
+	 * <p>
+	 * The shortest delay (in whole seconds) that is clearly distinguishable from the usual variation of the response
+	 * times, even if the attack returns sooner by the tolerance, no longer than the maximum delay.
+	 *
+	 * @return the delay of the first attack
+	 */
+	int getInitialDelay() {
+		double threshold = 3 * getStandardDeviation();
+		int delay = Math.max(1, (int) Math.ceil(threshold / 1000)) + delayTolerance;
+		return Math.min(delay, maxDelay);
+	}
+
+	private double getStandardDeviation() {
+		return Math.max(MIN_STANDARD_DEVIATION, latencyModel.getStandardDeviation());
+	}
+
+	/**
+	 * Tells whether or not the attacks sent through the given {@code DelayAttack} delay the response.
+	 *
+	 * @param attack the attack, sent with the delays as needed
+	 * @return {@code true} if the attack delays the response, {@code false} otherwise
+	 * @throws IOException if an error occurred while sending the attack
+	 */
+	boolean isDelayed(DelayAttack attack) throws IOException {
+		while (latencyModel.getSampleCount() < MIN_SAMPLES) {
+			if (attack.isStop()) {
+				return false;
+			}
+			latencyModel.addSample(attack.sendWithoutDelay());
+		}
+
+		double mean = latencyModel.getMean();
+		double stdev = getStandardDeviation();
+		double variance = stdev * stdev;
+
+		int delay = getInitialDelay();
+		if (delay <= delayTolerance) {
+			// Not even the maximum delay is guaranteed to delay the response.
+			return false;
+		}
+
+		double logLikelihoodRatio = 0;
+		for (int i = 1; i <= MAX_ATTACKS; i++) {
+			long elapsedTime = attack.send(delay);
+			long delayMillis = (delay - delayTolerance) * 1000L;
+			if (elapsedTime < delayMillis) {
+				// The response was received sooner than the delay, not delayed.
+				return false;
+			}
+
+			// Ratio of the likelihoods of the response time with and without the delay, both normally distributed.
+			double residual = elapsedTime - mean;
+			logLikelihoodRatio += delayMillis * (residual - delayMillis / 2.0) / variance;
+
+			if (logLikelihoodRatio <= REJECT_THRESHOLD) {
+				return false;
+			}
+			if (logLikelihoodRatio >= ACCEPT_THRESHOLD && i >= MIN_ATTACKS) {
+				return true;
+			}
+
+			if (attack.isStop()) {
+				return false;
+			}
+			delay = Math.min(delay * 2, maxDelay);
+		}
+		return false;
+	}
+
+	/**
+	 * An attack that can be sent with a given delay.
+	 */
+	interface DelayAttack {
+
+		/**
+		 * Sends the attack with the given delay.
+		 *
+		 * @param delay the delay, in seconds
+		 * @return the time, in milliseconds, that took to receive the response
+		 * @throws IOException if an error occurred while sending the attack
+		 */
+		long send(int delay) throws IOException;
+
+		/**
+		 * Sends a normal request, without the attack, to build the latency model.
+		 *
+		 * @return the time, in milliseconds, that took to receive the response
+		 * @throws IOException if an error occurred while sending the request
+		 */
+		long sendWithoutDelay() throws IOException;
+
+		/**
+		 * Tells whether or not no more attacks should be sent, for example, the scan was stopped.
+		 *
+		 * @return {@code true} if no more attacks should be sent, {@code false} otherwise
+		 */
+		boolean isStop();
+	}
+
+	/**
+	 * The latency model of an endpoint, the mean and standard deviation of the latest response times.
+	 * <p>
+	 * The model is thread-safe, it might be shared by several rules.
+	 */
+	static class LatencyModel {
+
+		/**
+		 * The maximum number of response times kept, the oldest are discarded.
+		 */
+		static final int MAX_SAMPLES = 30;
+
+		private final long[] samples = new long[MAX_SAMPLES];
+		private int count;
+		private int next;
+
+		/**
+		 * Adds the given response time.
+		 *
+		 * @param elapsedTime the response time, in milliseconds
+		 */
+		synchronized void addSample(long elapsedTime) {
+			samples[next] = elapsedTime;
+			next = (next + 1) % MAX_SAMPLES;
+			if (count < MAX_SAMPLES) {
+				count++;
+			}
+		}
+
+		/**
+		 * Gets the number of response times of the model.
+		 *
+		 * @return the number of response times
+		 */
+		synchronized int getSampleCount() {
+			return count;
+		}
+
+		/**
+		 * Gets the arithmetic mean of the response times.
+		 *
+		 * @return the mean, in milliseconds, or {@code 0} if there are no response times
+		 */
+		synchronized double getMean() {
+			if (count == 0) {
+				return 0;
+			}
+			double result = 0;
+			for (int i = 0; i < count; i++) {
+				result += samples[i];
+			}
+			return result / count;
+		}
+
+		/**
+		 * Gets the (sample) standard deviation of the response times.
+		 *
+		 * @return the standard deviation, in milliseconds, or {@code -1} if there are less than two response times
+		 */
+		synchronized double getStandardDeviation() {
+			if (count < 2) {
+				return -1;
+			}
+			double mean = getMean();
+			double result = 0;
+			for (int i = 0; i < count; i++) {
+				result += Math.pow(samples[i] - mean, 2);
+			}
+			return Math.sqrt(result / (count - 1));
+		}
+	}
+}
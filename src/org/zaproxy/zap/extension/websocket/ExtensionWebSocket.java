@@ -17,8 +17,10 @@
  */
 package org.zaproxy.zap.extension.websocket;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -29,8 +31,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -47,6 +54,7 @@ import org.parosproxy.paros.extension.ExtensionHook;
 import org.parosproxy.paros.extension.ExtensionHookMenu;
 import org.parosproxy.paros.extension.ExtensionHookView;
 import org.parosproxy.paros.extension.ExtensionLoader;
+import org.parosproxy.paros.extension.OptionsChangedListener;
 import org.parosproxy.paros.extension.SessionChangedListener;
 import org.parosproxy.paros.extension.filter.ExtensionFilter;
 import org.parosproxy.paros.extension.manualrequest.ExtensionManualRequestEditor;
@@ -54,6 +62,7 @@ import org.parosproxy.paros.extension.manualrequest.ManualRequestEditorDialog;
 import org.parosproxy.paros.extension.manualrequest.http.impl.ManualHttpRequestEditorDialog;
 import org.parosproxy.paros.model.HistoryReference;
 import org.parosproxy.paros.model.Model;
+import org.parosproxy.paros.model.OptionsParam;
 import org.parosproxy.paros.model.Session;
 import org.parosproxy.paros.model.SiteNode;
 import org.parosproxy.paros.network.HttpMessage;
@@ -75,6 +84,9 @@ import org.zaproxy.zap.extension.websocket.brk.WebSocketBreakpointMessageHandler
 import org.zaproxy.zap.extension.websocket.brk.WebSocketBreakpointsUiManagerInterface;
 import org.zaproxy.zap.extension.websocket.brk.WebSocketProxyListenerBreak;
 import org.zaproxy.zap.extension.websocket.db.TableWebSocket;
+import org.zaproxy.zap.extension.websocket.db.WebSocketMessagesExporter;
+import org.zaproxy.zap.extension.websocket.db.WebSocketMessagesFormat;
+import org.zaproxy.zap.extension.websocket.db.WebSocketMessagesImporter;
 import org.zaproxy.zap.extension.websocket.db.WebSocketStorage;
 import org.zaproxy.zap.extension.websocket.filter.FilterWebSocketPayload;
 import org.zaproxy.zap.extension.websocket.filter.WebSocketFilter;
@@ -110,7 +122,7 @@ import org.zaproxy.zap.view.SiteMapTreeCellRenderer;
  * @author Robert Koch
  */
 public class ExtensionWebSocket extends ExtensionAdaptor implements
-		PersistentConnectionListener, SessionChangedListener, SiteMapListener {
+		PersistentConnectionListener, SessionChangedListener, SiteMapListener, OptionsChangedListener {
     
 	private static final Logger logger = Logger.getLogger(ExtensionWebSocket.class);
 	
@@ -121,6 +133,12 @@ public class ExtensionWebSocket extends ExtensionAdaptor implements
 	 */
 	public static final String NAME = "ExtensionWebSocket";
 
+	/**
+	 * Directory of the spooled payloads of big messages, relative to the ZAP
+	 * home directory.
+	 */
+	private static final String SPOOL_DIRECTORY = "websocket-spool";
+
 	/**
 	 * Used to shorten the time, a listener is started on a WebSocket channel.
 	 */
@@ -130,7 +148,7 @@ public class ExtensionWebSocket extends ExtensionAdaptor implements
 	 * List of observers where each element is informed on all channel's
 	 * messages.
 	 */
-	private Vector<WebSocketObserver> allChannelObservers;
+	private List<WebSocketObserver> allChannelObservers;
 
 	/**
 	 * Contains all proxies with their corresponding handshake message.
@@ -190,7 +208,7 @@ public class ExtensionWebSocket extends ExtensionAdaptor implements
 	public void init() {
 		super.init();
 		
-		allChannelObservers = new Vector<>();
+		allChannelObservers = new CopyOnWriteArrayList<>();
 		wsProxies = new HashMap<>();
 		config = new OptionsParamWebSocket();
 		
@@ -198,18 +216,24 @@ public class ExtensionWebSocket extends ExtensionAdaptor implements
 		ignoredChannelList = new ArrayList<>();
 
 		mode = Control.getSingleton().getMode();
+		
+		WebSocketPayloadSpool.initDirectory(new File(Constant.getZapHome(), SPOOL_DIRECTORY));
 	}
 	
     @Override
     public void databaseOpen(Database db) throws DatabaseException, DatabaseUnsupportedException {
 		table = new TableWebSocket();
+		table.setOptions(config);
 		db.addDatabaseListener(table);
 		try {
 			table.databaseOpen(db.getDatabaseServer());
 
 			if (storage == null) {
-				storage = new WebSocketStorage(table);	
+				storage = new WebSocketStorage(table, config);
 				addAllChannelObserver(storage);
+				if (View.isInitialised()) {
+					storage.addMessagesDeletedListener(getWebSocketPanel());
+				}
 			} else {
 				storage.setTable(table);
 			}
@@ -253,6 +277,7 @@ public class ExtensionWebSocket extends ExtensionAdaptor implements
 
 		// setup configuration
 		extensionHook.addOptionsParamSet(config);
+		extensionHook.addOptionsChangedListener(this);
 		
 		try {
 			setChannelIgnoreList(Model.getSingleton().getSession().getExcludeFromProxyRegexs());
@@ -356,6 +381,14 @@ public class ExtensionWebSocket extends ExtensionAdaptor implements
 			wsProxy.shutdown();
 		}
 		
+		synchronized (this) {
+			if (listenerThreadPool != null) {
+				// listeners of closed channels finish on their own
+				listenerThreadPool.shutdown();
+				listenerThreadPool = null;
+			}
+		}
+		
 		Control control = Control.getSingleton();
 		ExtensionLoader extLoader = control.getExtensionLoader();
 		
@@ -381,6 +414,12 @@ public class ExtensionWebSocket extends ExtensionAdaptor implements
 			}
 		}
 		
+		if (storage != null) {
+			// write messages still waiting to be stored
+			storage.stop();
+		}
+		WebSocketPayloadSpool.cleanDirectory();
+		
 		if (table != null) {
 			getModel().getDb().removeDatabaseListener(table);
 		}
@@ -503,6 +542,20 @@ public class ExtensionWebSocket extends ExtensionAdaptor implements
 	 * @param remoteReader Current {@link InputStream} of remote connection.
 	 */
 	public void addWebSocketsChannel(HttpMessage handshakeMessage, Socket localSocket, Socket remoteSocket, InputStream remoteReader) {
+		createWebSocketsChannel(handshakeMessage, localSocket, remoteSocket, remoteReader);
+	}
+
+	/**
+	 * Same as {@link #addWebSocketsChannel(HttpMessage, Socket, Socket, InputStream)}, but returns the proxy of the new
+	 * channel.
+	 * 
+	 * @param handshakeMessage HTTP-based handshake.
+	 * @param localSocket Current connection channel from the browser to ZAP, null in client mode.
+	 * @param remoteSocket Current connection channel from ZAP to the server.
+	 * @param remoteReader Current {@link InputStream} of remote connection.
+	 * @return the started proxy, or null if the channel could not be added (the sockets are closed)
+	 */
+	public WebSocketProxy createWebSocketsChannel(HttpMessage handshakeMessage, Socket localSocket, Socket remoteSocket, InputStream remoteReader) {
 		try {			
 			HttpRequestHeader requestHeader = handshakeMessage.getRequestHeader();
 			String targetHost = requestHeader.getHostName();
@@ -544,11 +597,13 @@ public class ExtensionWebSocket extends ExtensionAdaptor implements
 			}
 			wsProxy.setHandshakeReference(handshakeMessage.getHistoryRef());
 			wsProxy.setForwardOnly(isChannelIgnored(wsProxy.getDTO()));
+			wsProxy.setSpoolThreshold(config.getSpoolThreshold());
 			wsProxy.startListeners(getListenerThreadPool(), remoteReader);
 			
 			synchronized (wsProxies) {
 				wsProxies.put(wsProxy.getChannelId(), wsProxy);
 			}
+			return wsProxy;
 		} catch (Exception e) {
 			// defensive measure to catch all possible exceptions
 			// cleanly close resources
@@ -576,7 +631,7 @@ public class ExtensionWebSocket extends ExtensionAdaptor implements
 				}
 			}
 			logger.error("Adding WebSockets channel failed due to: '" + e.getClass() + "' " + e.getMessage());
-			return;
+			return null;
 		}
 	}
 
@@ -695,16 +750,54 @@ public class ExtensionWebSocket extends ExtensionAdaptor implements
 	/**
 	 * Creates and returns a cached thread pool that should speed up
 	 * {@link WebSocketListener}.
+	 * <p>
+	 * Listeners block on reads, hence the pool is unbounded (two threads per
+	 * channel). Idle threads are reclaimed after one minute.
 	 * 
 	 * @return
 	 */
-	private ExecutorService getListenerThreadPool() {
+	private synchronized ExecutorService getListenerThreadPool() {
 		if (listenerThreadPool == null) {
-			listenerThreadPool = Executors.newCachedThreadPool();
+			listenerThreadPool = new ThreadPoolExecutor(
+					0,
+					Integer.MAX_VALUE,
+					60L,
+					TimeUnit.SECONDS,
+					new SynchronousQueue<Runnable>(),
+					new ListenerThreadFactory(config.getListenerThreadStackSize()));
 		}
 		return listenerThreadPool;
 	}
 
+	/**
+	 * Creates daemon threads with the configured stack size, such that open
+	 * channels do not prevent ZAP from exiting and thousands of idle channels
+	 * do not reserve more memory than needed.
+	 * 
+	 * @see OptionsParamWebSocket#getListenerThreadStackSize()
+	 */
+	private static final class ListenerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		private final long stackSize;
+
+		public ListenerThreadFactory(int stackSizeKiB) {
+			this.stackSize = stackSizeKiB * 1024L;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			// name is changed by the WebSocketListener
+			Thread thread = new Thread(null, r, "ZAP-WS-Listener-" + threadNumber.getAndIncrement(), stackSize);
+			thread.setDaemon(true);
+			if (thread.getPriority() != Thread.NORM_PRIORITY) {
+				thread.setPriority(Thread.NORM_PRIORITY);
+			}
+			return thread;
+		}
+	}
+
 	/**
 	 * Returns true if the WebSocket connection that followed the given
 	 * WebSocket handshake is already alive.
@@ -818,6 +911,51 @@ public class ExtensionWebSocket extends ExtensionAdaptor implements
 		return Collections.emptyList();
 	}
 
+	/**
+	 * Exports all channels and messages of the current session.
+	 *
+	 * @param out the stream to write to, not closed
+	 * @param format the format of the export
+	 * @return the number of messages exported
+	 * @throws IOException if an error occurred while writing.
+	 * @throws DatabaseException if an error occurred while reading the messages.
+	 * @see #importMessages(InputStream, WebSocketMessagesFormat)
+	 */
+	public long exportMessages(OutputStream out, WebSocketMessagesFormat format) throws IOException, DatabaseException {
+		if (storage == null) {
+			return 0;
+		}
+		// include the messages still waiting to be stored
+		storage.flush();
+		return new WebSocketMessagesExporter(storage.getTable()).export(out, format);
+	}
+
+	/**
+	 * Imports the channels and messages exported before into the current
+	 * session, the channels get new ids.
+	 *
+	 * @param in the stream to read from, not closed
+	 * @param format the format of the export
+	 * @return the number of messages imported
+	 * @throws IOException if an error occurred while reading or the content is not valid.
+	 * @throws DatabaseException if an error occurred while storing the messages.
+	 * @see #exportMessages(OutputStream, WebSocketMessagesFormat)
+	 */
+	public long importMessages(InputStream in, WebSocketMessagesFormat format) throws IOException, DatabaseException {
+		if (storage == null) {
+			return 0;
+		}
+		WebSocketMessagesImporter.ChannelIdReserver channelIdReserver = new WebSocketMessagesImporter.ChannelIdReserver() {
+
+			@Override
+			public int reserve(int minimumOffset, int count) {
+				// new channels have to follow the imported ones
+				return WebSocketProxy.reserveChannelIds(minimumOffset, count);
+			}
+		};
+		return new WebSocketMessagesImporter(storage.getTable(), channelIdReserver).importMessages(in, format);
+	}
+
 	/**
 	 * If given channel is blacklisted, then nothing should be stored. Moreover
 	 * it should not appear in user interface, but messages should be forwarded.
@@ -1300,6 +1438,14 @@ public class ExtensionWebSocket extends ExtensionAdaptor implements
 		return resendDialog;
 	}
 
+	@Override
+	public void optionsChanged(OptionsParam optionsParam) {
+		if (storage != null) {
+			// asynchronous storage or retention might have been toggled
+			storage.optionsChanged();
+		}
+	}
+
 	@Override
 	public void nodeSelected(SiteNode node) {
 		// do nothing
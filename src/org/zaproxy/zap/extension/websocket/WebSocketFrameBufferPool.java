@@ -0,0 +1,183 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of buffers used to read, mask and forward frames of one channel.
+ * <p>
+ * Buffers are grouped into size classes (powers of two, from
+ * {@value #MIN_POOLED_SIZE} up to {@value #MAX_POOLED_SIZE} bytes). Bigger
+ * buffers are allocated on demand and left to the garbage collector. Only a
+ * few buffers are kept per size class, as a channel has got just one frame in
+ * flight per direction.
+ * <p>
+ * Buffers are heap buffers, as the frame parsing relies on
+ * {@link ByteBuffer#array()}.
+ */
+public class WebSocketFrameBufferPool {
+
+	static final int MIN_POOLED_SIZE = 256;
+
+	static final int MAX_POOLED_SIZE = 65536;
+
+	private static final int MIN_SIZE_SHIFT = Integer.numberOfTrailingZeros(MIN_POOLED_SIZE);
+
+	private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_POOLED_SIZE) - MIN_SIZE_SHIFT + 1;
+
+	private static final int DEFAULT_BUFFERS_PER_CLASS = 4;
+
+	private final ArrayDeque<ByteBuffer>[] sizeClasses;
+
+	private final int buffersPerClass;
+
+	private final AtomicLong allocatedCount;
+
+	private final AtomicLong allocatedBytes;
+
+	private final AtomicLong reusedCount;
+
+	public WebSocketFrameBufferPool() {
+		this(DEFAULT_BUFFERS_PER_CLASS);
+	}
+
+	/**
+	 * @param buffersPerClass maximum number of idle buffers kept per size class
+	 */
+	@SuppressWarnings("unchecked")
+	public WebSocketFrameBufferPool(int buffersPerClass) {
+		this.buffersPerClass = buffersPerClass;
+		this.sizeClasses = new ArrayDeque[SIZE_CLASSES];
+		for (int i = 0; i < SIZE_CLASSES; i++) {
+			sizeClasses[i] = new ArrayDeque<>(buffersPerClass);
+		}
+		this.allocatedCount = new AtomicLong();
+		this.allocatedBytes = new AtomicLong();
+		this.reusedCount = new AtomicLong();
+	}
+
+	/**
+	 * Returns a cleared buffer with a capacity of at least the given number of
+	 * bytes. Should be given back with {@link #release(ByteBuffer)}.
+	 *
+	 * @param minCapacity
+	 * @return buffer with position 0 and limit set to its capacity
+	 */
+	public ByteBuffer acquire(int minCapacity) {
+		int sizeClass = getSizeClass(minCapacity);
+		if (sizeClass != -1) {
+			ByteBuffer buffer;
+			synchronized (this) {
+				buffer = sizeClasses[sizeClass].pollFirst();
+			}
+			if (buffer != null) {
+				reusedCount.incrementAndGet();
+				buffer.clear();
+				return buffer;
+			}
+			minCapacity = MIN_POOLED_SIZE << sizeClass;
+		}
+
+		allocatedCount.incrementAndGet();
+		allocatedBytes.addAndGet(minCapacity);
+		return ByteBuffer.allocate(minCapacity);
+	}
+
+	/**
+	 * Gives back a buffer retrieved by {@link #acquire(int)}. It must not be
+	 * used anymore by the caller.
+	 *
+	 * @param buffer
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null) {
+			return;
+		}
+
+		int capacity = buffer.capacity();
+		int sizeClass = getSizeClass(capacity);
+		if (sizeClass == -1 || (MIN_POOLED_SIZE << sizeClass) != capacity) {
+			// not allocated by this pool
+			return;
+		}
+
+		synchronized (this) {
+			ArrayDeque<ByteBuffer> buffers = sizeClasses[sizeClass];
+			if (buffers.size() < buffersPerClass) {
+				buffers.addFirst(buffer);
+			}
+		}
+	}
+
+	/**
+	 * @param capacity
+	 * @return index of the smallest size class that fits the capacity, or -1
+	 *         if it is not pooled
+	 */
+	private static int getSizeClass(int capacity) {
+		if (capacity > MAX_POOLED_SIZE) {
+			return -1;
+		}
+		if (capacity <= MIN_POOLED_SIZE) {
+			return 0;
+		}
+		int shift = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+		return shift - MIN_SIZE_SHIFT;
+	}
+
+	/**
+	 * @return number of buffers that had to be allocated
+	 */
+	public long getAllocatedCount() {
+		return allocatedCount.get();
+	}
+
+	/**
+	 * @return total bytes of the buffers that had to be allocated
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes.get();
+	}
+
+	/**
+	 * @return number of requests served with a pooled buffer
+	 */
+	public long getReusedCount() {
+		return reusedCount.get();
+	}
+
+	/**
+	 * @return number of idle buffers currently kept
+	 */
+	public synchronized int getPooledCount() {
+		int count = 0;
+		for (ArrayDeque<ByteBuffer> buffers : sizeClasses) {
+			count += buffers.size();
+		}
+		return count;
+	}
+
+	@Override
+	public String toString() {
+		return "allocated=" + getAllocatedCount() + " (" + getAllocatedBytes() + " bytes), reused=" + getReusedCount()
+				+ ", pooled=" + getPooledCount();
+	}
+}
@@ -52,4 +52,14 @@ public class WebSocketFuzzMessageDTO extends WebSocketMessageDTO {
     public WebSocketFuzzMessageDTO() {
         super();
     }
+
+    @Override
+    public WebSocketFuzzMessageDTO copy() {
+        WebSocketFuzzMessageDTO copy = new WebSocketFuzzMessageDTO();
+        copyInto(copy);
+        copy.fuzzId = fuzzId;
+        copy.state = state;
+        copy.fuzz = fuzz;
+        return copy;
+    }
 }
\ No newline at end of file
@@ -93,7 +93,11 @@ public class WebSocketListener implements Runnable {
 			// includes SocketException
 			// no more reading possible
 			stop();
-		} finally {				
+		} finally {
+			if (in != null) {
+				wsProxy.readFinished(in);
+			}
+			
 			// mark as finished
 			isFinished = true;
 			
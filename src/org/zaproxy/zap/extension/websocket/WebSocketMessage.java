@@ -17,10 +17,12 @@
  */
 package org.zaproxy.zap.extension.websocket;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 
 /**
@@ -159,6 +161,12 @@ public abstract class WebSocketMessage {
 	
 	public static final int[] OPCODES = {OPCODE_TEXT, OPCODE_BINARY, OPCODE_CLOSE, OPCODE_PING, OPCODE_PONG };
 
+	/**
+	 * Number of bytes available in {@link WebSocketMessageDTO#payload} for
+	 * spooled messages.
+	 */
+	public static final int SPOOLED_PAYLOAD_PREVIEW_LENGTH = 64 * 1024;
+
 	/**
 	 * Indicates the opcode of this message.
 	 * Initially it is set to -1, meaning that its type is unknown.
@@ -172,10 +180,19 @@ public abstract class WebSocketMessage {
 	protected int closeCode = -1;
 
 	/**
-	 * One Data Transfer Object is created per {@link WebSocketMessage} instance.
-	 * Might be also some subtype.
+	 * Template of the Data Transfer Objects of this {@link WebSocketMessage}
+	 * instance, might be also some subtype. It is never handed out, each
+	 * build starts with a {@link WebSocketMessageDTO#copy() copy} of it.
 	 */
 	private final WebSocketMessageDTO dto;
+
+	/**
+	 * Built once from the finished message, such that all observers share the
+	 * same snapshot instead of decoding the payload again. Replaced by a new
+	 * instance after {@link #payloadChanged()}, a snapshot handed out is
+	 * never modified.
+	 */
+	private volatile WebSocketMessageDTO dtoSnapshot;
 	
 	public WebSocketMessage(WebSocketProxy proxy, int messageId) {
 		this(proxy, messageId, new WebSocketMessageDTO());
@@ -392,6 +409,45 @@ public abstract class WebSocketMessage {
 	 */
 	public abstract byte[] getPayload();
 
+	/**
+	 * Returns a stream over the payload. Should be preferred over
+	 * {@link #getPayload()} for big (i.e. spooled) messages.
+	 * 
+	 * @return new stream, to be closed by the caller
+	 */
+	public InputStream getPayloadStream() {
+		return new ByteArrayInputStream(getPayload());
+	}
+
+	/**
+	 * Returns the temporary file the payload was spooled to, if the message
+	 * exceeded the spool threshold.
+	 * 
+	 * @return spool or {@code null} if the payload is kept in memory
+	 * @see WebSocketProxy#setSpoolThreshold(int)
+	 */
+	public WebSocketPayloadSpool getPayloadSpool() {
+		return null;
+	}
+
+	/**
+	 * Frees resources held by this message, e.g. deletes the spooled payload.
+	 * Called by the {@link WebSocketProxy} once the message was processed.
+	 */
+	public void release() {
+	}
+
+	/**
+	 * Returns a read-only view on the payload, without copying it. Should be
+	 * preferred over {@link #getPayload()} by observers that only inspect the
+	 * payload.
+	 * 
+	 * @return read-only buffer, positioned at the start of the payload
+	 */
+	public ByteBuffer getPayloadView() {
+		return ByteBuffer.wrap(getPayload()).asReadOnlyBuffer();
+	}
+
 	/**
 	 * Modifies the payload to given byte array. Use
 	 * {@link WebSocketMessage#setReadablePayload(String)} for setting payloads
@@ -429,13 +485,25 @@ public abstract class WebSocketMessage {
 	/**
 	 * Returns another presentation on this message object, used to decouple the
 	 * user interface from this version specific implementation.
+	 * <p>
+	 * Once the message is finished, the same object is returned until the
+	 * payload is changed, the payload is not decoded again. The object is
+	 * shared with other observers, it must not be modified, use
+	 * {@link WebSocketMessageDTO#copy()} to change or to keep it.
 	 * 
 	 * @return data transfer object
 	 */
 	public WebSocketMessageDTO getDTO() {
+		WebSocketMessageDTO snapshot = dtoSnapshot;
+		if (snapshot != null) {
+			return snapshot;
+		}
+		
 		// build upon base dto attribute set in constructor,
-		// such that existing instances are updated with changed values.
+		// into a new instance as the previous might still be in use
+		WebSocketMessageDTO dto = this.dto.copy();
 		dto.channel = proxy.getDTO();
+		dto.id = getMessageId();
 		
 		Timestamp ts = getTimestamp();
 		dto.setTime(ts);
@@ -443,7 +511,12 @@ public abstract class WebSocketMessage {
 		dto.opcode = getOpcode();
 		dto.readableOpcode = getOpcodeString();
 
-		if (isBinary()) {
+		WebSocketPayloadSpool spool = getPayloadSpool();
+		dto.spooledPayload = spool;
+		if (spool != null) {
+			// do not load big payloads into memory
+			dto.payload = getPayloadPreview(spool);
+		} else if (isBinary()) {
 			dto.payload = getPayload();
 		} else {
 			dto.payload = getReadablePayload();
@@ -458,9 +531,35 @@ public abstract class WebSocketMessage {
 		
 		dto.payloadLength = getPayloadLength();
 		
+		if (isFinished()) {
+			dtoSnapshot = dto;
+		}
 		return dto;
 	}
 	
+	/**
+	 * Should be called by implementations whenever the payload is changed,
+	 * the next call to {@link #getDTO()} builds a new data transfer object.
+	 */
+	protected void payloadChanged() {
+		dtoSnapshot = null;
+	}
+	
+	private Object getPayloadPreview(WebSocketPayloadSpool spool) {
+		byte[] preview;
+		try {
+			preview = spool.readPreview(SPOOLED_PAYLOAD_PREVIEW_LENGTH);
+		} catch (IOException e) {
+			preview = new byte[0];
+		}
+		
+		if (isBinary()) {
+			return preview;
+		}
+		// preview might end within a multi-byte character
+		return new String(preview, StandardCharsets.UTF_8);
+	}
+	
 	@Override
 	public String toString() {
 		return "WebSocketMessage#" + getMessageId();
@@ -17,6 +17,8 @@
  */
 package org.zaproxy.zap.extension.websocket;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 
@@ -84,6 +86,14 @@ public class WebSocketMessageDTO implements Message {
 	 */
 	public Boolean isOutgoing;
 
+	/**
+	 * Not null if the payload of a big message was spooled to a temporary
+	 * file. Then {@link #payload} contains only the first bytes (or
+	 * characters) of the payload, while {@link #payloadLength} is the length
+	 * of the whole payload.
+	 */
+	public WebSocketPayloadSpool spooledPayload;
+
 	/**
 	 * Number of the payload bytes.
 	 */
@@ -152,6 +162,43 @@ public class WebSocketMessageDTO implements Message {
 		return "";
 	}
 
+	/**
+	 * Creates a new object of the same type, with all values assigned.
+	 * Subtypes with further values should override it.
+	 * 
+	 * @return the copy
+	 * @see #copyInto(WebSocketMessageDTO)
+	 */
+	/**
+	 * Gets the whole payload, read from the {@link #spooledPayload} if the
+	 * payload was spooled, e.g. to send the message again.
+	 * 
+	 * @return the payload, a {@code String} for text messages
+	 * @throws IOException if the spooled payload is no longer available or
+	 *             could not be read
+	 */
+	public Object getWholePayload() throws IOException {
+		WebSocketPayloadSpool spool = spooledPayload;
+		if (spool == null) {
+			return payload;
+		}
+		if (!spool.isAvailable()) {
+			throw new IOException("Spooled payload of message " + toString() + " is no longer available.");
+		}
+		
+		byte[] wholePayload = spool.readAll();
+		if (payload instanceof String) {
+			return new String(wholePayload, StandardCharsets.UTF_8);
+		}
+		return wholePayload;
+	}
+
+	public WebSocketMessageDTO copy() {
+		WebSocketMessageDTO copy = new WebSocketMessageDTO();
+		copyInto(copy);
+		return copy;
+	}
+
 	/**
 	 * Assigns all values to given object.
 	 * 
@@ -165,6 +212,7 @@ public class WebSocketMessageDTO implements Message {
 		other.id = this.id;
 		other.opcode = this.opcode;
 		other.payload = this.payload;
+		other.spooledPayload = this.spooledPayload;
 		other.payloadLength = this.payloadLength;
 		other.readableOpcode = this.readableOpcode;
 		other.tempUserObj = this.tempUserObj;
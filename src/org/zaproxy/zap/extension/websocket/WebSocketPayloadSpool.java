@@ -0,0 +1,308 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Temporary file holding the (unmasked) payload of a big message, such that it
+ * does not have to be kept in memory.
+ * <p>
+ * The spool is reference counted, whoever needs the content after the message
+ * was forwarded (e.g. asynchronous storage) calls {@link #retain()} and
+ * {@link #release()} afterwards. The file is deleted as soon as the last
+ * reference is released. Files left behind (e.g. by a crash) are deleted
+ * when the spool directory is initialised, see {@link #initDirectory(File)}.
+ */
+public class WebSocketPayloadSpool {
+
+	private static final Logger logger = Logger.getLogger(WebSocketPayloadSpool.class);
+
+	private static final String FILE_PREFIX = "zap-websocket-";
+
+	private static final String FILE_SUFFIX = ".payload";
+
+	/**
+	 * Where the files are created, the default temporary directory if
+	 * {@code null}.
+	 */
+	private static volatile File directory;
+
+	private final File file;
+
+	private final RandomAccessFile randomAccessFile;
+
+	private final FileChannel channel;
+
+	private final AtomicInteger references;
+
+	private volatile long length;
+
+	private WebSocketPayloadSpool(File file) throws IOException {
+		this.file = file;
+		this.randomAccessFile = new RandomAccessFile(file, "rw");
+		this.channel = randomAccessFile.getChannel();
+		this.references = new AtomicInteger(1);
+	}
+
+	/**
+	 * Sets the directory where the spools are created, deleting the spool
+	 * files left in it.
+	 *
+	 * @param spoolDirectory the directory, created if missing, or
+	 *            {@code null} to use the default temporary directory
+	 */
+	public static void initDirectory(File spoolDirectory) {
+		if (spoolDirectory != null) {
+			if (!spoolDirectory.isDirectory() && !spoolDirectory.mkdirs()) {
+				logger.warn("Failed to create spool directory, using temporary directory: "
+						+ spoolDirectory.getAbsolutePath());
+				spoolDirectory = null;
+			} else {
+				deleteFiles(spoolDirectory);
+			}
+		}
+		directory = spoolDirectory;
+	}
+
+	/**
+	 * Deletes the spool files left in the directory set with
+	 * {@link #initDirectory(File)}, once no more spools are used.
+	 */
+	public static void cleanDirectory() {
+		File spoolDirectory = directory;
+		if (spoolDirectory != null) {
+			deleteFiles(spoolDirectory);
+		}
+	}
+
+	private static void deleteFiles(File spoolDirectory) {
+		File[] files = spoolDirectory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX)) {
+				deleteFile(file);
+			}
+		}
+	}
+
+	/**
+	 * Creates an empty spool in the spool directory.
+	 *
+	 * @return new spool, with one reference held by the caller
+	 * @throws IOException if the file could not be created
+	 */
+	public static WebSocketPayloadSpool create() throws IOException {
+		File file = File.createTempFile(FILE_PREFIX, FILE_SUFFIX, directory);
+		try {
+			return new WebSocketPayloadSpool(file);
+		} catch (IOException e) {
+			deleteFile(file);
+			throw e;
+		}
+	}
+
+	/**
+	 * Appends the given bytes at the end of the spool.
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param count
+	 * @throws IOException
+	 */
+	public synchronized void append(byte[] bytes, int offset, int count) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, count);
+		long position = length;
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		length = position;
+	}
+
+	/**
+	 * @return number of bytes spooled so far
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Reads bytes from the given position of the spool.
+	 *
+	 * @param position
+	 * @param bytes
+	 * @param offset
+	 * @param count
+	 * @return number of bytes read, less than {@code count} only at the end
+	 *         of the spool
+	 * @throws IOException
+	 */
+	public int read(long position, byte[] bytes, int offset, int count) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, (int) Math.min(count, Math.max(0, length - position)));
+		int total = 0;
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + total);
+			if (read == -1) {
+				break;
+			}
+			total += read;
+		}
+		return total;
+	}
+
+	/**
+	 * @param maxLength
+	 * @return the first bytes of the spool
+	 * @throws IOException
+	 */
+	public byte[] readPreview(int maxLength) throws IOException {
+		byte[] preview = new byte[(int) Math.min(maxLength, length)];
+		int read = read(0, preview, 0, preview.length);
+		if (read < preview.length) {
+			byte[] shorter = new byte[read];
+			System.arraycopy(preview, 0, shorter, 0, read);
+			return shorter;
+		}
+		return preview;
+	}
+
+	/**
+	 * Reads the whole spool into memory, use with care.
+	 *
+	 * @return content of the spool
+	 * @throws IOException if the content does not fit into an array or could
+	 *             not be read
+	 */
+	public byte[] readAll() throws IOException {
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Spooled payload too big to be read into memory: " + length);
+		}
+		return readPreview((int) length);
+	}
+
+	/**
+	 * Opens a new stream, starting at the beginning of the spool. Should be
+	 * closed by the caller.
+	 *
+	 * @param maxLength maximum number of bytes returned by the stream
+	 * @return stream over the content
+	 */
+	public InputStream openStream(long maxLength) {
+		return new SpoolInputStream(Math.min(maxLength, length));
+	}
+
+	/**
+	 * Maps the content into memory, without reading it.
+	 *
+	 * @return read-only buffer over the content
+	 * @throws IOException
+	 */
+	public ByteBuffer map() throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+	}
+
+	/**
+	 * Adds a reference, which prevents the deletion of the file until
+	 * {@link #release()} is called.
+	 */
+	public void retain() {
+		references.incrementAndGet();
+	}
+
+	/**
+	 * @return false if the last reference was released, i.e. the file was
+	 *         deleted
+	 */
+	public boolean isAvailable() {
+		return references.get() > 0;
+	}
+
+	/**
+	 * Removes a reference, deleting the file if it was the last one.
+	 */
+	public void release() {
+		if (references.decrementAndGet() == 0) {
+			try {
+				randomAccessFile.close();
+			} catch (IOException e) {
+				logger.warn(e.getMessage(), e);
+			}
+			deleteFile(file);
+		}
+	}
+
+	private static void deleteFile(File file) {
+		if (!file.delete() && file.exists()) {
+			logger.warn("Failed to delete spooled payload: " + file.getAbsolutePath());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return file.getName() + " (" + length + " bytes)";
+	}
+
+	private class SpoolInputStream extends InputStream {
+
+		private final long end;
+
+		private long position;
+
+		SpoolInputStream(long end) {
+			this.end = end;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+			return (read(single, 0, 1) == 1) ? (single[0] & 0xFF) : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int count) throws IOException {
+			if (count == 0) {
+				return 0;
+			}
+			if (position >= end) {
+				return -1;
+			}
+			int read = WebSocketPayloadSpool.this.read(position, bytes, offset, (int) Math.min(count, end - position));
+			if (read <= 0) {
+				return -1;
+			}
+			position += read;
+			return read;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(Integer.MAX_VALUE, end - position);
+		}
+	}
+}
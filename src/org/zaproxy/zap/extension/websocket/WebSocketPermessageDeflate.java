@@ -0,0 +1,421 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.log4j.Logger;
+import org.zaproxy.zap.extension.websocket.WebSocketMessage.Direction;
+
+/**
+ * Implements the <em>permessage-deflate</em> extension as specified in <a
+ * href="https://tools.ietf.org/html/rfc7692">RFC7692</a> for one channel.
+ * <p>
+ * Compressed messages are inflated, such that observers and storage work on the
+ * plain payload. Unchanged messages are forwarded with their original
+ * (compressed) frames. As soon as a message of a sender that uses context
+ * takeover is changed, the compression contexts of sender and receiver differ.
+ * From then on all compressed messages of that direction are re-encoded by ZAP
+ * with its own {@link Deflater}, whose context is in sync with the receiver.
+ * <p>
+ * {@link Deflater} always uses a 32K window, hence messages are sent
+ * uncompressed to a receiver that limited the window size.
+ */
+public class WebSocketPermessageDeflate {
+
+	private static final Logger logger = Logger.getLogger(WebSocketPermessageDeflate.class);
+
+	/**
+	 * Name of the extension in the {@code Sec-WebSocket-Extensions} header.
+	 */
+	public static final String EXTENSION_NAME = "permessage-deflate";
+
+	/**
+	 * Value of the RSV bits of the first frame of a compressed message (RSV1).
+	 */
+	public static final int RSV_COMPRESSED = 0x4;
+
+	private static final int DEFAULT_WINDOW_BITS = 15;
+
+	/**
+	 * Removed from the end of compressed payloads and added for inflation
+	 * (empty stored block of a sync flush).
+	 */
+	private static final byte[] TAIL = { 0x00, 0x00, (byte) 0xFF, (byte) 0xFF };
+
+	private final Context outgoing;
+
+	private final Context incoming;
+
+	/**
+	 * Creates the codec for the given negotiated parameters.
+	 *
+	 * @param params parameters of the extension as returned by the server,
+	 *            e.g. {@code client_max_window_bits=10; server_no_context_takeover}
+	 * @throws WebSocketException if parameters are invalid
+	 */
+	public WebSocketPermessageDeflate(String params) throws WebSocketException {
+		boolean clientNoContextTakeover = false;
+		boolean serverNoContextTakeover = false;
+		int clientMaxWindowBits = DEFAULT_WINDOW_BITS;
+		int serverMaxWindowBits = DEFAULT_WINDOW_BITS;
+
+		if (params != null) {
+			for (String param : params.split(";")) {
+				String name = param.trim().toLowerCase(Locale.ROOT);
+				String value = null;
+				int valueIndex = name.indexOf('=');
+				if (valueIndex != -1) {
+					value = name.substring(valueIndex + 1).trim().replace("\"", "");
+					name = name.substring(0, valueIndex).trim();
+				}
+
+				switch (name) {
+				case "":
+					break;
+				case "client_no_context_takeover":
+					clientNoContextTakeover = true;
+					break;
+				case "server_no_context_takeover":
+					serverNoContextTakeover = true;
+					break;
+				case "client_max_window_bits":
+					clientMaxWindowBits = parseWindowBits(value);
+					break;
+				case "server_max_window_bits":
+					serverMaxWindowBits = parseWindowBits(value);
+					break;
+				default:
+					throw new WebSocketException("Unknown " + EXTENSION_NAME + " parameter: " + name);
+				}
+			}
+		}
+
+		// the client compresses outgoing messages, the server decompresses them
+		outgoing = new Context(Direction.OUTGOING, clientNoContextTakeover, clientMaxWindowBits);
+		incoming = new Context(Direction.INCOMING, serverNoContextTakeover, serverMaxWindowBits);
+	}
+
+	private static int parseWindowBits(String value) throws WebSocketException {
+		if (value == null || value.isEmpty()) {
+			return DEFAULT_WINDOW_BITS;
+		}
+		try {
+			int bits = Integer.parseInt(value);
+			if (bits < 8 || bits > 15) {
+				throw new WebSocketException("Window bits out of range: " + bits);
+			}
+			return bits;
+		} catch (NumberFormatException e) {
+			throw new WebSocketException("Invalid window bits: " + value, e);
+		}
+	}
+
+	private Context getContext(Direction direction) {
+		return (direction == Direction.OUTGOING) ? outgoing : incoming;
+	}
+
+	/**
+	 * Tells if frames can be relayed without being inflated, i.e. skipping a
+	 * message does not affect the decompression of the following ones.
+	 *
+	 * @return true if no direction uses context takeover
+	 */
+	public boolean isContextFree() {
+		return outgoing.noContextTakeover && incoming.noContextTakeover;
+	}
+
+	/**
+	 * @param direction
+	 * @return true if ZAP re-encodes all compressed messages of the direction
+	 */
+	public boolean isDiverged(Direction direction) {
+		return getContext(direction).diverged;
+	}
+
+	/**
+	 * Must be called before a changed message is forwarded. If the sender uses
+	 * context takeover, ZAP has to re-encode all further messages.
+	 *
+	 * @param direction
+	 */
+	public void markChanged(Direction direction) {
+		Context context = getContext(direction);
+		if (!context.noContextTakeover && !context.diverged) {
+			logger.debug("Compression context of " + direction + " messages is re-encoded from now on.");
+			context.diverged = true;
+		}
+	}
+
+	/**
+	 * Tells if a message that is (re-)built by ZAP can be sent compressed,
+	 * without getting out of sync with the compression context of the original
+	 * sender.
+	 *
+	 * @param direction
+	 * @return true if {@link #deflate(Direction, byte[])} should be used
+	 */
+	public boolean canCompress(Direction direction) {
+		Context context = getContext(direction);
+		return context.maxWindowBits == DEFAULT_WINDOW_BITS && (context.noContextTakeover || context.diverged);
+	}
+
+	/**
+	 * Decompresses the payload of a message that had the RSV1 bit set.
+	 *
+	 * @param direction
+	 * @param compressed whole payload of the message
+	 * @return decompressed payload
+	 * @throws WebSocketException if the payload could not be inflated
+	 */
+	public byte[] inflate(Direction direction, byte[] compressed) throws WebSocketException {
+		Context context = getContext(direction);
+		synchronized (context) {
+			Inflater inflater = context.getInflater();
+			try {
+				ByteArrayOutputStream result = new ByteArrayOutputStream(Math.max(64, compressed.length * 2));
+				byte[] buffer = context.getBuffer();
+
+				inflater.setInput(compressed);
+				inflateAll(inflater, buffer, result);
+				if (!inflater.finished()) {
+					inflater.setInput(TAIL);
+					inflateAll(inflater, buffer, result);
+				}
+
+				if (inflater.finished()) {
+					// sender ended the deflate stream (BFINAL), next message starts a new one
+					inflater.reset();
+				}
+				return result.toByteArray();
+			} catch (DataFormatException e) {
+				// context is lost, start over
+				inflater.reset();
+				throw new WebSocketException("Unable to inflate " + direction + " message: " + e.getMessage(), e);
+			} finally {
+				if (context.noContextTakeover) {
+					inflater.reset();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decompresses part of the payload of a compressed message that is relayed
+	 * without being inflated otherwise, such that the decompression context
+	 * stays in sync with the sender. The output is discarded.
+	 * <p>
+	 * Must be followed by {@link #endSkippedMessage(Direction)} once the last
+	 * part of the message was given.
+	 *
+	 * @param direction
+	 * @param data
+	 * @param offset
+	 * @param length
+	 */
+	public void skipCompressed(Direction direction, byte[] data, int offset, int length) {
+		Context context = getContext(direction);
+		if (context.noContextTakeover) {
+			// nothing to keep in sync
+			return;
+		}
+		synchronized (context) {
+			Inflater inflater = context.getInflater();
+			try {
+				inflater.setInput(data, offset, length);
+				inflateAll(inflater, context.getBuffer(), null);
+			} catch (DataFormatException e) {
+				inflater.reset();
+				logger.warn("Unable to inflate relayed " + direction + " message: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Ends a compressed message given with
+	 * {@link #skipCompressed(Direction, byte[], int, int)}.
+	 *
+	 * @param direction
+	 */
+	public void endSkippedMessage(Direction direction) {
+		Context context = getContext(direction);
+		if (context.noContextTakeover) {
+			return;
+		}
+		synchronized (context) {
+			Inflater inflater = context.getInflater();
+			try {
+				if (!inflater.finished()) {
+					inflater.setInput(TAIL);
+					inflateAll(inflater, context.getBuffer(), null);
+				}
+				if (inflater.finished()) {
+					inflater.reset();
+				}
+			} catch (DataFormatException e) {
+				inflater.reset();
+				logger.warn("Unable to inflate relayed " + direction + " message: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @param result the inflated bytes are written to it, discarded if
+	 *            {@code null}
+	 */
+	private static void inflateAll(Inflater inflater, byte[] buffer, ByteArrayOutputStream result) throws DataFormatException {
+		while (true) {
+			int count = inflater.inflate(buffer);
+			if (count > 0) {
+				if (result != null) {
+					result.write(buffer, 0, count);
+				}
+			} else if (inflater.needsInput() || inflater.finished() || inflater.needsDictionary()) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Compresses the payload of a message built by ZAP. Check
+	 * {@link #canCompress(Direction)} first.
+	 *
+	 * @param direction
+	 * @param payload
+	 * @return compressed payload to be sent with RSV1 bit set
+	 */
+	public byte[] deflate(Direction direction, byte[] payload) {
+		Context context = getContext(direction);
+		synchronized (context) {
+			Deflater deflater = context.getDeflater();
+			if (context.noContextTakeover) {
+				deflater.reset();
+			}
+
+			ByteArrayOutputStream result = new ByteArrayOutputStream(Math.max(64, payload.length / 2));
+			byte[] buffer = context.getBuffer();
+
+			deflater.setInput(payload);
+			int count;
+			do {
+				// with a full output buffer there might be more output
+				count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+				result.write(buffer, 0, count);
+			} while (count == buffer.length);
+
+			byte[] compressed = result.toByteArray();
+			int length = compressed.length;
+			if (endsWithTail(compressed)) {
+				length -= TAIL.length;
+			}
+
+			byte[] trimmed = new byte[length];
+			System.arraycopy(compressed, 0, trimmed, 0, length);
+			return trimmed;
+		}
+	}
+
+	private static boolean endsWithTail(byte[] data) {
+		if (data.length < TAIL.length) {
+			return false;
+		}
+		for (int i = 0; i < TAIL.length; i++) {
+			if (data[data.length - TAIL.length + i] != TAIL[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Releases the resources of the {@link Inflater} and {@link Deflater}
+	 * instances.
+	 */
+	public void close() {
+		outgoing.close();
+		incoming.close();
+	}
+
+	/**
+	 * Compression state of one direction, i.e. of one sender and its receiver.
+	 */
+	private static final class Context {
+
+		private final Direction direction;
+
+		private final boolean noContextTakeover;
+
+		private final int maxWindowBits;
+
+		private volatile boolean diverged;
+
+		private Inflater inflater;
+
+		private Deflater deflater;
+
+		private byte[] buffer;
+
+		Context(Direction direction, boolean noContextTakeover, int maxWindowBits) {
+			this.direction = direction;
+			this.noContextTakeover = noContextTakeover;
+			this.maxWindowBits = maxWindowBits;
+		}
+
+		Inflater getInflater() {
+			if (inflater == null) {
+				// raw deflate data, without zlib header
+				inflater = new Inflater(true);
+			}
+			return inflater;
+		}
+
+		Deflater getDeflater() {
+			if (deflater == null) {
+				deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			}
+			return deflater;
+		}
+
+		byte[] getBuffer() {
+			if (buffer == null) {
+				buffer = new byte[8192];
+			}
+			return buffer;
+		}
+
+		synchronized void close() {
+			if (inflater != null) {
+				inflater.end();
+				inflater = null;
+			}
+			if (deflater != null) {
+				deflater.end();
+				deflater = null;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return direction.toString();
+		}
+	}
+}
@@ -22,6 +22,7 @@ package org.zaproxy.zap.extension.websocket;
  */
 public abstract class WebSocketProtocol {
 	public static final String HEADER_PROTOCOL = "sec-websocket-protocol";
-	public static final String HEADER_EXTENSION = "sec-websocket-extension";
+	public static final String HEADER_EXTENSION = "sec-websocket-extensions";
 	public static final String HEADER_VERSION = "sec-websocket-version";
+	public static final String HEADER_KEY = "sec-websocket-key";
 }
@@ -24,14 +24,15 @@ import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketException;
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 import org.parosproxy.paros.model.HistoryReference;
@@ -44,7 +45,10 @@ import org.parosproxy.paros.model.HistoryReference;
  * Paros Proxy is based on Sockets and I got huge problems when adding SSL
  * support when switching from Sockets to SocketChannels in this class.
  * Therefore each instance has got two threads that listen on each side for new
- * messages (these are blocking reads).
+ * messages (these are blocking reads). The sockets handed over after the
+ * handshake are not backed by channels, so a selector based relay is not an
+ * option - see {@code OptionsParamWebSocket#getListenerThreadStackSize()} to
+ * limit the memory reserved by the listener threads instead.
  * <p>
  * Is able to act as WebSocket client (i.e.: the WebSocket connection is set-up
  * between ZAP and the server, without the browser).
@@ -66,11 +70,6 @@ public abstract class WebSocketProxy {
 	 */
 	private static AtomicInteger channelIdGenerator = new AtomicInteger(0);
 
-	/**
-	 * Used to determine when to call which {@link WebSocketObserver}.
-	 */
-	private static Comparator<WebSocketObserver> observersComparator;
-	
 	/**
 	 * State of this channel, start in {@link State#CONNECTING} and evolve over
 	 * time. Never set value to {@link State#EXCLUDED} or {@link State#INCLUDED}
@@ -92,6 +91,9 @@ public abstract class WebSocketProxy {
 	/**
 	 * Non-finished messages are temporarily buffered. WebSocket messages are
 	 * allowed to consist of an arbitrary number of frames.
+	 * <p>
+	 * Accessed by both listeners, each with the stream it reads as key. An
+	 * entry is only used and released by the listener of its stream.
 	 */
 	protected Map<InputStream, WebSocketMessage> unfinishedMessages;
 
@@ -116,9 +118,18 @@ public abstract class WebSocketProxy {
 	private WebSocketListener localListener;
 
 	/**
-	 * List of observers, that are informed of in- or outgoing messages.
+	 * Observers, that are informed of in- or outgoing messages, sorted by
+	 * their {@link WebSocketObserver#getObservingOrder() observing order}.
+	 * <p>
+	 * The array is never modified but replaced (copy-on-write), such that
+	 * notifications do not need to lock.
+	 */
+	private volatile ObserverTiming[] observers;
+
+	/**
+	 * Serialises the changes to {@link #observers}.
 	 */
-	private Vector<WebSocketObserver> observerList;
+	private final Object observersLock = new Object();
 
 	/**
 	 * Contains link to handshake message.
@@ -148,7 +159,13 @@ public abstract class WebSocketProxy {
 	/**
 	 * When true, no observer is called and each frame is forwarded instantly.
 	 */
-	private boolean isForwardOnly;
+	private volatile boolean isForwardOnly;
+
+	/**
+	 * Messages growing beyond this number of bytes are spooled to disk, 0
+	 * disables spooling.
+	 */
+	private volatile int spoolThreshold;
 	
 	/**
 	 * In client mode there is no connection Browser <-> ZAP, but only ZAP <-> Server.
@@ -164,6 +181,25 @@ public abstract class WebSocketProxy {
 		channelIdGenerator.set(currentChannelCount);
 	}
 
+	/**
+	 * Reserves a range of channel ids, such that no channel created
+	 * afterwards gets one of them.
+	 * 
+	 * @param minimumOffset the reserved ids start after this one, at least
+	 * @param count number of ids to reserve
+	 * @return offset of the range, the reserved ids are
+	 *         {@code offset + 1 ... offset + count}
+	 */
+	public static int reserveChannelIds(int minimumOffset, int count) {
+		while (true) {
+			int current = channelIdGenerator.get();
+			int offset = Math.max(current, minimumOffset);
+			if (channelIdGenerator.compareAndSet(current, offset + count)) {
+				return offset;
+			}
+		}
+	}
+
 	/**
 	 * Factory method to create appropriate version.
 	 * 
@@ -214,14 +250,19 @@ public abstract class WebSocketProxy {
 		
 		// TODO: provide a registry for WebSocketProxy versions
 		if (version.equals("13")) {
-			wsProxy = new WebSocketProxyV13(localSocket, remoteSocket, targetHost, targetPort);
+			WebSocketProxyV13 wsProxyV13 = new WebSocketProxyV13(localSocket, remoteSocket, targetHost, targetPort);
+			wsProxy = wsProxyV13;
 			
 			if (subprotocol != null) {
 				// TODO: do something with this subprotocol
 			}
 			
 			if (extensions != null && extensions.size() > 0) {
-				// TODO: do something with these extensions
+				if (extensions.containsKey(WebSocketPermessageDeflate.EXTENSION_NAME)) {
+					wsProxyV13.setPermessageDeflate(new WebSocketPermessageDeflate(
+							extensions.get(WebSocketPermessageDeflate.EXTENSION_NAME)));
+				}
+				// TODO: do something with other extensions
 			}
 		} else {
 			throw new WebSocketException("Unsupported Sec-WebSocket-Version '"
@@ -265,8 +306,8 @@ public abstract class WebSocketProxy {
 		this.localSocket = localSocket;
 		this.remoteSocket = remoteSocket;
 		
-		unfinishedMessages = new HashMap<>();
-		observerList = new Vector<>();
+		unfinishedMessages = new ConcurrentHashMap<>();
+		observers = new ObserverTiming[0];
 		
 		// create unique identifier for this WebSocket connection
 		channelId = channelIdGenerator.incrementAndGet();
@@ -294,6 +335,9 @@ public abstract class WebSocketProxy {
 			break;
 		case CLOSED:
 			end = new Timestamp(Calendar.getInstance().getTimeInMillis());
+			if (logger.isDebugEnabled()) {
+				logger.debug("Observers of " + toString() + ": " + Arrays.toString(observers));
+			}
 			break;
 		default:
 		}
@@ -462,6 +506,21 @@ public abstract class WebSocketProxy {
 		}
 	}
 
+	/**
+	 * Called by the listener of the given stream once it stopped reading, to
+	 * release the message interrupted by closing the connection. Not done in
+	 * {@link #shutdown()}, which might be called while the other listener
+	 * still processes a frame.
+	 * 
+	 * @param in the stream that is no longer read
+	 */
+	protected void readFinished(InputStream in) {
+		WebSocketMessage message = unfinishedMessages.remove(in);
+		if (message != null) {
+			message.release();
+		}
+	}
+
 	/**
 	 * @return True if proxy's state is {@link State#OPEN}.
 	 */
@@ -482,6 +541,17 @@ public abstract class WebSocketProxy {
 	 * @throws IOException
 	 */
 	public void processRead(InputStream in, OutputStream out, byte frameHeader) throws IOException {
+		if (isForwardOnly) {
+			// nobody is interested in the content, relay raw bytes;
+			// a message started before the channel was excluded is not continued
+			WebSocketMessage dropped = unfinishedMessages.remove(in);
+			if (dropped != null) {
+				dropped.release();
+			}
+			relayFrame(in, out, frameHeader);
+			return;
+		}
+		
 		WebSocketMessage message = null;
 	
 		int opcode = (frameHeader & 0x0F); // last 4 bits represent opcode
@@ -525,10 +595,38 @@ public abstract class WebSocketProxy {
 		
 		// do not buffer frames until message is finished,
 		// as messages might have several MegaBytes!
-		if (isForwardOnly || notifyMessageObservers(message)) {
-			// skip forwarding only if observer told us to skip this message (frame)
+		try {
+			if (isForwardOnly || notifyMessageObservers(message)) {
+				// skip forwarding only if observer told us to skip this message (frame)
+				message.forward(out);
+			}
+		} finally {
+			if (message.isFinished()) {
+				message.release();
+			}
+		}
+	}
+
+	/**
+	 * Forwards one frame without notifying observers, used for
+	 * {@link #isForwardOnly()} channels.
+	 * <p>
+	 * By default the frame is read into a {@link WebSocketMessage}, version
+	 * specific implementations should override it, to copy the frame without
+	 * parsing its payload.
+	 * 
+	 * @param in Here comes the frame.
+	 * @param out There should it be forwarded (might be {@code null}).
+	 * @param frameHeader The first byte of the frame, that was already read.
+	 * @throws IOException
+	 */
+	protected void relayFrame(InputStream in, OutputStream out, byte frameHeader) throws IOException {
+		WebSocketMessage message = createWebSocketMessage(in, frameHeader);
+		try {
 			message.forward(out);
-		}	
+		} finally {
+			message.release();
+		}
 	}
 
 	/**
@@ -549,7 +647,11 @@ public abstract class WebSocketProxy {
 				logger.warn("Ignore observer's wish to skip forwarding as we have received an invalid frame!");
 			}
 		}
-		message.forward(out);
+		try {
+			message.forward(out);
+		} finally {
+			message.release();
+		}
 	}
 
 	/**
@@ -590,6 +692,25 @@ public abstract class WebSocketProxy {
 		return isForwardOnly;
 	}
 
+	/**
+	 * Sets the size above which the payload of a message is spooled to a
+	 * temporary file, instead of being kept in memory. Frames of spooled
+	 * messages are streamed, observers get a {@link WebSocketPayloadSpool}.
+	 * 
+	 * @param spoolThreshold threshold in bytes, 0 to disable spooling
+	 */
+	public void setSpoolThreshold(int spoolThreshold) {
+		this.spoolThreshold = spoolThreshold;
+	}
+
+	/**
+	 * @return threshold in bytes, 0 if spooling is disabled
+	 * @see #setSpoolThreshold(int)
+	 */
+	public int getSpoolThreshold() {
+		return spoolThreshold;
+	}
+
 	/**
 	 * If true, then no observer is called, resulting in immediate forwarding.
 	 * 
@@ -628,13 +749,16 @@ public abstract class WebSocketProxy {
 	 * @return False if message should be dropped.
 	 */
 	protected boolean notifyMessageObservers(WebSocketMessage message) {
-		for (WebSocketObserver observer : observerList) {
+		for (ObserverTiming entry : observers) {
+			long start = System.nanoTime();
 			try {
-			    if (!observer.onMessageFrame(channelId, message)) {
+			    if (!entry.observer.onMessageFrame(channelId, message)) {
 			    	return false;
 			    }
 			} catch (Exception e) {
 				logger.warn(e.getMessage(), e);
+			} finally {
+				entry.record(System.nanoTime() - start);
 			}
 		}
 		return true;
@@ -646,19 +770,34 @@ public abstract class WebSocketProxy {
 	 * blacklisted {@link State#INCLUDED} or vice-versa {@link State#EXCLUDED}.
 	 */
 	protected void notifyStateObservers(State state) {
-		for (WebSocketObserver observer : observerList) {
-			observer.onStateChange(state, this);
+		for (ObserverTiming entry : observers) {
+			entry.observer.onStateChange(state, this);
 		}
 	}
 	
 	/**
 	 * Add observer that gets informed about in- & outgoing messages.
+	 * <p>
+	 * Observers with the same observing order are notified in the order they
+	 * were added.
 	 * 
 	 * @param observer
 	 */
 	public void addObserver(WebSocketObserver observer) {
-		observerList.add(observer);
-		Collections.sort(observerList, getObserversComparator());
+		synchronized (observersLock) {
+			ObserverTiming[] current = observers;
+			int order = observer.getObservingOrder();
+			int index = current.length;
+			while (index > 0 && current[index - 1].observer.getObservingOrder() > order) {
+				index--;
+			}
+			
+			ObserverTiming[] changed = new ObserverTiming[current.length + 1];
+			System.arraycopy(current, 0, changed, 0, index);
+			changed[index] = new ObserverTiming(observer);
+			System.arraycopy(current, index, changed, index + 1, current.length - index);
+			observers = changed;
+		}
 	}
 	
 	/**
@@ -667,40 +806,92 @@ public abstract class WebSocketProxy {
 	 * @param observer
 	 */
 	public void removeObserver(WebSocketObserver observer) {
-		observerList.remove(observer);
+		synchronized (observersLock) {
+			ObserverTiming[] current = observers;
+			for (int i = 0; i < current.length; i++) {
+				if (current[i].observer.equals(observer)) {
+					ObserverTiming[] changed = new ObserverTiming[current.length - 1];
+					System.arraycopy(current, 0, changed, 0, i);
+					System.arraycopy(current, i + 1, changed, i, changed.length - i);
+					observers = changed;
+					return;
+				}
+			}
+		}
 	}
-    
+	
 	/**
-	 * Returns the comparator used for determining order of notification.
+	 * Returns the time spent by each observer in the notifications of
+	 * messages of this channel, in the order they are notified. Allows to
+	 * identify slow observers.
 	 * 
-	 * @return
+	 * @return the live counters of the observers
 	 */
-	private static Comparator<WebSocketObserver> getObserversComparator() {
-		if(observersComparator == null) {
-			createObserversComparator();
-		}
-		
-		return observersComparator;
+	public List<ObserverTiming> getObserverTimings() {
+		return Arrays.asList(observers.clone());
 	}
 	
-	private static synchronized void createObserversComparator() {
-		if (observersComparator == null) {
-			observersComparator = new Comparator<WebSocketObserver>() {
-				
-				@Override
-				public int compare(WebSocketObserver o1, WebSocketObserver o2) {
-					int order1 = o1.getObservingOrder();
-					int order2 = o2.getObservingOrder();
-					
-					if (order1 < order2) {
-						return -1;
-					} else if (order1 > order2) {
-						return 1;
-					}
-					
-					return 0;
+	/**
+	 * Counts the notifications of messages of an observer and the time spent
+	 * in them.
+	 */
+	public static final class ObserverTiming {
+		
+		private final WebSocketObserver observer;
+		
+		private final AtomicLong notificationCount = new AtomicLong();
+		
+		private final AtomicLong totalTime = new AtomicLong();
+		
+		private final AtomicLong maxTime = new AtomicLong();
+		
+		private ObserverTiming(WebSocketObserver observer) {
+			this.observer = observer;
+		}
+		
+		private void record(long time) {
+			notificationCount.incrementAndGet();
+			totalTime.addAndGet(time);
+			
+			long max;
+			while (time > (max = maxTime.get())) {
+				if (maxTime.compareAndSet(max, time)) {
+					break;
 				}
-			};
+			}
+		}
+		
+		public WebSocketObserver getObserver() {
+			return observer;
+		}
+		
+		/**
+		 * @return number of messages (frames) the observer was notified of
+		 */
+		public long getNotificationCount() {
+			return notificationCount.get();
+		}
+		
+		/**
+		 * @return time spent in all notifications, in nanoseconds
+		 */
+		public long getTotalTime() {
+			return totalTime.get();
+		}
+		
+		/**
+		 * @return time spent in the slowest notification, in nanoseconds
+		 */
+		public long getMaxTime() {
+			return maxTime.get();
+		}
+		
+		@Override
+		public String toString() {
+			long count = getNotificationCount();
+			long averageMicros = (count == 0) ? 0 : TimeUnit.NANOSECONDS.toMicros(getTotalTime() / count);
+			return observer.getClass().getName() + " [notifications=" + count + ", average=" + averageMicros
+					+ "us, max=" + TimeUnit.NANOSECONDS.toMicros(getMaxTime()) + "us]";
 		}
 	}
 
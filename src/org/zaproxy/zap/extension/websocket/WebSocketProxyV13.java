@@ -17,21 +17,29 @@
  */
 package org.zaproxy.zap.extension.websocket;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.log4j.Logger;
+import org.zaproxy.zap.extension.websocket.WebSocketMessage.Direction;
 import org.zaproxy.zap.extension.websocket.utility.InvalidUtf8Exception;
+import org.zaproxy.zap.extension.websocket.utility.MaskingUtil;
 import org.zaproxy.zap.extension.websocket.utility.Utf8Util;
 
 /**
@@ -51,6 +59,38 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 	 */
 	private static final int PAYLOAD_MAX_FRAME_LENGTH = Integer.MAX_VALUE;
 
+	/**
+	 * Size of the buffer used to relay frames of forward-only channels.
+	 */
+	private static final int RELAY_BUFFER_SIZE = 8192;
+
+	/**
+	 * Not null if the <em>permessage-deflate</em> extension was negotiated.
+	 */
+	private WebSocketPermessageDeflate permessageDeflate;
+
+	/**
+	 * Compressed messages being relayed, by the stream they are read from.
+	 * Only used with <em>permessage-deflate</em> and context takeover.
+	 */
+	private final Map<InputStream, RelayedMessage> relayedMessages = new ConcurrentHashMap<>();
+
+	/**
+	 * Buffers for the frames of this channel.
+	private final WebSocketFrameBufferPool frameBufferPool = new WebSocketFrameBufferPool();
+
+	/**
+	 * Listener threads are pooled, so each thread re-uses its relay buffer for
+	 * all frames of all channels it serves.
+	 */
+	private static final ThreadLocal<byte[]> relayBuffer = new ThreadLocal<byte[]>() {
+
+		@Override
+		protected byte[] initialValue() {
+			return new byte[RELAY_BUFFER_SIZE];
+		}
+	};
+
 	/**
 	 * @see WebSocketProxy#WebSocketProxy(Socket, Socket)
 	 */
@@ -65,6 +105,49 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 		super(localSocket, remoteSocket, targetHost, targetPort);
 	}
 
+	/**
+	 * Enables compression according to the negotiated <em>permessage-deflate</em>
+	 * extension. Must be set before listeners are started.
+	 * 
+	 * @param permessageDeflate
+	 */
+	public void setPermessageDeflate(WebSocketPermessageDeflate permessageDeflate) {
+		this.permessageDeflate = permessageDeflate;
+	}
+
+	@Override
+	protected void setState(State newState) {
+		super.setState(newState);
+		
+		if (newState == State.CLOSED) {
+			if (permessageDeflate != null) {
+				permessageDeflate.close();
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Frame buffers of " + toString() + ": " + frameBufferPool);
+			}
+		}
+	}
+
+	@Override
+	protected void readFinished(InputStream in) {
+		super.readFinished(in);
+		
+		RelayedMessage relayed = relayedMessages.remove(in);
+		if (relayed != null) {
+			relayed.release();
+		}
+	}
+
+	/**
+	 * Gives access to the allocation counters of this channel's frame buffers.
+	 * 
+	 * @return pool of the frame buffers
+	 */
+	public WebSocketFrameBufferPool getFrameBufferPool() {
+		return frameBufferPool;
+	}
+
 	/**
 	 * @see WebSocketProxy#createWebSocketMessage(InputStream, byte)
 	 */
@@ -78,6 +161,239 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 		return new WebSocketMessageV13(this, message);
 	}
 
+	/**
+	 * Copies the frame as is, i.e. it is neither unmasked nor re-masked. Only
+	 * the header is parsed to know where the frame ends; the payload is
+	 * streamed through a re-usable buffer.
+	 * <p>
+	 * With <em>permessage-deflate</em> and context takeover, the payload of
+	 * compressed messages is also inflated (the output discarded) to keep the
+	 * decompression context in sync. Compressed messages of a direction that
+	 * is re-encoded by ZAP are read as a whole and forwarded re-encoded.
+	 */
+	@Override
+	protected void relayFrame(InputStream in, OutputStream out, byte frameHeader) throws IOException {
+		byte[] buffer = relayBuffer.get();
+		
+		int headerLength = 0;
+		buffer[headerLength++] = frameHeader;
+		
+		byte payloadByte = (byte) readByte(in);
+		buffer[headerLength++] = payloadByte;
+		
+		long payloadLength = (payloadByte & 0x7F);
+		int extendedLengthBytes = 0;
+		if (payloadLength == WebSocketMessageV13.PAYLOAD_LENGTH_16) {
+			extendedLengthBytes = 2;
+		} else if (payloadLength == WebSocketMessageV13.PAYLOAD_LENGTH_63) {
+			extendedLengthBytes = 8;
+		}
+		
+		if (extendedLengthBytes > 0) {
+			readFully(in, buffer, headerLength, extendedLengthBytes);
+			payloadLength = 0;
+			for (int i = 0; i < extendedLengthBytes; i++) {
+				// network byte order (MSB first)
+				payloadLength = (payloadLength << 8) | (buffer[headerLength + i] & 0xFF);
+			}
+			headerLength += extendedLengthBytes;
+			
+			if (payloadLength < 0) {
+				// most significant bit must be zero, closes the channel
+				throw new WebSocketException("Invalid payload length of frame: " + payloadLength);
+			}
+		}
+		
+		boolean isMasked = (payloadByte >> 7 & 0x1) == 1;
+		int mask = 0;
+		if (isMasked) {
+			// masking key is forwarded unchanged together with the masked payload
+			readFully(in, buffer, headerLength, 4);
+			mask = ((buffer[headerLength] & 0xFF) << 24) | ((buffer[headerLength + 1] & 0xFF) << 16)
+					| ((buffer[headerLength + 2] & 0xFF) << 8) | (buffer[headerLength + 3] & 0xFF);
+			headerLength += 4;
+		}
+		
+		RelayedMessage relayed = getRelayedMessage(in, frameHeader, isMasked);
+		if (relayed != null && relayed.isReencoded) {
+			relayReencodedFrame(relayed, in, out, frameHeader, Arrays.copyOfRange(buffer, 1, headerLength));
+			return;
+		}
+		
+		if (out == null) {
+			// nowhere to forward (client mode), consume frame
+			relayPayload(in, null, buffer, payloadLength, relayed, mask);
+		} else {
+			// frames must not be interleaved with custom messages
+			synchronized (out) {
+				out.write(buffer, 0, headerLength);
+				relayPayload(in, out, buffer, payloadLength, relayed, mask);
+				out.flush();
+			}
+		}
+		
+		if (relayed != null && isLastFrame(frameHeader)) {
+			relayedMessages.remove(in);
+			permessageDeflate.endSkippedMessage(relayed.direction);
+		}
+	}
+
+	/**
+	 * Copies the payload of a frame, inflating it if part of a compressed
+	 * message.
+	 * 
+	 * @param in
+	 * @param out might be {@code null}, the payload is just consumed then
+	 * @param buffer
+	 * @param payloadLength
+	 * @param relayed the compressed message the frame belongs to, might be
+	 *            {@code null}
+	 * @param mask the masking key, 0 if not masked
+	 * @throws IOException
+	 */
+	private void relayPayload(InputStream in, OutputStream out, byte[] buffer, long payloadLength, RelayedMessage relayed, int mask) throws IOException {
+		long remaining = payloadLength;
+		long position = 0;
+		while (remaining > 0) {
+			int bytesRead = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			if (bytesRead == -1) {
+				throw new EOFException("Stream ended within frame payload.");
+			}
+			if (out != null) {
+				out.write(buffer, 0, bytesRead);
+			}
+			if (relayed != null) {
+				if (mask != 0) {
+					// unmask in place, the chunk was already forwarded
+					MaskingUtil.mask(buffer, 0, bytesRead, Integer.rotateLeft(mask, (int) (position & 0x3) << 3));
+				}
+				permessageDeflate.skipCompressed(relayed.direction, buffer, 0, bytesRead);
+			}
+			remaining -= bytesRead;
+			position += bytesRead;
+		}
+	}
+
+	private static boolean isLastFrame(byte frameHeader) {
+		return (frameHeader >> 7 & 0x1) == 1;
+	}
+
+	/**
+	 * Gets the state of the compressed message the given frame belongs to.
+	 * 
+	 * @param in the stream of the frame
+	 * @param frameHeader first byte of the frame
+	 * @param isMasked if the frame is masked, i.e. outgoing
+	 * @return the state, or {@code null} if the payload of the frame can be
+	 *         relayed without inflating it
+	 */
+	private RelayedMessage getRelayedMessage(InputStream in, byte frameHeader, boolean isMasked) {
+		if (permessageDeflate == null || permessageDeflate.isContextFree()) {
+			return null;
+		}
+		
+		int opcode = (frameHeader & 0x0F);
+		if (WebSocketMessage.isControl(opcode)) {
+			// never compressed, might be sent between the frames of a message
+			return null;
+		}
+		if (opcode == WebSocketMessage.OPCODE_CONTINUATION) {
+			return relayedMessages.get(in);
+		}
+		
+		RelayedMessage unfinished = relayedMessages.remove(in);
+		if (unfinished != null) {
+			// the previous message did not end properly
+			unfinished.release();
+		}
+		
+		int rsv = (frameHeader >> 4 & 0x7);
+		if ((rsv & WebSocketPermessageDeflate.RSV_COMPRESSED) == 0) {
+			return null;
+		}
+		
+		Direction direction = isMasked ? Direction.OUTGOING : Direction.INCOMING;
+		RelayedMessage relayed = new RelayedMessage(direction, permessageDeflate.isDiverged(direction));
+		relayedMessages.put(in, relayed);
+		return relayed;
+	}
+
+	/**
+	 * Reads the frame into the {@link RelayedMessage#message}, which is
+	 * forwarded re-encoded once finished.
+	 * 
+	 * @param relayed
+	 * @param in
+	 * @param out
+	 * @param frameHeader first byte of the frame
+	 * @param header the other bytes of the header, already read from
+	 *            {@code in}
+	 * @throws IOException
+	 */
+	private void relayReencodedFrame(RelayedMessage relayed, InputStream in, OutputStream out, byte frameHeader, byte[] header) throws IOException {
+		InputStream frameIn = new SequenceInputStream(new ByteArrayInputStream(header), in);
+		if (relayed.message == null) {
+			relayed.message = createWebSocketMessage(frameIn, frameHeader);
+		} else {
+			relayed.message.readContinuation(frameIn, frameHeader);
+		}
+		
+		if (relayed.message.isFinished()) {
+			relayedMessages.remove(in);
+			try {
+				relayed.message.forward(out);
+			} finally {
+				relayed.release();
+			}
+		}
+	}
+
+	private static int readByte(InputStream in) throws IOException {
+		int b = in.read();
+		if (b == -1) {
+			throw new EOFException("Stream ended within frame header.");
+		}
+		return b;
+	}
+
+	private static void readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+		int bytesRead = 0;
+		while (bytesRead < length) {
+			int count = in.read(buffer, offset + bytesRead, length - bytesRead);
+			if (count == -1) {
+				throw new EOFException("Stream ended within frame header.");
+			}
+			bytesRead += count;
+		}
+	}
+
+	/**
+	 * State of a compressed message relayed frame by frame.
+	 */
+	private static final class RelayedMessage {
+
+		private final Direction direction;
+
+		/**
+		 * True if the compressed messages of the direction are re-encoded by
+		 * ZAP, then the frames are read into the {@link #message}.
+		 */
+		private final boolean isReencoded;
+
+		private WebSocketMessage message;
+
+		RelayedMessage(Direction direction, boolean isReencoded) {
+			this.direction = direction;
+			this.isReencoded = isReencoded;
+		}
+
+		void release() {
+			if (message != null) {
+				message.release();
+			}
+		}
+	}
+
 	/**
 	 * Version 13 specific WebSockets message.
 	 */
@@ -87,9 +403,24 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 		 * One message can consist of several frames.
 		 */
 		private class WebSocketFrameV13 {
-		    private final Random randomizer = new Random();
+			/**
+			 * Raw bytes of this frame, as read or to be sent. Taken from and
+			 * given back to the {@link WebSocketProxyV13#frameBufferPool}.
+			 */
 			private ByteBuffer buffer;
-			private byte[] mask;
+			
+			/**
+			 * Position of the 4 bytes mask in the {@link #buffer}.
+			 */
+			private int maskOffset;
+			
+			/**
+			 * Position of the (unmasked) payload in the message's
+			 * {@link WebSocketMessageV13#spool}, -1 if the payload is part
+			 * of the {@link #buffer}.
+			 */
+			private long spoolOffset = -1;
+			private long spoolLength;
 			private boolean isMasked;
 			
 			/**
@@ -99,7 +430,7 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 
 			/**
 			 * After a frame is sealed, it cannot be changed
-			 * and data can be read by {@link WebSocketFrameV13#getBuffer()}.
+			 * and data can be written by {@link WebSocketFrameV13#writeTo(OutputStream)}.
 			 */
 			private boolean isSealed = false;
 			
@@ -109,41 +440,27 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 			private int rsv;
 			
 			public WebSocketFrameV13() {
-				buffer = ByteBuffer.allocate(4096);
+				buffer = frameBufferPool.acquire(WebSocketFrameBufferPool.MIN_POOLED_SIZE);
 				isMasked = false;
-				mask = new byte[4];
 				isForwarded = false;
 				rsv = 0;
 			}
 
 			/**
-			 * Builds up a frame according to given payload. Sets header and
-			 * metadata (opcode, payload length, mask).
+			 * Builds up a frame according to given part of the payload. Sets
+			 * header and metadata (opcode, payload length, mask). The given
+			 * payload is not modified.
 			 * 
 			 * @param payload
+			 * @param offset
+			 * @param payloadLength
 			 */
-			public WebSocketFrameV13(ByteBuffer payload, Direction direction, boolean isFinished, int frameOpcode, int rsv) {
-				// at maximum 16 bytes are added as header data
-				buffer = ByteBuffer.allocate(payload.limit() + 16);
+			public WebSocketFrameV13(ByteBuffer payload, int offset, int payloadLength, Direction direction, boolean isFinished, int frameOpcode, int rsv) {
+				// at maximum 14 bytes are added as header data
+				buffer = frameBufferPool.acquire(payloadLength + 14);
 				this.rsv = rsv;
 
-				int payloadLength = payload.limit();
-				if (direction.equals(Direction.OUTGOING)) {
-					isMasked = true;
-
-					mask = new byte[4];
-					randomizer.nextBytes(mask);
-					
-					// mask payload, by applying mask to each byte
-					int maskPosition = 0;
-					for (int i = 0; i < payloadLength; i++) {
-						payload.put(i, (byte) (payload.get(i) ^ mask[maskPosition]));
-						maskPosition = (maskPosition + 1) % 4;
-					}
-				} else {
-					isMasked = false;
-				}
-				
+				isMasked = direction.equals(Direction.OUTGOING);
 				isForwarded = false;
 
 				byte finishedBits = (byte) (isFinished ? 0x80 : 0x00);
@@ -151,7 +468,9 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 				byte opcodeBits = (byte) (frameOpcode & 0x0F);
 				byte frameHeader = (byte) (finishedBits | rsvBits | opcodeBits);
 				buffer.put(frameHeader);
-				logger.debug("Frame header of newly created WebSocketFrame: " + getByteAsBitString(frameHeader));
+				if (logger.isDebugEnabled()) {
+					logger.debug("Frame header of newly created WebSocketFrame: " + getByteAsBitString(frameHeader));
+				}
 
 				if (payloadLength < PAYLOAD_LENGTH_16) {
 					buffer.put((byte) ((isMasked ? 0x80 : 0x00) | (payloadLength & 0x7F)));
@@ -163,11 +482,24 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 					buffer.putLong(payloadLength);
 				}
 				
+				int mask = 0;
 				if (isMasked) {
-					buffer.put(mask);
+					maskOffset = buffer.position();
+					mask = ThreadLocalRandom.current().nextInt();
+					buffer.putInt(mask);
 				}
 				
-				buffer.put(payload.array());
+				// copy payload, masking it on the fly if required
+				byte[] src = payload.array();
+				byte[] dest = buffer.array();
+				int srcOffset = payload.arrayOffset() + offset;
+				int destOffset = buffer.arrayOffset() + buffer.position();
+				if (isMasked) {
+					MaskingUtil.mask(src, srcOffset, dest, destOffset, payloadLength, mask);
+				} else {
+					System.arraycopy(src, srcOffset, dest, destOffset, payloadLength);
+				}
+				buffer.position(buffer.position() + payloadLength);
 				
 				seal();
 			}
@@ -176,14 +508,56 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 				if (isSealed) {
 					throw new WebSocketException("You cannot change a 'sealed' frame.");
 				}
+				ensureFreeSpace(1);
 				buffer.put(b);
 			}
 
-			public void put(byte[] b) throws WebSocketException {
+			/**
+			 * Reads exactly the given number of bytes from the stream into
+			 * this frame.
+			 * 
+			 * @param in
+			 * @param length
+			 * @return position of the first byte read in the frame's buffer
+			 * @throws IOException
+			 */
+			public int readFrom(InputStream in, int length) throws IOException {
 				if (isSealed) {
 					throw new WebSocketException("You cannot change a 'sealed' frame.");
 				}
-				buffer.put(b);
+				ensureFreeSpace(length);
+				
+				int offset = buffer.position();
+				readFully(in, buffer.array(), buffer.arrayOffset() + offset, length);
+				buffer.position(offset + length);
+				return offset;
+			}
+
+			public byte get(int index) {
+				return buffer.get(index);
+			}
+
+			/**
+			 * Copies the given part of the frame's buffer into the given
+			 * payload, unmasking it if required.
+			 * 
+			 * @param offset position of the payload in the frame's buffer
+			 * @param length
+			 * @param dest buffer with enough space remaining
+			 */
+			public void unmaskTo(int offset, int length, ByteBuffer dest) {
+				byte[] src = buffer.array();
+				int srcOffset = buffer.arrayOffset() + offset;
+				byte[] destArray = dest.array();
+				int destOffset = dest.arrayOffset() + dest.position();
+				
+				if (isMasked) {
+					// unmask payload by XOR it continuously with frame mask
+					MaskingUtil.mask(src, srcOffset, destArray, destOffset, length, buffer.getInt(maskOffset));
+				} else {
+					System.arraycopy(src, srcOffset, destArray, destOffset, length);
+				}
+				dest.position(dest.position() + length);
 			}
 
 			public void setMasked(boolean isMasked) {
@@ -194,26 +568,42 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 				return isMasked;
 			}
 
-			public void setMask(byte[] read) {
-				mask = read;
+			public void setMaskOffset(int maskOffset) {
+				this.maskOffset = maskOffset;
 			}
 
-			public byte getMaskAt(int index) {
-				return mask[index];
+			public int getMask() {
+				return buffer.getInt(maskOffset);
 			}
 
-			public int getFreeSpace() {
-				if (isSealed) {
-					return 0;
-				}
-				return buffer.capacity() - buffer.position();
+			/**
+			 * Marks the payload of this frame as spooled, i.e. the buffer
+			 * contains the header only.
+			 * 
+			 * @param offset position in the spool
+			 * @param length
+			 */
+			public void setSpooled(long offset, long length) {
+				this.spoolOffset = offset;
+				this.spoolLength = length;
 			}
 
-			public void reallocateFor(int bytesRead) throws WebSocketException {
-				if (isSealed) {
-					throw new WebSocketException("You cannot change size of 'sealed' frame's buffer.");
+			/**
+			 * Makes sure that the given number of bytes fit into the buffer,
+			 * exchanging it by a bigger one of the pool if required.
+			 * 
+			 * @param length
+			 */
+			private void ensureFreeSpace(int length) {
+				if (buffer.remaining() >= length) {
+					return;
 				}
-				buffer = reallocate(buffer, buffer.position() + bytesRead);
+				
+				ByteBuffer bigger = frameBufferPool.acquire(buffer.position() + length);
+				buffer.flip();
+				bigger.put(buffer);
+				frameBufferPool.release(buffer);
+				buffer = bigger;
 			}
 			
 			public boolean isForwarded() {
@@ -227,13 +617,60 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 				}
 			}
 
-			public byte[] getBuffer() throws WebSocketException {
+			/**
+			 * Writes the raw bytes of this frame, without copying them.
+			 * 
+			 * @param out
+			 * @throws IOException
+			 */
+			public void writeTo(OutputStream out) throws IOException {
 				if (!isSealed) {
-					throw new WebSocketException("You should call seal() on WebSocketFrame first, before getBuffer().");
+					throw new WebSocketException("You should call seal() on WebSocketFrame first, before writeTo().");
+				}
+				if (buffer == null) {
+					throw new WebSocketException("Frame was already released.");
+				}
+				out.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+				
+				if (spoolOffset != -1) {
+					writeSpooledPayload(out);
+				}
+			}
+
+			/**
+			 * Streams the spooled payload, masked again with the original
+			 * mask.
+			 * 
+			 * @param out
+			 * @throws IOException
+			 */
+			private void writeSpooledPayload(OutputStream out) throws IOException {
+				byte[] chunk = relayBuffer.get();
+				int mask = isMasked ? getMask() : 0;
+				long written = 0;
+				while (written < spoolLength) {
+					// chunk length is a multiple of 4, the mask starts over with each chunk
+					int count = (int) Math.min(chunk.length, spoolLength - written);
+					if (spool.read(spoolOffset + written, chunk, 0, count) != count) {
+						throw new EOFException("Spooled payload is incomplete.");
+					}
+					if (isMasked) {
+						MaskingUtil.mask(chunk, 0, count, mask);
+					}
+					out.write(chunk, 0, count);
+					written += count;
+				}
+			}
+
+			/**
+			 * Gives the buffer back to the pool, the frame cannot be
+			 * forwarded afterwards.
+			 */
+			public void release() {
+				if (buffer != null) {
+					frameBufferPool.release(buffer);
+					buffer = null;
 				}
-				byte[] result = new byte[buffer.limit()];
-				buffer.get(result);
-				return result;
 			}
 
 			public void setForwarded(boolean isForwarded) {
@@ -278,6 +715,25 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 		 */
 		private boolean isValidUtf8Payload;
 
+		/**
+		 * The payload decoded by {@link #getReadablePayload()}, once the
+		 * message is finished. Reset when the payload is changed.
+		 */
+		private String readablePayload;
+
+		/**
+		 * Not null if the payload exceeded the spool threshold, then it is
+		 * written to this file instead of the {@link #payload} buffer.
+		 */
+		private WebSocketPayloadSpool spool;
+
+		/**
+		 * True if the RSV1 bit of the first frame was set with
+		 * <em>permessage-deflate</em> negotiated. The {@link #payload} is
+		 * inflated as soon as the message is finished.
+		 */
+		private boolean isCompressed;
+
 		/**
 		 * By default, there are 7 bits to indicate the payload length. If the
 		 * length can not be shown with 7 bits, the payload length is set to
@@ -335,11 +791,19 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 			closeCode = (message.closeCode == null) ? -1 : message.closeCode;
 			direction = message.isOutgoing ? Direction.OUTGOING : Direction.INCOMING;
 			
+			Object wholePayload;
+			try {
+				// not just the preview of a spooled payload
+				wholePayload = message.getWholePayload();
+			} catch (IOException e) {
+				throw new WebSocketException(e.getMessage(), e);
+			}
+			
 			payload = ByteBuffer.allocate(0);
-			if (message.payload instanceof byte[]) {
-				setPayload((byte[])message.payload);
+			if (wholePayload instanceof byte[]) {
+				setPayload((byte[]) wholePayload);
 			} else {
-				setReadablePayload((String)message.payload);
+				setReadablePayload((String) wholePayload);
 			}
 		}
 
@@ -386,7 +850,12 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 			currentFrame = new WebSocketFrameV13();
 			currentFrame.put(frameHeader);
 			
-			currentFrame.setRsv((frameHeader >> 4 & 0x7));
+			int rsv = (frameHeader >> 4 & 0x7);
+			currentFrame.setRsv(rsv);
+			
+			if (receivedFrames.isEmpty() && permessageDeflate != null && !isControl(opcode)) {
+				isCompressed = (rsv & WebSocketPermessageDeflate.RSV_COMPRESSED) != 0;
+			}
 
 			byte payloadByte = read(in);
 			
@@ -394,29 +863,28 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 			currentFrame.setMasked((payloadByte >> 7 & 0x1) == 1);
 			
 			payloadLength = determinePayloadLength(in, payloadByte);
-			logger.debug("length of current frame payload is: " + payloadLength + "; first two bytes: " + getByteAsBitString(frameHeader) + " " + getByteAsBitString(payloadByte));
+			if (logger.isDebugEnabled()) {
+				logger.debug("length of current frame payload is: " + payloadLength + "; first two bytes: " + getByteAsBitString(frameHeader) + " " + getByteAsBitString(payloadByte));
+			}
 
 			if (currentFrame.isMasked()) {
 				// read 4 bytes mask
-				currentFrame.setMask(read(in, 4));
+				currentFrame.setMaskOffset(currentFrame.readFrom(in, 4));
 			}
 
-			byte[] payload = read(in, payloadLength);
-
-			if (currentFrame.isMasked()) {
-				int currentMaskByteIndex = 0;
-				for (int i = 0; i < payload.length; i++) {
-					// unmask payload by XOR it continuously with frame mask
-					payload[i] = (byte) (payload[i] ^ currentFrame.getMaskAt(currentMaskByteIndex));
-					currentMaskByteIndex = (currentMaskByteIndex + 1) % 4;
-				}
+			if (spool == null && shouldSpool()) {
+				startSpooling();
 			}
 			
-			if (isText(opcode)) {
-				logger.debug("got text frame payload");
-			} else if (isBinary(opcode)) {
-				logger.debug("got binary frame payload");				
-			} else {
+			if (spool != null) {
+				spoolFramePayload(in);
+			} else if (isControl(opcode)) {
+				int payloadOffset = currentFrame.readFrom(in, payloadLength);
+				
+				ByteBuffer controlPayload = ByteBuffer.allocate(payloadLength);
+				currentFrame.unmaskTo(payloadOffset, payloadLength, controlPayload);
+				byte[] payload = controlPayload.array();
+				
 				if (opcode == OPCODE_CLOSE) {
 					if (payload.length > 1) {
 						// if there is a body, the first two bytes are a
@@ -427,7 +895,7 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 						payload = getReadableCloseFramePayload(payload, closeCode);
 					}
 					
-					if (payload.length > 0) {
+					if (payload.length > 0 && logger.isDebugEnabled()) {
 						// process close message
 						try {
 							logger.debug("got control-payload: " + Utf8Util.encodePayloadToUtf8(payload));
@@ -436,15 +904,130 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 						}
 					}
 				}
+				
+				appendPayload(payload);
+			} else {
+				if (isText(opcode)) {
+					logger.debug("got text frame payload");
+				} else if (isBinary(opcode)) {
+					logger.debug("got binary frame payload");				
+				}
+				
+				int payloadOffset = currentFrame.readFrom(in, payloadLength);
+				appendFramePayload(payloadOffset, payloadLength);
 			}
 			
-			appendPayload(payload);
+			if (isFinished && isCompressed) {
+				inflatePayload(currentFrame.isMasked() ? Direction.OUTGOING : Direction.INCOMING);
+			}
 			
 			// add currentFrame to frames list
 			currentFrame.seal();
 			receivedFrames.add(currentFrame);
 		}
 
+		/**
+		 * @return true if the message would grow beyond the spool threshold
+		 *         with the current frame
+		 */
+		private boolean shouldSpool() {
+			int threshold = getSpoolThreshold();
+			if (threshold <= 0 || isControl(opcode) || isCompressed) {
+				// compressed payloads are inflated as a whole
+				return false;
+			}
+			
+			long bufferedLength = (payload == null) ? 0 : payload.position();
+			return bufferedLength + payloadLength > threshold;
+		}
+
+		/**
+		 * Moves the payload buffered so far into a new {@link #spool}. If no
+		 * spool can be created, the message is kept in memory.
+		 */
+		private void startSpooling() {
+			try {
+				spool = WebSocketPayloadSpool.create();
+				if (payload != null) {
+					spool.append(payload.array(), payload.arrayOffset(), payload.position());
+				}
+				payload = ByteBuffer.allocate(0);
+				logger.debug("spooling payload of " + toString() + " to " + spool);
+			} catch (IOException e) {
+				logger.warn("Failed to spool big message, keeping it in memory: " + e.getMessage(), e);
+				if (spool != null) {
+					spool.release();
+					spool = null;
+				}
+			}
+		}
+
+		/**
+		 * Streams the payload of the {@link #currentFrame} unmasked into the
+		 * {@link #spool}, the frame keeps its header only.
+		 * 
+		 * @param in
+		 * @throws IOException
+		 */
+		private void spoolFramePayload(InputStream in) throws IOException {
+			currentFrame.setSpooled(spool.getLength(), payloadLength);
+			
+			byte[] chunk = relayBuffer.get();
+			int mask = currentFrame.isMasked() ? currentFrame.getMask() : 0;
+			int remaining = payloadLength;
+			while (remaining > 0) {
+				// chunk length is a multiple of 4, the mask starts over with each chunk
+				int count = Math.min(chunk.length, remaining);
+				readFully(in, chunk, 0, count);
+				if (currentFrame.isMasked()) {
+					MaskingUtil.mask(chunk, 0, count, mask);
+				}
+				spool.append(chunk, 0, count);
+				remaining -= count;
+			}
+		}
+
+		/**
+		 * Unmasks the payload of the {@link #currentFrame} directly into the
+		 * message's {@link #payload}.
+		 * 
+		 * @param offset position of the payload in the frame
+		 * @param length
+		 */
+		private void appendFramePayload(int offset, int length) {
+			if (payload == null) {
+				payload = ByteBuffer.allocate(length);
+			} else if (payload.remaining() < length) {
+				payload = reallocate(payload, payload.position() + length);
+			}
+			
+			currentFrame.unmaskTo(offset, length, payload);
+			
+			if (isFinished) {
+				payload.flip();
+			}
+		}
+
+		/**
+		 * Replaces the compressed {@link #payload} by its inflated version. On
+		 * failure the payload is kept, as unchanged messages are forwarded with
+		 * their original frames anyway.
+		 * 
+		 * @param frameDirection
+		 */
+		private void inflatePayload(Direction frameDirection) {
+			byte[] compressed = new byte[payload.limit()];
+			payload.rewind();
+			payload.get(compressed);
+			payload.rewind();
+			
+			try {
+				payload = ByteBuffer.wrap(permessageDeflate.inflate(frameDirection, compressed));
+			} catch (WebSocketException e) {
+				logger.warn(e.getMessage(), e);
+			}
+		}
+
 		/**
 		 * Looks at the payload byte from the WebSockets header and determines
 		 * the packets length. It reads bytes from the extended length field if
@@ -474,15 +1057,21 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 					bytesToRetrieve = 8;
 				}
 
-				byte[] extendedPayloadLength = read(in, bytesToRetrieve);
+				int offset = currentFrame.readFrom(in, bytesToRetrieve);
 
-				length = 0;
+				long extendedLength = 0;
 				for (int i = 0; i < bytesToRetrieve; i++) {
-					byte extendedPayload = extendedPayloadLength[i];
+					byte extendedPayload = currentFrame.get(offset + i);
 					
 					// shift previous bits left and add next byte
-					length = (length << 8) | (extendedPayload & 0xFF);
+					extendedLength = (extendedLength << 8) | (extendedPayload & 0xFF);
 				}
+				
+				if (extendedLength < 0 || extendedLength > Integer.MAX_VALUE) {
+					// negative if the most significant bit is set, closes the channel
+					throw new WebSocketException("Unsupported payload length of frame: " + extendedLength);
+				}
+				length = (int) extendedLength;
 			}
 			
 			return length;
@@ -551,43 +1140,16 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 		}
 
 		/**
-		 * Read only one byte from input stream.
+		 * Read only one byte from input stream and add it to the current frame.
 		 * 
 		 * @param in
 		 * @return
 		 * @throws IOException
 		 */
 		private byte read(InputStream in) throws IOException {
-			byte[] buffer = read(in, 1);
-			return buffer[0];
-		}
-
-		/**
-		 * Reads given length from the given stream.
-		 * 
-		 * @param in {@link InputStream} to read from.
-		 * @param length Determines how much bytes should be read from the given stream.
-		 * @return Bytes read from stream - blocks until given length is read!
-		 * @throws IOException
-		 */
-		private byte[] read(InputStream in, int length) throws IOException {
-			byte[] buffer = new byte[length];
-			
-			// read until buffer is full 
-			int bytesRead = 0;
-			do {
-				bytesRead += in.read(buffer, bytesRead, length - bytesRead);
-			} while (length != bytesRead);
-			
-			// maybe we have to increase the size of the current frame buffer
-			if (currentFrame.getFreeSpace() < bytesRead) {
-				currentFrame.reallocateFor(bytesRead);
-			}
-
-			// add bytes to current frame
-			currentFrame.put(buffer);
-			
-			return buffer;
+			byte b = (byte) readByte(in);
+			currentFrame.put(b);
+			return b;
 		}
 
 	    /**
@@ -601,40 +1163,31 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 			
 			logger.debug("forward message#" + getMessageId());
 			
-			if (hasChanged) {
+			// once changed, ZAP owns the compression context of this direction
+			boolean isReencoded = isCompressed && permessageDeflate.isDiverged(getDirection());
+			
+			if (isReencoded && !isFinished()) {
+				// the payload is only complete (and inflated) with the last
+				// frame, the re-encoded frames are built and sent then
+				for (WebSocketFrameV13 frame : receivedFrames) {
+					frame.release();
+				}
+				return true;
+			}
+			
+			if (hasChanged || isReencoded) {
 				if (opcode == OPCODE_CLOSE) {
-					payload = getTransmittableCloseFramePayload(payload);
+					replacePayload(getTransmittableCloseFramePayload(payload));
 				}
 				
-				// split into chunks according to maximum frame length
-				int writtenBytes = 0;
-				int frameLength = Math.min(PAYLOAD_MAX_FRAME_LENGTH, payload.limit());
-				int frameOpcode = opcode;
-				boolean isLastFrame;
-				
-				do {
-					ByteBuffer tempBuffer = ByteBuffer.allocate(frameLength);
-					tempBuffer.hasArray();
-					payload.get(tempBuffer.array(), 0, frameLength);
-					
-					writtenBytes = frameLength + writtenBytes;
-					frameLength = Math.min(PAYLOAD_MAX_FRAME_LENGTH, payload.limit() - writtenBytes);
-					
-					isLastFrame = (frameLength <= 0); 
+				// compression and writing must happen in the same order
+				synchronized (out) {
+					forwardBuiltFrames(out);
+				}
 				
-					// TODO: use RSV from first original frame?
-					WebSocketFrameV13 frame = new WebSocketFrameV13(tempBuffer, getDirection(), isLastFrame, frameOpcode, 0);
-					logger.debug("forward modified frame");
-					forwardFrame(frame, out);
-					// next frame is a continuation of the current one
-					frameOpcode = OPCODE_CONTINUATION;
-					
-					// TODO: What if e.g.: a close frame has got a huge payload
-					// that exceeds INTEGER.MAX_VALUE, then I send a OPCODE_CLOSE
-					// followed by another OPCODE_CONTINUATION, but that is not
-					// allowed by RFC6455 (control frames aren't allowed to
-					// exceed one frame)
-				} while (!isLastFrame);
+				for (WebSocketFrameV13 frame : receivedFrames) {
+					frame.release();
+				}
 			} else {
 				for (WebSocketFrameV13 frame : receivedFrames) {
 					// forward frame by frame
@@ -648,6 +1201,67 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 			return true;
 		}
 
+		/**
+		 * Builds up new frames for the current {@link #payload} and forwards
+		 * them, compressing the payload if allowed by the negotiated
+		 * <em>permessage-deflate</em> extension.
+		 * 
+		 * @param out
+		 * @throws IOException
+		 */
+		private void forwardBuiltFrames(OutputStream out) throws IOException {
+			ByteBuffer source = payload;
+			int firstFrameRsv = 0;
+			
+			if (permessageDeflate != null && !isControl()) {
+				if (hasChanged && isCompressed) {
+					permessageDeflate.markChanged(getDirection());
+				}
+				
+				if (permessageDeflate.canCompress(getDirection())) {
+					byte[] plain = new byte[payload.limit()];
+					payload.rewind();
+					payload.get(plain);
+					payload.rewind();
+					
+					source = ByteBuffer.wrap(permessageDeflate.deflate(getDirection(), plain));
+					firstFrameRsv = WebSocketPermessageDeflate.RSV_COMPRESSED;
+				}
+			}
+			source.rewind();
+			
+			// split into chunks according to maximum frame length
+			int writtenBytes = 0;
+			int frameLength = Math.min(PAYLOAD_MAX_FRAME_LENGTH, source.limit());
+			int frameOpcode = opcode;
+			int frameRsv = firstFrameRsv;
+			boolean isLastFrame;
+			
+			do {
+				int frameOffset = writtenBytes;
+				int currentFrameLength = frameLength;
+				
+				writtenBytes = frameLength + writtenBytes;
+				frameLength = Math.min(PAYLOAD_MAX_FRAME_LENGTH, source.limit() - writtenBytes);
+				
+				isLastFrame = (frameLength <= 0); 
+			
+				WebSocketFrameV13 frame = new WebSocketFrameV13(source, frameOffset, currentFrameLength, getDirection(), isLastFrame, frameOpcode, frameRsv);
+				logger.debug("forward modified frame");
+				forwardFrame(frame, out);
+				// next frame is a continuation of the current one
+				frameOpcode = OPCODE_CONTINUATION;
+				// RSV1 is only set on the first frame of a compressed message
+				frameRsv = 0;
+				
+				// TODO: What if e.g.: a close frame has got a huge payload
+				// that exceeds INTEGER.MAX_VALUE, then I send a OPCODE_CLOSE
+				// followed by another OPCODE_CONTINUATION, but that is not
+				// allowed by RFC6455 (control frames aren't allowed to
+				// exceed one frame)
+			} while (!isLastFrame);
+		}
+
 		/**
 		 * Helper method to forward frames.
 		 * 
@@ -656,11 +1270,12 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 		 */
 		private void forwardFrame(WebSocketFrameV13 frame, OutputStream out) throws IOException {
 			synchronized (out) {
-				out.write(frame.getBuffer());
+				frame.writeTo(out);
 				out.flush();
 			}
 			
 			frame.setForwarded(true);
+			frame.release();
 		}
 		
 		@Override
@@ -668,26 +1283,100 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 			if (!isFinished) {
 				return new byte[0];
 			}
+			if (spool != null) {
+				try {
+					return spool.readAll();
+				} catch (IOException e) {
+					logger.warn(e.getMessage(), e);
+					return new byte[0];
+				}
+			}
 			payload.rewind();
 			byte[] bytes = new byte[payload.limit()];
 			payload.get(bytes);
 			return bytes;
 		}
 
+		@Override
+		public ByteBuffer getPayloadView() {
+			if (!isFinished) {
+				return ByteBuffer.allocate(0).asReadOnlyBuffer();
+			}
+			if (spool != null) {
+				try {
+					return spool.map();
+				} catch (IOException e) {
+					logger.warn(e.getMessage(), e);
+					return ByteBuffer.allocate(0).asReadOnlyBuffer();
+				}
+			}
+			ByteBuffer view = payload.asReadOnlyBuffer();
+			view.rewind();
+			return view;
+		}
+
+		@Override
+		public InputStream getPayloadStream() {
+			if (spool != null && isFinished) {
+				return spool.openStream(Long.MAX_VALUE);
+			}
+			return super.getPayloadStream();
+		}
+
+		@Override
+		public WebSocketPayloadSpool getPayloadSpool() {
+			return spool;
+		}
+
+		@Override
+		public void release() {
+			if (spool != null) {
+				spool.release();
+				spool = null;
+				// not forwarded frames can not be sent anymore
+				payload = ByteBuffer.allocate(0);
+			}
+			for (WebSocketFrameV13 frame : receivedFrames) {
+				frame.release();
+			}
+		}
+
 		@Override
 		public void setPayload(byte[] newPayload) throws WebSocketException {
 			if (!isFinished()) {
 				throw new WebSocketException("Only allowed to set payload of finished message!");
 			}
+			checkNotSpooled();
 			
 			if (!Arrays.equals(newPayload, getPayload())) {
 				hasChanged = true;
-				payload = ByteBuffer.wrap(newPayload);
+				replacePayload(ByteBuffer.wrap(newPayload));
+			}
+		}
+
+		private void replacePayload(ByteBuffer newPayload) {
+			payload = newPayload;
+			readablePayload = null;
+			payloadChanged();
+		}
+
+		/**
+		 * Spooled messages are forwarded frame by frame, before observers
+		 * could change them.
+		 * 
+		 * @throws WebSocketException if the payload was spooled
+		 */
+		private void checkNotSpooled() throws WebSocketException {
+			if (spool != null) {
+				throw new WebSocketException("Not allowed to change payload of spooled message " + toString());
 			}
 		}
 
 		@Override
 		public Integer getPayloadLength() {
+			if (spool != null) {
+				return (int) Math.min(Integer.MAX_VALUE, spool.getLength());
+			}
 			int length = payload.limit();
 			
 			if (opcode == OPCODE_CLOSE) {
@@ -701,13 +1390,31 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 
 		@Override
 		public String getReadablePayload() {
+			if (spool != null) {
+				// do not load big payloads into memory
+				try {
+					return new String(spool.readPreview(SPOOLED_PAYLOAD_PREVIEW_LENGTH), StandardCharsets.UTF_8);
+				} catch (IOException e) {
+					logger.warn(e.getMessage(), e);
+					return "";
+				}
+			}
+			if (readablePayload != null) {
+				return readablePayload;
+			}
+			
+			String decodedPayload;
 			try {
 				isValidUtf8Payload = true;
-				return Utf8Util.encodePayloadToUtf8(payload.array(), 0, payload.limit());
+				decodedPayload = Utf8Util.encodePayloadToUtf8(payload.array(), 0, payload.limit());
 			} catch (InvalidUtf8Exception e) {
 				isValidUtf8Payload  = false;
-				return "<invalid UTF-8>";
+				decodedPayload = "<invalid UTF-8>";
 			}
+			if (isFinished) {
+				readablePayload = decodedPayload;
+			}
+			return decodedPayload;
 		}
 
 		@Override
@@ -715,15 +1422,16 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 			if (!isFinished()) {
 				throw new WebSocketException("Only allowed to set payload of finished message!");
 			}
+			checkNotSpooled();
 			
-			String readablePayload = getReadablePayload();
+			String currentReadablePayload = getReadablePayload();
 			byte[] newBytesPayload = Utf8Util.decodePayloadFromUtf8(newReadablePayload);
 			// compare readable strings (working on byte arrays did not work)
-			if (isValidUtf8Payload && !Arrays.equals(newBytesPayload, Utf8Util.decodePayloadFromUtf8(readablePayload))) {
+			if (isValidUtf8Payload && !Arrays.equals(newBytesPayload, Utf8Util.decodePayloadFromUtf8(currentReadablePayload))) {
 				// mark this message as changed in order to propagate changed
 				// payload into frames or build up a big frame (see forward())
 				hasChanged = true;
-				payload = ByteBuffer.wrap(newBytesPayload);
+				replacePayload(ByteBuffer.wrap(newBytesPayload));
 			}
 		}
 
@@ -731,15 +1439,5 @@ public class WebSocketProxyV13 extends WebSocketProxy {
 		public Direction getDirection() {
 			return direction;
 		}
-		
-		@Override
-		public WebSocketMessageDTO getDTO() {
-			WebSocketMessageDTO message = super.getDTO();
-			
-			message.channel.id = getChannelId();
-			message.id = getMessageId();
-			
-			return message;
-		}
 	}
 }
@@ -17,6 +17,7 @@
  */
 package org.zaproxy.zap.extension.websocket.brk;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -30,6 +31,11 @@ import org.zaproxy.zap.extension.websocket.WebSocketMessage.Direction;
 public class WebSocketBreakpointMessage extends AbstractBreakPointMessage {
 
     private static final String TYPE = "WebSocket";
+
+    /**
+     * Counts the changes to the breakpoints, for {@link WebSocketBreakpointsMatcher}s to know when they are stale.
+     */
+    private static final AtomicInteger modifications = new AtomicInteger();
     
     /**
      * Break on specified opcode or on all if null.
@@ -71,6 +77,7 @@ public class WebSocketBreakpointMessage extends AbstractBreakPointMessage {
 
 	public void setOpcode(String opcode) {
 	    this.opcode = opcode;
+	    modifications.incrementAndGet();
 	}
 
 	public Integer getChannelId() {
@@ -79,6 +86,7 @@ public class WebSocketBreakpointMessage extends AbstractBreakPointMessage {
 
 	public void setChannelId(Integer channelId) {
 		this.channelId = channelId;
+		modifications.incrementAndGet();
 	}
 
 	public String getPayloadPattern() {
@@ -101,6 +109,7 @@ public class WebSocketBreakpointMessage extends AbstractBreakPointMessage {
 		} else {
 			this.payloadPattern = Pattern.compile(payloadPattern, Pattern.MULTILINE);
 		}
+		modifications.incrementAndGet();
 	}
 
 	public Direction getDirection() {
@@ -113,6 +122,11 @@ public class WebSocketBreakpointMessage extends AbstractBreakPointMessage {
 		} else {
 			this.direction = direction;
 		}
+		modifications.incrementAndGet();
+	}
+
+	static int getModifications() {
+		return modifications.get();
 	}
 
 	@Override
@@ -32,6 +32,13 @@ public class WebSocketBreakpointMessageHandler extends BreakpointMessageHandler2
 
 	private OptionsParamWebSocket config;
 
+	/**
+	 * The enabled breakpoints compiled, created lazily and recreated when the breakpoints change.
+	 * <p>
+	 * Guarded by {@link #enabledBreakpoints}.
+	 */
+	private WebSocketBreakpointsMatcher breakpointsMatcher;
+
 	public WebSocketBreakpointMessageHandler(BreakpointManagementInterface breakpointManagementInterface, OptionsParamWebSocket config) {
 		super(breakpointManagementInterface);
 		this.config = config;
@@ -82,6 +89,30 @@ public class WebSocketBreakpointMessageHandler extends BreakpointMessageHandler2
 		return false;
 	}
 	
+	/**
+	 * Matches the WebSocket messages with the breakpoints compiled into a {@link WebSocketBreakpointsMatcher}, instead of
+	 * one breakpoint at a time.
+	 */
+	@Override
+	protected boolean isBreakOnEnabledBreakpoint(Message aMessage, boolean isRequest, boolean onlyIfInScope) {
+		if (!(aMessage instanceof WebSocketMessageDTO)) {
+			return super.isBreakOnEnabledBreakpoint(aMessage, isRequest, onlyIfInScope);
+		}
+		if (enabledBreakpoints.isEmpty()) {
+			return false;
+		}
+		return getBreakpointsMatcher().match((WebSocketMessageDTO) aMessage, isRequest, onlyIfInScope);
+	}
+
+	private WebSocketBreakpointsMatcher getBreakpointsMatcher() {
+		synchronized (enabledBreakpoints) {
+			if (breakpointsMatcher == null || !breakpointsMatcher.isUpToDate(enabledBreakpoints)) {
+				breakpointsMatcher = new WebSocketBreakpointsMatcher(enabledBreakpoints);
+			}
+			return breakpointsMatcher;
+		}
+	}
+
 	/**
 	 * Helper that determines if breakpoint should be applied for 'All
 	 * Requests/Responses' on this {@link WebSocketMessageDTO}.
@@ -0,0 +1,239 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.brk;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.zaproxy.zap.extension.brk.BreakpointMessageInterface;
+import org.zaproxy.zap.extension.websocket.WebSocketMessage.Direction;
+import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+
+/**
+ * The enabled breakpoints compiled into a single matcher, to not evaluate each {@link WebSocketBreakpointMessage}
+ * separately for each message.
+ * <p>
+ * The opcode, channel and direction of the breakpoints are kept in tables that select the breakpoints that apply to a
+ * message, the payload is searched once for all the (candidate) breakpoints whose pattern is a literal. Only the
+ * remaining patterns are evaluated one by one.
+ * <p>
+ * The matcher is immutable, a new one should be created when the breakpoints change, see
+ * {@link #isUpToDate(List)}.
+ */
+class WebSocketBreakpointsMatcher {
+
+	private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+	private final BreakpointMessageInterface[] breakpoints;
+	private final int breakpointModifications;
+
+	/**
+	 * The breakpoints that are not {@link WebSocketBreakpointMessage}s, matched one by one.
+	 */
+	private final List<BreakpointMessageInterface> otherBreakpoints;
+
+	private final int rulesCount;
+
+	private final Map<String, BitSet> rulesByOpcode;
+	private final BitSet rulesAnyOpcode;
+
+	private final Map<Integer, BitSet> rulesByChannel;
+	private final BitSet rulesAnyChannel;
+
+	private final BitSet rulesIncoming;
+	private final BitSet rulesOutgoing;
+
+	private final BitSet rulesWithoutPattern;
+
+	private final BitSet rulesLiteralPattern;
+	private final LiteralsAutomaton literalsAutomaton;
+
+	private final BitSet rulesRegexPattern;
+	private final Pattern[] regexPatterns;
+
+	/**
+	 * @param enabledBreakpoints the enabled breakpoints, must not be modified during the call
+	 */
+	WebSocketBreakpointsMatcher(List<BreakpointMessageInterface> enabledBreakpoints) {
+		breakpoints = enabledBreakpoints.toArray(new BreakpointMessageInterface[enabledBreakpoints.size()]);
+		breakpointModifications = WebSocketBreakpointMessage.getModifications();
+
+		otherBreakpoints = new ArrayList<>();
+		List<WebSocketBreakpointMessage> rules = new ArrayList<>();
+		for (BreakpointMessageInterface breakpoint : breakpoints) {
+			if (breakpoint instanceof WebSocketBreakpointMessage) {
+				rules.add((WebSocketBreakpointMessage) breakpoint);
+			} else {
+				otherBreakpoints.add(breakpoint);
+			}
+		}
+
+		rulesCount = rules.size();
+		rulesByOpcode = new HashMap<>();
+		rulesAnyOpcode = new BitSet(rulesCount);
+		rulesByChannel = new HashMap<>();
+		rulesAnyChannel = new BitSet(rulesCount);
+		rulesIncoming = new BitSet(rulesCount);
+		rulesOutgoing = new BitSet(rulesCount);
+		rulesWithoutPattern = new BitSet(rulesCount);
+		rulesLiteralPattern = new BitSet(rulesCount);
+		rulesRegexPattern = new BitSet(rulesCount);
+		regexPatterns = new Pattern[rulesCount];
+		String[] literals = new String[rulesCount];
+
+		for (int i = 0; i < rulesCount; i++) {
+			WebSocketBreakpointMessage rule = rules.get(i);
+
+			if (rule.getOpcode() == null) {
+				rulesAnyOpcode.set(i);
+			} else {
+				getRules(rulesByOpcode, rule.getOpcode()).set(i);
+			}
+
+			if (rule.getChannelId() == null) {
+				rulesAnyChannel.set(i);
+			} else {
+				getRules(rulesByChannel, rule.getChannelId()).set(i);
+			}
+
+			Direction direction = rule.getDirection();
+			if (direction == null || Direction.INCOMING.equals(direction)) {
+				rulesIncoming.set(i);
+			}
+			if (direction == null || Direction.OUTGOING.equals(direction)) {
+				rulesOutgoing.set(i);
+			}
+
+			String pattern = rule.getPayloadPattern();
+			if (pattern == null) {
+				rulesWithoutPattern.set(i);
+			} else if (isLiteral(pattern)) {
+				rulesLiteralPattern.set(i);
+				literals[i] = pattern;
+			} else {
+				rulesRegexPattern.set(i);
+				regexPatterns[i] = Pattern.compile(pattern, Pattern.MULTILINE);
+			}
+		}
+
+		literalsAutomaton = rulesLiteralPattern.isEmpty() ? null : new LiteralsAutomaton(literals);
+	}
+
+	private static <T> BitSet getRules(Map<T, BitSet> rulesMap, T key) {
+		BitSet rules = rulesMap.get(key);
+		if (rules == null) {
+			rules = new BitSet();
+			rulesMap.put(key, rules);
+		}
+		return rules;
+	}
+
+	private static boolean isLiteral(String pattern) {
+		for (int i = 0; i < pattern.length(); i++) {
+			if (REGEX_METACHARACTERS.indexOf(pattern.charAt(i)) != -1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tells whether or not this matcher was created with the given breakpoints, and none of them changed since.
+	 *
+	 * @param enabledBreakpoints the current enabled breakpoints, must not be modified during the call
+	 * @return {@code true} if the matcher is up to date, {@code false} otherwise
+	 */
+	boolean isUpToDate(List<BreakpointMessageInterface> enabledBreakpoints) {
+		if (breakpointModifications != WebSocketBreakpointMessage.getModifications()
+				|| breakpoints.length != enabledBreakpoints.size()) {
+			return false;
+		}
+		for (int i = 0; i < breakpoints.length; i++) {
+			if (breakpoints[i] != enabledBreakpoints.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tells whether or not any of the breakpoints matches the given message.
+	 *
+	 * @see BreakpointMessageInterface#match(org.zaproxy.zap.extension.httppanel.Message, boolean, boolean)
+	 */
+	boolean match(WebSocketMessageDTO message, boolean isRequest, boolean onlyIfInScope) {
+		for (BreakpointMessageInterface breakpoint : otherBreakpoints) {
+			if (breakpoint.match(message, isRequest, onlyIfInScope)) {
+				return true;
+			}
+		}
+
+		if (rulesCount == 0) {
+			return false;
+		}
+
+		BitSet candidates = (BitSet) (message.isOutgoing ? rulesOutgoing : rulesIncoming).clone();
+		and(candidates, rulesAnyOpcode, rulesByOpcode.get(message.readableOpcode));
+		Integer channelId = message.channel != null ? message.channel.id : null;
+		and(candidates, rulesAnyChannel, rulesByChannel.get(channelId));
+		if (candidates.isEmpty()) {
+			return false;
+		}
+
+		if (candidates.intersects(rulesWithoutPattern)) {
+			return true;
+		}
+
+		if (!(message.payload instanceof String)) {
+			// binary messages are not affected by pattern
+			return false;
+		}
+		String payload = (String) message.payload;
+
+		if (literalsAutomaton != null
+				&& candidates.intersects(rulesLiteralPattern)
+				&& literalsAutomaton.containsAny(payload, candidates)) {
+			return true;
+		}
+
+		candidates.and(rulesRegexPattern);
+		for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+			if (regexPatterns[i].matcher(payload).find()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Keeps in {@code candidates} only the rules in {@code any} or {@code specific}.
+	 */
+	private static void and(BitSet candidates, BitSet any, BitSet specific) {
+		if (specific == null) {
+			candidates.and(any);
+		} else {
+			BitSet allowed = (BitSet) any.clone();
+			allowed.or(specific);
+			candidates.and(allowed);
+		}
+	}
+}
@@ -0,0 +1,381 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.zaproxy.zap.extension.websocket.WebSocketChannelDTO;
+import org.zaproxy.zap.extension.websocket.WebSocketMessage;
+import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+
+/**
+ * {@link WebSocketMessagesFormat#COLUMNAR Columnar} binary format.
+ * <p>
+ * After the magic bytes {@code ZWSC} and the version follow the channels and
+ * then blocks of messages. Each block starts with its number of messages (a
+ * block with no messages ends the file) followed by the columns: channel ids,
+ * message ids and timestamps (as deltas to the previous message), opcodes,
+ * flags, payload lengths, stored payload lengths and the concatenated
+ * payloads (text as UTF-8). Numbers are written as variable-length integers,
+ * which keeps the ids and timestamps of a session to one or two bytes each.
+ */
+final class ColumnarFormat {
+
+	private static final byte[] MAGIC = { 'Z', 'W', 'S', 'C' };
+
+	private static final int VERSION = 1;
+
+	/**
+	 * Maximum number of messages of a block.
+	 */
+	static final int BLOCK_MESSAGES = 4096;
+
+	/**
+	 * A block is written before its payloads exceed this size, unless it has
+	 * just one message.
+	 */
+	static final int BLOCK_PAYLOADS_SIZE = 8 * 1024 * 1024;
+
+	private static final int FLAG_OUTGOING = 1;
+	private static final int FLAG_BINARY_PAYLOAD = 2;
+
+	private ColumnarFormat() {
+	}
+
+	static class Writer implements WebSocketMessagesFormat.RecordWriter {
+
+		private final DataOutputStream out;
+
+		private final List<WebSocketChannelDTO> channels;
+
+		private boolean channelsWritten;
+
+		private final List<WebSocketMessageDTO> messages;
+
+		private final List<byte[]> payloads;
+
+		private long payloadsSize;
+
+		Writer(OutputStream out) {
+			this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+			this.channels = new ArrayList<>();
+			this.messages = new ArrayList<>(BLOCK_MESSAGES);
+			this.payloads = new ArrayList<>(BLOCK_MESSAGES);
+		}
+
+		@Override
+		public void writeChannel(WebSocketChannelDTO channel) throws IOException {
+			if (channelsWritten) {
+				throw new IOException("Channels have to be written before the messages.");
+			}
+			channels.add(channel);
+		}
+
+		@Override
+		public void writeMessage(WebSocketMessageDTO message) throws IOException {
+			writeChannels();
+
+			byte[] payload = (message.payload instanceof byte[])
+					? (byte[]) message.payload
+					: ((String) message.payload).getBytes(StandardCharsets.UTF_8);
+			if (!messages.isEmpty() && payloadsSize + payload.length > BLOCK_PAYLOADS_SIZE) {
+				writeBlock();
+			}
+			messages.add(message);
+			payloads.add(payload);
+			payloadsSize += payload.length;
+			if (messages.size() == BLOCK_MESSAGES) {
+				writeBlock();
+			}
+		}
+
+		@Override
+		public void finish() throws IOException {
+			writeChannels();
+			if (!messages.isEmpty()) {
+				writeBlock();
+			}
+			writeVarLong(out, 0);
+			out.flush();
+		}
+
+		private void writeChannels() throws IOException {
+			if (channelsWritten) {
+				return;
+			}
+			channelsWritten = true;
+
+			out.write(MAGIC);
+			out.writeByte(VERSION);
+			writeVarLong(out, channels.size());
+			for (WebSocketChannelDTO channel : channels) {
+				writeVarLong(out, channel.id);
+				writeString(out, channel.host);
+				writeVarLong(out, channel.port);
+				writeString(out, channel.url);
+				writeVarLong(out, channel.startTimestamp);
+				writeVarLong(out, (channel.endTimestamp != null) ? channel.endTimestamp + 1 : 0);
+			}
+			channels.clear();
+		}
+
+		private void writeBlock() throws IOException {
+			int count = messages.size();
+			writeVarLong(out, count);
+
+			long previous = 0;
+			for (WebSocketMessageDTO message : messages) {
+				writeVarLong(out, zigZag(message.channel.id - previous));
+				previous = message.channel.id;
+			}
+			previous = 0;
+			for (WebSocketMessageDTO message : messages) {
+				writeVarLong(out, zigZag(message.id - previous));
+				previous = message.id;
+			}
+			previous = 0;
+			for (WebSocketMessageDTO message : messages) {
+				writeVarLong(out, zigZag(message.timestamp - previous));
+				previous = message.timestamp;
+			}
+			for (WebSocketMessageDTO message : messages) {
+				out.writeByte(message.opcode);
+			}
+			for (WebSocketMessageDTO message : messages) {
+				int flags = message.isOutgoing ? FLAG_OUTGOING : 0;
+				if (message.payload instanceof byte[]) {
+					flags |= FLAG_BINARY_PAYLOAD;
+				}
+				out.writeByte(flags);
+			}
+			for (WebSocketMessageDTO message : messages) {
+				writeVarLong(out, message.payloadLength);
+			}
+			for (byte[] payload : payloads) {
+				writeVarLong(out, payload.length);
+			}
+			for (byte[] payload : payloads) {
+				out.write(payload);
+			}
+
+			messages.clear();
+			payloads.clear();
+			payloadsSize = 0;
+		}
+	}
+
+	static class Reader implements WebSocketMessagesFormat.RecordReader {
+
+		private final DataInputStream in;
+
+		private int count;
+
+		private int index;
+
+		private int[] channelIds;
+		private int[] messageIds;
+		private long[] timestamps;
+		private byte[] opcodes;
+		private byte[] flags;
+		private int[] payloadLengths;
+		private int[] storedLengths;
+		private byte[] payloads;
+		private int payloadsOffset;
+
+		private boolean ended;
+
+		Reader(InputStream in) {
+			this.in = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+		}
+
+		@Override
+		public List<WebSocketChannelDTO> readChannels() throws IOException {
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			if (!Arrays.equals(MAGIC, magic)) {
+				throw new IOException("Not a columnar WebSocket messages file.");
+			}
+			int version = in.readUnsignedByte();
+			if (version != VERSION) {
+				throw new IOException("Unsupported version of columnar WebSocket messages file: " + version);
+			}
+
+			int channelCount = readVarInt(in);
+			List<WebSocketChannelDTO> channels = new ArrayList<>(Math.min(channelCount, BLOCK_MESSAGES));
+			for (int i = 0; i < channelCount; i++) {
+				WebSocketChannelDTO channel = new WebSocketChannelDTO();
+				channel.id = readVarInt(in);
+				channel.host = readString(in);
+				channel.port = readVarInt(in);
+				channel.url = readString(in);
+				channel.startTimestamp = readVarLong(in);
+				long end = readVarLong(in);
+				channel.endTimestamp = (end != 0) ? end - 1 : null;
+				channels.add(channel);
+			}
+			return channels;
+		}
+
+		@Override
+		public WebSocketMessageDTO readMessage() throws IOException {
+			if (index == count) {
+				if (ended || !readBlock()) {
+					return null;
+				}
+			}
+
+			WebSocketChannelDTO channel = new WebSocketChannelDTO();
+			channel.id = channelIds[index];
+			WebSocketMessageDTO message = new WebSocketMessageDTO(channel);
+			message.id = messageIds[index];
+			message.timestamp = timestamps[index];
+			message.opcode = opcodes[index] & 0xff;
+			message.readableOpcode = WebSocketMessage.opcode2string(message.opcode);
+			message.isOutgoing = (flags[index] & FLAG_OUTGOING) != 0;
+			message.payloadLength = payloadLengths[index];
+
+			int length = storedLengths[index];
+			if ((flags[index] & FLAG_BINARY_PAYLOAD) != 0) {
+				message.payload = Arrays.copyOfRange(payloads, payloadsOffset, payloadsOffset + length);
+			} else {
+				message.payload = new String(payloads, payloadsOffset, length, StandardCharsets.UTF_8);
+			}
+			payloadsOffset += length;
+			index++;
+			return message;
+		}
+
+		private boolean readBlock() throws IOException {
+			count = readVarInt(in);
+			index = 0;
+			if (count == 0) {
+				ended = true;
+				return false;
+			}
+			if (count > BLOCK_MESSAGES) {
+				throw new IOException("Block with too many messages: " + count);
+			}
+			if (channelIds == null || channelIds.length < count) {
+				channelIds = new int[count];
+				messageIds = new int[count];
+				timestamps = new long[count];
+				opcodes = new byte[count];
+				flags = new byte[count];
+				payloadLengths = new int[count];
+				storedLengths = new int[count];
+			}
+
+			long previous = 0;
+			for (int i = 0; i < count; i++) {
+				previous += unZigZag(readVarLong(in));
+				channelIds[i] = (int) previous;
+			}
+			previous = 0;
+			for (int i = 0; i < count; i++) {
+				previous += unZigZag(readVarLong(in));
+				messageIds[i] = (int) previous;
+			}
+			previous = 0;
+			for (int i = 0; i < count; i++) {
+				previous += unZigZag(readVarLong(in));
+				timestamps[i] = previous;
+			}
+			in.readFully(opcodes, 0, count);
+			in.readFully(flags, 0, count);
+			for (int i = 0; i < count; i++) {
+				payloadLengths[i] = readVarInt(in);
+			}
+			long payloadsSize = 0;
+			for (int i = 0; i < count; i++) {
+				storedLengths[i] = readVarInt(in);
+				payloadsSize += storedLengths[i];
+			}
+			if (payloadsSize > Integer.MAX_VALUE - 8) {
+				throw new IOException("Block of messages too big: " + payloadsSize);
+			}
+			if (payloads == null || payloads.length < payloadsSize) {
+				payloads = new byte[(int) payloadsSize];
+			}
+			in.readFully(payloads, 0, (int) payloadsSize);
+			payloadsOffset = 0;
+			return true;
+		}
+	}
+
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b == -1) {
+				throw new EOFException("Unexpected end of the columnar WebSocket messages file.");
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable-length integer.");
+	}
+
+	private static int readVarInt(DataInputStream in) throws IOException {
+		long value = readVarLong(in);
+		if (value < 0 || value > Integer.MAX_VALUE) {
+			throw new IOException("Number out of range: " + value);
+		}
+		return (int) value;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readVarInt(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,435 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.db;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Base64;
+import org.zaproxy.zap.extension.websocket.WebSocketChannelDTO;
+import org.zaproxy.zap.extension.websocket.WebSocketMessage;
+import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+
+/**
+ * {@link WebSocketMessagesFormat#JSON_LINES JSON Lines} format, for example:
+ * 
+ * <pre>
+ * {"type":"channel","id":1,"host":"example.com","port":80,"url":"ws://example.com/","start":1500000000000,"end":null}
+ * {"type":"message","channel":1,"id":1,"timestamp":1500000000001,"opcode":1,"outgoing":true,"length":5,"payload":"Hello"}
+ * {"type":"message","channel":1,"id":2,"timestamp":1500000000002,"opcode":2,"outgoing":false,"length":2,"payloadBase64":"AAE="}
+ * </pre>
+ * 
+ * The objects are flat, written and parsed here, as general purpose JSON
+ * libraries might interpret payloads that look like JSON themselves.
+ */
+final class JsonLinesFormat {
+
+	private static final String TYPE_CHANNEL = "channel";
+	private static final String TYPE_MESSAGE = "message";
+
+	private JsonLinesFormat() {
+	}
+
+	static class Writer implements WebSocketMessagesFormat.RecordWriter {
+
+		private final BufferedWriter out;
+
+		private final StringBuilder line;
+
+		Writer(OutputStream out) {
+			this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+			this.line = new StringBuilder(256);
+		}
+
+		@Override
+		public void writeChannel(WebSocketChannelDTO channel) throws IOException {
+			line.setLength(0);
+			line.append("{\"type\":\"").append(TYPE_CHANNEL).append('"');
+			appendField("id", channel.id);
+			appendField("host", channel.host);
+			appendField("port", channel.port);
+			appendField("url", channel.url);
+			appendField("start", channel.startTimestamp);
+			appendField("end", channel.endTimestamp);
+			writeLine();
+		}
+
+		@Override
+		public void writeMessage(WebSocketMessageDTO message) throws IOException {
+			line.setLength(0);
+			line.append("{\"type\":\"").append(TYPE_MESSAGE).append('"');
+			appendField("channel", message.channel.id);
+			appendField("id", message.id);
+			appendField("timestamp", message.timestamp);
+			appendField("opcode", message.opcode);
+			appendField("outgoing", message.isOutgoing);
+			appendField("length", message.payloadLength);
+			if (message.payload instanceof byte[]) {
+				appendField("payloadBase64", Base64.encodeBase64String((byte[]) message.payload));
+			} else {
+				appendField("payload", (String) message.payload);
+			}
+			writeLine();
+		}
+
+		private void appendField(String name, Object value) {
+			line.append(",\"").append(name).append("\":");
+			if (value == null || value instanceof Number || value instanceof Boolean) {
+				line.append(value);
+			} else {
+				appendString(value.toString());
+			}
+		}
+
+		private void appendString(String value) {
+			line.append('"');
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				switch (c) {
+				case '"':
+					line.append("\\\"");
+					break;
+				case '\\':
+					line.append("\\\\");
+					break;
+				case '\n':
+					line.append("\\n");
+					break;
+				case '\r':
+					line.append("\\r");
+					break;
+				case '\t':
+					line.append("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						line.append(String.format("\\u%04x", (int) c));
+					} else {
+						line.append(c);
+					}
+				}
+			}
+			line.append('"');
+		}
+
+		private void writeLine() throws IOException {
+			line.append("}\n");
+			out.append(line);
+		}
+
+		@Override
+		public void finish() throws IOException {
+			out.flush();
+		}
+	}
+
+	static class Reader implements WebSocketMessagesFormat.RecordReader {
+
+		private final BufferedReader in;
+
+		private int lineNumber;
+
+		/**
+		 * First message, read while looking for further channels.
+		 */
+		private Map<String, Object> pendingMessage;
+
+		Reader(InputStream in) {
+			this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+		}
+
+		@Override
+		public List<WebSocketChannelDTO> readChannels() throws IOException {
+			List<WebSocketChannelDTO> channels = new ArrayList<>();
+			Map<String, Object> record;
+			while ((record = readRecord()) != null) {
+				if (!TYPE_CHANNEL.equals(record.get("type"))) {
+					pendingMessage = record;
+					break;
+				}
+
+				WebSocketChannelDTO channel = new WebSocketChannelDTO();
+				channel.id = getInt(record, "id");
+				channel.host = getString(record, "host");
+				channel.port = getInt(record, "port");
+				channel.url = getString(record, "url");
+				channel.startTimestamp = getLong(record, "start");
+				Object end = record.get("end");
+				channel.endTimestamp = (end != null) ? getLong(record, "end") : null;
+				channels.add(channel);
+			}
+			return channels;
+		}
+
+		@Override
+		public WebSocketMessageDTO readMessage() throws IOException {
+			Map<String, Object> record = pendingMessage;
+			if (record != null) {
+				pendingMessage = null;
+			} else {
+				record = readRecord();
+				if (record == null) {
+					return null;
+				}
+			}
+
+			if (!TYPE_MESSAGE.equals(record.get("type"))) {
+				throw new IOException("Line " + lineNumber + ": expected a message, channels have to come first.");
+			}
+
+			WebSocketChannelDTO channel = new WebSocketChannelDTO();
+			channel.id = getInt(record, "channel");
+			WebSocketMessageDTO message = new WebSocketMessageDTO(channel);
+			message.id = getInt(record, "id");
+			message.timestamp = getLong(record, "timestamp");
+			message.opcode = getInt(record, "opcode");
+			message.readableOpcode = WebSocketMessage.opcode2string(message.opcode);
+			message.isOutgoing = getBoolean(record, "outgoing");
+			message.payloadLength = getInt(record, "length");
+			if (record.containsKey("payloadBase64")) {
+				message.payload = Base64.decodeBase64(getString(record, "payloadBase64"));
+			} else {
+				message.payload = getString(record, "payload");
+			}
+			return message;
+		}
+
+		private Map<String, Object> readRecord() throws IOException {
+			String line;
+			do {
+				line = in.readLine();
+				if (line == null) {
+					return null;
+				}
+				lineNumber++;
+			} while (line.trim().isEmpty());
+
+			return new ObjectParser(line, lineNumber).parse();
+		}
+
+		private String getString(Map<String, Object> record, String name) throws IOException {
+			Object value = record.get(name);
+			if (!(value instanceof String)) {
+				throw new IOException("Line " + lineNumber + ": expected a string for \"" + name + "\".");
+			}
+			return (String) value;
+		}
+
+		private long getLong(Map<String, Object> record, String name) throws IOException {
+			Object value = record.get(name);
+			if (!(value instanceof Long)) {
+				throw new IOException("Line " + lineNumber + ": expected a number for \"" + name + "\".");
+			}
+			return (Long) value;
+		}
+
+		private int getInt(Map<String, Object> record, String name) throws IOException {
+			long value = getLong(record, name);
+			if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+				throw new IOException("Line " + lineNumber + ": number out of range for \"" + name + "\".");
+			}
+			return (int) value;
+		}
+
+		private boolean getBoolean(Map<String, Object> record, String name) throws IOException {
+			Object value = record.get(name);
+			if (!(value instanceof Boolean)) {
+				throw new IOException("Line " + lineNumber + ": expected a boolean for \"" + name + "\".");
+			}
+			return (Boolean) value;
+		}
+	}
+
+	/**
+	 * Parses a JSON object whose values are strings, integers, booleans or
+	 * {@code null}.
+	 */
+	private static class ObjectParser {
+
+		private final String text;
+
+		private final int lineNumber;
+
+		private int pos;
+
+		ObjectParser(String text, int lineNumber) {
+			this.text = text;
+			this.lineNumber = lineNumber;
+		}
+
+		Map<String, Object> parse() throws IOException {
+			Map<String, Object> values = new HashMap<>();
+			expect('{');
+			if (peek() == '}') {
+				pos++;
+			} else {
+				do {
+					String name = parseString();
+					expect(':');
+					values.put(name, parseValue());
+				} while (consume(','));
+				expect('}');
+			}
+			if (peek() != -1) {
+				throw error("unexpected content after the object");
+			}
+			return values;
+		}
+
+		private Object parseValue() throws IOException {
+			int c = peek();
+			if (c == '"') {
+				return parseString();
+			}
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				return parseNumber();
+			}
+			if (text.startsWith("true", pos)) {
+				pos += 4;
+				return Boolean.TRUE;
+			}
+			if (text.startsWith("false", pos)) {
+				pos += 5;
+				return Boolean.FALSE;
+			}
+			if (text.startsWith("null", pos)) {
+				pos += 4;
+				return null;
+			}
+			throw error("unsupported value");
+		}
+
+		private Long parseNumber() throws IOException {
+			int start = pos;
+			if (text.charAt(pos) == '-') {
+				pos++;
+			}
+			while (pos < text.length() && text.charAt(pos) >= '0' && text.charAt(pos) <= '9') {
+				pos++;
+			}
+			try {
+				return Long.valueOf(text.substring(start, pos));
+			} catch (NumberFormatException e) {
+				throw error("invalid number");
+			}
+		}
+
+		private String parseString() throws IOException {
+			expect('"');
+			StringBuilder value = null;
+			int start = pos;
+			while (pos < text.length()) {
+				char c = text.charAt(pos);
+				if (c == '"') {
+					String result = (value == null) ? text.substring(start, pos) : value.append(text, start, pos).toString();
+					pos++;
+					return result;
+				}
+				if (c != '\\') {
+					pos++;
+					continue;
+				}
+
+				if (value == null) {
+					value = new StringBuilder(text.length() - start);
+				}
+				value.append(text, start, pos);
+				if (pos + 1 >= text.length()) {
+					break;
+				}
+				char escaped = text.charAt(pos + 1);
+				pos += 2;
+				switch (escaped) {
+				case '"':
+				case '\\':
+				case '/':
+					value.append(escaped);
+					break;
+				case 'b':
+					value.append('\b');
+					break;
+				case 'f':
+					value.append('\f');
+					break;
+				case 'n':
+					value.append('\n');
+					break;
+				case 'r':
+					value.append('\r');
+					break;
+				case 't':
+					value.append('\t');
+					break;
+				case 'u':
+					if (pos + 4 > text.length()) {
+						throw error("invalid unicode escape");
+					}
+					try {
+						value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+					} catch (NumberFormatException e) {
+						throw error("invalid unicode escape");
+					}
+					pos += 4;
+					break;
+				default:
+					throw error("invalid escape");
+				}
+				start = pos;
+			}
+			throw error("unterminated string");
+		}
+
+		private boolean consume(char c) {
+			if (peek() == c) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(char c) throws IOException {
+			if (!consume(c)) {
+				throw error("expected '" + c + "'");
+			}
+		}
+
+		/**
+		 * @return the next character, after whitespace, or -1 at the end
+		 */
+		private int peek() {
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+				pos++;
+			}
+			return (pos < text.length()) ? text.charAt(pos) : -1;
+		}
+
+		private IOException error(String message) {
+			return new IOException("Line " + lineNumber + ", column " + (pos + 1) + ": " + message + ".");
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.db;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Splits text payloads into the words stored in the payload search index, and
+ * search queries into the words (prefixes) looked up in it.
+ * <p>
+ * A word is a sequence of letters, digits or underscores, compared case
+ * insensitively. Words shorter than {@link #MIN_TOKEN_LENGTH} are not indexed,
+ * longer than {@link #MAX_TOKEN_LENGTH} are truncated.
+ */
+public final class PayloadTokenizer {
+
+	/**
+	 * Shorter words would match most of the messages, not worth indexing.
+	 */
+	public static final int MIN_TOKEN_LENGTH = 2;
+
+	/**
+	 * Size of the token column.
+	 */
+	public static final int MAX_TOKEN_LENGTH = 64;
+
+	/**
+	 * Number of characters of a payload that are indexed.
+	 */
+	public static final int MAX_INDEXED_LENGTH = 1024 * 1024;
+
+	/**
+	 * Maximum number of distinct words indexed per payload.
+	 */
+	public static final int MAX_TOKENS = 10000;
+
+	private PayloadTokenizer() {
+	}
+
+	/**
+	 * @param text payload or search query
+	 * @return distinct words, lower case, in order of appearance
+	 */
+	public static Set<String> tokenize(CharSequence text) {
+		return tokenize(text, MAX_INDEXED_LENGTH, MAX_TOKENS);
+	}
+
+	static Set<String> tokenize(CharSequence text, int maxLength, int maxTokens) {
+		Set<String> tokens = new LinkedHashSet<>();
+		if (text == null) {
+			return tokens;
+		}
+
+		int length = Math.min(text.length(), maxLength);
+		StringBuilder token = new StringBuilder(MAX_TOKEN_LENGTH);
+		for (int i = 0; i <= length && tokens.size() < maxTokens; i++) {
+			char c = (i < length) ? text.charAt(i) : ' ';
+			if (Character.isLetterOrDigit(c) || c == '_') {
+				if (token.length() < MAX_TOKEN_LENGTH) {
+					token.append(Character.toLowerCase(c));
+				}
+			} else if (token.length() > 0) {
+				if (token.length() >= MIN_TOKEN_LENGTH) {
+					tokens.add(token.toString());
+				}
+				token.setLength(0);
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Tells whether or not the given payload matches the search query, i.e.
+	 * every word of the query is the beginning of a word of the payload. Same
+	 * semantic as the search done in the database.
+	 *
+	 * @param payload
+	 * @param queryTokens the result of {@link #tokenize(CharSequence)} for the
+	 *            query
+	 * @return true if all query words were found, or if there are none
+	 */
+	public static boolean matches(CharSequence payload, Set<String> queryTokens) {
+		if (queryTokens.isEmpty()) {
+			return true;
+		}
+
+		Set<String> tokens = tokenize(payload);
+		for (String queryToken : queryTokens) {
+			if (!containsPrefix(tokens, queryToken)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean containsPrefix(Set<String> tokens, String prefix) {
+		for (String token : tokens) {
+			if (token.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param prefix
+	 * @return the smallest string greater than all words starting with the
+	 *         given prefix, to look them up with a range in the index
+	 */
+	static String getUpperBound(String prefix) {
+		return prefix + Character.MAX_VALUE;
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ * 
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0 
+ *   
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ */
+package org.zaproxy.zap.extension.websocket.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Converts the payloads to and from the form they are stored in the database: truncated to a maximum number of bytes
+ * and optionally compressed.
+ */
+final class StoredPayloadCodec {
+
+	/**
+	 * The payload is stored as is, text in the {@code payload_utf8} column and binary in the {@code payload_bytes}
+	 * column.
+	 */
+	static final int ENCODING_PLAIN = 0;
+
+	/**
+	 * The (UTF-8) bytes of the payload are stored compressed with deflate in the {@code payload_bytes} column, for
+	 * both text and binary messages.
+	 */
+	static final int ENCODING_DEFLATE = 1;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private StoredPayloadCodec() {
+	}
+
+	/**
+	 * Truncates the given text such that it's at most {@code maxBytes} long when encoded in UTF-8, without splitting
+	 * characters.
+	 *
+	 * @param text the text to truncate
+	 * @param maxBytes the maximum number of UTF-8 bytes
+	 * @return the text itself, if not longer than allowed, or its longest prefix that is not
+	 */
+	static String truncateUtf8(String text, int maxBytes) {
+		if (text.length() * 3L <= maxBytes) {
+			// 3 bytes at most per char (4 per surrogate pair)
+			return text;
+		}
+
+		int bytes = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			int charBytes;
+			int chars = 1;
+			if (c < 0x80) {
+				charBytes = 1;
+			} else if (c < 0x800) {
+				charBytes = 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+					&& Character.isLowSurrogate(text.charAt(i + 1))) {
+				charBytes = 4;
+				chars = 2;
+			} else {
+				charBytes = 3;
+			}
+
+			if (bytes + charBytes > maxBytes) {
+				return text.substring(0, i);
+			}
+			bytes += charBytes;
+			i += chars - 1;
+		}
+		return text;
+	}
+
+	/**
+	 * Truncates the given bytes to at most {@code maxBytes}.
+	 *
+	 * @return the bytes themselves, if not longer than allowed, or a copy of the first {@code maxBytes}
+	 */
+	static byte[] truncate(byte[] bytes, int maxBytes) {
+		if (bytes.length <= maxBytes) {
+			return bytes;
+		}
+		return Arrays.copyOf(bytes, maxBytes);
+	}
+
+	static byte[] deflate(String text) {
+		return deflate(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	static byte[] deflate(byte[] bytes) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 2));
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(out, deflater, BUFFER_SIZE)) {
+			deflaterStream.write(bytes);
+		} catch (IOException e) {
+			// Not thrown by ByteArrayOutputStream.
+			throw new IllegalStateException(e);
+		} finally {
+			deflater.end();
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Reads and inflates the given compressed stream.
+	 *
+	 * @param compressed the stream with the deflated bytes, closed by this method
+	 * @param maxBytes the maximum number of bytes to inflate, -1 to inflate all
+	 * @return the inflated bytes
+	 * @throws IOException if an error occurred while reading or inflating the stream
+	 */
+	static byte[] inflate(InputStream compressed, int maxBytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+		try (InputStream in = new InflaterInputStream(compressed)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int remaining = maxBytes < 0 ? Integer.MAX_VALUE : maxBytes;
+			int read;
+			while (remaining > 0 && (read = in.read(buffer, 0, Math.min(buffer.length, remaining))) != -1) {
+				out.write(buffer, 0, read);
+				remaining -= read;
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes the given (inflated) bytes of a text payload.
+	 *
+	 * @param bytes the UTF-8 bytes
+	 * @param maxChars the maximum number of characters, -1 for all
+	 */
+	static String decodeText(byte[] bytes, int maxChars) {
+		String text = new String(bytes, StandardCharsets.UTF_8);
+		if (maxChars >= 0 && text.length() > maxChars) {
+			return text.substring(0, maxChars);
+		}
+		return text;
+	}
+}
@@ -17,21 +17,29 @@
  */
 package org.zaproxy.zap.extension.websocket.db;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.sql.Blob;
 import java.sql.Clob;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterInputStream;
 
 import org.apache.commons.collections.map.LRUMap;
 import org.apache.log4j.Logger;
@@ -45,6 +53,8 @@ import org.zaproxy.zap.extension.websocket.WebSocketChannelDTO;
 import org.zaproxy.zap.extension.websocket.WebSocketFuzzMessageDTO;
 import org.zaproxy.zap.extension.websocket.WebSocketMessage;
 import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+import org.zaproxy.zap.extension.websocket.WebSocketPayloadSpool;
+import org.zaproxy.zap.extension.websocket.ui.OptionsParamWebSocket;
 
 /**
  * Manages writing and reading WebSocket messages to the database.
@@ -69,13 +79,63 @@ public class TableWebSocket extends ParosAbstractTable {
 
 	private PreparedStatement psInsertFuzz;
 	
+	private PreparedStatement psInsertToken;
+	
 	private PreparedStatement psSelectMessage;
+	private PreparedStatement psSelectMessagesAfter;
 	
 	private PreparedStatement psSelectMaxChannelId;
+	
+	private PreparedStatement psSelectMessagesOlderThan;
+	private PreparedStatement psSelectChannelsExceedingMessages;
+	private PreparedStatement psSelectOldestMessagesOfChannel;
+	private PreparedStatement psSelectOldestMessages;
+	private PreparedStatement psSelectStoredPayloadsSize;
+	private PreparedStatement psDeleteMessage;
+	
+	/**
+	 * Statements of the message queries built on the fly, keyed by their SQL,
+	 * i.e. by the shape of the criteria. Re-used instead of being prepared for
+	 * each page or count.
+	 */
+	private LRUMap messageQueryStatements;
+	
+	/**
+	 * Maximum number of cached message query statements.
+	 */
+	private static final int MESSAGE_QUERY_STATEMENTS_CACHE_SIZE = 32;
 
 	private Queue<WebSocketMessageDTO> messagesBuffer = new LinkedList<>();
 	private Queue<WebSocketChannelDTO> channelsBuffer = new LinkedList<>();
 	
+	/**
+	 * Size of the payload columns.
+	 */
+	private static final long MAX_PAYLOAD_LENGTH = 16 * 1024 * 1024;
+	
+	/**
+	 * Streams of spooled payloads, set as parameters of the current statement.
+	 */
+	private final List<InputStream> openPayloadStreams = new ArrayList<>();
+	
+	/**
+	 * Size of the stored payloads, see {@link #getStoredPayloadsSize()},
+	 * maintained on insert and delete. Negative if not (yet) known.
+	 * Guarded by {@code this}.
+	 */
+	private long storedPayloadsSize = -1;
+	
+	/**
+	 * The maximum stored payload length {@link #storedPayloadsSize} was
+	 * computed with.
+	 */
+	private int storedPayloadsSizeMaxLength;
+	
+	/**
+	 * Determines how payloads are stored, might be {@code null}.
+	 */
+	private volatile OptionsParamWebSocket options;
+	
     /**
      * Create tables if not already available
      */
@@ -106,6 +166,7 @@ public class TableWebSocket extends ParosAbstractTable {
 								+ "payload_bytes BLOB(16M) NULL,"
 								+ "payload_length BIGINT NOT NULL,"
 								+ "is_outgoing BOOLEAN NOT NULL,"
+								+ "payload_encoding TINYINT DEFAULT 0 NOT NULL,"
 								+ "PRIMARY KEY (message_id, channel_id),"
 								+ "FOREIGN KEY (channel_id) REFERENCES websocket_channel(channel_id)"
 								+ ")");
@@ -132,8 +193,31 @@ public class TableWebSocket extends ParosAbstractTable {
 				channelIds = null;
 			}
 			
+			if (!DbUtils.hasTable(conn, "WEBSOCKET_MESSAGE_TOKEN")) {
+				// words of the text payloads, messages stored before are not searchable
+				PreparedStatement stmt = conn.prepareStatement("CREATE CACHED TABLE websocket_message_token ("
+								+ "token VARCHAR(" + PayloadTokenizer.MAX_TOKEN_LENGTH + ") NOT NULL,"
+								+ "channel_id BIGINT NOT NULL,"
+								+ "message_id BIGINT NOT NULL,"
+								+ "PRIMARY KEY (token, channel_id, message_id),"
+								+ "FOREIGN KEY (message_id, channel_id) REFERENCES websocket_message(message_id, channel_id) ON DELETE CASCADE"
+								+ ")");
+				DbUtils.executeAndClose(stmt);
+			}
+			
+			if (!DbUtils.hasColumn(conn, "WEBSOCKET_MESSAGE", "PAYLOAD_ENCODING")) {
+				// how the payload is stored, see StoredPayloadCodec
+				DbUtils.executeAndClose(conn.prepareStatement("ALTER TABLE websocket_message "
+						+ "ADD COLUMN payload_encoding TINYINT DEFAULT 0 NOT NULL"));
+			}
+			
+			createIndexesIfMissing(conn);
+			
 			channelCache = new LRUMap(20);
 			
+			closeMessageQueryStatements();
+			messageQueryStatements = new StatementsCache(MESSAGE_QUERY_STATEMENTS_CACHE_SIZE);
+			
 			// CHANNEL
 			psSelectMaxChannelId = conn.prepareStatement("SELECT MAX(c.channel_id) as channel_id "
 					+ "FROM websocket_channel AS c");
@@ -159,6 +243,13 @@ public class TableWebSocket extends ParosAbstractTable {
 					+ "WHERE channel_id = ?");
 			
 			// MESSAGE
+			// seeks with the primary key index, the first condition bounds the scan
+			psSelectMessagesAfter = conn.prepareStatement("SELECT m.* "
+					+ "FROM websocket_message AS m "
+					+ "WHERE m.message_id >= ? AND (m.message_id > ? OR m.channel_id > ?) "
+					+ "ORDER BY m.message_id, m.channel_id "
+					+ "LIMIT ?");
+			
 			psSelectMessage = conn.prepareStatement("SELECT m.*, f.fuzz_id, f.state, f.fuzz "
 					+ "FROM websocket_message AS m "
 					+ "LEFT OUTER JOIN websocket_message_fuzz f "
@@ -166,16 +257,52 @@ public class TableWebSocket extends ParosAbstractTable {
 					+ "WHERE m.message_id = ? AND m.channel_id = ?");
 			
 			psInsertMessage = conn.prepareStatement("INSERT INTO "
-					+ "websocket_message (message_id, channel_id, timestamp, opcode, payload_utf8, payload_bytes, payload_length, is_outgoing) "
-					+ "VALUES (?,?,?,?,?,?,?,?)");
+					+ "websocket_message (message_id, channel_id, timestamp, opcode, payload_utf8, payload_bytes, payload_length, is_outgoing, payload_encoding) "
+					+ "VALUES (?,?,?,?,?,?,?,?,?)");
 			
 			psInsertFuzz = conn.prepareStatement("INSERT INTO "
 					+ "websocket_message_fuzz (fuzz_id, message_id, channel_id, state, fuzz) "
 					+ "VALUES (?,?,?,?,?)");
 			
+			psInsertToken = conn.prepareStatement("INSERT INTO "
+					+ "websocket_message_token (token, channel_id, message_id) "
+					+ "VALUES (?,?,?)");
+			
 			psDeleteMessagesByChannelId = conn.prepareStatement("DELETE FROM websocket_message "
 					+ "WHERE channel_id = ?");
 			
+			// RETENTION
+			psSelectMessagesOlderThan = conn.prepareStatement("SELECT m.channel_id, m.message_id, LEAST(m.payload_length, ?) "
+					+ "FROM websocket_message AS m "
+					+ "WHERE m.timestamp < ? "
+					+ "ORDER BY m.timestamp "
+					+ "LIMIT ?");
+			
+			psSelectChannelsExceedingMessages = conn.prepareStatement("SELECT m.channel_id, COUNT(m.message_id) "
+					+ "FROM websocket_message AS m "
+					+ "GROUP BY m.channel_id "
+					+ "HAVING COUNT(m.message_id) > ?");
+			
+			psSelectOldestMessagesOfChannel = conn.prepareStatement("SELECT m.channel_id, m.message_id, LEAST(m.payload_length, ?) "
+					+ "FROM websocket_message AS m "
+					+ "WHERE m.channel_id = ? "
+					+ "ORDER BY m.timestamp, m.message_id "
+					+ "LIMIT ?");
+			
+			psSelectOldestMessages = conn.prepareStatement("SELECT m.channel_id, m.message_id, LEAST(m.payload_length, ?) "
+					+ "FROM websocket_message AS m "
+					+ "ORDER BY m.timestamp, m.channel_id, m.message_id "
+					+ "LIMIT ?");
+			
+			psSelectStoredPayloadsSize = conn.prepareStatement("SELECT SUM(LEAST(m.payload_length, ?)) "
+					+ "FROM websocket_message AS m");
+			synchronized (this) {
+				storedPayloadsSize = -1;
+			}
+			
+			psDeleteMessage = conn.prepareStatement("DELETE FROM websocket_message "
+					+ "WHERE channel_id = ? AND message_id = ?");
+			
 			if (channelIds == null) {
 				channelIds = new HashSet<>();
 				PreparedStatement psSelectChannelIds = conn.prepareStatement("SELECT c.channel_id "
@@ -203,6 +330,48 @@ public class TableWebSocket extends ParosAbstractTable {
 		}
     }
 
+    /**
+     * Creates the indexes used by the message queries, if not yet available
+     * (e.g. older sessions).
+     * 
+     * @param conn
+     * @throws SQLException
+     */
+	private static void createIndexesIfMissing(Connection conn) throws SQLException {
+		// used to page through all messages
+		createIndexIfMissing(conn, "WEBSOCKET_MESSAGE_TIMESTAMP", "websocket_message (timestamp, channel_id, message_id)");
+		// used to page through the messages of one channel
+		createIndexIfMissing(conn, "WEBSOCKET_MESSAGE_CHANNEL_TIMESTAMP", "websocket_message (channel_id, timestamp)");
+		createIndexIfMissing(conn, "WEBSOCKET_MESSAGE_OPCODE", "websocket_message (opcode)");
+		createIndexIfMissing(conn, "WEBSOCKET_MESSAGE_OUTGOING", "websocket_message (is_outgoing)");
+	}
+
+	private static void createIndexIfMissing(Connection conn, String name, String columns) throws SQLException {
+		if (!DbUtils.hasIndex(conn, "WEBSOCKET_MESSAGE", name)) {
+			DbUtils.executeAndClose(conn.prepareStatement("CREATE INDEX " + name + " ON " + columns));
+		}
+	}
+
+	private void closeMessageQueryStatements() {
+		if (messageQueryStatements == null) {
+			return;
+		}
+		for (Object stmt : messageQueryStatements.values()) {
+			closeStatement((PreparedStatement) stmt);
+		}
+		messageQueryStatements.clear();
+	}
+
+	private static void closeStatement(PreparedStatement stmt) {
+		try {
+			stmt.close();
+		} catch (SQLException e) {
+			if (logger.isDebugEnabled()) {
+				logger.debug(e.getMessage(), e);
+			}
+		}
+	}
+
     /**
 	 * Prepares a {@link PreparedStatement} instance on the fly.
 	 * 
@@ -227,16 +396,11 @@ public class TableWebSocket extends ParosAbstractTable {
 	public synchronized int getMessageCount(WebSocketMessageDTO criteria, List<Integer> opcodes, List<Integer> inScopeChannelIds) throws DatabaseException {
 		try {
 			String query = "SELECT COUNT(m.message_id) FROM websocket_message AS m "
-					+ "LEFT OUTER JOIN websocket_message_fuzz f "
-					+ "ON m.message_id = f.message_id AND m.channel_id = f.channel_id "
+					+ getFuzzJoin(criteria)
 					+ "<where> ";
 			
 			PreparedStatement stmt = buildMessageCriteriaStatement(query, criteria, opcodes, inScopeChannelIds);
-			try {
-				return executeAndGetSingleIntValue(stmt);
-			} finally {
-				stmt.close();
-			}
+			return executeAndGetSingleIntValue(stmt);
 		} catch (SQLException e) {
 			throw new DatabaseException(e);
 		}
@@ -260,19 +424,14 @@ public class TableWebSocket extends ParosAbstractTable {
 		try {
 			String query = "SELECT COUNT(m.message_id) "
 					+ "FROM websocket_message AS m "
-					+ "LEFT OUTER JOIN websocket_message_fuzz f "
-					+ "ON m.message_id = f.message_id AND m.channel_id = f.channel_id "
+					+ getFuzzJoin(criteria)
 					+ "<where> AND m.message_id < ?";
 			PreparedStatement stmt = buildMessageCriteriaStatement(query, criteria, opcodes, inScopeChannelIds);
 			
 			int paramsCount = stmt.getParameterMetaData().getParameterCount();
 			stmt.setInt(paramsCount, criteria.id);
 
-			try {
-				return executeAndGetSingleIntValue(stmt);
-			} finally {
-				stmt.close();
-			}
+			return executeAndGetSingleIntValue(stmt);
 		} catch (SQLException e) {
 			throw new DatabaseException(e);
 		}
@@ -294,8 +453,30 @@ public class TableWebSocket extends ParosAbstractTable {
 		}
 	}
 
+	/**
+	 * The join with the fuzz table is only needed to filter by fuzz id, as
+	 * counts do not return any fuzz columns.
+	 * 
+	 * @param criteria
+	 * @return the join or an empty string
+	 */
+	private static String getFuzzJoin(WebSocketMessageDTO criteria) {
+		if (criteria instanceof WebSocketFuzzMessageDTO && ((WebSocketFuzzMessageDTO) criteria).fuzzId != null) {
+			return "LEFT OUTER JOIN websocket_message_fuzz f "
+					+ "ON m.message_id = f.message_id AND m.channel_id = f.channel_id ";
+		}
+		return "";
+	}
+
 	/**
 	 * Retrieves list of {@link WebSocketMessageDTO}, but loads only parts of the payload.
+	 * <p>
+	 * A {@code String} payload of the {@code criteria} is searched as words,
+	 * see {@link PayloadTokenizer}.
+	 * <p>
+	 * Prefer {@link #getMessages(WebSocketMessageDTO, List, List, WebSocketMessageDTO, int, int)}
+	 * when paging sequentially, as the database has to skip all rows before
+	 * the {@code offset}.
 	 * 
 	 * @param criteria
 	 * @param opcodes
@@ -309,7 +490,7 @@ public class TableWebSocket extends ParosAbstractTable {
 	public synchronized List<WebSocketMessageDTO> getMessages(WebSocketMessageDTO criteria, List<Integer> opcodes, List<Integer> inScopeChannelIds, int offset, int limit, int payloadPreviewLength) throws DatabaseException {
 		try {
 			String query = "SELECT m.message_id, m.channel_id, m.timestamp, m.opcode, m.payload_length, m.is_outgoing, "
-					+ "m.payload_utf8, m.payload_bytes, "
+					+ "m.payload_utf8, m.payload_bytes, m.payload_encoding, "
 					+ "f.fuzz_id, f.state, f.fuzz "
 					+ "FROM websocket_message AS m "
 					+ "LEFT OUTER JOIN websocket_message_fuzz f "
@@ -330,22 +511,126 @@ public class TableWebSocket extends ParosAbstractTable {
 				throw e;
 			}
 			
+			int paramsCount = stmt.getParameterMetaData().getParameterCount();
+			stmt.setInt(paramsCount - 1, limit);
+			stmt.setInt(paramsCount, offset);
+			
+			stmt.execute();
+			
+			return buildMessageDTOs(stmt.getResultSet(), true, payloadPreviewLength);
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	}
+
+	/**
+	 * Retrieves the messages that follow the given one, in the same order as
+	 * {@link #getMessages(WebSocketMessageDTO, List, List, int, int, int)},
+	 * but loads only parts of the payload.
+	 * <p>
+	 * Instead of skipping rows with an offset it seeks to the key (timestamp,
+	 * channel and message id) of the given message using the indexes, so that
+	 * the cost of a page does not depend on its position.
+	 * 
+	 * @param criteria
+	 * @param opcodes
+	 * @param inScopeChannelIds
+	 * @param previous last message of the previous page
+	 * @param limit
+	 * @param payloadPreviewLength
+	 * @return Messages that fulfill given template and follow {@code previous}.
+	 * @throws DatabaseException
+	 */
+	public synchronized List<WebSocketMessageDTO> getMessages(WebSocketMessageDTO criteria, List<Integer> opcodes, List<Integer> inScopeChannelIds, WebSocketMessageDTO previous, int limit, int payloadPreviewLength) throws DatabaseException {
+		try {
+			String query = "SELECT m.message_id, m.channel_id, m.timestamp, m.opcode, m.payload_length, m.is_outgoing, "
+					+ "m.payload_utf8, m.payload_bytes, m.payload_encoding, "
+					+ "f.fuzz_id, f.state, f.fuzz "
+					+ "FROM websocket_message AS m "
+					+ "LEFT OUTER JOIN websocket_message_fuzz f "
+					+ "ON m.message_id = f.message_id AND m.channel_id = f.channel_id "
+					+ "<where> AND m.timestamp >= ? "
+					+ "AND (m.timestamp > ? OR m.channel_id > ? OR (m.channel_id = ? AND m.message_id > ?)) "
+					+ "ORDER BY m.timestamp, m.channel_id, m.message_id "
+					+ "LIMIT ?";
+
+			PreparedStatement stmt;
 			try {
-				int paramsCount = stmt.getParameterMetaData().getParameterCount();
-				stmt.setInt(paramsCount - 1, limit);
-				stmt.setInt(paramsCount, offset);
-				
-				stmt.execute();
+				stmt = buildMessageCriteriaStatement(query, criteria, opcodes, inScopeChannelIds);
+			} catch (SQLException e) {
+				if (getConnection().isClosed()) {
+					return new ArrayList<>(0);
+				}
 				
-				return buildMessageDTOs(stmt.getResultSet(), true, payloadPreviewLength);
-			} finally {
-				stmt.close();
+				throw e;
 			}
+			
+			Timestamp timestamp = new Timestamp(previous.timestamp);
+			int paramsCount = stmt.getParameterMetaData().getParameterCount();
+			stmt.setTimestamp(paramsCount - 5, timestamp);
+			stmt.setTimestamp(paramsCount - 4, timestamp);
+			stmt.setInt(paramsCount - 3, previous.channel.id);
+			stmt.setInt(paramsCount - 2, previous.channel.id);
+			stmt.setInt(paramsCount - 1, previous.id);
+			stmt.setInt(paramsCount, limit);
+			
+			stmt.execute();
+			
+			return buildMessageDTOs(stmt.getResultSet(), true, payloadPreviewLength);
 		} catch (SQLException e) {
 			throw new DatabaseException(e);
 		}
 	}
 	
+	/**
+	 * Retrieves all messages (of all channels) in the order of their primary
+	 * key, starting after the given key, with their whole payload.
+	 * <p>
+	 * Meant to walk through the whole table in chunks, e.g. to export the
+	 * messages, each chunk seeks to the given key using the primary key index
+	 * (instead of skipping rows with an offset), the lock is held only while a
+	 * chunk is read. The messages reference channels with just their id set
+	 * and do not contain fuzz details.
+	 * 
+	 * @param messageId id of the last message of the previous chunk, -1 to
+	 *            start with the first message
+	 * @param channelId channel id of the last message of the previous chunk
+	 * @param limit maximum number of messages returned
+	 * @return the messages, empty if there are no more
+	 * @throws DatabaseException
+	 */
+	public synchronized List<WebSocketMessageDTO> getMessagesAfter(int messageId, int channelId, int limit) throws DatabaseException {
+		try {
+			psSelectMessagesAfter.setInt(1, messageId);
+			psSelectMessagesAfter.setInt(2, messageId);
+			psSelectMessagesAfter.setInt(3, channelId);
+			psSelectMessagesAfter.setInt(4, limit);
+			psSelectMessagesAfter.execute();
+			
+			List<WebSocketMessageDTO> messages = new ArrayList<>(limit);
+			try (ResultSet rs = psSelectMessagesAfter.getResultSet()) {
+				while (rs.next()) {
+					WebSocketChannelDTO channel = new WebSocketChannelDTO();
+					channel.id = rs.getInt("channel_id");
+					
+					WebSocketMessageDTO message = new WebSocketMessageDTO(channel);
+					message.id = rs.getInt("message_id");
+					// no formatted date, not needed to export
+					message.timestamp = rs.getTimestamp("timestamp").getTime();
+					message.opcode = rs.getInt("opcode");
+					message.readableOpcode = WebSocketMessage.opcode2string(message.opcode);
+					message.payload = readPayload(rs, message.opcode, -1);
+					message.isOutgoing = rs.getBoolean("is_outgoing");
+					message.payloadLength = rs.getInt("payload_length");
+					messages.add(message);
+				}
+			}
+			return messages;
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	}
+
 	private List<WebSocketMessageDTO> buildMessageDTOs(ResultSet rs, boolean interpretLiteralBytes) throws SQLException, DatabaseException {
 		return buildMessageDTOs(rs, interpretLiteralBytes, -1);
 	}
@@ -385,37 +670,7 @@ public class TableWebSocket extends ParosAbstractTable {
 				message.opcode = rs.getInt("opcode");
 				message.readableOpcode = WebSocketMessage.opcode2string(message.opcode);
 				
-				// read payload
-				if (message.opcode == WebSocketMessage.OPCODE_BINARY) {
-					if (payloadLength == -1) {
-						// load all bytes
-						message.payload = rs.getBytes("payload_bytes");
-					} else {
-						Blob blob = rs.getBlob("payload_bytes");
-						int length = Math.min(payloadLength, (int) blob.length());
-						message.payload = blob.getBytes(1, length);
-						blob.free();
-					}
-					
-					if (message.payload == null) {
-						message.payload = new byte[0];
-					}
-				} else {
-					if (payloadLength == -1) {
-						// load all characters
-						message.payload = rs.getString("payload_utf8");
-					} else {
-						Clob clob = rs.getClob("payload_utf8");
-						int length = Math.min(payloadLength, (int) clob.length());
-						message.payload = clob.getSubString(1, length);
-						clob.free();
-					}
-					
-					if (message.payload == null) {
-						message.payload = "";
-					}
-				}
-				
+				message.payload = readPayload(rs, message.opcode, payloadLength);
 				message.isOutgoing = rs.getBoolean("is_outgoing");
 				message.payloadLength = rs.getInt("payload_length");
 				
@@ -430,6 +685,85 @@ public class TableWebSocket extends ParosAbstractTable {
 		return messages;
 	}
 
+	/**
+	 * Reads the payload of the current row, at most the given length.
+	 * 
+	 * @param rs
+	 * @param opcode
+	 * @param payloadLength characters or bytes to read, -1 to read all
+	 * @return {@code String} for text messages, {@code byte[]} for binary ones
+	 * @throws SQLException
+	 */
+	private static Object readPayload(ResultSet rs, int opcode, int payloadLength) throws SQLException {
+		Object payload;
+		if (rs.getInt("payload_encoding") == StoredPayloadCodec.ENCODING_DEFLATE) {
+			payload = readDeflatedPayload(rs, opcode, payloadLength);
+		} else if (opcode == WebSocketMessage.OPCODE_BINARY) {
+			if (payloadLength == -1) {
+				// load all bytes
+				payload = rs.getBytes("payload_bytes");
+			} else {
+				Blob blob = rs.getBlob("payload_bytes");
+				int length = Math.min(payloadLength, (int) blob.length());
+				payload = blob.getBytes(1, length);
+				blob.free();
+			}
+			
+			if (payload == null) {
+				payload = new byte[0];
+			}
+		} else {
+			if (payloadLength == -1) {
+				// load all characters
+				payload = rs.getString("payload_utf8");
+			} else {
+				Clob clob = rs.getClob("payload_utf8");
+				int length = Math.min(payloadLength, (int) clob.length());
+				payload = clob.getSubString(1, length);
+				clob.free();
+			}
+			
+			if (payload == null) {
+				payload = "";
+			}
+		}
+		return payload;
+	}
+
+	/**
+	 * Inflates the compressed payload of the current row, at most the given
+	 * length.
+	 * 
+	 * @param rs
+	 * @param opcode
+	 * @param payloadLength characters or bytes to read, -1 to read all
+	 * @return {@code String} for text messages, {@code byte[]} for binary ones
+	 * @throws SQLException
+	 */
+	private static Object readDeflatedPayload(ResultSet rs, int opcode, int payloadLength) throws SQLException {
+		boolean binary = opcode == WebSocketMessage.OPCODE_BINARY;
+		Blob blob = rs.getBlob("payload_bytes");
+		if (blob == null) {
+			return binary ? new byte[0] : "";
+		}
+		
+		// a character takes at most 4 bytes
+		int maxBytes = (payloadLength == -1) ? -1 : (binary ? payloadLength : payloadLength * 4);
+		byte[] bytes;
+		try {
+			bytes = StoredPayloadCodec.inflate(blob.getBinaryStream(), maxBytes);
+		} catch (IOException e) {
+			throw new SQLException("Failed to inflate the payload: " + e.getMessage(), e);
+		} finally {
+			blob.free();
+		}
+		
+		if (binary) {
+			return bytes;
+		}
+		return StoredPayloadCodec.decodeText(bytes, payloadLength);
+	}
+
 	private WebSocketChannelDTO getChannel(int channelId) throws SQLException, DatabaseException {
 		if (!channelCache.containsKey(channelId)) {
 			WebSocketChannelDTO criteria = new WebSocketChannelDTO();
@@ -460,15 +794,15 @@ public class TableWebSocket extends ParosAbstractTable {
 		}
 		
 		if (opcodes != null && !opcodes.isEmpty()) {
-			StringBuilder opcodeExpr = new StringBuilder("(");
+			StringBuilder opcodeExpr = new StringBuilder("m.opcode IN (");
 			int opcodesCount = opcodes.size();
 			
 			for (int i = 0; i < opcodesCount; i++) {
 				params.add(opcodes.get(i));
 				
-				opcodeExpr.append("m.opcode = ?");
+				opcodeExpr.append("?");
 				if ((i + 1) < opcodesCount) {
-					opcodeExpr.append(" OR ");
+					opcodeExpr.append(",");
 				}
 			}
 			
@@ -505,10 +839,30 @@ public class TableWebSocket extends ParosAbstractTable {
 			}
 		}
 		
+		if (criteria.payload instanceof String) {
+			// each word looked up as prefix in the search index
+			for (String token : PayloadTokenizer.tokenize((String) criteria.payload)) {
+				params.add(token);
+				params.add(PayloadTokenizer.getUpperBound(token));
+				where.add("(m.channel_id, m.message_id) IN ("
+						+ "SELECT t.channel_id, t.message_id FROM websocket_message_token AS t "
+						+ "WHERE t.token >= ? AND t.token < ?)");
+			}
+		}
+		
 		where.trimToSize();
 		params.trimToSize();
 		
-		return buildCriteriaStatementHelper(query, where, params);
+		query = buildCriteriaQuery(query, where);
+		PreparedStatement stmt = (PreparedStatement) messageQueryStatements.get(query);
+		if (stmt == null) {
+			stmt = getConnection().prepareStatement(query);
+			messageQueryStatements.put(query, stmt);
+		} else {
+			stmt.clearParameters();
+		}
+		setParameters(stmt, params);
+		return stmt;
 	}
 
 	public WebSocketMessagePrimaryKey getMessagePrimaryKey(WebSocketMessageDTO message) {
@@ -537,7 +891,7 @@ public class TableWebSocket extends ParosAbstractTable {
 				channel.url = rs.getString("url");
 				channel.startTimestamp = rs.getTimestamp("start_timestamp").getTime();
 				
-				Time endTs = rs.getTime("end_timestamp");
+				Timestamp endTs = rs.getTimestamp("end_timestamp");
 				channel.endTimestamp = (endTs != null) ? endTs.getTime() : null;
 				
 				channel.historyId = rs.getInt("history_id");
@@ -618,6 +972,19 @@ public class TableWebSocket extends ParosAbstractTable {
 	}
 
 	public void insertMessage(WebSocketMessageDTO message) throws DatabaseException {
+		insertMessage(message, true);
+	}
+
+	/**
+	 * Inserts the given message, optionally without adding its words to the
+	 * search index, which is the costly part of storing a text message.
+	 * 
+	 * @param message
+	 * @param indexTokens if false, the words have to be added later with
+	 *            {@link #insertTokens(List)}
+	 * @throws DatabaseException
+	 */
+	public void insertMessage(WebSocketMessageDTO message, boolean indexTokens) throws DatabaseException {
 		try {
 			// synchronize on whole object to avoid race conditions with insertOrUpdateChannel()
 			synchronized (this) {
@@ -640,37 +1007,30 @@ public class TableWebSocket extends ParosAbstractTable {
 						logger.debug("insert message: " + message.toString());
 					}
 
-					psInsertMessage.setInt(1, message.id);
-					psInsertMessage.setInt(2, message.channel.id);
-					psInsertMessage.setTimestamp(3, new Timestamp(message.timestamp));
-					psInsertMessage.setInt(4, message.opcode);
-
-					// write payload
-					if (message.payload instanceof String) {
-						psInsertMessage.setClob(5, new JDBCClob((String) message.payload));
-						psInsertMessage.setNull(6, Types.BLOB);
-					} else if (message.payload instanceof byte[]) {
-						psInsertMessage.setNull(5, Types.CLOB);
-						psInsertMessage.setBlob(6, new JDBCBlob((byte[]) message.payload));
-					} else {
-						throw new SQLException("Attribute 'payload' of class WebSocketMessageDTO has got wrong type!");
+					setInsertMessageParameters(message);
+					try {
+						psInsertMessage.execute();
+					} finally {
+						closePayloadStreams();
 					}
-					
-					psInsertMessage.setInt(7, message.payloadLength);
-					psInsertMessage.setBoolean(8, message.isOutgoing);
-					psInsertMessage.execute();
+					addStoredPayloadsSize(getStoredPayloadSize(message));
 					
 					if (message instanceof WebSocketFuzzMessageDTO) {
-						WebSocketFuzzMessageDTO fuzzMessage = (WebSocketFuzzMessageDTO) message;
-						psInsertFuzz.setInt(1, fuzzMessage.fuzzId);
-						psInsertFuzz.setInt(2, fuzzMessage.id);
-						psInsertFuzz.setInt(3, fuzzMessage.channel.id);
-						psInsertFuzz.setString(4, fuzzMessage.state.toString());
-						psInsertFuzz.setString(5, fuzzMessage.fuzz);
+						setInsertFuzzParameters((WebSocketFuzzMessageDTO) message);
 						psInsertFuzz.execute();
 					}
 					
+					if (indexTokens && addInsertTokensBatch(message, getTokens(message))) {
+						try {
+							psInsertToken.executeBatch();
+						} finally {
+							psInsertToken.clearBatch();
+						}
+					}
+					
 					message = messagesBuffer.poll();
+					// buffered messages were not handed to an indexer
+					indexTokens = true;
 				} while (message != null);
 			}
 		} catch (SQLException e) {
@@ -678,6 +1038,314 @@ public class TableWebSocket extends ParosAbstractTable {
 		}
 	}
 
+	/**
+	 * Inserts all given messages using JDBC batches, i.e. with one round trip
+	 * to the database for the whole list.
+	 * <p>
+	 * Messages of channels that are not (or no longer) stored, e.g. because
+	 * the channel was excluded in the meantime, are skipped.
+	 * 
+	 * @param messages
+	 * @throws DatabaseException
+	 */
+	public void insertMessages(List<WebSocketMessageDTO> messages) throws DatabaseException {
+		if (messages.isEmpty()) {
+			return;
+		}
+		
+		try {
+			// synchronize on whole object to avoid race conditions with insertOrUpdateChannel()
+			synchronized (this) {
+				if (getConnection().isClosed()) {
+					// temporarily buffer messages and write them the next time
+					messagesBuffer.addAll(messages);
+					return;
+				}
+				
+				if (channelsBuffer.size() > 0) {
+					insertOrUpdateChannel(channelsBuffer.poll());
+				}
+				
+				List<WebSocketMessageDTO> batch = new ArrayList<>(messagesBuffer.size() + messages.size());
+				batch.addAll(messagesBuffer);
+				messagesBuffer.clear();
+				batch.addAll(messages);
+				
+				boolean hasFuzzMessages = false;
+				boolean hasTokens = false;
+				long insertedSize = 0;
+				for (WebSocketMessageDTO message : batch) {
+					if (!channelIds.contains(message.channel.id)) {
+						if (logger.isDebugEnabled()) {
+							logger.debug("skip message of channel not stored: " + message.toString());
+						}
+						continue;
+					}
+					
+					setInsertMessageParameters(message);
+					psInsertMessage.addBatch();
+					insertedSize += getStoredPayloadSize(message);
+					
+					if (message instanceof WebSocketFuzzMessageDTO) {
+						setInsertFuzzParameters((WebSocketFuzzMessageDTO) message);
+						psInsertFuzz.addBatch();
+						hasFuzzMessages = true;
+					}
+					
+					hasTokens |= addInsertTokensBatch(message, getTokens(message));
+				}
+				
+				try {
+					psInsertMessage.executeBatch();
+					if (hasFuzzMessages) {
+						psInsertFuzz.executeBatch();
+					}
+					if (hasTokens) {
+						psInsertToken.executeBatch();
+					}
+					addStoredPayloadsSize(insertedSize);
+				} catch (SQLException e) {
+					// not known how many were inserted
+					storedPayloadsSize = -1;
+					throw e;
+				} finally {
+					psInsertMessage.clearBatch();
+					psInsertFuzz.clearBatch();
+					psInsertToken.clearBatch();
+					closePayloadStreams();
+				}
+			}
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	}
+
+	private void setInsertMessageParameters(WebSocketMessageDTO message) throws SQLException {
+		psInsertMessage.setInt(1, message.id);
+		psInsertMessage.setInt(2, message.channel.id);
+		psInsertMessage.setTimestamp(3, new Timestamp(message.timestamp));
+		psInsertMessage.setInt(4, message.opcode);
+
+		// write payload
+		int maxPayloadLength = getMaxStoredPayloadLength();
+		boolean compress = isCompressPayloads();
+		if (message.spooledPayload != null && setSpooledPayloadParameters(message, maxPayloadLength, compress)) {
+			// streamed from spool
+		} else if (message.payload instanceof String) {
+			String payload = StoredPayloadCodec.truncateUtf8((String) message.payload, maxPayloadLength);
+			if (compress) {
+				psInsertMessage.setNull(5, Types.CLOB);
+				psInsertMessage.setBlob(6, new JDBCBlob(StoredPayloadCodec.deflate(payload)));
+			} else {
+				psInsertMessage.setClob(5, new JDBCClob(payload));
+				psInsertMessage.setNull(6, Types.BLOB);
+			}
+		} else if (message.payload instanceof byte[]) {
+			byte[] payload = StoredPayloadCodec.truncate((byte[]) message.payload, maxPayloadLength);
+			psInsertMessage.setNull(5, Types.CLOB);
+			psInsertMessage.setBlob(6, new JDBCBlob(compress ? StoredPayloadCodec.deflate(payload) : payload));
+		} else {
+			throw new SQLException("Attribute 'payload' of class WebSocketMessageDTO has got wrong type!");
+		}
+		
+		psInsertMessage.setInt(7, message.payloadLength);
+		psInsertMessage.setBoolean(8, message.isOutgoing);
+		psInsertMessage.setInt(9, compress ? StoredPayloadCodec.ENCODING_DEFLATE : StoredPayloadCodec.ENCODING_PLAIN);
+	}
+
+	/**
+	 * Sets the options that determine how payloads are stored.
+	 * 
+	 * @param options the options, might be {@code null} to use the defaults
+	 * @see OptionsParamWebSocket#getStorageMaxPayloadSize()
+	 * @see OptionsParamWebSocket#isStorageCompressPayloads()
+	 */
+	public void setOptions(OptionsParamWebSocket options) {
+		this.options = options;
+	}
+
+	/**
+	 * @return maximum number of bytes stored of a payload, as configured but
+	 *         never more than the size of the payload columns
+	 */
+	private int getMaxStoredPayloadLength() {
+		OptionsParamWebSocket currentOptions = options;
+		if (currentOptions == null || currentOptions.getStorageMaxPayloadSize() <= 0) {
+			return (int) MAX_PAYLOAD_LENGTH;
+		}
+		return (int) Math.min(MAX_PAYLOAD_LENGTH, currentOptions.getStorageMaxPayloadSize());
+	}
+
+	private boolean isCompressPayloads() {
+		OptionsParamWebSocket currentOptions = options;
+		return currentOptions != null && currentOptions.isStorageCompressPayloads();
+	}
+
+	/**
+	 * Streams the payload of a big message from its spool into the database,
+	 * instead of reading it into memory. Payloads are truncated to the size of
+	 * the payload columns.
+	 * 
+	 * @param message
+	 * @param maxPayloadLength
+	 * @param compress
+	 * @return false if the spool is no longer available
+	 * @throws SQLException
+	 */
+	private boolean setSpooledPayloadParameters(WebSocketMessageDTO message, int maxPayloadLength, boolean compress)
+			throws SQLException {
+		WebSocketPayloadSpool spool = message.spooledPayload;
+		if (spool.getLength() > maxPayloadLength) {
+			logger.info("Payload of message " + message.toString() + " exceeds " + maxPayloadLength
+					+ " bytes, storing truncated payload.");
+		}
+		
+		if (!spool.isAvailable()) {
+			logger.warn("Spooled payload of message " + message.toString() + " no longer available, storing preview.");
+			return false;
+		}
+		
+		InputStream stream = spool.openStream(maxPayloadLength);
+		openPayloadStreams.add(stream);
+		
+		if (compress) {
+			psInsertMessage.setNull(5, Types.CLOB);
+			psInsertMessage.setBinaryStream(6, new DeflaterInputStream(stream));
+		} else if (message.payload instanceof String) {
+			psInsertMessage.setCharacterStream(5, new InputStreamReader(stream, StandardCharsets.UTF_8));
+			psInsertMessage.setNull(6, Types.BLOB);
+		} else {
+			psInsertMessage.setNull(5, Types.CLOB);
+			psInsertMessage.setBinaryStream(6, stream, Math.min(spool.getLength(), maxPayloadLength));
+		}
+		return true;
+	}
+
+	/**
+	 * Closes the streams of spooled payloads, once the statements were
+	 * executed.
+	 */
+	private void closePayloadStreams() {
+		for (InputStream stream : openPayloadStreams) {
+			try {
+				stream.close();
+			} catch (IOException e) {
+				logger.debug(e.getMessage(), e);
+			}
+		}
+		openPayloadStreams.clear();
+	}
+
+	/**
+	 * Adds the words of the text payloads of the given messages to the search
+	 * index, for messages inserted with
+	 * {@link #insertMessage(WebSocketMessageDTO, boolean)} without indexing.
+	 * <p>
+	 * The payloads are tokenized before the table is locked. Messages deleted
+	 * in the meantime are skipped.
+	 * 
+	 * @param messages
+	 * @throws DatabaseException
+	 */
+	public void insertTokens(List<WebSocketMessageDTO> messages) throws DatabaseException {
+		List<Set<String>> tokensOfMessages = new ArrayList<>(messages.size());
+		for (WebSocketMessageDTO message : messages) {
+			tokensOfMessages.add(getTokens(message));
+		}
+		
+		try {
+			synchronized (this) {
+				if (getConnection().isClosed()) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("Connection closed, not indexing " + messages.size() + " messages.");
+					}
+					return;
+				}
+				
+				boolean hasTokens = false;
+				for (int i = 0; i < messages.size(); i++) {
+					hasTokens |= addInsertTokensBatch(messages.get(i), tokensOfMessages.get(i));
+				}
+				if (!hasTokens) {
+					return;
+				}
+				
+				try {
+					psInsertToken.executeBatch();
+				} catch (SQLException e) {
+					// a message might have been deleted, retry one by one
+					psInsertToken.clearBatch();
+					for (int i = 0; i < messages.size(); i++) {
+						insertTokensOfMessage(messages.get(i), tokensOfMessages.get(i));
+					}
+				} finally {
+					psInsertToken.clearBatch();
+				}
+			}
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	}
+
+	private void insertTokensOfMessage(WebSocketMessageDTO message, Set<String> tokens) throws SQLException {
+		if (!addInsertTokensBatch(message, tokens)) {
+			return;
+		}
+		
+		try {
+			psInsertToken.executeBatch();
+		} catch (SQLException e) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Not indexed, message " + message.toString() + " was deleted: " + e.getMessage());
+			}
+		} finally {
+			psInsertToken.clearBatch();
+		}
+	}
+
+	/**
+	 * @param message
+	 * @return the words of the text payload, empty for binary payloads
+	 */
+	private static Set<String> getTokens(WebSocketMessageDTO message) {
+		if (!(message.payload instanceof String)) {
+			return Collections.emptySet();
+		}
+		return PayloadTokenizer.tokenize((String) message.payload);
+	}
+
+	/**
+	 * Adds the words of the text payload to the batch of the search index.
+	 * Spooled payloads are indexed up to their preview.
+	 * 
+	 * @param message
+	 * @param tokens the words of the payload, see
+	 *            {@link #getTokens(WebSocketMessageDTO)}
+	 * @return true if at least one word was added
+	 * @throws SQLException
+	 */
+	private boolean addInsertTokensBatch(WebSocketMessageDTO message, Set<String> tokens) throws SQLException {
+		if (tokens.isEmpty() || !channelIds.contains(message.channel.id)) {
+			return false;
+		}
+		
+		for (String token : tokens) {
+			psInsertToken.setString(1, token);
+			psInsertToken.setInt(2, message.channel.id);
+			psInsertToken.setInt(3, message.id);
+			psInsertToken.addBatch();
+		}
+		return !tokens.isEmpty();
+	}
+
+	private void setInsertFuzzParameters(WebSocketFuzzMessageDTO fuzzMessage) throws SQLException {
+		psInsertFuzz.setInt(1, fuzzMessage.fuzzId);
+		psInsertFuzz.setInt(2, fuzzMessage.id);
+		psInsertFuzz.setInt(3, fuzzMessage.channel.id);
+		psInsertFuzz.setString(4, fuzzMessage.state.toString());
+		psInsertFuzz.setString(5, fuzzMessage.fuzz);
+	}
+
 	public List<WebSocketChannelDTO> getChannels(WebSocketChannelDTO criteria) throws DatabaseException {
 		try {
 			String query = "SELECT c.* "
@@ -718,6 +1386,18 @@ public class TableWebSocket extends ParosAbstractTable {
 
 	private PreparedStatement buildCriteriaStatementHelper(String query, List<String> where, List<Object> params) 
 			throws DatabaseException, SQLException {
+		PreparedStatement stmt = getConnection().prepareStatement(buildCriteriaQuery(query, where));
+		try {
+			setParameters(stmt, params);
+		} catch (SQLException e) {
+			stmt.close();
+			throw e;
+		}
+		
+		return stmt;
+	}
+
+	private static String buildCriteriaQuery(String query, List<String> where) {
 		int conditionsCount = where.size();
 		if (conditionsCount > 0) {
 			StringBuilder whereExpr = new StringBuilder();
@@ -736,19 +1416,14 @@ public class TableWebSocket extends ParosAbstractTable {
 			query = query.replace("<where> AND", "WHERE ");
 			query = query.replace("<where> ", "");
 		}
+		return query;
+	}
 
-		PreparedStatement stmt = getConnection().prepareStatement(query);
-		try {
-			int i = 1;
-			for (Object param : params) {
-				stmt.setObject(i++, param);
-			}
-		} catch (SQLException e) {
-			stmt.close();
-			throw e;
+	private static void setParameters(PreparedStatement stmt, List<Object> params) throws SQLException {
+		int i = 1;
+		for (Object param : params) {
+			stmt.setObject(i++, param);
 		}
-		
-		return stmt;
 	}
 
 	/**
@@ -762,6 +1437,8 @@ public class TableWebSocket extends ParosAbstractTable {
 			if (channelIds.contains(channelId)) {
 				psDeleteMessagesByChannelId.setInt(1, channelId);
 				psDeleteMessagesByChannelId.execute();
+				// summed up again when needed
+				storedPayloadsSize = -1;
 				
 				psDeleteChannel.setInt(1, channelId);
 				psDeleteChannel.execute();
@@ -771,6 +1448,203 @@ public class TableWebSocket extends ParosAbstractTable {
 		}
 	}
 
+	/**
+	 * Deletes the oldest messages received before the given time.
+	 * 
+	 * @param timestamp
+	 * @param limit maximum number of messages deleted
+	 * @return number of messages deleted
+	 * @throws DatabaseException
+	 */
+	public int deleteMessagesOlderThan(long timestamp, int limit) throws DatabaseException {
+		try {
+			synchronized (this) {
+				psSelectMessagesOlderThan.setInt(1, getMaxStoredPayloadLength());
+				psSelectMessagesOlderThan.setTimestamp(2, new Timestamp(timestamp));
+				psSelectMessagesOlderThan.setInt(3, limit);
+				return deleteMessages(psSelectMessagesOlderThan, Long.MAX_VALUE, null);
+			}
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	}
+
+	/**
+	 * @param maxMessages
+	 * @return number of messages of each channel with more than the given
+	 *         messages, keyed by channel id
+	 * @throws DatabaseException
+	 */
+	public Map<Integer, Integer> getChannelsExceedingMessages(int maxMessages) throws DatabaseException {
+		try {
+			synchronized (this) {
+				psSelectChannelsExceedingMessages.setInt(1, maxMessages);
+				psSelectChannelsExceedingMessages.execute();
+				Map<Integer, Integer> channels = new LinkedHashMap<>();
+				try (ResultSet rs = psSelectChannelsExceedingMessages.getResultSet()) {
+					while (rs.next()) {
+						channels.put(rs.getInt(1), rs.getInt(2));
+					}
+				}
+				return channels;
+			}
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	}
+
+	/**
+	 * Deletes the oldest messages of the given channel.
+	 * 
+	 * @param channelId
+	 * @param limit maximum number of messages deleted
+	 * @return number of messages deleted
+	 * @throws DatabaseException
+	 */
+	public int deleteOldestMessages(int channelId, int limit) throws DatabaseException {
+		try {
+			synchronized (this) {
+				psSelectOldestMessagesOfChannel.setInt(1, getMaxStoredPayloadLength());
+				psSelectOldestMessagesOfChannel.setInt(2, channelId);
+				psSelectOldestMessagesOfChannel.setInt(3, limit);
+				return deleteMessages(psSelectOldestMessagesOfChannel, Long.MAX_VALUE, null);
+			}
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	}
+
+	/**
+	 * Deletes the oldest messages of all channels, until at least the given
+	 * size is freed.
+	 * 
+	 * @param size number of payload bytes to free
+	 * @param limit maximum number of messages deleted
+	 * @return number of messages deleted
+	 * @throws DatabaseException
+	 * @see #getStoredPayloadsSize()
+	 */
+	public int deleteOldestMessagesBySize(long size, int limit) throws DatabaseException {
+		return deleteOldestMessagesBySize(size, limit, null);
+	}
+
+	/**
+	 * Deletes the oldest messages of all channels, until at least the given
+	 * size is freed.
+	 * 
+	 * @param size number of payload bytes to free
+	 * @param limit maximum number of messages deleted
+	 * @param freedSize the size of the deleted payloads is added to it,
+	 *            might be {@code null}
+	 * @return number of messages deleted
+	 * @throws DatabaseException
+	 * @see #getStoredPayloadsSize()
+	 */
+	public int deleteOldestMessagesBySize(long size, int limit, AtomicLong freedSize) throws DatabaseException {
+		try {
+			synchronized (this) {
+				psSelectOldestMessages.setInt(1, getMaxStoredPayloadLength());
+				psSelectOldestMessages.setInt(2, limit);
+				return deleteMessages(psSelectOldestMessages, size, freedSize);
+			}
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	}
+
+	/**
+	 * Deletes the messages selected by the given statement, which returns the
+	 * channel and message ids, followed by the payload size.
+	 * 
+	 * @param selectStmt
+	 * @param size stops deleting once the given payload size was deleted
+	 * @param freedSize the size of the deleted payloads is added to it,
+	 *            might be {@code null}
+	 * @return number of messages deleted
+	 * @throws SQLException
+	 */
+	private int deleteMessages(PreparedStatement selectStmt, long size, AtomicLong freedSize) throws SQLException {
+		selectStmt.execute();
+		int count = 0;
+		long deletedSize = 0;
+		try (ResultSet rs = selectStmt.getResultSet()) {
+			while (deletedSize < size && rs.next()) {
+				psDeleteMessage.setInt(1, rs.getInt(1));
+				psDeleteMessage.setInt(2, rs.getInt(2));
+				psDeleteMessage.addBatch();
+				deletedSize += rs.getLong(3);
+				count++;
+			}
+		}
+		
+		if (count > 0) {
+			try {
+				psDeleteMessage.executeBatch();
+			} catch (SQLException e) {
+				// not known how many were deleted
+				storedPayloadsSize = -1;
+				throw e;
+			} finally {
+				psDeleteMessage.clearBatch();
+			}
+			addStoredPayloadsSize(-deletedSize);
+			if (freedSize != null) {
+				freedSize.addAndGet(deletedSize);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The size of the stored payloads is the sum of their lengths (up to the
+	 * maximum stored length), before compression.
+	 * <p>
+	 * The size is maintained as messages are inserted and deleted, the table
+	 * is only summed up the first time and whenever the maximum stored length
+	 * was changed.
+	 * 
+	 * @return size in bytes of the stored payloads
+	 * @throws DatabaseException
+	 */
+	public long getStoredPayloadsSize() throws DatabaseException {
+		try {
+			synchronized (this) {
+				int maxPayloadLength = getMaxStoredPayloadLength();
+				if (storedPayloadsSize < 0 || storedPayloadsSizeMaxLength != maxPayloadLength) {
+					psSelectStoredPayloadsSize.setInt(1, maxPayloadLength);
+					psSelectStoredPayloadsSize.execute();
+					try (ResultSet rs = psSelectStoredPayloadsSize.getResultSet()) {
+						storedPayloadsSize = rs.next() ? rs.getLong(1) : 0;
+					}
+					storedPayloadsSizeMaxLength = maxPayloadLength;
+				}
+				return storedPayloadsSize;
+			}
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock of the table.
+	 * 
+	 * @param size added to the size of the stored payloads, if known
+	 */
+	private void addStoredPayloadsSize(long size) {
+		if (storedPayloadsSize >= 0) {
+			storedPayloadsSize = Math.max(0, storedPayloadsSize + size);
+		}
+	}
+
+	/**
+	 * @param message
+	 * @return size of the payload as stored, see
+	 *         {@link #getStoredPayloadsSize()}
+	 */
+	private long getStoredPayloadSize(WebSocketMessageDTO message) {
+		return Math.min(message.payloadLength, storedPayloadsSizeMaxLength);
+	}
+
 	/**
 	 * @return current maximum value of the channel column
 	 * @throws SQLException 
@@ -780,4 +1654,22 @@ public class TableWebSocket extends ParosAbstractTable {
 			return executeAndGetSingleIntValue(psSelectMaxChannelId);
 		}
 	}
+
+	/**
+	 * Closes the statements that are evicted.
+	 */
+	private static class StatementsCache extends LRUMap {
+
+		private static final long serialVersionUID = -2475009413513620212L;
+
+		public StatementsCache(int maxSize) {
+			super(maxSize);
+		}
+
+		@Override
+		protected boolean removeLRU(LinkEntry entry) {
+			closeStatement((PreparedStatement) entry.getValue());
+			return true;
+		}
+	}
 }
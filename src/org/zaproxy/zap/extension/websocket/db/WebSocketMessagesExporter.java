@@ -0,0 +1,89 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.db;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.parosproxy.paros.db.DatabaseException;
+import org.zaproxy.zap.extension.websocket.WebSocketChannelDTO;
+import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+
+/**
+ * Writes all channels and messages of a {@link TableWebSocket} to a stream,
+ * in one of the {@link WebSocketMessagesFormat formats}, to be read again by
+ * the {@link WebSocketMessagesImporter}.
+ * <p>
+ * The messages are read in chunks with
+ * {@link TableWebSocket#getMessagesAfter(int, int, int)}, each seeking to the
+ * last message of the previous chunk, so that the cost of the export grows
+ * linearly with the number of messages and new messages can be stored
+ * meanwhile. Fuzz details of the messages are not exported.
+ */
+public class WebSocketMessagesExporter {
+
+	/**
+	 * Number of messages read at once.
+	 */
+	static final int CHUNK_SIZE = 1000;
+
+	private final TableWebSocket table;
+
+	public WebSocketMessagesExporter(TableWebSocket table) {
+		this.table = table;
+	}
+
+	/**
+	 * Exports all channels and messages to the given stream, which is not
+	 * closed.
+	 * 
+	 * @param out
+	 * @param format
+	 * @return number of messages exported
+	 * @throws IOException if an error occurred while writing
+	 * @throws DatabaseException if an error occurred while reading the
+	 *             messages
+	 */
+	public long export(OutputStream out, WebSocketMessagesFormat format) throws IOException, DatabaseException {
+		WebSocketMessagesFormat.RecordWriter writer = format.createWriter(out);
+		for (WebSocketChannelDTO channel : table.getChannelItems()) {
+			writer.writeChannel(channel);
+		}
+
+		long count = 0;
+		int messageId = -1;
+		int channelId = -1;
+		List<WebSocketMessageDTO> messages;
+		do {
+			messages = table.getMessagesAfter(messageId, channelId, CHUNK_SIZE);
+			for (WebSocketMessageDTO message : messages) {
+				writer.writeMessage(message);
+			}
+			if (!messages.isEmpty()) {
+				WebSocketMessageDTO last = messages.get(messages.size() - 1);
+				messageId = last.id;
+				channelId = last.channel.id;
+				count += messages.size();
+			}
+		} while (messages.size() == CHUNK_SIZE);
+
+		writer.finish();
+		return count;
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.zaproxy.zap.extension.websocket.WebSocketChannelDTO;
+import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+
+/**
+ * Formats of {@link WebSocketMessagesExporter exported} WebSocket sessions.
+ * Both contain all channels first, followed by all messages.
+ */
+public enum WebSocketMessagesFormat {
+
+	/**
+	 * One JSON object per line, text payloads as strings and binary payloads
+	 * in Base64.
+	 */
+	JSON_LINES {
+
+		@Override
+		RecordWriter createWriter(OutputStream out) {
+			return new JsonLinesFormat.Writer(out);
+		}
+
+		@Override
+		RecordReader createReader(InputStream in) {
+			return new JsonLinesFormat.Reader(in);
+		}
+	},
+
+	/**
+	 * Binary format that stores the messages in blocks, column by column.
+	 */
+	COLUMNAR {
+
+		@Override
+		RecordWriter createWriter(OutputStream out) {
+			return new ColumnarFormat.Writer(out);
+		}
+
+		@Override
+		RecordReader createReader(InputStream in) {
+			return new ColumnarFormat.Reader(in);
+		}
+	};
+
+	abstract RecordWriter createWriter(OutputStream out);
+
+	abstract RecordReader createReader(InputStream in);
+
+	/**
+	 * Writes the channels and then the messages. The given stream is not
+	 * closed.
+	 */
+	interface RecordWriter {
+
+		void writeChannel(WebSocketChannelDTO channel) throws IOException;
+
+		void writeMessage(WebSocketMessageDTO message) throws IOException;
+
+		/**
+		 * Writes all pending data, no further channels or messages are
+		 * accepted.
+		 */
+		void finish() throws IOException;
+	}
+
+	/**
+	 * Reads the channels and then the messages. The given stream is not
+	 * closed.
+	 */
+	interface RecordReader {
+
+		/**
+		 * Has to be called once, before reading the messages.
+		 */
+		List<WebSocketChannelDTO> readChannels() throws IOException;
+
+		/**
+		 * @return the next message or {@code null} if there are no more
+		 */
+		WebSocketMessageDTO readMessage() throws IOException;
+	}
+}
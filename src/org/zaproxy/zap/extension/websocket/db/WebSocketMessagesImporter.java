@@ -0,0 +1,151 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.parosproxy.paros.db.DatabaseException;
+import org.zaproxy.zap.extension.websocket.WebSocketChannelDTO;
+import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+
+/**
+ * Reads channels and messages {@link WebSocketMessagesExporter exported}
+ * before and adds them to a {@link TableWebSocket}.
+ * <p>
+ * The channels get new ids, following the highest id of the table and the
+ * ids given by the {@link ChannelIdReserver}, so that they do not clash with
+ * the channels already stored or being created. The handshakes are not
+ * part of the export, the imported channels have none. The messages are
+ * inserted in batches, with {@link TableWebSocket#insertMessages(List)}.
+ */
+public class WebSocketMessagesImporter {
+
+	/**
+	 * Number of messages inserted at once.
+	 */
+	static final int BATCH_SIZE = 500;
+
+	private final TableWebSocket table;
+
+	private final ChannelIdReserver channelIdReserver;
+
+	/**
+	 * Creates an importer for a table no live channels are stored into.
+	 * 
+	 * @param table
+	 */
+	public WebSocketMessagesImporter(TableWebSocket table) {
+		this(table, null);
+	}
+
+	/**
+	 * @param table
+	 * @param channelIdReserver reserves the ids of the imported channels, might
+	 *            be {@code null}
+	 */
+	public WebSocketMessagesImporter(TableWebSocket table, ChannelIdReserver channelIdReserver) {
+		this.table = table;
+		this.channelIdReserver = channelIdReserver;
+	}
+
+	/**
+	 * Imports all channels and messages of the given stream, which is not
+	 * closed.
+	 * 
+	 * @param in
+	 * @param format
+	 * @return number of messages imported
+	 * @throws IOException if an error occurred while reading or the content is
+	 *             not valid
+	 * @throws DatabaseException if an error occurred while storing the
+	 *             channels or messages
+	 */
+	public long importMessages(InputStream in, WebSocketMessagesFormat format) throws IOException, DatabaseException {
+		WebSocketMessagesFormat.RecordReader reader = format.createReader(in);
+
+		List<WebSocketChannelDTO> exportedChannels = reader.readChannels();
+		int highestExportedId = 0;
+		for (WebSocketChannelDTO channel : exportedChannels) {
+			highestExportedId = Math.max(highestExportedId, channel.id);
+		}
+
+		int channelIdOffset;
+		try {
+			channelIdOffset = table.getMaxChannelId();
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+		if (channelIdReserver != null) {
+			// reserved before inserting, channels might be created meanwhile
+			channelIdOffset = channelIdReserver.reserve(channelIdOffset, highestExportedId);
+		}
+
+		Map<Integer, WebSocketChannelDTO> channels = new HashMap<>();
+		for (WebSocketChannelDTO channel : exportedChannels) {
+			int exportedId = channel.id;
+			channel.id = channelIdOffset + exportedId;
+			channel.historyId = null;
+			table.insertOrUpdateChannel(channel);
+			channels.put(exportedId, channel);
+		}
+
+		long count = 0;
+		List<WebSocketMessageDTO> batch = new ArrayList<>(BATCH_SIZE);
+		WebSocketMessageDTO message;
+		while ((message = reader.readMessage()) != null) {
+			WebSocketChannelDTO channel = channels.get(message.channel.id);
+			if (channel == null) {
+				throw new IOException("Message " + message.id + " references unknown channel " + message.channel.id);
+			}
+			message.channel = channel;
+			batch.add(message);
+			if (batch.size() == BATCH_SIZE) {
+				table.insertMessages(batch);
+				count += batch.size();
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			table.insertMessages(batch);
+			count += batch.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Reserves the ids of the imported channels.
+	 */
+	public interface ChannelIdReserver {
+
+		/**
+		 * Reserves the ids {@code offset + 1 ... offset + count}, such that no
+		 * other channel gets one of them.
+		 * 
+		 * @param minimumOffset highest channel id of the table
+		 * @param count number of ids to reserve
+		 * @return the offset, at least {@code minimumOffset}
+		 */
+		int reserve(int minimumOffset, int count);
+	}
+}
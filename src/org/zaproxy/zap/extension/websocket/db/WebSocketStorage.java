@@ -18,6 +18,9 @@
 package org.zaproxy.zap.extension.websocket.db;
 
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.log4j.Logger;
 import org.parosproxy.paros.db.DatabaseException;
@@ -26,10 +29,19 @@ import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
 import org.zaproxy.zap.extension.websocket.WebSocketObserver;
 import org.zaproxy.zap.extension.websocket.WebSocketProxy;
 import org.zaproxy.zap.extension.websocket.WebSocketProxy.State;
+import org.zaproxy.zap.extension.websocket.ui.OptionsParamWebSocket;
 
 /**
  * Listens to all WebSocket messages and utilizes {@link TableWebSocket} to
  * store messages in database.
+ * <p>
+ * If enabled by {@link OptionsParamWebSocket#isStorageAsync()}, messages are
+ * handed over to a {@link WebSocketStorageWriter}, which stores them in
+ * batches on its own thread. Otherwise messages are inserted on the
+ * forwarding thread, but their words are added to the search index by a
+ * {@link WebSocketTokenIndexer}. If a retention policy is configured (see
+ * {@link OptionsParamWebSocket#isRetentionEnabled()}) a
+ * {@link WebSocketStorageCompactor} deletes old messages periodically.
  */
 public class WebSocketStorage implements WebSocketObserver {
 
@@ -39,10 +51,42 @@ public class WebSocketStorage implements WebSocketObserver {
 	// determines when messages are stored in databases
 	public static final int WEBSOCKET_OBSERVING_ORDER = 100;
 
-	private TableWebSocket table;
+	private volatile TableWebSocket table;
+
+	private final OptionsParamWebSocket config;
+
+	/**
+	 * Read on the forwarding path, changed only while holding the
+	 * {@link #configLock}.
+	 */
+	private volatile WebSocketStorageWriter writer;
+
+	private volatile WebSocketStorageCompactor compactor;
+
+	private final WebSocketTokenIndexer indexer;
+
+	/**
+	 * Serialises starting and stopping of the {@link #writer} and the
+	 * {@link #compactor}, which might take several seconds.
+	 */
+	private final Object configLock = new Object();
+
+	private final List<MessagesDeletedListener> messagesDeletedListeners = new CopyOnWriteArrayList<>();
 
 	public WebSocketStorage(TableWebSocket table) {
+		this(table, null);
+	}
+
+	/**
+	 * @param table
+	 * @param config Determines if messages are stored asynchronously, might be
+	 *            {@code null}.
+	 */
+	public WebSocketStorage(TableWebSocket table, OptionsParamWebSocket config) {
 		this.table = table;
+		this.config = config;
+		this.indexer = new WebSocketTokenIndexer(this);
+		applyOptions();
 	}
 
 	@Override
@@ -55,10 +99,23 @@ public class WebSocketStorage implements WebSocketObserver {
 		if (wsMessage.isFinished()) {
 			WebSocketMessageDTO message = wsMessage.getDTO();
 
-			try {
-				table.insertMessage(message);
-			} catch (DatabaseException e) {
-				logger.error(e.getMessage(), e);
+			WebSocketStorageWriter asyncWriter = writer;
+			if (asyncWriter != null) {
+				// later observers might still change the shared DTO
+				message = message.copy();
+				if (message.spooledPayload != null) {
+					// keep the spooled payload until it is written
+					message.spooledPayload.retain();
+				}
+				if (!asyncWriter.enqueue(message)) {
+					// writer was stopped in the meantime
+					if (message.spooledPayload != null) {
+						message.spooledPayload.release();
+					}
+					insertMessage(message);
+				}
+			} else {
+				insertMessage(message);
 			}
 		}
 
@@ -66,14 +123,150 @@ public class WebSocketStorage implements WebSocketObserver {
 		return true;
 	}
 
+	private void insertMessage(WebSocketMessageDTO message) {
+		try {
+			table.insertMessage(message, false);
+			if (!indexer.enqueue(message)) {
+				table.insertTokens(Collections.singletonList(message));
+			}
+		} catch (DatabaseException e) {
+			logger.error(e.getMessage(), e);
+		}
+	}
+
 	public TableWebSocket getTable() {
 		return table;
 	}
 	
 	public void setTable(TableWebSocket table) {
+		// messages still waiting belong to the old table
+		flush();
 		this.table = table;
 	}
 
+	/**
+	 * Starts or stops the asynchronous writer and the compactor according to
+	 * the current options, on a background thread, as stopping them waits
+	 * until they are finished.
+	 * <p>
+	 * Should be called whenever the options were changed.
+	 */
+	public void optionsChanged() {
+		Thread thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				applyOptions();
+			}
+		}, "ZAP-WS-Storage-Options");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Starts or stops the writer and the compactor according to the current
+	 * options.
+	 */
+	private void applyOptions() {
+		synchronized (configLock) {
+			indexer.start();
+			updateWriter();
+			updateCompactor();
+		}
+	}
+
+	private void updateWriter() {
+		boolean isAsync = config != null && config.isStorageAsync();
+		if (isAsync) {
+			if (writer == null) {
+				WebSocketStorageWriter newWriter = new WebSocketStorageWriter(this, config);
+				newWriter.start();
+				writer = newWriter;
+			}
+		} else if (writer != null) {
+			WebSocketStorageWriter oldWriter = writer;
+			// new messages are stored synchronously from now on
+			writer = null;
+			oldWriter.stop();
+		}
+	}
+
+	private void updateCompactor() {
+		boolean isRetentionEnabled = config != null && config.isRetentionEnabled();
+		if (isRetentionEnabled) {
+			if (compactor == null) {
+				WebSocketStorageCompactor newCompactor = new WebSocketStorageCompactor(this, config);
+				newCompactor.start();
+				compactor = newCompactor;
+			}
+		} else if (compactor != null) {
+			WebSocketStorageCompactor oldCompactor = compactor;
+			compactor = null;
+			oldCompactor.stop();
+		}
+	}
+
+	/**
+	 * Writes all messages that are waiting to be stored asynchronously.
+	 */
+	public void flush() {
+		WebSocketStorageWriter asyncWriter = writer;
+		if (asyncWriter != null) {
+			asyncWriter.flush();
+		}
+		indexer.flush();
+	}
+
+	/**
+	 * Stops storing messages asynchronously, after all waiting messages were
+	 * written and indexed, and stops enforcing the retention policy.
+	 */
+	public void stop() {
+		synchronized (configLock) {
+			WebSocketStorageCompactor oldCompactor = compactor;
+			compactor = null;
+			if (oldCompactor != null) {
+				oldCompactor.stop();
+			}
+			WebSocketStorageWriter oldWriter = writer;
+			writer = null;
+			if (oldWriter != null) {
+				oldWriter.stop();
+			}
+			indexer.stop();
+		}
+	}
+
+	/**
+	 * @return number of messages not stored, as the asynchronous storage queue
+	 *         was full
+	 */
+	public long getDroppedMessagesCount() {
+		WebSocketStorageWriter asyncWriter = writer;
+		return (asyncWriter != null) ? asyncWriter.getDroppedCount() : 0;
+	}
+
+	/**
+	 * @param listener notified when the retention policy deleted messages
+	 */
+	public void addMessagesDeletedListener(MessagesDeletedListener listener) {
+		messagesDeletedListeners.add(listener);
+	}
+
+	public void removeMessagesDeletedListener(MessagesDeletedListener listener) {
+		messagesDeletedListeners.remove(listener);
+	}
+
+	void fireMessagesDeleted(int count) {
+		for (MessagesDeletedListener listener : messagesDeletedListeners) {
+			try {
+				listener.messagesDeleted(count);
+			} catch (Exception e) {
+				logger.error(e.getMessage(), e);
+			}
+		}
+	}
+
 	@Override
 	public void onStateChange(State state, WebSocketProxy proxy) {
 		if (state.equals(State.OPEN) || state.equals(State.CLOSED) || state.equals(State.INCLUDED)) {
@@ -96,4 +289,18 @@ public class WebSocketStorage implements WebSocketObserver {
 			}
 		}
 	}
+
+	/**
+	 * Notified when stored messages were deleted by the storage, for example
+	 * to enforce the retention policy.
+	 */
+	public interface MessagesDeletedListener {
+
+		/**
+		 * Called on the thread that deleted the messages.
+		 * 
+		 * @param count number of messages deleted
+		 */
+		void messagesDeleted(int count);
+	}
 }
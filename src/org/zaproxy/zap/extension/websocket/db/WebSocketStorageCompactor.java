@@ -0,0 +1,189 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.db;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.parosproxy.paros.db.DatabaseException;
+import org.zaproxy.zap.extension.websocket.ui.OptionsParamWebSocket;
+
+/**
+ * Enforces the retention policy of the stored WebSocket messages, see
+ * {@link OptionsParamWebSocket#isRetentionEnabled()}. Runs periodically on its
+ * own thread and deletes the oldest messages in chunks, each in a short
+ * transaction of {@link TableWebSocket}, so that inserts of the
+ * {@link WebSocketStorageWriter} (or of the proxy threads) are not blocked for
+ * long. Once messages were deleted, the
+ * {@link WebSocketStorage.MessagesDeletedListener listeners} of the storage are
+ * notified.
+ */
+class WebSocketStorageCompactor implements Runnable {
+
+	private static final Logger logger = Logger.getLogger(WebSocketStorageCompactor.class);
+
+	/**
+	 * Maximum number of messages deleted at once.
+	 */
+	static final int CHUNK_SIZE = 1000;
+
+	private final WebSocketStorage storage;
+
+	private final OptionsParamWebSocket config;
+
+	private final Object sleepLock;
+
+	private volatile boolean running;
+
+	/**
+	 * Tells a running {@link #compact()} to stop after the current chunk.
+	 */
+	private volatile boolean stopRequested;
+
+	private Thread thread;
+
+	WebSocketStorageCompactor(WebSocketStorage storage, OptionsParamWebSocket config) {
+		this.storage = storage;
+		this.config = config;
+		this.sleepLock = new Object();
+	}
+
+	synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		stopRequested = false;
+		thread = new Thread(this, "ZAP-WS-Storage-Compactor");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Stops the compactor thread, after the current chunk was deleted.
+	 */
+	synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		// no interrupt, the thread might be in the middle of a database write
+		running = false;
+		stopRequested = true;
+		synchronized (sleepLock) {
+			sleepLock.notifyAll();
+		}
+		try {
+			thread.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+
+	boolean isRunning() {
+		return running;
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			try {
+				synchronized (sleepLock) {
+					if (running) {
+						sleepLock.wait(TimeUnit.SECONDS.toMillis(config.getRetentionInterval()));
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+			if (running) {
+				compact();
+			}
+		}
+	}
+
+	/**
+	 * Deletes the messages exceeding the retention limits.
+	 * 
+	 * @return number of messages deleted
+	 */
+	int compact() {
+		TableWebSocket table = storage.getTable();
+		if (table == null) {
+			return 0;
+		}
+
+		int deleted = 0;
+		try {
+			if (config.getRetentionMaxAge() > 0) {
+				long oldest = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(config.getRetentionMaxAge());
+				int count;
+				do {
+					count = table.deleteMessagesOlderThan(oldest, CHUNK_SIZE);
+					deleted += count;
+				} while (count == CHUNK_SIZE && !stopRequested);
+			}
+
+			int maxMessages = config.getRetentionMaxMessagesPerChannel();
+			if (maxMessages > 0) {
+				for (Map.Entry<Integer, Integer> entry : table.getChannelsExceedingMessages(maxMessages).entrySet()) {
+					int excess = entry.getValue() - maxMessages;
+					while (excess > 0 && !stopRequested) {
+						int count = table.deleteOldestMessages(entry.getKey(), Math.min(excess, CHUNK_SIZE));
+						if (count == 0) {
+							break;
+						}
+						excess -= count;
+						deleted += count;
+					}
+				}
+			}
+
+			long maxSize = config.getRetentionMaxTotalSize() * 1024L * 1024L;
+			if (maxSize > 0) {
+				// computed once, messages inserted meanwhile are considered on the next pass
+				long excess = table.getStoredPayloadsSize() - maxSize;
+				AtomicLong freedSize = new AtomicLong();
+				while (excess > 0 && !stopRequested) {
+					freedSize.set(0);
+					int count = table.deleteOldestMessagesBySize(excess, CHUNK_SIZE, freedSize);
+					if (count == 0) {
+						break;
+					}
+					deleted += count;
+					excess -= freedSize.get();
+				}
+			}
+		} catch (DatabaseException e) {
+			logger.error(e.getMessage(), e);
+		}
+
+		if (deleted > 0) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Retention policy deleted " + deleted + " messages.");
+			}
+			storage.fireMessagesDeleted(deleted);
+		}
+		return deleted;
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.parosproxy.paros.db.DatabaseException;
+import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+import org.zaproxy.zap.extension.websocket.ui.OptionsParamWebSocket;
+import org.zaproxy.zap.extension.websocket.ui.OptionsParamWebSocket.StorageOverflowPolicy;
+
+/**
+ * Write-behind storage of WebSocket messages. Messages are put into a bounded
+ * queue, that is drained by a dedicated thread, which inserts them in batches
+ * via {@link TableWebSocket#insertMessages(List)}.
+ * <p>
+ * This way forwarding a frame never waits on the database (unless the queue is
+ * full and {@link StorageOverflowPolicy#BLOCK} is configured).
+ */
+class WebSocketStorageWriter implements Runnable {
+
+	private static final Logger logger = Logger.getLogger(WebSocketStorageWriter.class);
+
+	private final WebSocketStorage storage;
+
+	private final OptionsParamWebSocket config;
+
+	private final BlockingQueue<WebSocketMessageDTO> queue;
+
+	/**
+	 * Messages that were not stored, as the queue was full.
+	 */
+	private final AtomicLong droppedCount;
+
+	/**
+	 * Prevents that the writer thread and a caller of {@link #flush()} write
+	 * the same queue concurrently, which would break the order of messages.
+	 */
+	private final Object writeLock;
+
+	private volatile boolean running;
+
+	private Thread thread;
+
+	WebSocketStorageWriter(WebSocketStorage storage, OptionsParamWebSocket config) {
+		this.storage = storage;
+		this.config = config;
+		this.queue = new ArrayBlockingQueue<>(config.getStorageQueueSize());
+		this.droppedCount = new AtomicLong();
+		this.writeLock = new Object();
+	}
+
+	synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		thread = new Thread(this, "ZAP-WS-Storage-Writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the writer thread, after the messages still queued were written.
+	 */
+	synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		// no interrupt, the thread might be in the middle of a database write
+		running = false;
+		try {
+			thread.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+		flush();
+	}
+
+	boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Queues the given message for storage. Depending on the
+	 * {@link StorageOverflowPolicy} it waits for free space or drops the message
+	 * if the queue is full.
+	 *
+	 * @param message
+	 * @return false if the writer was already stopped, the message was not
+	 *         queued then and has to be stored by the caller
+	 */
+	boolean enqueue(WebSocketMessageDTO message) {
+		if (!running) {
+			return false;
+		}
+
+		if (config.getStorageOverflowPolicy() == StorageOverflowPolicy.DROP) {
+			if (!queue.offer(message)) {
+				releaseSpooledPayload(message);
+				long dropped = droppedCount.incrementAndGet();
+				if (logger.isDebugEnabled()) {
+					logger.debug("Storage queue full, dropped message " + message.toString() + " (" + dropped + " in total).");
+				}
+			}
+		} else {
+			try {
+				queue.put(message);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				releaseSpooledPayload(message);
+				logger.warn("Interrupted while waiting to store message " + message.toString());
+			}
+		}
+
+		if (!running) {
+			// stopped while queueing, the final flush might have missed it
+			flush();
+		}
+		return true;
+	}
+
+	/**
+	 * Releases the reference on the spooled payload, taken when the message
+	 * was queued.
+	 *
+	 * @param message
+	 */
+	private static void releaseSpooledPayload(WebSocketMessageDTO message) {
+		if (message.spooledPayload != null) {
+			message.spooledPayload.release();
+		}
+	}
+
+	/**
+	 * @return number of messages that were not stored due to a full queue
+	 */
+	long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * @return number of messages waiting to be stored
+	 */
+	int getQueuedCount() {
+		return queue.size();
+	}
+
+	/**
+	 * Writes all queued messages on the calling thread.
+	 */
+	void flush() {
+		List<WebSocketMessageDTO> batch = new ArrayList<>(config.getStorageBatchSize());
+		synchronized (writeLock) {
+			while (queue.drainTo(batch, config.getStorageBatchSize()) > 0) {
+				write(batch);
+				batch.clear();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		List<WebSocketMessageDTO> batch = new ArrayList<>(config.getStorageBatchSize());
+		while (running) {
+			try {
+				WebSocketMessageDTO first = queue.poll(config.getStorageFlushInterval(), TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+
+				synchronized (writeLock) {
+					batch.add(first);
+					try {
+						fillBatch(batch);
+					} finally {
+						write(batch);
+						batch.clear();
+					}
+				}
+			} catch (InterruptedException e) {
+				logger.warn("Storage writer was interrupted, queued messages are written on stop.");
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Adds further messages to the given batch, until the batch size is reached
+	 * or the flush interval (counted from now) is exceeded.
+	 */
+	private void fillBatch(List<WebSocketMessageDTO> batch) throws InterruptedException {
+		int batchSize = config.getStorageBatchSize();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getStorageFlushInterval());
+
+		while (batch.size() < batchSize) {
+			if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+				continue;
+			}
+
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				break;
+			}
+
+			WebSocketMessageDTO next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+			if (next == null) {
+				break;
+			}
+			batch.add(next);
+		}
+	}
+
+	private void write(List<WebSocketMessageDTO> batch) {
+		try {
+			TableWebSocket table = storage.getTable();
+			if (table == null) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("No table available, discarding " + batch.size() + " messages.");
+				}
+				return;
+			}
+
+			table.insertMessages(batch);
+		} catch (DatabaseException e) {
+			logger.error(e.getMessage(), e);
+		} finally {
+			for (WebSocketMessageDTO message : batch) {
+				releaseSpooledPayload(message);
+			}
+		}
+	}
+}
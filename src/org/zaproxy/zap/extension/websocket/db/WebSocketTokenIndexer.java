@@ -0,0 +1,190 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.parosproxy.paros.db.DatabaseException;
+import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+
+/**
+ * Adds the words of messages stored synchronously to the payload search
+ * index, on its own thread via {@link TableWebSocket#insertTokens(List)}.
+ * <p>
+ * This way tokenizing a payload and inserting its words does not delay the
+ * forwarding of a frame. Messages are searchable shortly after they were
+ * stored. If the queue is full the words of a message are not indexed.
+ */
+class WebSocketTokenIndexer implements Runnable {
+
+	private static final Logger logger = Logger.getLogger(WebSocketTokenIndexer.class);
+
+	private static final int QUEUE_SIZE = 10000;
+
+	private static final int BATCH_SIZE = 100;
+
+	private static final long POLL_TIMEOUT_MS = 500;
+
+	private final WebSocketStorage storage;
+
+	private final BlockingQueue<WebSocketMessageDTO> queue;
+
+	/**
+	 * Messages that were not indexed, as the queue was full.
+	 */
+	private final AtomicLong droppedCount;
+
+	/**
+	 * Prevents that the indexer thread and a caller of {@link #flush()} index
+	 * concurrently.
+	 */
+	private final Object writeLock;
+
+	private volatile boolean running;
+
+	private Thread thread;
+
+	WebSocketTokenIndexer(WebSocketStorage storage) {
+		this.storage = storage;
+		this.queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+		this.droppedCount = new AtomicLong();
+		this.writeLock = new Object();
+	}
+
+	synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		thread = new Thread(this, "ZAP-WS-Token-Indexer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the indexer thread, after the messages still queued were indexed.
+	 */
+	synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		try {
+			thread.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+		flush();
+	}
+
+	/**
+	 * Queues the given stored message for indexing, never waits.
+	 *
+	 * @param message a message that is no longer changed
+	 * @return false if the indexer was already stopped, the message was not
+	 *         queued then and has to be indexed by the caller
+	 */
+	boolean enqueue(WebSocketMessageDTO message) {
+		if (!running) {
+			return false;
+		}
+
+		if (!queue.offer(message)) {
+			long dropped = droppedCount.incrementAndGet();
+			if (logger.isDebugEnabled()) {
+				logger.debug("Index queue full, message " + message.toString() + " not searchable (" + dropped + " in total).");
+			}
+		}
+
+		if (!running) {
+			// stopped while queueing, the final flush might have missed it
+			flush();
+		}
+		return true;
+	}
+
+	/**
+	 * @return number of messages that were not indexed due to a full queue
+	 */
+	long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Indexes all queued messages on the calling thread.
+	 */
+	void flush() {
+		List<WebSocketMessageDTO> batch = new ArrayList<>(BATCH_SIZE);
+		synchronized (writeLock) {
+			while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+				write(batch);
+				batch.clear();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		List<WebSocketMessageDTO> batch = new ArrayList<>(BATCH_SIZE);
+		while (running) {
+			try {
+				WebSocketMessageDTO first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+
+				synchronized (writeLock) {
+					batch.add(first);
+					queue.drainTo(batch, BATCH_SIZE - 1);
+					try {
+						write(batch);
+					} finally {
+						batch.clear();
+					}
+				}
+			} catch (InterruptedException e) {
+				logger.warn("Token indexer was interrupted, queued messages are indexed on stop.");
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private void write(List<WebSocketMessageDTO> batch) {
+		try {
+			TableWebSocket table = storage.getTable();
+			if (table == null) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("No table available, not indexing " + batch.size() + " messages.");
+				}
+				return;
+			}
+
+			table.insertTokens(batch);
+		} catch (DatabaseException e) {
+			logger.error(e.getMessage(), e);
+		}
+	}
+}
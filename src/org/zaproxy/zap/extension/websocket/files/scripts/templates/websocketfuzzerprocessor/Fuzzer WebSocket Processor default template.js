@@ -1,3 +1,4 @@
+// Note: each fuzzer thread runs its own instance of this script, the variables are not shared between threads.
 // Auxiliary variables/constants needed for processing.
 var count = 1;
 
@@ -17,8 +17,9 @@
  */
 package org.zaproxy.zap.extension.websocket.filter;
 
+import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.parosproxy.paros.Constant;
 import org.parosproxy.paros.extension.filter.FilterAbstractReplace;
@@ -45,6 +46,13 @@ public class FilterWebSocketPayload extends FilterAbstractReplace implements Web
 	private ChannelSortedListModel channelsModel;
 	private ExtensionWebSocket extension;
 
+	/**
+	 * The replacer of the current pattern and replacement text, created lazily.
+	 */
+	private WebSocketPayloadReplacer payloadReplacer;
+	private Pattern replacerPattern;
+	private String replacerText;
+
 	public FilterWebSocketPayload(ExtensionWebSocket extension, ChannelSortedListModel model) {
 		super();
 		this.extension = extension;
@@ -93,27 +101,23 @@ public class FilterWebSocketPayload extends FilterAbstractReplace implements Web
 					isApplicableOpcode(message.readableOpcode) &&
 					isApplicableChannelId(message.channel.id)) {
 
-				String from = wsMessage.getReadablePayload();
-
-				Matcher matcher = getPattern().matcher(from);
-
-				try {
-					String to = matcher.replaceAll(getReplaceText());
-	
-					if (!from.equals(to)) {
-						wsMessage.setReadablePayload(to);
-					}
-				} catch (IllegalArgumentException e) {
-					// e.g.: Illegal group reference when '$'-sign is used
-					throw new WebSocketException("Replacement text of WebSocket payload filter contains non-escaped characters (\\,$).", e);
-				} catch (StringIndexOutOfBoundsException e) {
-					// e.g.: String index out of range: 1 when '\' is used
-					throw new WebSocketException("Replacement text of WebSocket payload filter contains non-escaped characters (\\,$).", e);
-				}
+				getPayloadReplacer().apply(wsMessage);
 			}
 		}
 	}
 
+	private synchronized WebSocketPayloadReplacer getPayloadReplacer() {
+		Pattern pattern = getPattern();
+		String replaceText = getReplaceText();
+		if (payloadReplacer == null || pattern != replacerPattern || !replaceText.equals(replacerText)) {
+			payloadReplacer = new WebSocketPayloadReplacer(
+					Collections.singletonList(new WebSocketPayloadReplacer.Rule(pattern, replaceText)));
+			replacerPattern = pattern;
+			replacerText = replaceText;
+		}
+		return payloadReplacer;
+	}
+
 	private boolean isApplicableDirection(Direction direction) {
 		return ((direction.equals(Direction.INCOMING) && shouldApplyOnIncoming) ||
 				(direction.equals(Direction.OUTGOING) && shouldApplyOnOutgoing));
@@ -0,0 +1,352 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.filter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.zaproxy.zap.extension.websocket.WebSocketException;
+import org.zaproxy.zap.extension.websocket.WebSocketMessage;
+import org.zaproxy.zap.extension.websocket.utility.InvalidUtf8Exception;
+import org.zaproxy.zap.extension.websocket.utility.Utf8Util;
+
+/**
+ * Replaces the payload of WebSocket messages, with one or more rules (pattern and replacement).
+ * <p>
+ * If all the patterns and replacements are literal (the usual case) the rules are compiled into an automaton that
+ * scans the raw UTF-8 bytes of the payload, once for all rules, and the new payload is only built if something
+ * matches. In that case the rules are applied at the same time, in a single pass: the match that ends first is
+ * replaced, preferring the longest (or the first rule) for matches ending at the same position, and the scan continues
+ * after it.
+ * <p>
+ * Otherwise the payload is decoded and the rules applied one after the other, as with
+ * {@link Matcher#replaceAll(String)}.
+ */
+class WebSocketPayloadReplacer {
+
+	private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+	private final List<Rule> rules;
+
+	private final LiteralsAutomaton literalsAutomaton;
+
+	WebSocketPayloadReplacer(List<Rule> rules) {
+		this.rules = rules;
+		this.literalsAutomaton = LiteralsAutomaton.create(rules);
+	}
+
+	/**
+	 * Applies the rules to the payload of the given message.
+	 *
+	 * @param message the message, finished
+	 * @return {@code true} if the payload was changed, {@code false} otherwise
+	 * @throws WebSocketException if the replacement text is not valid or if the payload could not be changed
+	 */
+	boolean apply(WebSocketMessage message) throws WebSocketException {
+		if (literalsAutomaton != null && message.getPayloadSpool() == null) {
+			return applyLiterals(message);
+		}
+		return applyRegex(message);
+	}
+
+	private boolean applyLiterals(WebSocketMessage message) throws WebSocketException {
+		ByteBuffer payload = message.getPayloadView();
+		byte[] newPayload = literalsAutomaton.replace(payload);
+		if (newPayload == null || !isValidUtf8(payload)) {
+			// Nothing to replace, or binary payload which is never changed by the (textual) rules.
+			return false;
+		}
+		message.setPayload(newPayload);
+		return true;
+	}
+
+	private static boolean isValidUtf8(ByteBuffer payload) {
+		payload.rewind();
+		byte[] bytes = new byte[payload.remaining()];
+		payload.get(bytes);
+		try {
+			Utf8Util.encodePayloadToUtf8(bytes);
+			return true;
+		} catch (InvalidUtf8Exception e) {
+			return false;
+		}
+	}
+
+	private boolean applyRegex(WebSocketMessage message) throws WebSocketException {
+		String from = message.getReadablePayload();
+		String to = from;
+		for (Rule rule : rules) {
+			Matcher matcher = rule.getPattern().matcher(to);
+			if (!matcher.find()) {
+				continue;
+			}
+
+			try {
+				StringBuffer sb = new StringBuffer(to.length());
+				do {
+					matcher.appendReplacement(sb, rule.getReplacement());
+				} while (matcher.find());
+				matcher.appendTail(sb);
+				to = sb.toString();
+			} catch (IllegalArgumentException e) {
+				// e.g.: Illegal group reference when '$'-sign is used
+				throw new WebSocketException("Replacement text of WebSocket payload filter contains non-escaped characters (\\,$).", e);
+			} catch (StringIndexOutOfBoundsException e) {
+				// e.g.: String index out of range: 1 when '\' is used
+				throw new WebSocketException("Replacement text of WebSocket payload filter contains non-escaped characters (\\,$).", e);
+			}
+		}
+
+		if (from.equals(to)) {
+			return false;
+		}
+		message.setReadablePayload(to);
+		return true;
+	}
+
+	/**
+	 * A replacement rule, the pattern and its replacement text, as used by {@link Matcher#replaceAll(String)}.
+	 */
+	static class Rule {
+
+		private final Pattern pattern;
+		private final String replacement;
+
+		Rule(Pattern pattern, String replacement) {
+			this.pattern = pattern;
+			this.replacement = replacement;
+		}
+
+		Pattern getPattern() {
+			return pattern;
+		}
+
+		String getReplacement() {
+			return replacement;
+		}
+
+		private boolean isLiteral() {
+			String regex = pattern.pattern();
+			if (regex.isEmpty() || (pattern.flags() & Pattern.UNICODE_CASE) != 0) {
+				return false;
+			}
+			if ((pattern.flags() & Pattern.LITERAL) == 0) {
+				for (int i = 0; i < regex.length(); i++) {
+					if (REGEX_METACHARACTERS.indexOf(regex.charAt(i)) != -1) {
+						return false;
+					}
+				}
+			}
+			return replacement.indexOf('$') == -1 && replacement.indexOf('\\') == -1;
+		}
+
+		private boolean isCaseInsensitive() {
+			return (pattern.flags() & Pattern.CASE_INSENSITIVE) != 0;
+		}
+	}
+
+	/**
+	 * An Aho-Corasick automaton over the UTF-8 bytes of the literal patterns, with all the transitions computed (the
+	 * failure transitions are never followed while scanning).
+	 */
+	private static class LiteralsAutomaton {
+
+		private final boolean ignoreCase;
+
+		private final int[][] transitions;
+
+		/**
+		 * The replacement of the (longest) literal recognised in each state, {@code null} if none.
+		 */
+		private final byte[][] matchReplacements;
+		private final int[] matchLengths;
+
+		private LiteralsAutomaton(boolean ignoreCase, byte[][] literals, byte[][] replacements) {
+			this.ignoreCase = ignoreCase;
+
+			int maxStates = 1;
+			for (byte[] literal : literals) {
+				maxStates += literal.length;
+			}
+			int[][] gotos = new int[maxStates][];
+			byte[][] stateReplacements = new byte[maxStates][];
+			int[] stateLengths = new int[maxStates];
+			gotos[0] = newStateTransitions();
+			int count = 1;
+
+			for (int i = 0; i < literals.length; i++) {
+				int state = 0;
+				for (byte b : literals[i]) {
+					int c = b & 0xff;
+					if (gotos[state][c] < 0) {
+						gotos[count] = newStateTransitions();
+						gotos[state][c] = count++;
+					}
+					state = gotos[state][c];
+				}
+				if (stateReplacements[state] == null) {
+					// The first rule wins for the same literal.
+					stateReplacements[state] = replacements[i];
+					stateLengths[state] = literals[i].length;
+				}
+			}
+
+			// Breadth-first, the failure state of a state is always shallower and so already complete.
+			int[] failures = new int[count];
+			int[] queue = new int[count];
+			int head = 0;
+			int tail = 0;
+			for (int c = 0; c < 256; c++) {
+				if (gotos[0][c] < 0) {
+					gotos[0][c] = 0;
+				} else {
+					queue[tail++] = gotos[0][c];
+				}
+			}
+			while (head < tail) {
+				int state = queue[head++];
+				int failure = failures[state];
+				if (stateReplacements[state] == null) {
+					stateReplacements[state] = stateReplacements[failure];
+					stateLengths[state] = stateLengths[failure];
+				}
+				for (int c = 0; c < 256; c++) {
+					int target = gotos[state][c];
+					if (target < 0) {
+						gotos[state][c] = gotos[failure][c];
+					} else {
+						failures[target] = gotos[failure][c];
+						queue[tail++] = target;
+					}
+				}
+			}
+
+			transitions = Arrays.copyOf(gotos, count);
+			matchReplacements = Arrays.copyOf(stateReplacements, count);
+			matchLengths = Arrays.copyOf(stateLengths, count);
+		}
+
+		private static int[] newStateTransitions() {
+			int[] stateTransitions = new int[256];
+			Arrays.fill(stateTransitions, -1);
+			return stateTransitions;
+		}
+
+		/**
+		 * Creates the automaton for the given rules, if all of them are literal and have the same case sensitivity.
+		 *
+		 * @return the automaton, or {@code null} if the rules should be applied as regular expressions
+		 */
+		static LiteralsAutomaton create(List<Rule> rules) {
+			if (rules.isEmpty()) {
+				return null;
+			}
+			boolean ignoreCase = rules.get(0).isCaseInsensitive();
+			byte[][] literals = new byte[rules.size()][];
+			byte[][] replacements = new byte[rules.size()][];
+			for (int i = 0; i < rules.size(); i++) {
+				Rule rule = rules.get(i);
+				if (!rule.isLiteral() || rule.isCaseInsensitive() != ignoreCase) {
+					return null;
+				}
+				literals[i] = rule.getPattern().pattern().getBytes(StandardCharsets.UTF_8);
+				if (ignoreCase) {
+					for (int j = 0; j < literals[i].length; j++) {
+						literals[i][j] = toLowerCase(literals[i][j]);
+					}
+				}
+				replacements[i] = rule.getReplacement().getBytes(StandardCharsets.UTF_8);
+			}
+			return new LiteralsAutomaton(ignoreCase, literals, replacements);
+		}
+
+		/**
+		 * Lower cases US-ASCII letters, as done by case insensitive {@link Pattern}s (without
+		 * {@link Pattern#UNICODE_CASE}).
+		 */
+		private static byte toLowerCase(byte b) {
+			if (b >= 'A' && b <= 'Z') {
+				return (byte) (b + ('a' - 'A'));
+			}
+			return b;
+		}
+
+		/**
+		 * @param payload the payload, from its position to its limit
+		 * @return the new payload, or {@code null} if no literal was found
+		 */
+		byte[] replace(ByteBuffer payload) {
+			int start = payload.position();
+			int end = payload.limit();
+			byte[] result = null;
+			int resultLength = 0;
+			int copied = start;
+			int state = 0;
+			for (int i = start; i < end; i++) {
+				byte b = payload.get(i);
+				if (ignoreCase) {
+					b = toLowerCase(b);
+				}
+				state = transitions[state][b & 0xff];
+
+				byte[] replacement = matchReplacements[state];
+				if (replacement == null) {
+					continue;
+				}
+
+				int matchStart = i + 1 - matchLengths[state];
+				int unchanged = matchStart - copied;
+				if (result == null) {
+					result = new byte[end - start + Math.max(16, replacement.length)];
+				}
+				result = ensureCapacity(result, resultLength + unchanged + replacement.length);
+				ByteBuffer segment = payload.duplicate();
+				segment.position(copied);
+				segment.get(result, resultLength, unchanged);
+				resultLength += unchanged;
+				System.arraycopy(replacement, 0, result, resultLength, replacement.length);
+				resultLength += replacement.length;
+
+				copied = i + 1;
+				state = 0;
+			}
+
+			if (result == null) {
+				return null;
+			}
+			int unchanged = end - copied;
+			result = ensureCapacity(result, resultLength + unchanged);
+			ByteBuffer segment = payload.duplicate();
+			segment.position(copied);
+			segment.get(result, resultLength, unchanged);
+			resultLength += unchanged;
+			return Arrays.copyOf(result, resultLength);
+		}
+
+		private static byte[] ensureCapacity(byte[] array, int capacity) {
+			if (array.length >= capacity) {
+				return array;
+			}
+			return Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+		}
+	}
+}
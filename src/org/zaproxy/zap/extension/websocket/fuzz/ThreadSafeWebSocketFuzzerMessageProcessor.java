@@ -0,0 +1,30 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.fuzz;
+
+/**
+ * A {@code WebSocketFuzzerMessageProcessor} that can process several messages concurrently, it is called by all the
+ * fuzzer threads without synchronisation.
+ * <p>
+ * Processors that do not implement this interface process one message at a time.
+ *
+ * @see WebSocketFuzzer#preProcessMessage(long, org.zaproxy.zap.extension.websocket.WebSocketMessageDTO, java.util.List)
+ */
+public interface ThreadSafeWebSocketFuzzerMessageProcessor extends WebSocketFuzzerMessageProcessor {
+
+}
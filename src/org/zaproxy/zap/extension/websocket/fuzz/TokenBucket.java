@@ -0,0 +1,88 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.fuzz;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of an operation, for example sending messages.
+ * <p>
+ * The bucket is refilled with tokens at a constant rate, up to its capacity, and each operation takes one token,
+ * waiting for it if the bucket is empty. The capacity allows short bursts, after pauses.
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double nanosPerToken;
+    private final double capacity;
+
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Constructs a {@code TokenBucket} with a capacity of a tenth of a second of tokens (at least one).
+     *
+     * @param tokensPerSecond the rate, must be greater than zero
+     */
+    public TokenBucket(int tokensPerSecond) {
+        this(tokensPerSecond, Math.max(1, tokensPerSecond / 10), System.nanoTime());
+    }
+
+    TokenBucket(int tokensPerSecond, int capacity, long now) {
+        if (tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("Parameter tokensPerSecond must be greater than zero.");
+        }
+        this.nanosPerToken = (double) NANOS_PER_SECOND / tokensPerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefill = now;
+    }
+
+    /**
+     * Takes a token, waiting until one is available.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        long wait;
+        while ((wait = reserve(System.nanoTime())) > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Takes a token, if available.
+     *
+     * @param now the current time, in nanoseconds
+     * @return zero if a token was taken, otherwise the nanoseconds until one is available
+     */
+    synchronized long reserve(long now) {
+        long elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed / nanosPerToken);
+            lastRefill = now;
+        }
+
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) * nanosPerToken));
+    }
+}
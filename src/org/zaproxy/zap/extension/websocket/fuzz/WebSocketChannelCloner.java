@@ -0,0 +1,119 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.fuzz;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+
+import org.apache.commons.codec.binary.Base64;
+import org.parosproxy.paros.control.Control;
+import org.parosproxy.paros.db.DatabaseException;
+import org.parosproxy.paros.model.HistoryReference;
+import org.parosproxy.paros.model.Model;
+import org.parosproxy.paros.model.Session;
+import org.parosproxy.paros.network.HttpMessage;
+import org.parosproxy.paros.network.HttpSender;
+import org.zaproxy.zap.ZapGetMethod;
+import org.zaproxy.zap.extension.websocket.ExtensionWebSocket;
+import org.zaproxy.zap.extension.websocket.WebSocketProtocol;
+import org.zaproxy.zap.extension.websocket.WebSocketProxy;
+
+/**
+ * Opens new channels (in client mode) to the server of an existing channel, by sending again its handshake, with a
+ * new key.
+ */
+class WebSocketChannelCloner {
+
+    private static final SecureRandom KEY_GENERATOR = new SecureRandom();
+
+    private final Session session;
+    private HttpSender httpSender;
+
+    WebSocketChannelCloner(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Opens a new channel with the handshake of the given one.
+     *
+     * @param wsProxy the channel to clone
+     * @return the new channel, already started
+     * @throws IOException if the handshake was not stored, not accepted by the server or the channel could not be
+     *             started
+     */
+    WebSocketProxy clone(WebSocketProxy wsProxy) throws IOException {
+        HistoryReference handshakeReference = wsProxy.getHandshakeReference();
+        if (handshakeReference == null) {
+            throw new IOException("Handshake of channel #" + wsProxy.getChannelId() + " not available.");
+        }
+
+        HttpMessage handshake;
+        try {
+            handshake = handshakeReference.getHttpMessage().cloneRequest();
+        } catch (DatabaseException e) {
+            throw new IOException("Failed to read the handshake: " + e.getMessage(), e);
+        }
+        handshake.getRequestHeader().setHeader(WebSocketProtocol.HEADER_KEY, createKey());
+
+        getHttpSender().sendAndReceive(handshake, false);
+
+        Object method = handshake.getUserObject();
+        if (!handshake.isWebSocketUpgrade() || !(method instanceof ZapGetMethod)) {
+            throw new IOException("Server did not accept the handshake, status: "
+                    + handshake.getResponseHeader().getStatusCode());
+        }
+
+        ZapGetMethod upgradedMethod = (ZapGetMethod) method;
+        try {
+            // the channel waits for the handshake to be persisted
+            handshake.setHistoryRef(new HistoryReference(session, HistoryReference.TYPE_FUZZER, handshake));
+        } catch (DatabaseException e) {
+            upgradedMethod.releaseConnection();
+            throw new IOException("Failed to persist the handshake: " + e.getMessage(), e);
+        }
+
+        WebSocketProxy clone = Control.getSingleton()
+                .getExtensionLoader()
+                .getExtension(ExtensionWebSocket.class)
+                .createWebSocketsChannel(
+                        handshake,
+                        null,
+                        upgradedMethod.getUpgradedConnection(),
+                        upgradedMethod.getUpgradedInputStream());
+        if (clone == null) {
+            throw new IOException("Failed to start the cloned channel.");
+        }
+        return clone;
+    }
+
+    private HttpSender getHttpSender() {
+        if (httpSender == null) {
+            httpSender = new HttpSender(
+                    Model.getSingleton().getOptionsParam().getConnectionParam(),
+                    true,
+                    HttpSender.FUZZER_INITIATOR);
+        }
+        return httpSender;
+    }
+
+    private static String createKey() {
+        byte[] key = new byte[16];
+        KEY_GENERATOR.nextBytes(key);
+        return Base64.encodeBase64String(key);
+    }
+}
@@ -19,12 +19,19 @@
  */
 package org.zaproxy.zap.extension.websocket.fuzz;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.parosproxy.paros.model.Model;
@@ -43,6 +50,11 @@ public class WebSocketFuzzer extends AbstractFuzzer<WebSocketMessageDTO> {
 
     private static final AtomicInteger FUZZ_ID_GENERATOR = new AtomicInteger(0);
 
+    /**
+     * Maximum number of channels cloned at the same time.
+     */
+    private static final int MAX_CLONING_THREADS = 8;
+
     private final Session currentSession;
     private final Map<Integer, WebSocketProxy> wsProxies;
     private final WebSocketFuzzMessagesViewModel messagesModel;
@@ -52,6 +64,28 @@ public class WebSocketFuzzer extends AbstractFuzzer<WebSocketMessageDTO> {
     private final WebSocketMessageDTO originalMessage;
     private final int id;
 
+    private final int sendWindowSize;
+    private final int clonedChannelsCount;
+    private final TokenBucket rateLimiter;
+
+    /**
+     * The channels the messages are sent to, the fuzzed one and the clones. Initialised by the first task.
+     */
+    private List<WebSocketProxy> targetProxies;
+
+    /**
+     * Held while the cloned channels are opened, instead of the lock of the fuzzer, which would block the other tasks
+     * and the completion of the fuzzer meanwhile.
+     */
+    private final Object targetProxiesInitLock = new Object();
+
+    /**
+     * Set once the fuzzer completed, channels cloned afterwards are closed straight away.
+     */
+    private boolean completed;
+    private final List<WebSocketProxy> clonedProxies;
+    private final Map<Integer, WebSocketFuzzerChannelSender> channelSenders;
+
     public WebSocketFuzzer(
             TableWebSocket table,
             String fuzzerScanName,
@@ -67,7 +101,7 @@ public class WebSocketFuzzer extends AbstractFuzzer<WebSocketMessageDTO> {
         this.wsProxies = wsProxies;
         this.messageProcessors = messageProcessors.isEmpty()
                 ? Collections.<WebSocketFuzzerMessageProcessor> emptyList()
-                : Collections.synchronizedList(new ArrayList<>(messageProcessors));
+                : new CopyOnWriteArrayList<>(messageProcessors);
         currentSession = Model.getSingleton().getSession();
 
         this.originalMessage = message;
@@ -75,6 +109,21 @@ public class WebSocketFuzzer extends AbstractFuzzer<WebSocketMessageDTO> {
         messagesModel = new WebSocketFuzzMessagesViewModel(id, table);
         listeners = new ArrayList<>(1);
         messagesSentCounter = new AtomicInteger(0);
+
+        if (fuzzerOptions instanceof WebSocketFuzzerOptions) {
+            WebSocketFuzzerOptions wsFuzzerOptions = (WebSocketFuzzerOptions) fuzzerOptions;
+            sendWindowSize = wsFuzzerOptions.getSendWindowSize();
+            clonedChannelsCount = wsFuzzerOptions.getClonedChannels();
+            rateLimiter = wsFuzzerOptions.getMessagesPerSecond() > 0
+                    ? new TokenBucket(wsFuzzerOptions.getMessagesPerSecond())
+                    : null;
+        } else {
+            sendWindowSize = WebSocketFuzzerOptions.DEFAULT_SEND_WINDOW_SIZE;
+            clonedChannelsCount = WebSocketFuzzerOptions.DEFAULT_CLONED_CHANNELS;
+            rateLimiter = null;
+        }
+        clonedProxies = new ArrayList<>(clonedChannelsCount);
+        channelSenders = new HashMap<>();
     }
 
     @Override
@@ -86,6 +135,188 @@ public class WebSocketFuzzer extends AbstractFuzzer<WebSocketMessageDTO> {
         return wsProxies;
     }
 
+    /**
+     * Gets the channel the message of the given task should be sent to, the channels are used in turn.
+     * <p>
+     * The first call opens the cloned channels, if any, in parallel. Cloned channels that are no longer connected are dropped, their
+     * messages are sent through the remaining channels.
+     *
+     * @param taskId the ID of the task
+     * @param channelId the ID of the fuzzed channel
+     * @return the channel, or {@code null} if the fuzzed channel is no longer connected
+     */
+    protected WebSocketProxy getTargetProxy(long taskId, int channelId) {
+        if (!initTargetProxies(channelId)) {
+            return null;
+        }
+
+        List<WebSocketProxy> disconnectedClones = new ArrayList<>(0);
+        List<WebSocketFuzzerChannelSender> disconnectedSenders = new ArrayList<>(0);
+        WebSocketProxy target;
+        synchronized (this) {
+            while (true) {
+                target = targetProxies.get((int) (taskId % targetProxies.size()));
+                if (target.isConnected()) {
+                    break;
+                }
+                if (target == targetProxies.get(0)) {
+                    // the fuzzed channel
+                    target = null;
+                    break;
+                }
+
+                logger.debug("Cloned channel #" + target.getChannelId() + " disconnected, no longer used.");
+                targetProxies.remove(target);
+                clonedProxies.remove(target);
+                disconnectedClones.add(target);
+                WebSocketFuzzerChannelSender sender = channelSenders.remove(target.getChannelId());
+                if (sender != null) {
+                    disconnectedSenders.add(sender);
+                }
+            }
+        }
+
+        // outside the lock, waits for the sender threads to finish
+        for (WebSocketFuzzerChannelSender sender : disconnectedSenders) {
+            sender.shutdown(true);
+        }
+        for (WebSocketProxy clone : disconnectedClones) {
+            clone.shutdown();
+        }
+        return target;
+    }
+
+    /**
+     * Initialises the target channels, once, opening the cloned channels without holding the lock of the fuzzer.
+     *
+     * @param channelId the ID of the fuzzed channel
+     * @return {@code false} if the fuzzed channel is not available
+     */
+    private boolean initTargetProxies(int channelId) {
+        synchronized (targetProxiesInitLock) {
+            synchronized (this) {
+                if (targetProxies != null) {
+                    return true;
+                }
+            }
+
+            WebSocketProxy wsProxy = wsProxies.get(channelId);
+            if (wsProxy == null) {
+                return false;
+            }
+
+            List<WebSocketProxy> clones = openClonedChannels(wsProxy);
+            synchronized (this) {
+                if (!completed) {
+                    targetProxies = new ArrayList<>(1 + clones.size());
+                    targetProxies.add(wsProxy);
+                    targetProxies.addAll(clones);
+                    clonedProxies.addAll(clones);
+                    createChannelSenders();
+                    return true;
+                }
+            }
+
+            // stopped while cloning
+            for (WebSocketProxy clone : clones) {
+                clone.shutdown();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Opens the cloned channels in parallel, as each one needs a handshake.
+     *
+     * @param wsProxy the fuzzed channel
+     * @return the channels opened
+     */
+    private List<WebSocketProxy> openClonedChannels(final WebSocketProxy wsProxy) {
+        if (clonedChannelsCount == 0) {
+            return Collections.emptyList();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(clonedChannelsCount, MAX_CLONING_THREADS));
+        List<Future<WebSocketProxy>> futures = new ArrayList<>(clonedChannelsCount);
+        for (int i = 0; i < clonedChannelsCount; i++) {
+            futures.add(executor.submit(new Callable<WebSocketProxy>() {
+
+                @Override
+                public WebSocketProxy call() throws IOException {
+                    // not shared, the cloner is not thread-safe
+                    return new WebSocketChannelCloner(currentSession).clone(wsProxy);
+                }
+            }));
+        }
+        executor.shutdown();
+
+        List<WebSocketProxy> clones = new ArrayList<>(clonedChannelsCount);
+        for (Future<WebSocketProxy> future : futures) {
+            try {
+                clones.add(future.get());
+            } catch (ExecutionException e) {
+                logger.warn("Failed to clone channel #" + wsProxy.getChannelId() + ": " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while cloning channel #" + wsProxy.getChannelId());
+                break;
+            }
+        }
+        return clones;
+    }
+
+    private void createChannelSenders() {
+        if (sendWindowSize == 0) {
+            return;
+        }
+
+        for (WebSocketProxy wsProxy : targetProxies) {
+            WebSocketFuzzerChannelSender sender = new WebSocketFuzzerChannelSender(
+                    "ZAP-WebSocketFuzzer-" + id + "-Channel-" + wsProxy.getChannelId(),
+                    sendWindowSize,
+                    rateLimiter);
+            channelSenders.put(wsProxy.getChannelId(), sender);
+            sender.start();
+        }
+    }
+
+    /**
+     * @param wsProxy the channel
+     * @return the sender of the channel, or {@code null} if the messages are sent directly
+     */
+    protected synchronized WebSocketFuzzerChannelSender getChannelSender(WebSocketProxy wsProxy) {
+        return channelSenders.get(wsProxy.getChannelId());
+    }
+
+    /**
+     * @return the rate limiter of the messages sent directly, or {@code null} if none
+     */
+    protected TokenBucket getDirectSendRateLimiter() {
+        return (sendWindowSize == 0) ? rateLimiter : null;
+    }
+
+    @Override
+    protected void notifyListenersFuzzerCompleted(boolean successfully) {
+        List<WebSocketFuzzerChannelSender> senders;
+        List<WebSocketProxy> clones;
+        synchronized (this) {
+            completed = true;
+            senders = new ArrayList<>(channelSenders.values());
+            channelSenders.clear();
+            clones = new ArrayList<>(clonedProxies);
+            clonedProxies.clear();
+        }
+
+        for (WebSocketFuzzerChannelSender sender : senders) {
+            sender.shutdown(!successfully);
+        }
+        for (WebSocketProxy clone : clones) {
+            clone.shutdown();
+        }
+
+        super.notifyListenersFuzzerCompleted(successfully);
+    }
+
     protected Session getCurrentSession() {
         return currentSession;
     }
@@ -126,20 +357,24 @@ public class WebSocketFuzzer extends AbstractFuzzer<WebSocketMessageDTO> {
             return;
         }
 
-        synchronized (messageProcessors) {
-            WebSocketFuzzerTaskProcessorUtils utils = new WebSocketFuzzerTaskProcessorUtils(
-                    this,
-                    originalMessage,
-                    taskId,
-                    payloads);
-            for (Iterator<WebSocketFuzzerMessageProcessor> it = messageProcessors.iterator(); it.hasNext();) {
-                WebSocketFuzzerMessageProcessor messageProcessor = it.next();
-                try {
-                    utils.setCurrentProcessorName(messageProcessor.getName());
+        WebSocketFuzzerTaskProcessorUtils utils = new WebSocketFuzzerTaskProcessorUtils(
+                this,
+                originalMessage,
+                taskId,
+                payloads);
+        for (WebSocketFuzzerMessageProcessor messageProcessor : messageProcessors) {
+            try {
+                utils.setCurrentProcessorName(messageProcessor.getName());
+                if (messageProcessor instanceof ThreadSafeWebSocketFuzzerMessageProcessor) {
                     messageProcessor.processMessage(utils, message);
-                } catch (ProcessingException e) {
+                } else {
+                    synchronized (messageProcessor) {
+                        messageProcessor.processMessage(utils, message);
+                    }
+                }
+            } catch (ProcessingException e) {
+                if (messageProcessors.remove(messageProcessor)) {
                     logger.warn("Error while executing a processor, it will not be called again:", e);
-                    it.remove();
                 }
             }
         }
@@ -0,0 +1,132 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.fuzz;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Sends the fuzzed messages of one channel from a dedicated thread, such that the fuzzer threads do not contend on the
+ * output stream of the channel, they just queue the sends.
+ * <p>
+ * The number of queued sends (the in-flight window) is bounded, {@link #submit(Runnable)} waits while the queue is
+ * full.
+ */
+class WebSocketFuzzerChannelSender implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(WebSocketFuzzerChannelSender.class);
+
+    /**
+     * Queued after the last send, to stop the thread.
+     */
+    private static final Runnable STOP = new Runnable() {
+
+        @Override
+        public void run() {
+        }
+    };
+
+    private final BlockingQueue<Runnable> queue;
+    private final TokenBucket rateLimiter;
+    private final Thread thread;
+
+    /**
+     * Set on {@link #shutdown(boolean)}, no further sends are accepted.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * @param name the name of the thread
+     * @param windowSize maximum number of queued sends
+     * @param rateLimiter the rate limiter shared by all channels of the fuzzer, might be {@code null}
+     */
+    WebSocketFuzzerChannelSender(String name, int windowSize, TokenBucket rateLimiter) {
+        this.queue = new ArrayBlockingQueue<>(windowSize + 1);
+        this.rateLimiter = rateLimiter;
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Queues the given send, waiting for space in the window.
+     *
+     * @param send sends the message and handles the result
+     * @return {@code false} if the sender was shut down, the send was not queued
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean submit(Runnable send) throws InterruptedException {
+        while (!stopped) {
+            if (queue.offer(send, 100, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void run() {
+        try {
+            Runnable send;
+            while ((send = queue.take()) != STOP) {
+                if (rateLimiter != null) {
+                    rateLimiter.acquire();
+                }
+                try {
+                    send.run();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Failed to send fuzzed message: " + e.getMessage(), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * Stops the thread and waits for it to finish.
+     *
+     * @param discardPending {@code true} if the queued sends should be discarded, {@code false} to send them first
+     */
+    void shutdown(boolean discardPending) {
+        stopped = true;
+        if (discardPending) {
+            queue.clear();
+            thread.interrupt();
+        } else {
+            try {
+                queue.put(STOP);
+            } catch (InterruptedException e) {
+                thread.interrupt();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -19,17 +19,83 @@
  */
 package org.zaproxy.zap.extension.websocket.fuzz;
 
+import javax.swing.GroupLayout;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 
+import org.parosproxy.paros.Constant;
 import org.zaproxy.zap.extension.fuzz.FuzzerOptions;
 import org.zaproxy.zap.extension.fuzz.impl.FuzzerHandlerOptionsPanel;
+import org.zaproxy.zap.utils.ZapNumberSpinner;
 
 public class WebSocketFuzzerHandlerOptionsPanel implements FuzzerHandlerOptionsPanel<FuzzerOptions> {
 
     private final JPanel optionsPanel;
 
+    private final ZapNumberSpinner sendWindowSizeNumberSpinner;
+    private final ZapNumberSpinner messagesPerSecondNumberSpinner;
+    private final ZapNumberSpinner clonedChannelsNumberSpinner;
+
     public WebSocketFuzzerHandlerOptionsPanel() {
         optionsPanel = new JPanel();
+
+        GroupLayout layout = new GroupLayout(optionsPanel);
+        optionsPanel.setLayout(layout);
+        layout.setAutoCreateGaps(true);
+        layout.setAutoCreateContainerGaps(true);
+
+        sendWindowSizeNumberSpinner = new ZapNumberSpinner(
+                0,
+                WebSocketFuzzerOptions.DEFAULT_SEND_WINDOW_SIZE,
+                Integer.MAX_VALUE);
+        messagesPerSecondNumberSpinner = new ZapNumberSpinner(
+                0,
+                WebSocketFuzzerOptions.DEFAULT_MESSAGES_PER_SECOND,
+                Integer.MAX_VALUE);
+        clonedChannelsNumberSpinner = new ZapNumberSpinner(0, WebSocketFuzzerOptions.DEFAULT_CLONED_CHANNELS, 100);
+
+        JLabel sendWindowSizeLabel = createLabel("websocket.fuzzer.options.sendWindow", sendWindowSizeNumberSpinner);
+        JLabel messagesPerSecondLabel = createLabel(
+                "websocket.fuzzer.options.messagesPerSecond",
+                messagesPerSecondNumberSpinner);
+        JLabel clonedChannelsLabel = createLabel("websocket.fuzzer.options.clonedChannels", clonedChannelsNumberSpinner);
+
+        layout.setHorizontalGroup(
+                layout.createSequentialGroup()
+                        .addGroup(
+                                layout.createParallelGroup(GroupLayout.Alignment.TRAILING)
+                                        .addComponent(sendWindowSizeLabel)
+                                        .addComponent(messagesPerSecondLabel)
+                                        .addComponent(clonedChannelsLabel))
+                        .addGroup(
+                                layout.createParallelGroup(GroupLayout.Alignment.LEADING)
+                                        .addComponent(sendWindowSizeNumberSpinner)
+                                        .addComponent(messagesPerSecondNumberSpinner)
+                                        .addComponent(clonedChannelsNumberSpinner)));
+
+        layout.setVerticalGroup(
+                layout.createSequentialGroup()
+                        .addGroup(
+                                layout.createParallelGroup(GroupLayout.Alignment.BASELINE)
+                                        .addComponent(sendWindowSizeLabel)
+                                        .addComponent(sendWindowSizeNumberSpinner))
+                        .addGroup(
+                                layout.createParallelGroup(GroupLayout.Alignment.BASELINE)
+                                        .addComponent(messagesPerSecondLabel)
+                                        .addComponent(messagesPerSecondNumberSpinner))
+                        .addGroup(
+                                layout.createParallelGroup(GroupLayout.Alignment.BASELINE)
+                                        .addComponent(clonedChannelsLabel)
+                                        .addComponent(clonedChannelsNumberSpinner)));
+    }
+
+    private static JLabel createLabel(String key, ZapNumberSpinner numberSpinner) {
+        JLabel label = new JLabel(Constant.messages.getString(key));
+        label.setLabelFor(numberSpinner);
+        String tooltip = Constant.messages.getString(key + ".tooltip");
+        label.setToolTipText(tooltip);
+        numberSpinner.setToolTipText(tooltip);
+        return label;
     }
 
     @Override
@@ -44,10 +110,17 @@ public class WebSocketFuzzerHandlerOptionsPanel implements FuzzerHandlerOptionsP
 
     @Override
     public FuzzerOptions getOptions(FuzzerOptions baseOptions) {
-        return baseOptions;
+        return new WebSocketFuzzerOptions(
+                baseOptions,
+                sendWindowSizeNumberSpinner.getValue(),
+                messagesPerSecondNumberSpinner.getValue(),
+                clonedChannelsNumberSpinner.getValue());
     }
 
     @Override
     public void reset() {
+        sendWindowSizeNumberSpinner.setValue(WebSocketFuzzerOptions.DEFAULT_SEND_WINDOW_SIZE);
+        messagesPerSecondNumberSpinner.setValue(WebSocketFuzzerOptions.DEFAULT_MESSAGES_PER_SECOND);
+        clonedChannelsNumberSpinner.setValue(WebSocketFuzzerOptions.DEFAULT_CLONED_CHANNELS);
     }
 }
@@ -0,0 +1,78 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.fuzz;
+
+import org.zaproxy.zap.extension.fuzz.FuzzerOptions;
+
+/**
+ * The options of a {@link WebSocketFuzzer}, in addition to the common fuzzer options.
+ */
+public class WebSocketFuzzerOptions extends FuzzerOptions {
+
+    public static final int DEFAULT_SEND_WINDOW_SIZE = 0;
+
+    public static final int DEFAULT_MESSAGES_PER_SECOND = 0;
+
+    public static final int DEFAULT_CLONED_CHANNELS = 0;
+
+    private final int sendWindowSize;
+    private final int messagesPerSecond;
+    private final int clonedChannels;
+
+    /**
+     * @param baseOptions the common fuzzer options
+     * @param sendWindowSize number of messages queued per channel, sent by a dedicated thread of the channel, 0 to send
+     *            the messages directly from the fuzzer threads
+     * @param messagesPerSecond maximum number of messages sent per second (on all channels), 0 for no limit
+     * @param clonedChannels number of channels opened in addition to the fuzzed one, the messages are distributed
+     *            among all of them
+     */
+    public WebSocketFuzzerOptions(FuzzerOptions baseOptions, int sendWindowSize, int messagesPerSecond, int clonedChannels) {
+        super(baseOptions);
+
+        if (sendWindowSize < 0) {
+            throw new IllegalArgumentException("Parameter sendWindowSize must be zero or greater.");
+        }
+        if (messagesPerSecond < 0) {
+            throw new IllegalArgumentException("Parameter messagesPerSecond must be zero or greater.");
+        }
+        if (clonedChannels < 0) {
+            throw new IllegalArgumentException("Parameter clonedChannels must be zero or greater.");
+        }
+
+        this.sendWindowSize = sendWindowSize;
+        this.messagesPerSecond = messagesPerSecond;
+        this.clonedChannels = clonedChannels;
+    }
+
+    public int getSendWindowSize() {
+        return sendWindowSize;
+    }
+
+    public boolean isPipelined() {
+        return sendWindowSize > 0;
+    }
+
+    public int getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    public int getClonedChannels() {
+        return clonedChannels;
+    }
+}
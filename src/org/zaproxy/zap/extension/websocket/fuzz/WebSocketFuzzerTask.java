@@ -20,10 +20,10 @@
 package org.zaproxy.zap.extension.websocket.fuzz;
 
 import java.util.List;
-import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.zaproxy.zap.extension.fuzz.AbstractFuzzerTask;
+import org.zaproxy.zap.extension.websocket.WebSocketChannelDTO;
 import org.zaproxy.zap.extension.websocket.WebSocketFuzzMessageDTO;
 import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
 import org.zaproxy.zap.extension.websocket.WebSocketProxy;
@@ -44,37 +44,84 @@ public class WebSocketFuzzerTask extends AbstractFuzzerTask<WebSocketMessageDTO>
     @Override
     protected void runImpl(WebSocketMessageDTO message, List<Object> payloads) {
         getParent().preProcessMessage(getId(), message, payloads);
-        WebSocketFuzzMessageDTO messageSent = sendMessage(getParent().getWebSocketProxies(), (WebSocketFuzzMessageDTO) message);
-        if (messageSent == null) {
-            return;
-        }
-        getParent().messageSent(getId(), messageSent);
 
-        WebSocketFuzzResult result = new WebSocketFuzzResult(getId(), messageSent, payloads);
-        String fuzz = payloads.toString();
-        messageSent.fuzz = fuzz.substring(0, Math.min(150, fuzz.length()));
-        getParent().fuzzResultAvailable(result);
-    }
+        final WebSocketFuzzMessageDTO fuzzMessage = (WebSocketFuzzMessageDTO) message;
+        fuzzMessage.fuzzId = getParent().getId();
+        WebSocketChannelDTO fuzzedChannel = fuzzMessage.channel;
+        final List<Object> messagePayloads = payloads;
+        try {
+            while (true) {
+                final WebSocketProxy wsProxy = getParent().getTargetProxy(getId(), fuzzedChannel.id);
+                if (wsProxy == null) {
+                    getParent().stopScan();
+                    return;
+                }
+
+                // sent through a cloned channel, if different
+                fuzzMessage.channel = (wsProxy.getChannelId() != fuzzedChannel.id) ? wsProxy.getDTO() : fuzzedChannel;
+
+                WebSocketFuzzerChannelSender channelSender = getParent().getChannelSender(wsProxy);
+                if (channelSender == null) {
+                    TokenBucket rateLimiter = getParent().getDirectSendRateLimiter();
+                    if (rateLimiter != null) {
+                        rateLimiter.acquire();
+                    }
+                    sendMessage(wsProxy, fuzzMessage, payloads);
+                    return;
+                }
+
+                boolean submitted = channelSender.submit(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        sendMessage(wsProxy, fuzzMessage, messagePayloads);
+                    }
+                });
+                if (submitted) {
+                    return;
+                }
 
-    private WebSocketFuzzMessageDTO sendMessage(Map<Integer, WebSocketProxy> wsProxies, WebSocketFuzzMessageDTO message) {
-        if (!wsProxies.containsKey(message.channel.id)) {
-            getParent().stopScan();
-            return null;
+                if (wsProxy.isConnected() || getParent().isStopped()) {
+                    messageNotSent(fuzzMessage, payloads);
+                    return;
+                }
+                // the cloned channel was dropped, send through another one
+                LOGGER.debug("Channel #" + wsProxy.getChannelId() + " disconnected, sending through another channel.");
+            }
+        } catch (InterruptedException e) {
+            // fuzzer stopped
+            Thread.currentThread().interrupt();
         }
+    }
 
-        try {
-            WebSocketProxy wsProxy = wsProxies.get(message.channel.id);
+    /**
+     * Reports the given message as error, it was not sent as the fuzzer no longer uses the channel.
+     */
+    private void messageNotSent(WebSocketFuzzMessageDTO message, List<Object> payloads) {
+        LOGGER.debug("Not sent, channel #" + message.channel.id + " is no longer used by the fuzzer.");
+        message.state = WebSocketFuzzMessageDTO.State.ERROR;
+        reportResult(message, payloads);
+    }
 
-            message.fuzzId = getParent().getId();
+    private void sendMessage(WebSocketProxy wsProxy, WebSocketFuzzMessageDTO message, List<Object> payloads) {
+        try {
             if (wsProxy.send(message)) {
                 message.state = WebSocketFuzzMessageDTO.State.SUCCESSFUL;
             } else {
                 message.state = WebSocketFuzzMessageDTO.State.ERROR;
             }
-            return message;
         } catch (Exception e) {
             LOGGER.warn("Failed to send WebSocket fuzzed message, cause: " + e.getMessage());
+            return;
         }
-        return null;
+        getParent().messageSent(getId(), message);
+        reportResult(message, payloads);
+    }
+
+    private void reportResult(WebSocketFuzzMessageDTO message, List<Object> payloads) {
+        WebSocketFuzzResult result = new WebSocketFuzzResult(getId(), message, payloads);
+        String fuzz = payloads.toString();
+        message.fuzz = fuzz.substring(0, Math.min(150, fuzz.length()));
+        getParent().fuzzResultAvailable(result);
     }
 }
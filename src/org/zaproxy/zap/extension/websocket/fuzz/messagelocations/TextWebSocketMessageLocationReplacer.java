@@ -19,20 +19,45 @@
  */
 package org.zaproxy.zap.extension.websocket.fuzz.messagelocations;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.SortedSet;
 
 import org.zaproxy.zap.extension.fuzz.messagelocations.MessageLocationReplacement;
 import org.zaproxy.zap.extension.fuzz.messagelocations.MessageLocationReplacer;
 import org.zaproxy.zap.extension.websocket.WebSocketFuzzMessageDTO;
 import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+import org.zaproxy.zap.extension.websocket.messagelocations.BinaryWebSocketMessageLocation;
 import org.zaproxy.zap.extension.websocket.messagelocations.TextWebSocketMessageLocation;
 import org.zaproxy.zap.model.InvalidMessageException;
 import org.zaproxy.zap.model.MessageLocation;
 
+/**
+ * Replaces the {@link TextWebSocketMessageLocation text locations} of text messages and the
+ * {@link BinaryWebSocketMessageLocation binary locations} of binary messages.
+ * <p>
+ * The ranges of the locations are kept between replacements (the fuzzer always replaces the same locations), so that
+ * each new payload is just the concatenation of the unchanged segments of the original payload with the replacements.
+ */
 public class TextWebSocketMessageLocationReplacer implements MessageLocationReplacer<WebSocketMessageDTO> {
 
+    private static final int[] NO_RANGES = new int[0];
+
     private WebSocketMessageDTO message;
 
+    private char[] textPayload;
+    private byte[] binaryPayload;
+
+    /**
+     * The start and end of the locations replaced, in pairs, ordered.
+     */
+    private int[] ranges;
+    private int rangesCount;
+    private int unchangedLength;
+
+    private final StringBuilder textBuilder = new StringBuilder();
+
     @Override
     public boolean supports(MessageLocation location) {
         return supports(location.getClass());
@@ -40,71 +65,168 @@ public class TextWebSocketMessageLocationReplacer implements MessageLocationRepl
 
     @Override
     public boolean supports(Class<? extends MessageLocation> classLocation) {
-        return TextWebSocketMessageLocation.class.isAssignableFrom(classLocation);
+        return TextWebSocketMessageLocation.class.isAssignableFrom(classLocation)
+                || BinaryWebSocketMessageLocation.class.isAssignableFrom(classLocation);
     }
 
     @Override
-    public void init(WebSocketMessageDTO message) {
+    public synchronized void init(WebSocketMessageDTO message) {
+        Object payload;
+        try {
+            // fuzz the whole payload, not just the preview of a spooled payload
+            payload = message.getWholePayload();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to fuzz message: " + e.getMessage(), e);
+        }
+
         this.message = copyMessage(message);
+        this.message.payload = payload;
+        this.message.spooledPayload = null;
+
+        textPayload = null;
+        binaryPayload = null;
+        if (payload instanceof String) {
+            textPayload = ((String) payload).toCharArray();
+        } else if (payload instanceof byte[]) {
+            binaryPayload = (byte[]) payload;
+        }
+        ranges = NO_RANGES;
+        rangesCount = 0;
     }
 
     @Override
-    public WebSocketFuzzMessageDTO replace(SortedSet<? extends MessageLocationReplacement<?>> replacements)
+    public synchronized WebSocketFuzzMessageDTO replace(SortedSet<? extends MessageLocationReplacement<?>> replacements)
             throws InvalidMessageException {
         if (message == null) {
             throw new IllegalStateException("Replacer not initialised.");
         }
 
-        if (!(message.payload instanceof String)) {
-            // TODO: Exclude popup menu or support fuzzing binary payloads - why not?
-            return copyMessage(message);
-        }
-
-        Replacer replacer = new Replacer((String) message.payload);
-        for (MessageLocationReplacement<?> replacement : replacements) {
-            MessageLocation location = replacement.getMessageLocation();
-            if (!(location instanceof TextWebSocketMessageLocation)) {
-                continue;
-            }
-
-            TextWebSocketMessageLocation textLocation = (TextWebSocketMessageLocation) location;
-            replacer.replace(textLocation.getStart(), textLocation.getEnd(), replacement.getReplacement().toString());
-        }
-
         WebSocketFuzzMessageDTO replacedMessage = copyMessage(message);
-        replacedMessage.payload = replacer.toString();
-        replacedMessage.payloadLength = Integer.valueOf(replacer.length());
+        if (textPayload != null) {
+            replacedMessage.payload = replaceText(replacements);
+            replacedMessage.payloadLength = Integer.valueOf(((String) replacedMessage.payload).length());
+        } else if (binaryPayload != null) {
+            replacedMessage.payload = replaceBinary(replacements);
+            replacedMessage.payloadLength = Integer.valueOf(((byte[]) replacedMessage.payload).length);
+        }
 
         return replacedMessage;
     }
 
-    private WebSocketFuzzMessageDTO copyMessage(WebSocketMessageDTO msg) {
-        WebSocketFuzzMessageDTO fuzzMessage = new WebSocketFuzzMessageDTO();
-        msg.copyInto(fuzzMessage);
-        return fuzzMessage;
+    private String replaceText(SortedSet<? extends MessageLocationReplacement<?>> replacements) {
+        Object[] values = updateRanges(replacements, true, textPayload.length);
+
+        textBuilder.setLength(0);
+        int offset = 0;
+        for (int i = 0; i < rangesCount; i++) {
+            int start = ranges[i * 2];
+            textBuilder.append(textPayload, offset, start - offset);
+            textBuilder.append(values[i]);
+            offset = ranges[i * 2 + 1];
+        }
+        textBuilder.append(textPayload, offset, textPayload.length - offset);
+        return textBuilder.toString();
     }
 
-    private static class Replacer {
+    private byte[] replaceBinary(SortedSet<? extends MessageLocationReplacement<?>> replacements) {
+        Object[] values = updateRanges(replacements, false, binaryPayload.length);
 
-        private StringBuilder value;
-        private int offset;
+        int length = unchangedLength;
+        for (int i = 0; i < rangesCount; i++) {
+            byte[] value = toBytes(values[i]);
+            values[i] = value;
+            length += value.length;
+        }
 
-        private Replacer(String originalValue) {
-            value = new StringBuilder(originalValue);
+        byte[] payload = new byte[length];
+        int offset = 0;
+        int position = 0;
+        for (int i = 0; i < rangesCount; i++) {
+            int start = ranges[i * 2];
+            int segmentLength = start - offset;
+            System.arraycopy(binaryPayload, offset, payload, position, segmentLength);
+            position += segmentLength;
+
+            byte[] value = (byte[]) values[i];
+            System.arraycopy(value, 0, payload, position, value.length);
+            position += value.length;
+            offset = ranges[i * 2 + 1];
         }
+        System.arraycopy(binaryPayload, offset, payload, position, binaryPayload.length - offset);
+        return payload;
+    }
 
-        public void replace(int start, int end, String value) {
-            this.value.replace(offset + start, offset + end, value);
-            offset += value.length() - (end - start);
+    private static byte[] toBytes(Object value) {
+        if (value instanceof byte[]) {
+            return (byte[]) value;
         }
+        return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the replacement values of the locations of the given kind and updates the ranges, if they changed since the
+     * previous replacement.
+     *
+     * @param replacements the replacements, ordered by location
+     * @param text {@code true} if the text locations should be used, {@code false} for the binary locations
+     * @param payloadLength the length of the original payload, in characters or bytes
+     * @return the replacement values, in the same order as the ranges
+     */
+    private Object[] updateRanges(
+            SortedSet<? extends MessageLocationReplacement<?>> replacements,
+            boolean text,
+            int payloadLength) {
+        Object[] values = new Object[replacements.size()];
+        int[] newRanges = ranges.length >= replacements.size() * 2 ? null : new int[replacements.size() * 2];
+        boolean changed = newRanges != null;
+        int count = 0;
+        for (MessageLocationReplacement<?> replacement : replacements) {
+            MessageLocation location = replacement.getMessageLocation();
+            int start;
+            int end;
+            if (text && location instanceof TextWebSocketMessageLocation) {
+                start = ((TextWebSocketMessageLocation) location).getStart();
+                end = ((TextWebSocketMessageLocation) location).getEnd();
+            } else if (!text && location instanceof BinaryWebSocketMessageLocation) {
+                start = ((BinaryWebSocketMessageLocation) location).getStart();
+                end = ((BinaryWebSocketMessageLocation) location).getEnd();
+            } else {
+                continue;
+            }
+
+            if (end > payloadLength) {
+                // Location no longer applicable to the payload.
+                continue;
+            }
 
-        public int length() {
-            return value.length();
+            if (!changed && (count >= rangesCount || ranges[count * 2] != start || ranges[count * 2 + 1] != end)) {
+                changed = true;
+                newRanges = Arrays.copyOf(ranges, ranges.length);
+            }
+            if (changed) {
+                newRanges[count * 2] = start;
+                newRanges[count * 2 + 1] = end;
+            }
+            values[count] = replacement.getReplacement();
+            count++;
         }
 
-        @Override
-        public String toString() {
-            return value.toString();
+        if (changed || count != rangesCount) {
+            if (newRanges != null) {
+                ranges = newRanges;
+            }
+            rangesCount = count;
+            unchangedLength = payloadLength;
+            for (int i = 0; i < count; i++) {
+                unchangedLength -= ranges[i * 2 + 1] - ranges[i * 2];
+            }
         }
+        return values;
+    }
+
+    private WebSocketFuzzMessageDTO copyMessage(WebSocketMessageDTO msg) {
+        WebSocketFuzzMessageDTO fuzzMessage = new WebSocketFuzzMessageDTO();
+        msg.copyInto(fuzzMessage);
+        return fuzzMessage;
     }
 }
@@ -19,25 +19,31 @@
  */
 package org.zaproxy.zap.extension.websocket.fuzz.processors;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 import org.parosproxy.paros.control.Control;
 import org.zaproxy.zap.extension.script.ExtensionScript;
 import org.zaproxy.zap.extension.script.ScriptWrapper;
 import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
 import org.zaproxy.zap.extension.websocket.fuzz.ProcessingException;
+import org.zaproxy.zap.extension.websocket.fuzz.ThreadSafeWebSocketFuzzerMessageProcessor;
 import org.zaproxy.zap.extension.websocket.fuzz.WebSocketFuzzerMessageProcessor;
 import org.zaproxy.zap.extension.websocket.fuzz.WebSocketFuzzerTaskProcessorUtils;
 
 /**
  * A {@code WebSocketFuzzerMessageProcessor} that delegates the processing to a {@code WebSocketFuzzerProcessorScript}.
+ * <p>
+ * Each fuzzer thread uses its own instance of the script (each with its own script engine), the instances are pooled
+ * and reused, such that as many instances are created as messages are processed concurrently.
  *
  * @see WebSocketFuzzerMessageProcessor
  * @see WebSocketFuzzerProcessorScript
  */
-public class FuzzerWebSocketMessageScriptProcessorAdapter implements WebSocketFuzzerMessageProcessor {
+public class FuzzerWebSocketMessageScriptProcessorAdapter implements ThreadSafeWebSocketFuzzerMessageProcessor {
 
     private final ScriptWrapper scriptWrapper;
-    private boolean initialised;
-    private WebSocketFuzzerProcessorScript scriptProcessor;
+    private final Queue<WebSocketFuzzerProcessorScript> idleScriptProcessors;
 
     public FuzzerWebSocketMessageScriptProcessorAdapter(ScriptWrapper scriptWrapper) {
         if (scriptWrapper == null) {
@@ -48,6 +54,7 @@ public class FuzzerWebSocketMessageScriptProcessorAdapter implements WebSocketFu
                     "Parameter scriptWrapper must wrap a script of type \"" + WebSocketFuzzerProcessorScript.TYPE_NAME + "\".");
         }
         this.scriptWrapper = scriptWrapper;
+        this.idleScriptProcessors = new ConcurrentLinkedQueue<>();
     }
 
     @Override
@@ -58,15 +65,9 @@ public class FuzzerWebSocketMessageScriptProcessorAdapter implements WebSocketFu
     @Override
     public WebSocketMessageDTO processMessage(WebSocketFuzzerTaskProcessorUtils utils, WebSocketMessageDTO message)
             throws ProcessingException {
-        if (!initialised) {
-            initialise();
-            initialised = true;
-        }
-
+        WebSocketFuzzerProcessorScript scriptProcessor = idleScriptProcessors.poll();
         if (scriptProcessor == null) {
-            throw new ProcessingException(
-                    "Script '" + scriptWrapper.getName()
-                            + "' does not implement the expected interface (WebSocketFuzzerProcessorScript).");
+            scriptProcessor = createScriptProcessor();
         }
 
         try {
@@ -78,10 +79,18 @@ public class FuzzerWebSocketMessageScriptProcessorAdapter implements WebSocketFu
             // jdk.nashorn.internal.runtime.ECMAException
             handleScriptException(e);
         }
+        idleScriptProcessors.offer(scriptProcessor);
         return message;
     }
 
-    private void initialise() throws ProcessingException {
+    /**
+     * Creates a new instance of the script, evaluated in a new script engine.
+     *
+     * @return the new instance, never {@code null}
+     * @throws ProcessingException if the script could not be evaluated or does not implement the expected interface
+     */
+    private WebSocketFuzzerProcessorScript createScriptProcessor() throws ProcessingException {
+        WebSocketFuzzerProcessorScript scriptProcessor = null;
         ExtensionScript extensionScript = Control.getSingleton().getExtensionLoader().getExtension(ExtensionScript.class);
         if (extensionScript != null) {
             try {
@@ -90,6 +99,13 @@ public class FuzzerWebSocketMessageScriptProcessorAdapter implements WebSocketFu
                 handleScriptException(e);
             }
         }
+
+        if (scriptProcessor == null) {
+            throw new ProcessingException(
+                    "Script '" + scriptWrapper.getName()
+                            + "' does not implement the expected interface (WebSocketFuzzerProcessorScript).");
+        }
+        return scriptProcessor;
     }
 
     private void handleScriptException(Exception cause) throws ProcessingException {
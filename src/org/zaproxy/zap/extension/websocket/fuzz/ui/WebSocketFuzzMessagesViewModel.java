@@ -216,12 +216,8 @@ public class WebSocketFuzzMessagesViewModel extends WebSocketMessagesViewModel {
         } else {
             try {
                 getTable().insertMessage(message);
-                if (count % 10 == 0 || forceRefresh) {
-                    try {
-                        fireMessageArrived(message);
-                    } catch (IndexOutOfBoundsException e) {
-                    }
-                }
+                // the updates of the table are coalesced
+                fireMessageArrived(message);
             } catch (DatabaseException e) {
                 logger.warn("Failed to persist fuzzer message:", e);
             }
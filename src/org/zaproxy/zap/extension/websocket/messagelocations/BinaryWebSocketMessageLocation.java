@@ -0,0 +1,179 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.messagelocations;
+
+import java.util.Arrays;
+
+import org.apache.commons.codec.binary.Hex;
+import org.parosproxy.paros.Constant;
+import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+import org.zaproxy.zap.model.MessageLocation;
+
+/**
+ * A {@code MessageLocation} of binary {@code WebSocket} messages, a range of bytes of the payload.
+ */
+public class BinaryWebSocketMessageLocation implements WebSocketMessageLocation {
+
+    private final int start;
+    private final int end;
+    private final byte[] value;
+
+    public BinaryWebSocketMessageLocation(int position) {
+        this(position, position, new byte[0]);
+    }
+
+    /**
+     * @param start the index of the first byte, inclusive
+     * @param end the index of the last byte, exclusive
+     * @param value the bytes of the payload in the range
+     */
+    public BinaryWebSocketMessageLocation(int start, int end, byte[] value) {
+        if (start < 0) {
+            throw new IllegalArgumentException("Parameter start must be greater or equal to zero.");
+        }
+        if (end < 0) {
+            throw new IllegalArgumentException("Parameter end must be greater or equal to zero.");
+        }
+        if (start > end) {
+            throw new IllegalArgumentException("Parameter end must be greater than start.");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Parameter value must not be null.");
+        }
+        this.start = start;
+        this.end = end;
+        this.value = value;
+    }
+
+    @Override
+    public Class<WebSocketMessageDTO> getTargetMessageClass() {
+        return WebSocketMessageDTO.class;
+    }
+
+    @Override
+    public String getDescription() {
+        StringBuilder description = new StringBuilder(25);
+        description.append(Constant.messages.getString("websocket.messagelocation.binary.location"));
+
+        description.append(" [").append(start);
+        if (start != end) {
+            description.append(", ").append(end);
+        }
+        description.append(']');
+
+        return description.toString();
+    }
+
+    /**
+     * @return the bytes of the location, in hexadecimal
+     */
+    @Override
+    public String getValue() {
+        return Hex.encodeHexString(value);
+    }
+
+    public byte[] getBytes() {
+        return value.clone();
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    @Override
+    public boolean overlaps(MessageLocation otherLocation) {
+        if (!(otherLocation instanceof BinaryWebSocketMessageLocation)) {
+            return true;
+        }
+
+        BinaryWebSocketMessageLocation otherBinaryLocation = (BinaryWebSocketMessageLocation) otherLocation;
+        if (start == otherBinaryLocation.getStart()) {
+            if (start == end) {
+                return end == otherBinaryLocation.getEnd();
+            }
+            return otherBinaryLocation.getStart() != otherBinaryLocation.getEnd();
+        }
+        if (start < otherBinaryLocation.getStart()) {
+            return end > otherBinaryLocation.getStart();
+        }
+        return start < otherBinaryLocation.getEnd();
+    }
+
+    @Override
+    public int compareTo(MessageLocation otherLocation) {
+        if (!(otherLocation instanceof BinaryWebSocketMessageLocation)) {
+            return 1;
+        }
+
+        BinaryWebSocketMessageLocation otherBinaryLocation = (BinaryWebSocketMessageLocation) otherLocation;
+        if (start > otherBinaryLocation.getStart()) {
+            return 1;
+        } else if (start < otherBinaryLocation.getStart()) {
+            return -1;
+        }
+
+        if (end > otherBinaryLocation.getEnd()) {
+            return 1;
+        } else if (end < otherBinaryLocation.getEnd()) {
+            return -1;
+        }
+
+        int result = getValue().compareTo(otherBinaryLocation.getValue());
+        if (result != 0) {
+            return result;
+        }
+
+        return 1;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + end;
+        result = prime * result + start;
+        result = prime * result + Arrays.hashCode(value);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        BinaryWebSocketMessageLocation other = (BinaryWebSocketMessageLocation) obj;
+        if (end != other.end) {
+            return false;
+        }
+        if (start != other.start) {
+            return false;
+        }
+        return Arrays.equals(value, other.value);
+    }
+
+}
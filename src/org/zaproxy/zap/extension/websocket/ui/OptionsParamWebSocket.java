@@ -17,6 +17,7 @@
  */
 package org.zaproxy.zap.extension.websocket.ui;
 
+import org.apache.commons.configuration.ConversionException;
 import org.apache.commons.configuration.FileConfiguration;
 import org.parosproxy.paros.common.AbstractParam;
 
@@ -26,10 +27,58 @@ public class OptionsParamWebSocket extends AbstractParam {
 	public static final String FORWARD_ALL = "websocket.forwardAll";
 	public static final String BREAK_ON_PING_PONG = "websocket.breakOnPingPong";
 	public static final String BREAK_ON_ALL = "websocket.breakOnAll";
+	public static final String STORAGE_ASYNC = "websocket.storage.async";
+	public static final String STORAGE_QUEUE_SIZE = "websocket.storage.queueSize";
+	public static final String STORAGE_BATCH_SIZE = "websocket.storage.batchSize";
+	public static final String STORAGE_FLUSH_INTERVAL = "websocket.storage.flushInterval";
+	public static final String STORAGE_OVERFLOW_POLICY = "websocket.storage.overflowPolicy";
+	public static final String LISTENER_THREAD_STACK_SIZE = "websocket.listener.threadStackSize";
+	public static final String SPOOL_THRESHOLD = "websocket.spoolThreshold";
+	public static final String STORAGE_MAX_PAYLOAD_SIZE = "websocket.storage.maxPayloadSize";
+	public static final String STORAGE_COMPRESS_PAYLOADS = "websocket.storage.compressPayloads";
+	public static final String RETENTION_MAX_AGE = "websocket.storage.retention.maxAge";
+	public static final String RETENTION_MAX_MESSAGES_PER_CHANNEL = "websocket.storage.retention.maxMessagesPerChannel";
+	public static final String RETENTION_MAX_TOTAL_SIZE = "websocket.storage.retention.maxTotalSize";
+	public static final String RETENTION_INTERVAL = "websocket.storage.retention.interval";
+
+	public static final int DEFAULT_STORAGE_QUEUE_SIZE = 10000;
+	public static final int DEFAULT_STORAGE_BATCH_SIZE = 100;
+	public static final int DEFAULT_STORAGE_FLUSH_INTERVAL = 250;
+	public static final int DEFAULT_SPOOL_THRESHOLD = 8 * 1024 * 1024;
+	public static final int DEFAULT_RETENTION_INTERVAL = 60;
+
+	/**
+	 * Determines what happens with a message that should be stored
+	 * asynchronously, while the storage queue is full.
+	 */
+	public enum StorageOverflowPolicy {
+		/**
+		 * Forwarding waits until there is space in the queue again.
+		 */
+		BLOCK,
+		/**
+		 * The message is forwarded, but not stored. Dropped messages are
+		 * counted.
+		 */
+		DROP
+	}
 
 	private boolean isForwardAll;
 	private boolean isBreakOnPingPong;
 	private boolean isBreakOnAll;
+	private boolean isStorageAsync;
+	private int storageQueueSize;
+	private int storageBatchSize;
+	private int storageFlushInterval;
+	private StorageOverflowPolicy storageOverflowPolicy;
+	private int listenerThreadStackSize;
+	private int spoolThreshold;
+	private int storageMaxPayloadSize;
+	private boolean isStorageCompressPayloads;
+	private int retentionMaxAge;
+	private int retentionMaxMessagesPerChannel;
+	private int retentionMaxTotalSize;
+	private int retentionInterval;
 
     @Override
     protected void parse() {
@@ -37,6 +86,53 @@ public class OptionsParamWebSocket extends AbstractParam {
     	isForwardAll = cfg.getBoolean(FORWARD_ALL, false);
     	isBreakOnPingPong = cfg.getBoolean(BREAK_ON_PING_PONG, false);
     	isBreakOnAll = cfg.getBoolean(BREAK_ON_ALL, false);
+    	isStorageAsync = cfg.getBoolean(STORAGE_ASYNC, false);
+    	storageQueueSize = getPositiveInt(cfg, STORAGE_QUEUE_SIZE, DEFAULT_STORAGE_QUEUE_SIZE);
+    	storageBatchSize = getPositiveInt(cfg, STORAGE_BATCH_SIZE, DEFAULT_STORAGE_BATCH_SIZE);
+    	storageFlushInterval = getPositiveInt(cfg, STORAGE_FLUSH_INTERVAL, DEFAULT_STORAGE_FLUSH_INTERVAL);
+    	
+    	String policy = cfg.getString(STORAGE_OVERFLOW_POLICY, StorageOverflowPolicy.BLOCK.name());
+    	try {
+    		storageOverflowPolicy = StorageOverflowPolicy.valueOf(policy.trim().toUpperCase());
+    	} catch (IllegalArgumentException e) {
+    		storageOverflowPolicy = StorageOverflowPolicy.BLOCK;
+    	}
+    	
+    	try {
+    		listenerThreadStackSize = Math.max(0, cfg.getInt(LISTENER_THREAD_STACK_SIZE, 0));
+    	} catch (ConversionException e) {
+    		listenerThreadStackSize = 0;
+    	}
+    	
+    	try {
+    		spoolThreshold = Math.max(0, cfg.getInt(SPOOL_THRESHOLD, DEFAULT_SPOOL_THRESHOLD));
+    	} catch (ConversionException e) {
+    		spoolThreshold = DEFAULT_SPOOL_THRESHOLD;
+    	}
+    	
+    	storageMaxPayloadSize = getNonNegativeInt(cfg, STORAGE_MAX_PAYLOAD_SIZE);
+    	isStorageCompressPayloads = cfg.getBoolean(STORAGE_COMPRESS_PAYLOADS, false);
+    	retentionMaxAge = getNonNegativeInt(cfg, RETENTION_MAX_AGE);
+    	retentionMaxMessagesPerChannel = getNonNegativeInt(cfg, RETENTION_MAX_MESSAGES_PER_CHANNEL);
+    	retentionMaxTotalSize = getNonNegativeInt(cfg, RETENTION_MAX_TOTAL_SIZE);
+    	retentionInterval = getPositiveInt(cfg, RETENTION_INTERVAL, DEFAULT_RETENTION_INTERVAL);
+    }
+
+    private static int getNonNegativeInt(FileConfiguration cfg, String key) {
+    	try {
+    		return Math.max(0, cfg.getInt(key, 0));
+    	} catch (ConversionException e) {
+    		return 0;
+    	}
+    }
+
+    private static int getPositiveInt(FileConfiguration cfg, String key, int defaultValue) {
+    	try {
+    		int value = cfg.getInt(key, defaultValue);
+    		return (value > 0) ? value : defaultValue;
+    	} catch (ConversionException e) {
+    		return defaultValue;
+    	}
     }
 
     /**
@@ -102,4 +198,135 @@ public class OptionsParamWebSocket extends AbstractParam {
 		this.isBreakOnAll = isBreakOnAll;
 		getConfig().setProperty(BREAK_ON_ALL, isBreakOnAll);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * If true, then finished messages are put into a queue and written to the
+	 * database by a dedicated thread in batches, such that forwarding does not
+	 * wait on the database.
+	 * 
+	 * @return True if messages should be stored asynchronously.
+	 */
+	public boolean isStorageAsync() {
+		return isStorageAsync;
+	}
+
+	/**
+	 * @see OptionsParamWebSocket#isStorageAsync()
+	 * 
+	 * @param isStorageAsync
+	 */
+	public void setStorageAsync(boolean isStorageAsync) {
+		this.isStorageAsync = isStorageAsync;
+		getConfig().setProperty(STORAGE_ASYNC, isStorageAsync);
+	}
+
+	/**
+	 * @return maximum number of messages waiting to be stored asynchronously
+	 */
+	public int getStorageQueueSize() {
+		return storageQueueSize;
+	}
+
+	/**
+	 * @return maximum number of messages inserted with one JDBC batch
+	 */
+	public int getStorageBatchSize() {
+		return storageBatchSize;
+	}
+
+	/**
+	 * @return maximum time in milliseconds a message waits for its batch to fill up
+	 */
+	public int getStorageFlushInterval() {
+		return storageFlushInterval;
+	}
+
+	/**
+	 * @return what happens with new messages while the storage queue is full
+	 */
+	public StorageOverflowPolicy getStorageOverflowPolicy() {
+		return storageOverflowPolicy;
+	}
+
+	/**
+	 * Each WebSocket channel is served by two threads blocking on reads. With
+	 * thousands of (mostly idle) channels, a smaller stack reduces the memory
+	 * reserved for these threads.
+	 * 
+	 * @return stack size in KiB for listener threads, 0 for the JVM default
+	 */
+	public int getListenerThreadStackSize() {
+		return listenerThreadStackSize;
+	}
+
+	/**
+	 * Messages growing beyond this size are spooled to a temporary file
+	 * instead of being kept in memory. Spooled messages are forwarded as they
+	 * arrive, observers get a preview and can stream the whole payload.
+	 * 
+	 * @return threshold in bytes, 0 if messages are never spooled
+	 */
+	public int getSpoolThreshold() {
+		return spoolThreshold;
+	}
+
+	/**
+	 * Only the first bytes of bigger payloads are stored, the stored payload
+	 * length is still the length of the whole payload.
+	 * 
+	 * @return maximum number of payload bytes stored per message, 0 for the
+	 *         size of the payload columns (16 MiB)
+	 */
+	public int getStorageMaxPayloadSize() {
+		return storageMaxPayloadSize;
+	}
+
+	/**
+	 * @return True if the payloads should be stored compressed (deflate).
+	 */
+	public boolean isStorageCompressPayloads() {
+		return isStorageCompressPayloads;
+	}
+
+	/**
+	 * @return age in minutes after which messages are deleted from the
+	 *         session, 0 if messages are kept regardless of their age
+	 */
+	public int getRetentionMaxAge() {
+		return retentionMaxAge;
+	}
+
+	/**
+	 * @return maximum number of messages kept per channel (the oldest are
+	 *         deleted), 0 for no limit
+	 */
+	public int getRetentionMaxMessagesPerChannel() {
+		return retentionMaxMessagesPerChannel;
+	}
+
+	/**
+	 * The size of the stored messages is the sum of their (possibly
+	 * truncated) payload lengths, before compression.
+	 * 
+	 * @return maximum size in MiB of all stored messages (the oldest are
+	 *         deleted), 0 for no limit
+	 */
+	public int getRetentionMaxTotalSize() {
+		return retentionMaxTotalSize;
+	}
+
+	/**
+	 * @return interval in seconds between the runs of the retention policy
+	 */
+	public int getRetentionInterval() {
+		return retentionInterval;
+	}
+
+	/**
+	 * @return True if any retention limit is set, that is, stored messages
+	 *         should be deleted.
+	 */
+	public boolean isRetentionEnabled() {
+		return retentionMaxAge > 0 || retentionMaxMessagesPerChannel > 0 || retentionMaxTotalSize > 0;
+	}
+}
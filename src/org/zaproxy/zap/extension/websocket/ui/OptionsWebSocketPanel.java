@@ -40,6 +40,8 @@ import org.parosproxy.paros.view.AbstractParamPanel;
  * <li>Break on All - react on breakpoints set for all requests/responses.</li>
  * <li>Break on Ping/Pong - react on Ping & Pong messages that arrive while
  * stepping or waiting for all requests/responses.</li>
+ * <li>Store Asynchronously - write messages to the database in batches on a
+ * separate thread.</li>
  * </ul>
  * </p>
  */
@@ -55,6 +57,7 @@ public class OptionsWebSocketPanel extends AbstractParamPanel {
     private static final String LABEL_FORWARD_ALL = Constant.messages.getString("websocket.options.forward_all");
     private static final String LABEL_BREAK_ON_PING_PONG = Constant.messages.getString("websocket.options.break_on_ping_pong");
     private static final String LABEL_BREAK_ON_ALL = Constant.messages.getString("websocket.options.break_on_all");
+    private static final String LABEL_STORAGE_ASYNC = Constant.messages.getString("websocket.options.storage_async");
 
     /**
 	 * Represents the model containing current values. Is able to save back to
@@ -65,6 +68,7 @@ public class OptionsWebSocketPanel extends AbstractParamPanel {
 	private JCheckBox checkBoxForwardAll;
 	private JCheckBox checkBoxBreakOnPingPong;
 	private JCheckBox checkBoxBreakOnAll;
+	private JCheckBox checkBoxStorageAsync;
 	
     public OptionsWebSocketPanel(OptionsParamWebSocket wsParams) {
         super();
@@ -100,6 +104,12 @@ public class OptionsWebSocketPanel extends AbstractParamPanel {
         gbc.insets = new Insets(2,2,2,2);
         panel.add(getCheckBoxBreakOnPingPong(), gbc);
         
+        gbc = new GridBagConstraints();
+        gbc.gridy = 3;
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(2,2,2,2);
+        panel.add(getCheckBoxStorageAsync(), gbc);
+        
         return panel;
 	}
 
@@ -123,12 +133,20 @@ public class OptionsWebSocketPanel extends AbstractParamPanel {
         }
         return checkBoxBreakOnPingPong;
     }
+
+	private JCheckBox getCheckBoxStorageAsync() {
+        if (checkBoxStorageAsync == null) {
+        	checkBoxStorageAsync = new JCheckBox(LABEL_STORAGE_ASYNC);
+        }
+        return checkBoxStorageAsync;
+    }
     
     @Override
     public void initParam(Object obj) {
         checkBoxForwardAll.setSelected(wsParams.isForwardAll());
         checkBoxBreakOnAll.setSelected(wsParams.isBreakOnAll());
         checkBoxBreakOnPingPong.setSelected(wsParams.isBreakOnPingPong());
+        checkBoxStorageAsync.setSelected(wsParams.isStorageAsync());
     }
 
     @Override
@@ -141,6 +159,7 @@ public class OptionsWebSocketPanel extends AbstractParamPanel {
     	wsParams.setForwardAll(checkBoxForwardAll.isSelected());
     	wsParams.setBreakOnAll(checkBoxBreakOnAll.isSelected());
     	wsParams.setBreakOnPingPong(checkBoxBreakOnPingPong.isSelected());
+    	wsParams.setStorageAsync(checkBoxStorageAsync.isSelected());
     }
     
     @Override
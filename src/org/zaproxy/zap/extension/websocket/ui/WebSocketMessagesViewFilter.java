@@ -17,12 +17,15 @@
  */
 package org.zaproxy.zap.extension.websocket.ui;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import org.parosproxy.paros.Constant;
 import org.zaproxy.zap.extension.websocket.WebSocketMessage;
 import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
 import org.zaproxy.zap.extension.websocket.WebSocketMessage.Direction;
+import org.zaproxy.zap.extension.websocket.db.PayloadTokenizer;
 
 /**
  * Used as filter for the {@link WebSocketPanel} restricting types of messages
@@ -40,6 +43,13 @@ public class WebSocketMessagesViewFilter {
 	
 	private boolean isShowJustInScope = false;
 	
+	/**
+	 * Words searched in the payloads, null if not applied.
+	 */
+	private String payloadSearch;
+	
+	private Set<String> payloadSearchTokens = Collections.emptySet();
+	
 	public void setOpcodes(List<Integer> list) {
 		opcodeList = list;
 	}
@@ -70,12 +80,32 @@ public class WebSocketMessagesViewFilter {
 		return isShowJustInScope;
 	}
 
+	/**
+	 * Shows only text messages containing all the given words, looked up in
+	 * the payload search index.
+	 * 
+	 * @param payloadSearch words, null or empty to show all messages
+	 * @see PayloadTokenizer
+	 */
+	public void setPayloadSearch(String payloadSearch) {
+		payloadSearchTokens = PayloadTokenizer.tokenize(payloadSearch);
+		this.payloadSearch = payloadSearchTokens.isEmpty() ? null : payloadSearch;
+	}
+
+	/**
+	 * @return Null if the payloads are not searched
+	 */
+	public String getPayloadSearch() {
+		return payloadSearch;
+	}
+
 	/**
 	 * Resets this filter. Message will no longer be blacklisted.
 	 */
 	public void reset() {
 		opcodeList = null;
 		direction = null;
+		setPayloadSearch(null);
 	}
 	
 	/**
@@ -104,6 +134,13 @@ public class WebSocketMessagesViewFilter {
 			}
 		}
 		
+		if (payloadSearch != null) {
+			if (!(message.payload instanceof String)
+					|| !PayloadTokenizer.matches((String) message.payload, payloadSearchTokens)) {
+				return true;
+			}
+		}
+		
 		return false;
 	}
 
@@ -159,6 +196,19 @@ public class WebSocketMessagesViewFilter {
 			}
 		}
 
+		if (payloadSearch != null) {
+			empty = false;
+			sb.append(Constant.messages.getString("websocket.filter.label.payload"));
+			
+			if (shouldIncludeValues) {
+				sb.append(": ");
+				sb.append(payloadSearch);
+				sb.append(" ");
+			} else {
+				sb.append(" ");
+			}
+		}
+
 		sb.insert(0, " ");
 		
 		if (empty) {
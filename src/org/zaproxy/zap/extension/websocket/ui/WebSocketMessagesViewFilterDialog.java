@@ -117,7 +117,7 @@ public class WebSocketMessagesViewFilterDialog extends AbstractDialog {
 		if (dialogPanel == null) {
 			dialogPanel = new JPanel();
 			dialogPanel.setLayout(new GridBagLayout());
-			dialogPanel.setPreferredSize(new Dimension(wsUiHelper.getDialogWidth() + 20, 280));
+			dialogPanel.setPreferredSize(new Dimension(wsUiHelper.getDialogWidth() + 20, 310));
 			
 			int y = 0;
 			
@@ -139,6 +139,10 @@ public class WebSocketMessagesViewFilterDialog extends AbstractDialog {
 
 			dialogPanel.add(wsUiHelper.getIncomingCheckbox(), wsUiHelper.getFieldConstraints(1, y++));
 			
+			// add payload search
+			dialogPanel.add(wsUiHelper.getPayloadSearchLabel(), wsUiHelper.getLabelConstraints(0, y));
+			dialogPanel.add(wsUiHelper.getPayloadSearchTextField(), wsUiHelper.getFieldConstraints(1, y++));
+			
 			// add submit panel
 			dialogPanel.add(getActionsPanel(), wsUiHelper.getFieldConstraints(1, y));
 		}
@@ -176,6 +180,7 @@ public class WebSocketMessagesViewFilterDialog extends AbstractDialog {
 				public void actionPerformed(ActionEvent e) {    
 					filter.setOpcodes(wsUiHelper.getSelectedOpcodeIntegers());
 					filter.setDirection(wsUiHelper.getDirection());
+					filter.setPayloadSearch(wsUiHelper.getPayloadSearch());
 				    exitResult = JOptionPane.OK_OPTION;
 				    WebSocketMessagesViewFilterDialog.this.dispose();
 				}
@@ -231,6 +236,7 @@ public class WebSocketMessagesViewFilterDialog extends AbstractDialog {
 					exitResult = JOptionPane.NO_OPTION;
 					wsUiHelper.setSelectedOpcodes(null);
 					wsUiHelper.setDirection(null);
+					wsUiHelper.setPayloadSearch("");
 					filter.reset();
 				}
 			});
@@ -17,10 +17,15 @@
  */
 package org.zaproxy.zap.extension.websocket.ui;
 
+import java.awt.EventQueue;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.ImageIcon;
+import javax.swing.Timer;
 
 import org.apache.commons.collections.map.LRUMap;
 import org.apache.commons.lang.StringEscapeUtils;
@@ -89,6 +94,34 @@ public class WebSocketMessagesViewModel extends PagingTableModel<WebSocketMessag
 
 	private LRUMap fullMessagesCache;
 	
+	/**
+	 * Last message of the pages loaded so far, keyed by the offset of the
+	 * following page, such that the next page can be retrieved with a keyset
+	 * query instead of skipping all the previous rows.
+	 */
+	private LRUMap pageAnchors;
+	
+	/**
+	 * Interval between updates of the table with the messages arrived, in
+	 * milliseconds.
+	 */
+	private static final int ARRIVALS_UPDATE_INTERVAL = 50;
+	
+	/**
+	 * Interval between checks of the incrementally tracked row count against
+	 * the database, in milliseconds.
+	 */
+	private static final int ROW_COUNT_CHECK_INTERVAL = 1000;
+	
+	/**
+	 * Number of messages arrived since the last update of the table.
+	 */
+	private final AtomicInteger pendingArrivals;
+	
+	private final Timer arrivalsTimer;
+	
+	private final Timer rowCountCheckTimer;
+	
 	private static final ImageIcon outgoingDirection;
 	private static final ImageIcon incomingDirection;
 	
@@ -117,6 +150,26 @@ public class WebSocketMessagesViewModel extends PagingTableModel<WebSocketMessag
 		
 		table = webSocketTable;
 		fullMessagesCache = new LRUMap(10);
+		pageAnchors = new LRUMap(50);
+		
+		pendingArrivals = new AtomicInteger();
+		arrivalsTimer = new Timer(ARRIVALS_UPDATE_INTERVAL, new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				fireArrivedMessagesInserted();
+			}
+		});
+		arrivalsTimer.setRepeats(false);
+		
+		rowCountCheckTimer = new Timer(ROW_COUNT_CHECK_INTERVAL, new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				checkRowCount();
+			}
+		});
+		rowCountCheckTimer.setRepeats(false);
 	}
 
 	protected TableWebSocket getTable() {
@@ -138,6 +191,10 @@ public class WebSocketMessagesViewModel extends PagingTableModel<WebSocketMessag
 	 */
 	@Override
 	public int getRowCount() {
+		return getMessageCount();
+	}
+	
+	private int getMessageCount() {
 		if (table == null) {
 			return 0;
 		}
@@ -185,6 +242,9 @@ public class WebSocketMessagesViewModel extends PagingTableModel<WebSocketMessag
 			message.isOutgoing = filter.getDirection().equals(Direction.OUTGOING) ? true : false;
 		}
 		
+		// words searched in the payload
+		message.payload = filter.getPayloadSearch();
+		
 		return message;
 	}
 
@@ -251,7 +311,24 @@ public class WebSocketMessagesViewModel extends PagingTableModel<WebSocketMessag
 	@Override
 	protected List<WebSocketMessageDTO> loadPage(int offset, int length) {
 		try {
-			return table.getMessages(getCriterionMessage(), getCriterionOpcodes(), getCriterianInScope(), offset, length, PAYLOAD_PREVIEW_LENGTH);
+			WebSocketMessageDTO anchor;
+			synchronized (pageAnchors) {
+				anchor = (WebSocketMessageDTO) pageAnchors.get(offset);
+			}
+			
+			List<WebSocketMessageDTO> page;
+			if (anchor != null) {
+				page = table.getMessages(getCriterionMessage(), getCriterionOpcodes(), getCriterianInScope(), anchor, length, PAYLOAD_PREVIEW_LENGTH);
+			} else {
+				page = table.getMessages(getCriterionMessage(), getCriterionOpcodes(), getCriterianInScope(), offset, length, PAYLOAD_PREVIEW_LENGTH);
+			}
+			
+			if (!page.isEmpty()) {
+				synchronized (pageAnchors) {
+					pageAnchors.put(offset + page.size(), page.get(page.size() - 1));
+				}
+			}
+			return page;
 		} catch (DatabaseException e) {
 			logger.error(e.getMessage(), e);
 			return new ArrayList<>(0);
@@ -338,6 +415,23 @@ public class WebSocketMessagesViewModel extends PagingTableModel<WebSocketMessag
 		fireTableDataChanged();
 	}
 	
+	/**
+	 * Messages were deleted from the database, e.g. by the retention policy.
+	 * Might be called from any thread.
+	 * <p>
+	 * The page anchors and the row count are dropped in the event dispatch
+	 * thread, as they might point to deleted messages.
+	 */
+	public void fireMessagesDeleted() {
+		EventQueue.invokeLater(new Runnable() {
+
+			@Override
+			public void run() {
+				fireFilterChanged();
+			}
+		});
+	}
+	
 	@Override
 	public void fireTableDataChanged() {
 		synchronized (cachedRowCountSemaphore) {
@@ -355,10 +449,19 @@ public class WebSocketMessagesViewModel extends PagingTableModel<WebSocketMessag
 		}
 		
 		fullMessagesCache.clear();
+		
+		synchronized (pageAnchors) {
+			pageAnchors.clear();
+		}
 	}
 
 	/**
-	 * A new message has arrived.
+	 * A new message has arrived. Might be called from any thread.
+	 * <p>
+	 * The arrivals are just counted, the table is updated with all the
+	 * messages arrived in the meantime every
+	 * {@value #ARRIVALS_UPDATE_INTERVAL} milliseconds, in the event dispatch
+	 * thread.
 	 * 
 	 * @param message
 	 */
@@ -366,20 +469,61 @@ public class WebSocketMessagesViewModel extends PagingTableModel<WebSocketMessag
 		boolean isWhitelistedChannel = (activeChannelId == null) || message.channel.id.equals(activeChannelId);
 		if ((filter != null && filter.isBlacklisted(message)) || !isWhitelistedChannel) {
 			// no need to fire update, as it isn't active now
-		} else {
-			// find out where it is inserted and update precisely
-			
-			// if new row is inserted at the end
-			// it suffices to fire inserted row at the end of list
-			
-			// with enabled row sorter, you'll have to take care about this
-			int rowCount = getRowCount();
-			
-			synchronized (cachedRowCountSemaphore) {
-				cachedRowCount = null;
+		} else if (pendingArrivals.getAndIncrement() == 0) {
+			arrivalsTimer.start();
+		}
+	}
+	
+	/**
+	 * Fires one insertion event for the messages arrived since the last one.
+	 * New rows are always inserted at the end of the list, the row count is
+	 * increased without querying the database.
+	 */
+	private void fireArrivedMessagesInserted() {
+		int arrivals = pendingArrivals.getAndSet(0);
+		if (arrivals == 0) {
+			return;
+		}
+		
+		int firstRow;
+		synchronized (cachedRowCountSemaphore) {
+			if (cachedRowCount == null) {
+				// not counted yet, the arrived messages will be included
+				firstRow = -1;
+			} else {
+				firstRow = cachedRowCount;
+				cachedRowCount = firstRow + arrivals;
 			}
-			
-			fireTableRowsInserted(rowCount, rowCount);
+		}
+		
+		if (firstRow != -1) {
+			fireTableRowsInserted(firstRow, firstRow + arrivals - 1);
+		}
+		
+		if (!rowCountCheckTimer.isRunning()) {
+			rowCountCheckTimer.start();
+		}
+	}
+	
+	/**
+	 * Corrects the tracked row count with the number of messages in the
+	 * database, the arrived messages might be stored later (or not at all).
+	 */
+	private void checkRowCount() {
+		Integer trackedRowCount;
+		synchronized (cachedRowCountSemaphore) {
+			trackedRowCount = cachedRowCount;
+			cachedRowCount = null;
+		}
+		if (trackedRowCount == null) {
+			return;
+		}
+		
+		int rowCount = getMessageCount();
+		if (rowCount > trackedRowCount) {
+			fireTableRowsInserted(trackedRowCount, rowCount - 1);
+		} else if (rowCount < trackedRowCount) {
+			fireTableRowsDeleted(rowCount, trackedRowCount - 1);
 		}
 	}
 
@@ -66,6 +66,7 @@ import org.zaproxy.zap.extension.websocket.WebSocketProxy.State;
 import org.zaproxy.zap.extension.websocket.brk.WebSocketBreakpointsUiManagerInterface;
 import org.zaproxy.zap.extension.websocket.db.TableWebSocket;
 import org.zaproxy.zap.extension.websocket.db.WebSocketStorage;
+import org.zaproxy.zap.extension.websocket.db.WebSocketStorage.MessagesDeletedListener;
 import org.zaproxy.zap.extension.websocket.filter.WebSocketFilter;
 import org.zaproxy.zap.utils.StickyScrollbarAdjustmentListener;
 import org.zaproxy.zap.view.ZapToggleButton;
@@ -74,7 +75,7 @@ import org.zaproxy.zap.view.ZapToggleButton;
  * Represents the WebSockets tab. It listens to all WebSocket channels and
  * displays messages accordingly.
  */
-public class WebSocketPanel extends AbstractPanel implements WebSocketObserver {
+public class WebSocketPanel extends AbstractPanel implements WebSocketObserver, MessagesDeletedListener {
 
 	private static final long serialVersionUID = -2853099315338427006L;
 
@@ -448,16 +449,22 @@ public class WebSocketPanel extends AbstractPanel implements WebSocketObserver {
 	}
 
 	/**
-	 * Collects WebSocket messages.
+	 * Collects WebSocket messages. The table is updated asynchronously, see
+	 * {@link WebSocketMessagesViewModel#fireMessageArrived(WebSocketMessageDTO)}.
 	 */
 	@Override
-	public synchronized boolean onMessageFrame(final int channelId, WebSocketMessage message) {
+	public boolean onMessageFrame(final int channelId, WebSocketMessage message) {
 		if (message.isFinished()) {
 			messagesModel.fireMessageArrived(message.getDTO());
 		}
 		return true;
 	}
 
+	@Override
+	public void messagesDeleted(int count) {
+		messagesModel.fireMessagesDeleted();
+	}
+
 	@Override
 	public void onStateChange(final State state, WebSocketProxy proxy) {
 		final WebSocketChannelDTO channel = proxy.getDTO();
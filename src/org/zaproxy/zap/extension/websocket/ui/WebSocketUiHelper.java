@@ -55,6 +55,7 @@ public class WebSocketUiHelper {
 	private JComboBox<String> directionComboBox;
 	
 	private ZapTextField patternTextField;
+	private ZapTextField payloadSearchTextField;
 
 	
 	// ************************************************************************
@@ -450,4 +451,29 @@ public class WebSocketUiHelper {
 	public String getPattern() {
 		return patternTextField.getText();
 	}
+	
+	// ***** PAYLOAD SEARCH
+
+	public JLabel getPayloadSearchLabel() {
+		JLabel label = new JLabel(Constant.messages.getString("websocket.filter.label.payload"));
+		label.setToolTipText(Constant.messages.getString("websocket.filter.label.payload.tooltip"));
+		return label;
+	}
+	
+	public ZapTextField getPayloadSearchTextField() {
+		if (payloadSearchTextField == null) {
+			payloadSearchTextField = new ZapTextField();
+			payloadSearchTextField.setToolTipText(Constant.messages.getString("websocket.filter.label.payload.tooltip"));
+		}
+		
+		return payloadSearchTextField;
+	}
+	
+	public String getPayloadSearch() {
+		return getPayloadSearchTextField().getText();
+	}
+	
+	public void setPayloadSearch(String payloadSearch) {
+		getPayloadSearchTextField().setText(payloadSearch);
+	}
 }
@@ -18,6 +18,7 @@
 package org.zaproxy.zap.extension.websocket.ui.httppanel.models;
 
 import java.nio.charset.Charset;
+import java.util.Arrays;
 
 import org.zaproxy.zap.extension.websocket.WebSocketMessage;
 
@@ -40,6 +41,15 @@ public class ByteWebSocketPanelViewModel extends AbstractWebSocketBytePanelViewM
 
 	@Override
 	public void setData(byte[] data) {
+		if (webSocketMessage.spooledPayload != null) {
+			// only the preview of a spooled payload is shown, keep the
+			// spooled payload unless changed
+			if (Arrays.equals(data, getData())) {
+				return;
+			}
+			webSocketMessage.spooledPayload = null;
+		}
+		
 		if (webSocketMessage.opcode != null) {
 			if (webSocketMessage.opcode == WebSocketMessage.OPCODE_BINARY) {
 				webSocketMessage.payload = data;
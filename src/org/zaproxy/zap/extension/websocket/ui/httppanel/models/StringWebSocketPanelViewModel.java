@@ -44,6 +44,15 @@ public class StringWebSocketPanelViewModel extends AbstractWebSocketStringPanelV
 
     @Override
     public void setData(String data) {
+    	if (webSocketMessage.spooledPayload != null) {
+    		// only the preview of a spooled payload is shown, keep the
+    		// spooled payload unless changed
+    		if (data.equals(getData())) {
+    			return;
+    		}
+    		webSocketMessage.spooledPayload = null;
+    	}
+    	
     	if (webSocketMessage.opcode != null) {
 			if (webSocketMessage.opcode == WebSocketMessage.OPCODE_BINARY) {
 				webSocketMessage.payload = data.getBytes();
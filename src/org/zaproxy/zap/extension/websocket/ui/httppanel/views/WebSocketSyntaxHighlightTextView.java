@@ -19,6 +19,7 @@ package org.zaproxy.zap.extension.websocket.ui.httppanel.views;
 
 import java.awt.Color;
 import java.awt.Component;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -35,9 +36,11 @@ import org.zaproxy.zap.extension.httppanel.view.syntaxhighlight.HttpPanelSyntaxH
 import org.zaproxy.zap.extension.httppanel.view.util.CaretVisibilityEnforcerOnFocusGain;
 import org.zaproxy.zap.extension.search.SearchMatch;
 import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+import org.zaproxy.zap.extension.websocket.messagelocations.BinaryWebSocketMessageLocation;
 import org.zaproxy.zap.extension.websocket.messagelocations.TextWebSocketMessageLocation;
 import org.zaproxy.zap.extension.websocket.ui.httppanel.SelectableContentWebSocketMessageContainer;
 import org.zaproxy.zap.extension.websocket.ui.httppanel.models.StringWebSocketPanelViewModel;
+import org.zaproxy.zap.extension.websocket.utility.InvalidUtf8Exception;
 import org.zaproxy.zap.model.MessageLocation;
 import org.zaproxy.zap.model.TextHttpMessageLocation;
 import org.zaproxy.zap.view.messagelocation.MessageLocationHighlight;
@@ -142,8 +145,15 @@ public class WebSocketSyntaxHighlightTextView extends HttpPanelSyntaxHighlightTe
             try {
                 int start= getSelectionStart();
                 int end = getSelectionEnd();
-                
-                return new TextWebSocketMessageLocation(start, end, getText(start, end - start));
+                String value = getText(start, end - start);
+
+                if (isReadableBinaryMessage()) {
+                    // Binary messages are fuzzed by bytes, the text shown is the (UTF-8) decoded payload.
+                    int byteStart = getText(0, start).getBytes(StandardCharsets.UTF_8).length;
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    return new BinaryWebSocketMessageLocation(byteStart, byteStart + bytes.length, bytes);
+                }
+                return new TextWebSocketMessageLocation(start, end, value);
             } catch (BadLocationException e) {
                 // Shouldn't happen, but in case it does log it and return...
                 LOGGER.error(e.getMessage(), e);
@@ -151,6 +161,47 @@ public class WebSocketSyntaxHighlightTextView extends HttpPanelSyntaxHighlightTe
             }
         }
 
+        /**
+         * Tells whether or not the message shown is binary and its payload is shown as text, that is, it's valid
+         * UTF-8.
+         */
+        private boolean isReadableBinaryMessage() {
+            WebSocketMessageDTO message = getMessage();
+            if (message == null || !(message.payload instanceof byte[])) {
+                return false;
+            }
+            try {
+                message.getReadablePayload();
+                return true;
+            } catch (InvalidUtf8Exception e) {
+                return false;
+            }
+        }
+
+        protected MessageLocationHighlight highlightImpl(
+                BinaryWebSocketMessageLocation binaryLocation,
+                TextMessageLocationHighlight textHighlight) {
+            if (!isReadableBinaryMessage()) {
+                return null;
+            }
+
+            byte[] payload = (byte[]) getMessage().payload;
+            if (binaryLocation.getEnd() > payload.length) {
+                return null;
+            }
+            int start = new String(payload, 0, binaryLocation.getStart(), StandardCharsets.UTF_8).length();
+            int end = start
+                    + new String(
+                            payload,
+                            binaryLocation.getStart(),
+                            binaryLocation.getEnd() - binaryLocation.getStart(),
+                            StandardCharsets.UTF_8).length();
+
+            textHighlight.setHighlightReference(highlight(start, end, textHighlight));
+
+            return textHighlight;
+        }
+
         protected MessageLocationHighlightsManager create() {
             return new TextMessageLocationHighlightsManager();
         }
@@ -219,12 +270,7 @@ public class WebSocketSyntaxHighlightTextView extends HttpPanelSyntaxHighlightTe
 
     @Override
     public MessageLocationHighlight highlight(MessageLocation location) {
-        if (!supports(location)) {
-            return null;
-        }
-        TextWebSocketMessageLocation textLocation = (TextWebSocketMessageLocation) location;
-
-        return getHttpPanelTextArea().highlightImpl(textLocation, new TextMessageLocationHighlight(Color.LIGHT_GRAY));
+        return highlight(location, new TextMessageLocationHighlight(Color.LIGHT_GRAY));
     }
 
     @Override
@@ -232,10 +278,12 @@ public class WebSocketSyntaxHighlightTextView extends HttpPanelSyntaxHighlightTe
         if (!supports(location) || !(highlight instanceof TextMessageLocationHighlight)) {
             return null;
         }
-        TextWebSocketMessageLocation textLocation = (TextWebSocketMessageLocation) location;
         TextMessageLocationHighlight textHighlight = (TextMessageLocationHighlight) highlight;
 
-        return getHttpPanelTextArea().highlightImpl(textLocation, textHighlight);
+        if (location instanceof BinaryWebSocketMessageLocation) {
+            return getHttpPanelTextArea().highlightImpl((BinaryWebSocketMessageLocation) location, textHighlight);
+        }
+        return getHttpPanelTextArea().highlightImpl((TextWebSocketMessageLocation) location, textHighlight);
     }
 
     @Override
@@ -248,10 +296,7 @@ public class WebSocketSyntaxHighlightTextView extends HttpPanelSyntaxHighlightTe
 
     @Override
     public boolean supports(MessageLocation location) {
-        if (!(location instanceof TextWebSocketMessageLocation)) {
-            return false;
-        }
-        return true;
+        return location instanceof TextWebSocketMessageLocation || location instanceof BinaryWebSocketMessageLocation;
     }
 
     @Override
@@ -0,0 +1,77 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.websocket.utility;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Masks or unmasks WebSocket payloads, as specified in <a
+ * href="https://tools.ietf.org/html/rfc6455#section-5.3">RFC6455, section
+ * 5.3</a>. As masking is a XOR operation, the same method is used for both.
+ * <p>
+ * The payload is processed 8 bytes at a time, XOR-ing it with the mask
+ * repeated twice in a {@code long}. Only the remaining bytes are processed one
+ * by one.
+ */
+public abstract class MaskingUtil {
+
+	/**
+	 * Masks the given part of the array in place.
+	 *
+	 * @param data
+	 * @param offset position of the first payload byte
+	 * @param length number of bytes to mask
+	 * @param mask the 4 mask bytes in network byte order, i.e. the first mask
+	 *            byte is the most significant one
+	 */
+	public static void mask(byte[] data, int offset, int length, int mask) {
+		mask(data, offset, data, offset, length, mask);
+	}
+
+	/**
+	 * Copies the given part of {@code src} to {@code dest}, masking it on the
+	 * fly. Both arrays might be the same.
+	 *
+	 * @param src
+	 * @param srcOffset position of the first payload byte in {@code src}
+	 * @param dest
+	 * @param destOffset position where the first masked byte is written to
+	 * @param length number of bytes to mask
+	 * @param mask the 4 mask bytes in network byte order, i.e. the first mask
+	 *            byte is the most significant one
+	 */
+	public static void mask(byte[] src, int srcOffset, byte[] dest, int destOffset, int length, int mask) {
+		int i = 0;
+
+		int wordsLength = length & ~0x7;
+		if (wordsLength > 0) {
+			long longMask = ((mask & 0xFFFFFFFFL) << 32) | (mask & 0xFFFFFFFFL);
+			// big endian views, the mask's first byte is applied to the first payload byte
+			ByteBuffer srcBuffer = ByteBuffer.wrap(src);
+			ByteBuffer destBuffer = (src == dest) ? srcBuffer : ByteBuffer.wrap(dest);
+
+			for (; i < wordsLength; i += 8) {
+				destBuffer.putLong(destOffset + i, srcBuffer.getLong(srcOffset + i) ^ longMask);
+			}
+		}
+
+		for (; i < length; i++) {
+			dest[destOffset + i] = (byte) (src[srcOffset + i] ^ (mask >>> (24 - ((i & 0x3) << 3))));
+		}
+	}
+}
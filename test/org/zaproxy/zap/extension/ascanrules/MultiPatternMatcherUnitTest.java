@@ -0,0 +1,202 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2017 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.ascanrules;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link MultiPatternMatcher}.
+ */
+public class MultiPatternMatcherUnitTest {
+
+    private static final int FLAGS = Pattern.CASE_INSENSITIVE | Pattern.MULTILINE;
+
+    @Test
+    public void shouldFindNothingWithoutPatterns() {
+        // Given
+        MultiPatternMatcher matcher = new MultiPatternMatcher(Collections.<Pattern> emptyList());
+        // When
+        BitSet found = matcher.findAll("Some text");
+        // Then
+        assertThat(found.isEmpty(), is(equalTo(true)));
+    }
+
+    @Test
+    public void shouldFindAllLiteralPatternsInText() {
+        // Given
+        MultiPatternMatcher matcher = createMatcher(
+                "\\Qorg.postgresql\\E",
+                "\\Qcom.mysql.jdbc.exceptions\\E",
+                "\\Qorg.postgresql.util.PSQLException\\E",
+                "\\QORA-00933\\E");
+        // When
+        BitSet found = matcher.findAll("Error: org.postgresql.util.PSQLException: ORA-00933");
+        // Then
+        assertThat(found, is(equalTo(bits(0, 2, 3))));
+    }
+
+    @Test
+    public void shouldFindLiteralPatternsIgnoringCase() {
+        // Given
+        MultiPatternMatcher matcher = createMatcher("\\QSQL command not properly ended\\E");
+        // When
+        BitSet found = matcher.findAll("sql COMMAND not properly ended");
+        // Then
+        assertThat(found, is(equalTo(bits(0))));
+    }
+
+    @Test
+    public void shouldFindLiteralPatternsWithMetacharactersOutsideQuotes() {
+        // Given
+        MultiPatternMatcher matcher = createMatcher("com\\.ibm\\.db2", "\\Q[Microsoft]\\E");
+        // When
+        BitSet found = matcher.findAll("[microsoft] com.ibm.db2");
+        // Then
+        assertThat(found, is(equalTo(bits(0, 1))));
+    }
+
+    @Test
+    public void shouldRespectCaseOfCaseSensitivePatterns() {
+        // Given
+        MultiPatternMatcher matcher = new MultiPatternMatcher(
+                Arrays.asList(Pattern.compile("\\Qjava.sql.SQLException\\E")));
+        // When
+        BitSet found = matcher.findAll("java.sql.sqlexception");
+        // Then
+        assertThat(found.isEmpty(), is(equalTo(true)));
+    }
+
+    @Test
+    public void shouldFindRegexPatternsContainingTheirLiteral() {
+        // Given
+        MultiPatternMatcher matcher = createMatcher("near \".+\": syntax error");
+        // When
+        BitSet found = matcher.findAll("Warning: near \"'\": syntax error");
+        // Then
+        assertThat(found, is(equalTo(bits(0))));
+    }
+
+    @Test
+    public void shouldNotFindRegexPatternsJustBecauseOfTheirLiteral() {
+        // Given
+        MultiPatternMatcher matcher = createMatcher("near \".+\": syntax error");
+        // When
+        BitSet found = matcher.findAll("\": syntax error");
+        // Then
+        assertThat(found.isEmpty(), is(equalTo(true)));
+    }
+
+    @Test
+    public void shouldNotRequireOptionalCharactersOfRegexPatterns() {
+        // Given
+        MultiPatternMatcher matcher = createMatcher("Unexpected tokens?:");
+        // When
+        BitSet found = matcher.findAll("Unexpected token:");
+        // Then
+        assertThat(found, is(equalTo(bits(0))));
+    }
+
+    @Test
+    public void shouldFindRegexPatternsWithoutLiteral() {
+        // Given
+        MultiPatternMatcher matcher = createMatcher("(ORA|PLS)-\\d{5}", "\\QORA-01789\\E");
+        // When
+        BitSet found = matcher.findAll("PLS-00201");
+        // Then
+        assertThat(found, is(equalTo(bits(0))));
+    }
+
+    @Test
+    public void shouldNotRequireDigitsOfHexadecimalEscapesInLiteral() {
+        // Given
+        MultiPatternMatcher matcher = createMatcher("\\x41123 error", "\\x{41}99");
+        // When
+        BitSet found = matcher.findAll("A123 error A99");
+        // Then
+        assertThat(found, is(equalTo(bits(0, 1))));
+    }
+
+    @Test
+    public void shouldNotRequireDigitsOfUnicodeEscapesInLiteral() {
+        // Given
+        MultiPatternMatcher matcher = createMatcher("\\u00411234");
+        // When
+        BitSet found = matcher.findAll("A1234");
+        // Then
+        assertThat(found, is(equalTo(bits(0))));
+    }
+
+    @Test
+    public void shouldNotRequireDigitsOfOctalEscapesInLiteral() {
+        // Given
+        MultiPatternMatcher matcher = createMatcher("\\0101234", "\\0777");
+        // When
+        BitSet found = matcher.findAll("A234 ?7");
+        // Then
+        assertThat(found, is(equalTo(bits(0, 1))));
+    }
+
+    @Test
+    public void shouldNotRequireCharacterOfControlEscapesInLiteral() {
+        // Given
+        MultiPatternMatcher matcher = createMatcher("\\cJ123");
+        // When
+        BitSet found = matcher.findAll("\n123");
+        // Then
+        assertThat(found, is(equalTo(bits(0))));
+    }
+
+    @Test
+    public void shouldNotRequireNameOfPropertyEscapesInLiteral() {
+        // Given
+        MultiPatternMatcher matcher = createMatcher("\\p{Lu}abc", "\\pLdef");
+        // When
+        BitSet found = matcher.findAll("Xabc Ydef");
+        // Then
+        assertThat(found, is(equalTo(bits(0, 1))));
+    }
+
+    private static MultiPatternMatcher createMatcher(String... regexes) {
+        List<Pattern> patterns = new ArrayList<>(regexes.length);
+        for (String regex : regexes) {
+            patterns.add(Pattern.compile(regex, FLAGS));
+        }
+        return new MultiPatternMatcher(patterns);
+    }
+
+    private static BitSet bits(int... indexes) {
+        BitSet bits = new BitSet();
+        for (int index : indexes) {
+            bits.set(index);
+        }
+        return bits;
+    }
+}
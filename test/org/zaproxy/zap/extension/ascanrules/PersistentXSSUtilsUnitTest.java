@@ -0,0 +1,136 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2017 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.ascanrules;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.httpclient.URI;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.parosproxy.paros.db.TableHistory;
+import org.parosproxy.paros.model.HistoryReference;
+import org.parosproxy.paros.network.HttpMessage;
+
+/**
+ * Unit test for {@link PersistentXSSUtils}.
+ */
+public class PersistentXSSUtilsUnitTest {
+
+    private TableHistory tableHistory;
+
+    @Before
+    public void setUp() throws Exception {
+        PersistentXSSUtils.reset();
+        tableHistory = mock(TableHistory.class);
+        HistoryReference.setTableHistory(tableHistory);
+    }
+
+    @After
+    public void tearDown() {
+        HistoryReference.setTableHistory(null);
+        PersistentXSSUtils.reset();
+    }
+
+    @Test
+    public void shouldCreateDifferentUniqueValuesConcurrently() throws Exception {
+        // Given
+        final HttpMessage msg = message("http://example.com/source");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<String>> values = new ArrayList<>();
+        // When
+        for (int i = 0; i < 1000; i++) {
+            values.add(executor.submit(new Callable<String>() {
+
+                @Override
+                public String call() {
+                    return PersistentXSSUtils.getUniqueValue(msg, "param");
+                }
+            }));
+        }
+        Set<String> uniqueValues = new HashSet<>();
+        for (Future<String> value : values) {
+            uniqueValues.add(value.get());
+        }
+        executor.shutdown();
+        // Then
+        assertThat(uniqueValues.size(), is(equalTo(1000)));
+    }
+
+    @Test
+    public void shouldNotHaveSinksForUnknownSource() throws Exception {
+        // Given
+        HttpMessage sourceMsg = message("http://example.com/source");
+        // When
+        Set<Integer> sinks = PersistentXSSUtils.getSinksIdsForSource(sourceMsg, "param");
+        // Then
+        assertThat(sinks, is(nullValue()));
+    }
+
+    @Test
+    public void shouldIgnoreValuesNotCreated() throws Exception {
+        // Given
+        HttpMessage sinkMsg = message("http://example.com/sink");
+        sinkMsg.setResponseBody("<p>" + PersistentXSSUtils.PXSS_PREFIX + "123" + PersistentXSSUtils.PXSS_POSTFIX + "</p>");
+        // When
+        PersistentXSSUtils.testForSink(sinkMsg);
+        // Then
+        verify(tableHistory, times(0)).write(anyLong(), anyInt(), any(HttpMessage.class));
+    }
+
+    @Test
+    public void shouldNotTrackMoreThanMaxSourceValues() throws Exception {
+        // Given
+        HttpMessage sourceMsg = message("http://example.com/source");
+        String oldestValue = PersistentXSSUtils.getUniqueValue(sourceMsg, "oldest");
+        for (int i = 0; i < PersistentXSSUtils.MAX_SOURCE_VALUES; i++) {
+            PersistentXSSUtils.getUniqueValue(sourceMsg, "param");
+        }
+        HttpMessage sinkMsg = message("http://example.com/sink");
+        sinkMsg.setResponseBody("<p>" + oldestValue + "</p>");
+        // When
+        PersistentXSSUtils.testForSink(sinkMsg);
+        // Then
+        verify(tableHistory, times(0)).write(anyLong(), anyInt(), any(HttpMessage.class));
+        assertThat(PersistentXSSUtils.getSinksIdsForSource(sourceMsg, "oldest"), is(nullValue()));
+    }
+
+    private static HttpMessage message(String uri) throws Exception {
+        return new HttpMessage(new URI(uri, true));
+    }
+}
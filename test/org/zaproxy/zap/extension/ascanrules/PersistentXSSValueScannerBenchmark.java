@@ -0,0 +1,155 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2017 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.ascanrules;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares {@link PersistentXSSValueScanner} with the former search of the unique values (decoding the body to a
+ * {@code String} and searching it with {@code indexOf} and {@code substring}), for small, medium and big HTML pages with a
+ * few unique values.
+ * <p>
+ * Not run as part of the unit tests, start it manually (after compiling the tests) with:
+ *
+ * <pre>
+ * java -cp &lt;classpath&gt; org.zaproxy.zap.extension.ascanrules.PersistentXSSValueScannerBenchmark
+ * </pre>
+ */
+public class PersistentXSSValueScannerBenchmark {
+
+	private static final int[] PAGE_SIZES = { 4 * 1024, 64 * 1024, 1024 * 1024 };
+
+	private static final int VALUES_PER_PAGE = 5;
+
+	/**
+	 * Number of bytes scanned per measurement, to get comparable timings for all page sizes.
+	 */
+	private static final long BYTES_PER_ROUND = 256L * 1024 * 1024;
+
+	private static final int WARMUP_ROUNDS = 3;
+
+	private static final int MEASURED_ROUNDS = 5;
+
+	private static final String PREFIX = PersistentXSSUtils.PXSS_PREFIX;
+
+	private static final String POSTFIX = PersistentXSSUtils.PXSS_POSTFIX;
+
+	private static final String[] HTML_SNIPPETS = {
+			"<div class=\"row\"><span class=\"label\">Name</span>",
+			"<a href=\"/products/view?id=1234&amp;category=books\">Details</a>",
+			"<td>2017-06-01</td><td>Zed Attack Proxy</td></tr>\n",
+			"<input type=\"hidden\" name=\"csrf\" value=\"a8f5f167f44f4964e6c998dee827110c\">",
+			"<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor.</p>\n",
+			"<script src=\"/static/js/app.min.js?v=20170601\"></script>\n" };
+
+	/**
+	 * Prevents that the JIT removes the searches as dead code.
+	 */
+	private static int sink;
+
+	public static void main(String[] args) {
+		PersistentXSSValueScanner scanner = new PersistentXSSValueScanner(PREFIX, POSTFIX);
+		PersistentXSSValueScanner.Listener listener = new PersistentXSSValueScanner.Listener() {
+
+			@Override
+			public void valueFound(int index) {
+				sink += index;
+			}
+		};
+
+		System.out.println(String.format(Locale.ROOT, "%12s %18s %18s", "page", "indexOf (MB/s)", "scanner (MB/s)"));
+
+		for (int size : PAGE_SIZES) {
+			byte[] page = createPage(size);
+			long iterations = Math.max(1, BYTES_PER_ROUND / size);
+
+			for (int i = 0; i < WARMUP_ROUNDS; i++) {
+				runIndexOf(page, iterations);
+				runScanner(scanner, listener, page, iterations);
+			}
+
+			double indexOf = 0;
+			double scan = 0;
+			for (int i = 0; i < MEASURED_ROUNDS; i++) {
+				indexOf = Math.max(indexOf, throughput(page.length * iterations, runIndexOf(page, iterations)));
+				scan = Math.max(scan, throughput(page.length * iterations, runScanner(scanner, listener, page, iterations)));
+			}
+
+			System.out.println(String.format(Locale.ROOT, "%12d %18.1f %18.1f", page.length, indexOf, scan));
+		}
+		System.out.println("(" + sink + ")");
+	}
+
+	private static byte[] createPage(int size) {
+		Random random = new Random(size);
+		StringBuilder strBuilder = new StringBuilder(size + 256);
+		strBuilder.append("<html><head><title>Results</title></head><body>\n");
+		int valueDistance = size / (VALUES_PER_PAGE + 1);
+		int nextValue = valueDistance;
+		int index = 0;
+		while (strBuilder.length() < size) {
+			strBuilder.append(HTML_SNIPPETS[random.nextInt(HTML_SNIPPETS.length)]);
+			if (strBuilder.length() >= nextValue && index < VALUES_PER_PAGE) {
+				strBuilder.append("<td>").append(PREFIX).append(random.nextInt(100000)).append(POSTFIX).append("</td>");
+				nextValue += valueDistance;
+				index++;
+			}
+		}
+		strBuilder.append("</body></html>");
+		return strBuilder.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static double throughput(long bytes, long nanos) {
+		return (bytes / (1024.0 * 1024.0)) / (nanos / 1e9);
+	}
+
+	private static long runIndexOf(byte[] page, long iterations) {
+		long start = System.nanoTime();
+		for (long n = 0; n < iterations; n++) {
+			String body = new String(page, StandardCharsets.UTF_8);
+			int begin = body.indexOf(PREFIX);
+			while (begin > 0) {
+				int end = body.indexOf(POSTFIX, begin);
+				if (end > 0) {
+					String uniqueVal = body.substring(begin, end + POSTFIX.length());
+					sink += uniqueVal.length();
+					begin = body.indexOf(PREFIX, end);
+				} else {
+					break;
+				}
+			}
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long runScanner(
+			PersistentXSSValueScanner scanner,
+			PersistentXSSValueScanner.Listener listener,
+			byte[] page,
+			long iterations) {
+		long start = System.nanoTime();
+		for (long n = 0; n < iterations; n++) {
+			sink += scanner.scan(page, page.length, listener);
+		}
+		return System.nanoTime() - start;
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2017 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.ascanrules;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link PersistentXSSValueScanner}.
+ */
+public class PersistentXSSValueScannerUnitTest {
+
+    private static final PersistentXSSValueScanner SCANNER = new PersistentXSSValueScanner("zApPX", "sS");
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailToCreateWithEmptyPrefix() {
+        // Given
+        String prefix = "";
+        // When
+        new PersistentXSSValueScanner(prefix, "sS");
+        // Then = IllegalArgumentException
+    }
+
+    @Test
+    public void shouldFindNothingInDataWithoutValues() {
+        // Given
+        CollectingListener listener = new CollectingListener();
+        // When
+        int count = scan("<html><body>zApP sS 123</body></html>", listener);
+        // Then
+        assertThat(count, is(equalTo(0)));
+        assertThat(listener.indexes, is(empty()));
+    }
+
+    @Test
+    public void shouldFindAllValuesInOrder() {
+        // Given
+        CollectingListener listener = new CollectingListener();
+        // When
+        int count = scan("<p>zApPX12sS</p><input value=\"zApPX0sS\">zApPX345sS", listener);
+        // Then
+        assertThat(count, is(equalTo(3)));
+        assertThat(listener.indexes, contains(12, 0, 345));
+    }
+
+    @Test
+    public void shouldFindValueAtStartOfData() {
+        // Given
+        CollectingListener listener = new CollectingListener();
+        // When
+        scan("zApPX7sS and more", listener);
+        // Then
+        assertThat(listener.indexes, contains(7));
+    }
+
+    @Test
+    public void shouldFindValueAfterPartialPrefix() {
+        // Given
+        CollectingListener listener = new CollectingListener();
+        // When
+        scan("zApzApPzApPX5sS", listener);
+        // Then
+        assertThat(listener.indexes, contains(5));
+    }
+
+    @Test
+    public void shouldFindValueAfterIncompleteValue() {
+        // Given
+        CollectingListener listener = new CollectingListener();
+        // When
+        scan("zApPXzApPX1sS zApPX2s zApPXsS zApPX3sS", listener);
+        // Then
+        assertThat(listener.indexes, contains(1, 3));
+    }
+
+    @Test
+    public void shouldFindValueWithSelfOverlappingPrefix() {
+        // Given
+        PersistentXSSValueScanner scanner = new PersistentXSSValueScanner("abab", "!");
+        CollectingListener listener = new CollectingListener();
+        byte[] data = "ababab9!".getBytes(StandardCharsets.US_ASCII);
+        // When
+        scanner.scan(data, data.length, listener);
+        // Then
+        assertThat(listener.indexes, contains(9));
+    }
+
+    @Test
+    public void shouldNotFindValuesWithIndexTooLong() {
+        // Given
+        CollectingListener listener = new CollectingListener();
+        // When
+        scan("zApPX1234567890sS", listener);
+        // Then
+        assertThat(listener.indexes, is(empty()));
+    }
+
+    @Test
+    public void shouldNotFindValuesBeyondLength() {
+        // Given
+        CollectingListener listener = new CollectingListener();
+        byte[] data = "zApPX1sS".getBytes(StandardCharsets.US_ASCII);
+        // When
+        SCANNER.scan(data, data.length - 1, listener);
+        // Then
+        assertThat(listener.indexes, is(empty()));
+    }
+
+    @Test
+    public void shouldFindValuesInNonAsciiData() {
+        // Given
+        CollectingListener listener = new CollectingListener();
+        byte[] data = "é中 zApPX8sS ü".getBytes(StandardCharsets.UTF_8);
+        // When
+        SCANNER.scan(data, data.length, listener);
+        // Then
+        assertThat(listener.indexes, contains(8));
+    }
+
+    private static int scan(String data, CollectingListener listener) {
+        byte[] bytes = data.getBytes(StandardCharsets.US_ASCII);
+        return SCANNER.scan(bytes, bytes.length, listener);
+    }
+
+    private static class CollectingListener implements PersistentXSSValueScanner.Listener {
+
+        private final List<Integer> indexes = new ArrayList<>();
+
+        @Override
+        public void valueFound(int index) {
+            indexes.add(index);
+        }
+    }
+}
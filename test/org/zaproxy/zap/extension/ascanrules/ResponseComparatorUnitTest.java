@@ -0,0 +1,134 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2017 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.ascanrules;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ResponseComparator}.
+ */
+public class ResponseComparatorUnitTest {
+
+    @Test
+    public void shouldRemoveAllLiterals() {
+        // Given
+        String text = "a' OR '1'='1 b a%27+OR+%271%27%3D%271 c";
+        // When
+        String result = ResponseComparator.removeAll(text, "' OR '1'='1", "%27+OR+%271%27%3D%271");
+        // Then
+        assertThat(result, is(equalTo("a b a c")));
+    }
+
+    @Test
+    public void shouldRemoveLongestLiteralStartingAtSamePosition() {
+        // Given
+        String text = "x&quot;y";
+        // When
+        String result = ResponseComparator.removeAll(text, "&", "&quot;");
+        // Then
+        assertThat(result, is(equalTo("xy")));
+    }
+
+    @Test
+    public void shouldReturnSameTextIfNoLiteralFound() {
+        // Given
+        String text = "Some text";
+        // When
+        String result = ResponseComparator.removeAll(text, "other", "", null);
+        // Then
+        assertThat(result, is(sameInstance(text)));
+    }
+
+    @Test
+    public void shouldBeSameIfEqual() {
+        // Given
+        ResponseComparator comparator = new ResponseComparator("<p>Results: 2</p>", null);
+        // When
+        boolean same = comparator.isSame("<p>Results: 2</p>");
+        // Then
+        assertThat(same, is(equalTo(true)));
+    }
+
+    @Test
+    public void shouldNotBeSameIfDifferentWithoutDynamicTokens() {
+        // Given
+        ResponseComparator comparator = new ResponseComparator("<p>Results: 2</p>", "<p>Results: 2</p>");
+        // When
+        boolean same = comparator.isSame("<p>Results: 3</p>");
+        // Then
+        assertThat(comparator.getDynamicTokensCount(), is(equalTo(0)));
+        assertThat(same, is(equalTo(false)));
+    }
+
+    @Test
+    public void shouldIgnoreDynamicTokens() {
+        // Given
+        ResponseComparator comparator = new ResponseComparator(
+                "<input value=\"a1b2c3\"><p>Results: 2</p><i>12:00:01</i>",
+                "<input value=\"f9e8\"><p>Results: 2</p><i>12:00:02</i>");
+        // When
+        boolean same = comparator.isSame("<input value=\"00ff00ff\"><p>Results: 2</p><i>12:00:07</i>");
+        // Then
+        assertThat(comparator.getDynamicTokensCount(), is(equalTo(2)));
+        assertThat(same, is(equalTo(true)));
+    }
+
+    @Test
+    public void shouldNotBeSameIfStaticTokensDiffer() {
+        // Given
+        ResponseComparator comparator = new ResponseComparator(
+                "<input value=\"a1b2c3\"><p>Results: 2</p>",
+                "<input value=\"f9e8\"><p>Results: 2</p>");
+        // When
+        boolean same = comparator.isSame("<input value=\"00ff00ff\"><p>Results: 0</p>");
+        // Then
+        assertThat(same, is(equalTo(false)));
+    }
+
+    @Test
+    public void shouldNotBeSameIfStructureDiffers() {
+        // Given
+        ResponseComparator comparator = new ResponseComparator(
+                "<input value=\"a1b2c3\"><p>Results: 2</p>",
+                "<input value=\"f9e8\"><p>Results: 2</p>");
+        // When
+        boolean same = comparator.isSame("<input value=\"00ff00ff\"><p>No results</p>");
+        // Then
+        assertThat(same, is(equalTo(false)));
+    }
+
+    @Test
+    public void shouldNotLearnDynamicTokensFromSamplesWithDifferentStructure() {
+        // Given
+        ResponseComparator comparator = new ResponseComparator(
+                "<input value=\"a1b2c3\"><p>Results: 2</p>",
+                "<input value=\"f9e8\"><p>No results</p><br>");
+        // When
+        boolean same = comparator.isSame("<input value=\"00ff00ff\"><p>Results: 2</p>");
+        // Then
+        assertThat(comparator.getDynamicTokensCount(), is(equalTo(0)));
+        assertThat(same, is(equalTo(false)));
+    }
+}
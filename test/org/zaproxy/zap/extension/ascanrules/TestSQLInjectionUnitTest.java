@@ -19,14 +19,19 @@
  */
 package org.zaproxy.zap.extension.ascanrules;
 
+import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
 import org.junit.Test;
+import org.parosproxy.paros.network.HttpMessage;
 import org.zaproxy.zap.model.Tech;
 import org.zaproxy.zap.model.TechSet;
 
+import fi.iki.elonen.NanoHTTPD.IHTTPSession;
+import fi.iki.elonen.NanoHTTPD.Response;
+
 /**
  * Unit test for {@link TestSQLInjection}.
  */
@@ -68,4 +73,103 @@ public class TestSQLInjectionUnitTest extends ActiveScannerTest<TestSQLInjection
         assertThat(targets, is(equalTo(false)));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldReportRdbmsSpecificErrorBasedSqlInjection() throws Exception {
+        // Given
+        String test = "/shouldReportRdbmsSpecificErrorBasedSqlInjection/";
+        this.nano.addHandler(new NanoServerHandler(test) {
+            @Override
+            Response serve(IHTTPSession session) {
+                String name = session.getParms().get("name");
+                if (name != null && name.contains("'")) {
+                    return new Response("<html>COM.MYSQL.JDBC.EXCEPTIONS.MySQLSyntaxErrorException</html>");
+                }
+                return new Response("<html></html>");
+            }
+        });
+        HttpMessage msg = this.getHttpMessage(test + "?name=test");
+        this.rule.init(msg, this.parent);
+        // When
+        this.rule.scan();
+        // Then
+        assertThat(alertsRaised.size(), is(equalTo(1)));
+        assertThat(alertsRaised.get(0).getName(), endsWith(" - MySQL"));
+        assertThat(alertsRaised.get(0).getEvidence(), is(equalTo("COM.MYSQL.JDBC.EXCEPTIONS")));
+        assertThat(alertsRaised.get(0).getParam(), is(equalTo("name")));
+        assertThat(alertsRaised.get(0).getAttack(), is(equalTo("'")));
+    }
+
+    @Test
+    public void shouldNotReportErrorBasedSqlInjectionIfErrorAlreadyInBaseMessage() throws Exception {
+        // Given
+        String test = "/shouldNotReportErrorBasedSqlInjectionIfErrorAlreadyInBaseMessage/";
+        final String errorPage = "<html>org.postgresql.util.PSQLException</html>";
+        this.nano.addHandler(new NanoServerHandler(test) {
+            @Override
+            Response serve(IHTTPSession session) {
+                return new Response(errorPage);
+            }
+        });
+        HttpMessage msg = this.getHttpMessage("GET", test + "?name=test", errorPage);
+        this.rule.init(msg, this.parent);
+        // When
+        this.rule.scan();
+        // Then
+        assertThat(alertsRaised.size(), is(equalTo(0)));
+    }
+
+    @Test
+    public void shouldReportUnionBasedSqlInjection() throws Exception {
+        // Given
+        String test = "/shouldReportUnionBasedSqlInjection/";
+        this.nano.addHandler(new NanoServerHandler(test) {
+            @Override
+            Response serve(IHTTPSession session) {
+                String name = session.getParms().get("name");
+                if (name != null && name.contains("UNION")) {
+                    return new Response("<html>ERROR: each UNION query must have the same number of columns</html>");
+                }
+                return new Response("<html></html>");
+            }
+        });
+        HttpMessage msg = this.getHttpMessage(test + "?name=test");
+        this.rule.init(msg, this.parent);
+        // When
+        this.rule.scan();
+        // Then
+        assertThat(alertsRaised.size(), is(equalTo(1)));
+        assertThat(alertsRaised.get(0).getName(), endsWith(" - PostgreSQL"));
+        assertThat(alertsRaised.get(0).getEvidence(), is(equalTo("each UNION query must have the same number of columns")));
+        assertThat(alertsRaised.get(0).getAttack(), is(equalTo("test UNION ALL select NULL -- ")));
+    }
+
+    @Test
+    public void shouldReportBooleanBasedSqlInjectionIgnoringDynamicTokens() throws Exception {
+        // Given
+        String test = "/shouldReportBooleanBasedSqlInjectionIgnoringDynamicTokens/";
+        this.nano.addHandler(new NanoServerHandler(test) {
+
+            private int nonce;
+
+            @Override
+            Response serve(IHTTPSession session) {
+                String name = session.getParms().get("name");
+                boolean noResults = name != null && name.contains("1=2");
+                return new Response(resultsPage(++nonce, noResults));
+            }
+        });
+        HttpMessage msg = this.getHttpMessage("GET", test + "?name=test", resultsPage(0, false));
+        this.rule.init(msg, this.parent);
+        // When
+        this.rule.scan();
+        // Then
+        assertThat(alertsRaised.size(), is(equalTo(1)));
+        assertThat(alertsRaised.get(0).getParam(), is(equalTo("name")));
+        assertThat(alertsRaised.get(0).getAttack(), is(equalTo("test AND 1=1 -- ")));
+    }
+
+    private static String resultsPage(int nonce, boolean noResults) {
+        return "<html><form><input type=\"hidden\" name=\"csrf\" value=\"" + Integer.toHexString(31 * nonce + 7)
+                + "\"></form>" + (noResults ? "<p>No results</p>" : "<p>Result A</p><p>Result B</p>") + "</html>";
+    }
+}
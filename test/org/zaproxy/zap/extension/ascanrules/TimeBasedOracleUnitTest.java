@@ -0,0 +1,380 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2017 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.extension.ascanrules;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.httpclient.URI;
+import org.junit.Test;
+import org.parosproxy.paros.network.HttpMessage;
+import org.zaproxy.zap.extension.ascanrules.TimeBasedOracle.LatencyModel;
+
+/**
+ * Unit test for {@link TimeBasedOracle}.
+ */
+public class TimeBasedOracleUnitTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailToCreateWithNonPositiveMaxDelay() {
+        // Given
+        LatencyModel latencyModel = new LatencyModel();
+        // When
+        new TimeBasedOracle(latencyModel, 0);
+        // Then = IllegalArgumentException
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailToCreateWithNegativeDelayTolerance() {
+        // Given
+        LatencyModel latencyModel = new LatencyModel();
+        // When
+        new TimeBasedOracle(latencyModel, 5, -1);
+        // Then = IllegalArgumentException
+    }
+
+    @Test
+    public void shouldComputeMeanAndStandardDeviationOfLatencyModel() {
+        // Given
+        LatencyModel latencyModel = latencyModel(100, 200, 300);
+        // When
+        double mean = latencyModel.getMean();
+        double stdev = latencyModel.getStandardDeviation();
+        // Then
+        assertThat(mean, is(closeTo(200, 0.001)));
+        assertThat(stdev, is(closeTo(100, 0.001)));
+    }
+
+    @Test
+    public void shouldNotHaveStandardDeviationWithLessThanTwoSamples() {
+        // Given
+        LatencyModel latencyModel = latencyModel(100);
+        // When
+        double stdev = latencyModel.getStandardDeviation();
+        // Then
+        assertThat(stdev, is(closeTo(-1, 0.001)));
+    }
+
+    @Test
+    public void shouldKeepOnlyLatestSamplesInLatencyModel() {
+        // Given
+        LatencyModel latencyModel = latencyModel(10000);
+        // When
+        for (int i = 0; i < LatencyModel.MAX_SAMPLES; i++) {
+            latencyModel.addSample(100);
+        }
+        // Then
+        assertThat(latencyModel.getSampleCount(), is(equalTo(LatencyModel.MAX_SAMPLES)));
+        assertThat(latencyModel.getMean(), is(closeTo(100, 0.001)));
+    }
+
+    @Test
+    public void shouldShareLatencyModelOfSameEndpoint() throws Exception {
+        // Given
+        HttpMessage msg = message("http://example.com/path?a=1");
+        HttpMessage otherMsg = message("http://example.com/path?b=2");
+        // When
+        LatencyModel latencyModel = TimeBasedOracle.getLatencyModel(msg);
+        LatencyModel otherLatencyModel = TimeBasedOracle.getLatencyModel(otherMsg);
+        // Then
+        assertThat(otherLatencyModel, is(sameInstance(latencyModel)));
+    }
+
+    @Test
+    public void shouldNotShareLatencyModelOfDifferentEndpoints() throws Exception {
+        // Given
+        HttpMessage msg = message("http://example.com/path");
+        HttpMessage otherMsg = message("http://example.com/other/path");
+        // When
+        LatencyModel latencyModel = TimeBasedOracle.getLatencyModel(msg);
+        LatencyModel otherLatencyModel = TimeBasedOracle.getLatencyModel(otherMsg);
+        // Then
+        assertThat(otherLatencyModel, is(not(sameInstance(latencyModel))));
+    }
+
+    @Test
+    public void shouldStartWithShortDelayForStableResponses() {
+        // Given
+        TimeBasedOracle oracle = new TimeBasedOracle(latencyModel(200, 210, 190, 205), 5);
+        // When
+        int delay = oracle.getInitialDelay();
+        // Then
+        assertThat(delay, is(equalTo(1)));
+    }
+
+    @Test
+    public void shouldStartWithLongerDelayForUnstableResponses() {
+        // Given
+        TimeBasedOracle oracle = new TimeBasedOracle(latencyModel(200, 1800, 400, 1500), 5);
+        // When
+        int delay = oracle.getInitialDelay();
+        // Then
+        assertThat(delay, is(equalTo(3)));
+    }
+
+    @Test
+    public void shouldNotStartWithDelayLongerThanMaxDelay() {
+        // Given
+        TimeBasedOracle oracle = new TimeBasedOracle(latencyModel(200, 5000, 400, 6000), 2);
+        // When
+        int delay = oracle.getInitialDelay();
+        // Then
+        assertThat(delay, is(equalTo(2)));
+    }
+
+    @Test
+    public void shouldStartWithDelayLongerThanDelayTolerance() {
+        // Given
+        TimeBasedOracle oracle = new TimeBasedOracle(latencyModel(200, 210, 190, 205), 5, 1);
+        // When
+        int delay = oracle.getInitialDelay();
+        // Then
+        assertThat(delay, is(equalTo(2)));
+    }
+
+    @Test
+    public void shouldBuildLatencyModelBeforeSendingAttacks() throws Exception {
+        // Given
+        LatencyModel latencyModel = new LatencyModel();
+        TimeBasedOracle oracle = new TimeBasedOracle(latencyModel, 5);
+        ScriptedAttack attack = new ScriptedAttack(1210, 2195);
+        // When
+        boolean delayed = oracle.isDelayed(attack);
+        // Then
+        assertThat(delayed, is(equalTo(true)));
+        assertThat(attack.getRequestsWithoutDelay(), is(equalTo(TimeBasedOracle.MIN_SAMPLES)));
+        assertThat(latencyModel.getSampleCount(), is(equalTo(TimeBasedOracle.MIN_SAMPLES)));
+        assertThat(attack.getDelays(), contains(1, 2));
+    }
+
+    @Test
+    public void shouldNotAcceptDelayOfSlowEndpointWithoutLatencyModel() throws Exception {
+        // Given
+        TimeBasedOracle oracle = new TimeBasedOracle(new LatencyModel(), 5);
+        ScriptedAttack attack = new ScriptedAttack(3150, 3050, 3100, 3000);
+        attack.setTimeWithoutDelay(3100);
+        // When
+        boolean delayed = oracle.isDelayed(attack);
+        // Then
+        assertThat(delayed, is(equalTo(false)));
+        assertThat(attack.getRequestsWithoutDelay(), is(equalTo(TimeBasedOracle.MIN_SAMPLES)));
+    }
+
+    @Test
+    public void shouldNotSendRequestsWithoutDelayIfLatencyModelAvailable() throws Exception {
+        // Given
+        TimeBasedOracle oracle = new TimeBasedOracle(latencyModel(200, 210, 190), 5);
+        ScriptedAttack attack = new ScriptedAttack(205);
+        // When
+        oracle.isDelayed(attack);
+        // Then
+        assertThat(attack.getRequestsWithoutDelay(), is(equalTo(0)));
+    }
+
+    @Test
+    public void shouldNotSendAttacksWithoutLatencyModelIfStopped() throws Exception {
+        // Given
+        TimeBasedOracle oracle = new TimeBasedOracle(new LatencyModel(), 5);
+        ScriptedAttack attack = new ScriptedAttack(1210, 2195);
+        attack.setStop(true);
+        // When
+        boolean delayed = oracle.isDelayed(attack);
+        // Then
+        assertThat(delayed, is(equalTo(false)));
+        assertThat(attack.getRequestsWithoutDelay(), is(equalTo(0)));
+        assertThat(attack.getDelays().isEmpty(), is(equalTo(true)));
+    }
+
+    @Test
+    public void shouldAcceptDelayShorterThanRequestedWithinDelayTolerance() throws Exception {
+        // Given
+        TimeBasedOracle oracle = new TimeBasedOracle(latencyModel(200, 210, 190, 205), 5, 1);
+        ScriptedAttack attack = new ScriptedAttack(1250, 3300);
+        // When
+        boolean delayed = oracle.isDelayed(attack);
+        // Then
+        assertThat(delayed, is(equalTo(true)));
+        assertThat(attack.getDelays(), contains(2, 4));
+    }
+
+    @Test
+    public void shouldRejectDelayShorterThanRequestedBeyondDelayTolerance() throws Exception {
+        // Given
+        TimeBasedOracle oracle = new TimeBasedOracle(latencyModel(200, 210, 190, 205), 5, 1);
+        ScriptedAttack attack = new ScriptedAttack(950);
+        // When
+        boolean delayed = oracle.isDelayed(attack);
+        // Then
+        assertThat(delayed, is(equalTo(false)));
+        assertThat(attack.getDelays(), contains(2));
+    }
+
+    @Test
+    public void shouldNotSendAttacksIfMaxDelayNotLongerThanDelayTolerance() throws Exception {
+        // Given
+        TimeBasedOracle oracle = new TimeBasedOracle(latencyModel(200, 210, 190, 205), 1, 1);
+        ScriptedAttack attack = new ScriptedAttack(1210, 1195);
+        // When
+        boolean delayed = oracle.isDelayed(attack);
+        // Then
+        assertThat(delayed, is(equalTo(false)));
+        assertThat(attack.getDelays().isEmpty(), is(equalTo(true)));
+    }
+
+    @Test
+    public void shouldRejectDelayWithSingleAttackIfResponseFasterThanDelay() throws Exception {
+        // Given
+        TimeBasedOracle oracle = new TimeBasedOracle(latencyModel(200, 210, 190, 205), 5);
+        ScriptedAttack attack = new ScriptedAttack(205);
+        // When
+        boolean delayed = oracle.isDelayed(attack);
+        // Then
+        assertThat(delayed, is(equalTo(false)));
+        assertThat(attack.getDelays(), contains(1));
+    }
+
+    @Test
+    public void shouldAcceptDelayConfirmedWithLongerDelay() throws Exception {
+        // Given
+        TimeBasedOracle oracle = new TimeBasedOracle(latencyModel(200, 210, 190, 205), 5);
+        ScriptedAttack attack = new ScriptedAttack(1210, 2195);
+        // When
+        boolean delayed = oracle.isDelayed(attack);
+        // Then
+        assertThat(delayed, is(equalTo(true)));
+        assertThat(attack.getDelays(), contains(1, 2));
+    }
+
+    @Test
+    public void shouldRejectDelayNotConfirmed() throws Exception {
+        // Given
+        TimeBasedOracle oracle = new TimeBasedOracle(latencyModel(200, 210, 190, 205), 5);
+        ScriptedAttack attack = new ScriptedAttack(1210, 215);
+        // When
+        boolean delayed = oracle.isDelayed(attack);
+        // Then
+        assertThat(delayed, is(equalTo(false)));
+        assertThat(attack.getDelays(), contains(1, 2));
+    }
+
+    @Test
+    public void shouldRejectDelayOfSlowResponsesNotProportionalToDelay() throws Exception {
+        // Given
+        TimeBasedOracle oracle = new TimeBasedOracle(latencyModel(3000, 3200, 2900, 3100), 5);
+        ScriptedAttack attack = new ScriptedAttack(3150, 3050, 3100, 3000);
+        // When
+        boolean delayed = oracle.isDelayed(attack);
+        // Then
+        assertThat(delayed, is(equalTo(false)));
+    }
+
+    @Test
+    public void shouldNotConfirmDelayWithDelayLongerThanMaxDelay() throws Exception {
+        // Given
+        TimeBasedOracle oracle = new TimeBasedOracle(latencyModel(200, 210, 190, 205), 1);
+        ScriptedAttack attack = new ScriptedAttack(1210, 1195);
+        // When
+        boolean delayed = oracle.isDelayed(attack);
+        // Then
+        assertThat(delayed, is(equalTo(true)));
+        assertThat(attack.getDelays(), contains(1, 1));
+    }
+
+    @Test
+    public void shouldStopSendingAttacksIfStopped() throws Exception {
+        // Given
+        TimeBasedOracle oracle = new TimeBasedOracle(latencyModel(200, 210, 190, 205), 5);
+        ScriptedAttack attack = new ScriptedAttack(1210, 2195);
+        attack.setStop(true);
+        // When
+        boolean delayed = oracle.isDelayed(attack);
+        // Then
+        assertThat(delayed, is(equalTo(false)));
+        assertThat(attack.getDelays(), contains(1));
+    }
+
+    private static LatencyModel latencyModel(long... samples) {
+        LatencyModel latencyModel = new LatencyModel();
+        for (long sample : samples) {
+            latencyModel.addSample(sample);
+        }
+        return latencyModel;
+    }
+
+    private static HttpMessage message(String uri) throws Exception {
+        return new HttpMessage(new URI(uri, true));
+    }
+
+    private static class ScriptedAttack implements TimeBasedOracle.DelayAttack {
+
+        private final long[] elapsedTimes;
+        private final List<Integer> delays;
+        private long timeWithoutDelay;
+        private int requestsWithoutDelay;
+        private boolean stop;
+
+        ScriptedAttack(long... elapsedTimes) {
+            this.elapsedTimes = elapsedTimes;
+            this.delays = new ArrayList<>();
+            this.timeWithoutDelay = 200;
+        }
+
+        void setTimeWithoutDelay(long timeWithoutDelay) {
+            this.timeWithoutDelay = timeWithoutDelay;
+        }
+
+        int getRequestsWithoutDelay() {
+            return requestsWithoutDelay;
+        }
+
+        void setStop(boolean stop) {
+            this.stop = stop;
+        }
+
+        List<Integer> getDelays() {
+            return delays;
+        }
+
+        @Override
+        public long send(int delay) {
+            delays.add(delay);
+            return elapsedTimes[delays.size() - 1];
+        }
+
+        @Override
+        public long sendWithoutDelay() {
+            requestsWithoutDelay++;
+            return timeWithoutDelay;
+        }
+
+        @Override
+        public boolean isStop() {
+            return stop;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.zaproxy.zap.extension.websocket;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class WebSocketFrameBufferPoolUnitTest {
+
+	@Test
+	public void shouldRoundUpToSizeClass() {
+		// given
+		WebSocketFrameBufferPool pool = new WebSocketFrameBufferPool();
+		// when
+		ByteBuffer small = pool.acquire(10);
+		ByteBuffer medium = pool.acquire(1025);
+		// then
+		assertThat(small.capacity(), is(equalTo(256)));
+		assertThat(medium.capacity(), is(equalTo(2048)));
+		assertThat(pool.getAllocatedCount(), is(equalTo(2L)));
+		assertThat(pool.getAllocatedBytes(), is(equalTo(256L + 2048L)));
+	}
+
+	@Test
+	public void shouldReuseReleasedBuffer() {
+		// given
+		WebSocketFrameBufferPool pool = new WebSocketFrameBufferPool();
+		ByteBuffer buffer = pool.acquire(300);
+		buffer.put((byte) 1);
+		pool.release(buffer);
+		// when
+		ByteBuffer reused = pool.acquire(500);
+		// then
+		assertThat(reused, is(sameInstance(buffer)));
+		assertThat(reused.position(), is(equalTo(0)));
+		assertThat(reused.limit(), is(equalTo(512)));
+		assertThat(pool.getAllocatedCount(), is(equalTo(1L)));
+		assertThat(pool.getReusedCount(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void shouldNotPoolOversizedBuffers() {
+		// given
+		WebSocketFrameBufferPool pool = new WebSocketFrameBufferPool();
+		ByteBuffer buffer = pool.acquire(70000);
+		// when
+		pool.release(buffer);
+		// then
+		assertThat(buffer.capacity(), is(equalTo(70000)));
+		assertThat(pool.getPooledCount(), is(equalTo(0)));
+	}
+
+	@Test
+	public void shouldKeepLimitedNumberOfIdleBuffers() {
+		// given
+		WebSocketFrameBufferPool pool = new WebSocketFrameBufferPool(1);
+		ByteBuffer first = pool.acquire(100);
+		ByteBuffer second = pool.acquire(100);
+		// when
+		pool.release(first);
+		pool.release(second);
+		// then
+		assertThat(pool.getPooledCount(), is(equalTo(1)));
+	}
+
+	@Test
+	public void shouldIgnoreForeignBuffers() {
+		// given
+		WebSocketFrameBufferPool pool = new WebSocketFrameBufferPool();
+		// when
+		pool.release(ByteBuffer.allocate(300));
+		// then
+		assertThat(pool.getPooledCount(), is(equalTo(0)));
+	}
+}
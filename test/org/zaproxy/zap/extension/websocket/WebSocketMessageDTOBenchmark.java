@@ -0,0 +1,146 @@
+package org.zaproxy.zap.extension.websocket;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.parosproxy.paros.Constant;
+import org.zaproxy.zap.extension.websocket.utility.Utf8Util;
+import org.zaproxy.zap.utils.I18N;
+
+/**
+ * Measures the cost per observer of {@link WebSocketMessage#getDTO()} for
+ * text messages of several sizes, compared with decoding the payload for every
+ * observer (as done before the DTO was kept once the message is finished).
+ * <p>
+ * Not run as part of the unit tests, start it manually (after compiling the
+ * tests) with:
+ *
+ * <pre>
+ * java -cp &lt;classpath&gt; org.zaproxy.zap.extension.websocket.WebSocketMessageDTOBenchmark
+ * </pre>
+ */
+public class WebSocketMessageDTOBenchmark {
+
+	private static final int[] PAYLOAD_SIZES = { 125, 64 * 1024, 1024 * 1024 };
+
+	/**
+	 * Number of observers calling {@link WebSocketMessage#getDTO()}, e.g.
+	 * storage, panel, break and filters.
+	 */
+	private static final int OBSERVERS = 5;
+
+	/**
+	 * Number of bytes received per measurement, to get comparable timings for
+	 * all payload sizes.
+	 */
+	private static final long BYTES_PER_ROUND = 256L * 1024 * 1024;
+
+	private static final int WARMUP_ROUNDS = 3;
+
+	private static final int MEASURED_ROUNDS = 5;
+
+	/**
+	 * Prevents that the JIT removes the decoding as dead code.
+	 */
+	private static int sink;
+
+	public static void main(String[] args) throws Exception {
+		// used by the DTOs
+		Constant.messages = mock(I18N.class);
+		when(Constant.messages.getLocal()).thenReturn(Locale.ENGLISH);
+
+		WebSocketProxyV13 proxy = new WebSocketProxyV13(null, null, "localhost", 80);
+
+		System.out.println(String.format(
+				Locale.ROOT,
+				"%12s %22s %22s",
+				"payload",
+				"decode each (us/obs)",
+				"shared dto (us/obs)"));
+
+		for (int size : PAYLOAD_SIZES) {
+			byte[] frame = createFrameBody(size);
+			long iterations = Math.max(1, BYTES_PER_ROUND / size);
+
+			for (int i = 0; i < WARMUP_ROUNDS; i++) {
+				runDecodeEach(proxy, frame, iterations);
+				runSharedDto(proxy, frame, iterations);
+			}
+
+			long decodeEach = Long.MAX_VALUE;
+			long sharedDto = Long.MAX_VALUE;
+			for (int i = 0; i < MEASURED_ROUNDS; i++) {
+				decodeEach = Math.min(decodeEach, runDecodeEach(proxy, frame, iterations));
+				sharedDto = Math.min(sharedDto, runSharedDto(proxy, frame, iterations));
+			}
+
+			System.out.println(String.format(
+					Locale.ROOT,
+					"%12d %22.2f %22.2f",
+					size,
+					perObserver(decodeEach, iterations),
+					perObserver(sharedDto, iterations)));
+		}
+		System.out.println("(" + sink + ")");
+	}
+
+	private static double perObserver(long nanos, long iterations) {
+		return nanos / 1000.0 / iterations / OBSERVERS;
+	}
+
+	/**
+	 * The text frame, without the first byte, unmasked.
+	 */
+	private static byte[] createFrameBody(int size) {
+		byte[] frame = new byte[9 + size];
+		frame[0] = 127;
+		for (int i = 0; i < 8; i++) {
+			frame[1 + i] = (byte) (size >>> (8 * (7 - i)));
+		}
+		byte[] text = "Some text \u00fc ".getBytes(StandardCharsets.UTF_8);
+		for (int i = 0; i < size; i++) {
+			frame[9 + i] = text[i % text.length];
+		}
+		// do not end within a multi-byte character
+		Arrays.fill(frame, frame.length - 2, frame.length, (byte) ' ');
+		return frame;
+	}
+
+	private static WebSocketMessage readMessage(WebSocketProxyV13 proxy, byte[] frame) throws Exception {
+		return proxy.createWebSocketMessage(
+				new ByteArrayInputStream(frame),
+				(byte) (0x80 | WebSocketMessage.OPCODE_TEXT));
+	}
+
+	private static long runDecodeEach(WebSocketProxyV13 proxy, byte[] frame, long iterations) throws Exception {
+		long time = 0;
+		for (long n = 0; n < iterations; n++) {
+			WebSocketMessage message = readMessage(proxy, frame);
+			byte[] payload = message.getPayload();
+			long start = System.nanoTime();
+			for (int i = 0; i < OBSERVERS; i++) {
+				sink += Utf8Util.encodePayloadToUtf8(payload).length();
+			}
+			time += System.nanoTime() - start;
+		}
+		return time;
+	}
+
+	private static long runSharedDto(WebSocketProxyV13 proxy, byte[] frame, long iterations) throws Exception {
+		long time = 0;
+		for (long n = 0; n < iterations; n++) {
+			WebSocketMessage message = readMessage(proxy, frame);
+			long start = System.nanoTime();
+			for (int i = 0; i < OBSERVERS; i++) {
+				sink += ((String) message.getDTO().payload).length();
+			}
+			time += System.nanoTime() - start;
+		}
+		return time;
+	}
+}
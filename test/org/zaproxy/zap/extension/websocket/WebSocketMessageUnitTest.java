@@ -0,0 +1,198 @@
+package org.zaproxy.zap.extension.websocket;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.parosproxy.paros.Constant;
+import org.zaproxy.zap.extension.websocket.WebSocketMessage.Direction;
+import org.zaproxy.zap.utils.I18N;
+
+public class WebSocketMessageUnitTest {
+
+	private static final byte FIN = (byte) 0x80;
+
+	private static final byte RSV1 = (byte) 0x40;
+
+	private WebSocketProxyV13 proxy;
+
+	@BeforeClass
+	public static void setUpClass() {
+		// used by the DTOs
+		Constant.messages = mock(I18N.class);
+		when(Constant.messages.getLocal()).thenReturn(Locale.ENGLISH);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		proxy = new WebSocketProxyV13(null, null, "localhost", 80);
+	}
+
+	@Test
+	public void shouldShareDtoOfFinishedMessage() throws Exception {
+		// given
+		WebSocketMessage message = readTextMessage("Hello World");
+		// when
+		WebSocketMessageDTO first = message.getDTO();
+		WebSocketMessageDTO second = message.getDTO();
+		// then
+		assertThat(second, is(sameInstance(first)));
+		assertThat(second.payload, is(sameInstance(first.payload)));
+		assertThat((String) second.payload, is(equalTo("Hello World")));
+	}
+
+	@Test
+	public void shouldDecodeReadablePayloadOnce() throws Exception {
+		// given
+		WebSocketMessage message = readTextMessage("Hello World");
+		// when
+		String first = message.getReadablePayload();
+		String second = message.getReadablePayload();
+		// then
+		assertThat(second, is(sameInstance(first)));
+	}
+
+	@Test
+	public void shouldRebuildDtoAfterReadablePayloadChanged() throws Exception {
+		// given
+		WebSocketMessage message = readTextMessage("Hello World");
+		message.getDTO();
+		// when
+		message.setReadablePayload("Changed");
+		// then
+		assertThat(message.getReadablePayload(), is(equalTo("Changed")));
+		assertThat((String) message.getDTO().payload, is(equalTo("Changed")));
+	}
+
+	@Test
+	public void shouldNotModifyDtoHandedOutBeforePayloadChanged() throws Exception {
+		// given
+		WebSocketMessage message = readTextMessage("Hello World");
+		WebSocketMessageDTO before = message.getDTO();
+		// when
+		message.setReadablePayload("Changed");
+		WebSocketMessageDTO after = message.getDTO();
+		// then
+		assertThat(after, is(not(sameInstance(before))));
+		assertThat((String) before.payload, is(equalTo("Hello World")));
+		assertThat((String) after.payload, is(equalTo("Changed")));
+	}
+
+	@Test
+	public void shouldCopyDtoWithSameType() throws Exception {
+		// given
+		WebSocketFuzzMessageDTO dto = new WebSocketFuzzMessageDTO();
+		dto.id = 3;
+		dto.payload = "Hello";
+		dto.fuzzId = 2;
+		dto.state = WebSocketFuzzMessageDTO.State.SUCCESSFUL;
+		// when
+		WebSocketMessageDTO copy = dto.copy();
+		// then
+		assertThat(copy, is(instanceOf(WebSocketFuzzMessageDTO.class)));
+		assertThat(copy.id, is(equalTo(3)));
+		assertThat((String) copy.payload, is(equalTo("Hello")));
+		assertThat(((WebSocketFuzzMessageDTO) copy).fuzzId, is(equalTo(2)));
+		assertThat(((WebSocketFuzzMessageDTO) copy).state, is(equalTo(WebSocketFuzzMessageDTO.State.SUCCESSFUL)));
+	}
+
+	@Test
+	public void shouldRebuildDtoAfterPayloadChanged() throws Exception {
+		// given
+		WebSocketMessage message = readTextMessage("Hello World");
+		message.getDTO();
+		// when
+		message.setPayload("Changed".getBytes(StandardCharsets.UTF_8));
+		// then
+		assertThat((String) message.getDTO().payload, is(equalTo("Changed")));
+	}
+
+	@Test
+	public void shouldNotKeepDtoOfUnfinishedMessage() throws Exception {
+		// given
+		byte[] firstPart = "Hello ".getBytes(StandardCharsets.UTF_8);
+		byte[] secondPart = "World".getBytes(StandardCharsets.UTF_8);
+		WebSocketMessage message = proxy.createWebSocketMessage(
+				new ByteArrayInputStream(createFrameBody(firstPart)),
+				(byte) WebSocketMessage.OPCODE_TEXT);
+		message.getDTO();
+		// when
+		message.readContinuation(
+				new ByteArrayInputStream(createFrameBody(secondPart)),
+				(byte) (FIN | WebSocketMessage.OPCODE_CONTINUATION));
+		// then
+		assertThat((String) message.getDTO().payload, is(equalTo("Hello World")));
+	}
+
+	@Test
+	public void shouldReencodeFragmentedCompressedMessageOnceFinished() throws Exception {
+		// given
+		WebSocketPermessageDeflate permessageDeflate = new WebSocketPermessageDeflate("");
+		permessageDeflate.markChanged(Direction.INCOMING);
+		proxy.setPermessageDeflate(permessageDeflate);
+		byte[] compressed = peerDeflate("Hello World");
+		int split = compressed.length / 2;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// when
+		WebSocketMessage message = proxy.createWebSocketMessage(
+				new ByteArrayInputStream(createFrameBody(Arrays.copyOfRange(compressed, 0, split))),
+				(byte) (RSV1 | WebSocketMessage.OPCODE_TEXT));
+		message.forward(out);
+		int forwardedBeforeLastFrame = out.size();
+		message.readContinuation(
+				new ByteArrayInputStream(createFrameBody(Arrays.copyOfRange(compressed, split, compressed.length))),
+				(byte) (FIN | WebSocketMessage.OPCODE_CONTINUATION));
+		message.forward(out);
+		// then
+		assertThat(forwardedBeforeLastFrame, is(equalTo(0)));
+		byte[] frame = out.toByteArray();
+		assertThat(frame[0], is(equalTo((byte) (FIN | RSV1 | WebSocketMessage.OPCODE_TEXT))));
+		assertThat(frame.length, is(equalTo(2 + frame[1])));
+		byte[] payload = new WebSocketPermessageDeflate("").inflate(
+				Direction.INCOMING, Arrays.copyOfRange(frame, 2, frame.length));
+		assertThat(new String(payload, StandardCharsets.UTF_8), is(equalTo("Hello World")));
+	}
+
+	private WebSocketMessage readTextMessage(String text) throws Exception {
+		byte[] frameBody = createFrameBody(text.getBytes(StandardCharsets.UTF_8));
+		return proxy.createWebSocketMessage(
+				new ByteArrayInputStream(frameBody),
+				(byte) (FIN | WebSocketMessage.OPCODE_TEXT));
+	}
+
+	/**
+	 * @param payload at most 125 bytes
+	 * @return the unmasked frame, without the first byte
+	 */
+	private static byte[] createFrameBody(byte[] payload) {
+		byte[] frameBody = new byte[1 + payload.length];
+		frameBody[0] = (byte) payload.length;
+		System.arraycopy(payload, 0, frameBody, 1, payload.length);
+		return frameBody;
+	}
+
+	private static byte[] peerDeflate(String payload) {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		deflater.setInput(payload.getBytes(StandardCharsets.UTF_8));
+		byte[] buffer = new byte[1024];
+		int length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+		deflater.end();
+		// strip 0x00 0x00 0xFF 0xFF as mandated by RFC 7692
+		return Arrays.copyOf(buffer, length - 4);
+	}
+}
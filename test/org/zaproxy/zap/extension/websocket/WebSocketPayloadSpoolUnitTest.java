@@ -0,0 +1,142 @@
+package org.zaproxy.zap.extension.websocket;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WebSocketPayloadSpoolUnitTest {
+
+	private WebSocketPayloadSpool spool;
+
+	@Before
+	public void setUp() throws Exception {
+		spool = WebSocketPayloadSpool.create();
+	}
+
+	@After
+	public void tearDown() {
+		if (spool.isAvailable()) {
+			spool.release();
+		}
+	}
+
+	@Test
+	public void shouldAppendAndReadAll() throws Exception {
+		// given
+		byte[] bytes = "0123456789".getBytes(StandardCharsets.UTF_8);
+		// when
+		spool.append(bytes, 0, 5);
+		spool.append(bytes, 5, 5);
+		// then
+		assertThat(spool.getLength(), is(equalTo(10L)));
+		assertThat(spool.readAll(), is(equalTo(bytes)));
+	}
+
+	@Test
+	public void shouldReadPreview() throws Exception {
+		// given
+		byte[] bytes = "0123456789".getBytes(StandardCharsets.UTF_8);
+		spool.append(bytes, 0, bytes.length);
+		// when
+		byte[] preview = spool.readPreview(4);
+		// then
+		assertThat(new String(preview, StandardCharsets.UTF_8), is(equalTo("0123")));
+	}
+
+	@Test
+	public void shouldStreamUpToMaxLength() throws Exception {
+		// given
+		byte[] bytes = "0123456789".getBytes(StandardCharsets.UTF_8);
+		spool.append(bytes, 0, bytes.length);
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		// when
+		try (InputStream stream = spool.openStream(7)) {
+			byte[] buffer = new byte[3];
+			int read;
+			while ((read = stream.read(buffer)) != -1) {
+				result.write(buffer, 0, read);
+			}
+		}
+		// then
+		assertThat(result.toString("UTF-8"), is(equalTo("0123456")));
+	}
+
+	@Test
+	public void shouldMapContent() throws Exception {
+		// given
+		byte[] bytes = "0123456789".getBytes(StandardCharsets.UTF_8);
+		spool.append(bytes, 0, bytes.length);
+		// when
+		ByteBuffer view = spool.map();
+		// then
+		assertThat(view.remaining(), is(equalTo(10)));
+		assertThat(view.get(9), is(equalTo((byte) '9')));
+	}
+
+	@Test
+	public void shouldBeAvailableUntilLastReferenceIsReleased() {
+		// given
+		spool.retain();
+		// when
+		spool.release();
+		// then
+		assertThat(spool.isAvailable(), is(true));
+		spool.release();
+		assertThat(spool.isAvailable(), is(false));
+	}
+
+	@Test
+	public void shouldDeleteLeftoverFilesWhenInitialisingDirectory() throws Exception {
+		// given
+		File directory = Files.createTempDirectory("zap-websocket-spool").toFile();
+		File leftover = new File(directory, "zap-websocket-1.payload");
+		File other = new File(directory, "other.payload");
+		leftover.createNewFile();
+		other.createNewFile();
+		try {
+			// when
+			WebSocketPayloadSpool.initDirectory(directory);
+			WebSocketPayloadSpool created = WebSocketPayloadSpool.create();
+			int filesWithCreated = directory.list().length;
+			created.release();
+			// then
+			assertThat(leftover.exists(), is(false));
+			assertThat(other.exists(), is(true));
+			assertThat(filesWithCreated, is(equalTo(2)));
+			assertThat(directory.list().length, is(equalTo(1)));
+		} finally {
+			WebSocketPayloadSpool.initDirectory(null);
+			other.delete();
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void shouldDeleteFilesWhenCleaningDirectory() throws Exception {
+		// given
+		File directory = Files.createTempDirectory("zap-websocket-spool").toFile();
+		WebSocketPayloadSpool.initDirectory(directory);
+		WebSocketPayloadSpool unreleased = WebSocketPayloadSpool.create();
+		try {
+			// when
+			WebSocketPayloadSpool.cleanDirectory();
+			// then
+			assertThat(directory.list().length, is(equalTo(0)));
+		} finally {
+			unreleased.release();
+			WebSocketPayloadSpool.initDirectory(null);
+			directory.delete();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package org.zaproxy.zap.extension.websocket;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+import org.zaproxy.zap.extension.websocket.WebSocketMessage.Direction;
+
+public class WebSocketPermessageDeflateUnitTest {
+
+	@Test
+	public void shouldInflateMessageCompressedByPeer() throws Exception {
+		// given
+		WebSocketPermessageDeflate codec = new WebSocketPermessageDeflate("");
+		byte[] compressed = peerDeflate("Hello");
+		// when
+		byte[] payload = codec.inflate(Direction.INCOMING, compressed);
+		// then
+		assertThat(new String(payload, StandardCharsets.UTF_8), is(equalTo("Hello")));
+	}
+
+	@Test
+	public void shouldInflateWithContextTakeover() throws Exception {
+		// given
+		WebSocketPermessageDeflate codec = new WebSocketPermessageDeflate(null);
+		Deflater peer = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		byte[] first = peerDeflate(peer, "{\"price\":1000,\"symbol\":\"ABC\"}");
+		byte[] second = peerDeflate(peer, "{\"price\":1000,\"symbol\":\"ABC\"}");
+		// when
+		codec.inflate(Direction.OUTGOING, first);
+		byte[] payload = codec.inflate(Direction.OUTGOING, second);
+		// then
+		assertThat(second.length, is(lessThan(first.length)));
+		assertThat(new String(payload, StandardCharsets.UTF_8), is(equalTo("{\"price\":1000,\"symbol\":\"ABC\"}")));
+	}
+
+	@Test
+	public void shouldDeflateSuchThatPeerCanInflate() throws Exception {
+		// given
+		WebSocketPermessageDeflate sender = new WebSocketPermessageDeflate("server_no_context_takeover");
+		WebSocketPermessageDeflate receiver = new WebSocketPermessageDeflate("server_no_context_takeover");
+		byte[] payload = new byte[100000];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) (i % 7);
+		}
+		// when
+		byte[] compressed = sender.deflate(Direction.INCOMING, payload);
+		// then
+		assertThat(compressed.length, is(lessThan(payload.length)));
+		assertThat(receiver.inflate(Direction.INCOMING, compressed), is(equalTo(payload)));
+	}
+
+	@Test
+	public void shouldOnlyCompressIfContextIsOwnedByZap() throws Exception {
+		// given
+		WebSocketPermessageDeflate codec = new WebSocketPermessageDeflate("client_no_context_takeover");
+		// when / then
+		assertThat(codec.canCompress(Direction.OUTGOING), is(true));
+		assertThat(codec.canCompress(Direction.INCOMING), is(false));
+		codec.markChanged(Direction.INCOMING);
+		assertThat(codec.isDiverged(Direction.INCOMING), is(true));
+		assertThat(codec.canCompress(Direction.INCOMING), is(true));
+	}
+
+	@Test
+	public void shouldNotCompressForReceiverWithSmallerWindow() throws Exception {
+		// given
+		WebSocketPermessageDeflate codec = new WebSocketPermessageDeflate("client_no_context_takeover; client_max_window_bits=10");
+		// when
+		boolean canCompress = codec.canCompress(Direction.OUTGOING);
+		// then
+		assertThat(canCompress, is(false));
+	}
+
+	@Test(expected = WebSocketException.class)
+	public void shouldFailOnUnknownParameter() throws Exception {
+		// given
+		String params = "unknown_param";
+		// when
+		new WebSocketPermessageDeflate(params);
+		// then WebSocketException
+	}
+
+	private static byte[] peerDeflate(String payload) {
+		return peerDeflate(new Deflater(Deflater.DEFAULT_COMPRESSION, true), payload);
+	}
+
+	private static byte[] peerDeflate(Deflater deflater, String payload) {
+		deflater.setInput(payload.getBytes(StandardCharsets.UTF_8));
+		byte[] buffer = new byte[1024];
+		int length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+		// strip 0x00 0x00 0xFF 0xFF as mandated by RFC 7692
+		byte[] result = new byte[length - 4];
+		System.arraycopy(buffer, 0, result, 0, result.length);
+		return result;
+	}
+}
@@ -0,0 +1,199 @@
+package org.zaproxy.zap.extension.websocket;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.zaproxy.zap.extension.websocket.WebSocketMessage.Direction;
+import org.zaproxy.zap.extension.websocket.WebSocketProxy.ObserverTiming;
+
+public class WebSocketProxyUnitTest {
+
+	private static final byte FIN = (byte) 0x80;
+
+	private static final byte RSV1 = (byte) 0x40;
+
+	private WebSocketProxyV13 proxy;
+
+	@Before
+	public void setUp() throws Exception {
+		proxy = new WebSocketProxyV13(null, null, "localhost", 80);
+	}
+
+	@Test
+	public void shouldKeepObserversSortedByObservingOrder() {
+		// given
+		WebSocketObserver first = createObserver(10);
+		WebSocketObserver second = createObserver(20);
+		WebSocketObserver third = createObserver(20);
+		WebSocketObserver fourth = createObserver(30);
+		// when
+		proxy.addObserver(fourth);
+		proxy.addObserver(second);
+		proxy.addObserver(first);
+		proxy.addObserver(third);
+		// then
+		assertThat(getObservers(), contains(first, second, third, fourth));
+	}
+
+	@Test
+	public void shouldRemoveObserver() {
+		// given
+		WebSocketObserver first = createObserver(10);
+		WebSocketObserver second = createObserver(20);
+		proxy.addObserver(first);
+		proxy.addObserver(second);
+		// when
+		proxy.removeObserver(first);
+		// then
+		assertThat(getObservers(), contains(second));
+	}
+
+	@Test
+	public void shouldStopNotifyingIfObserverDropsMessage() {
+		// given
+		WebSocketObserver first = createObserver(10);
+		WebSocketObserver second = createObserver(20);
+		when(first.onMessageFrame(anyInt(), any(WebSocketMessage.class))).thenReturn(false);
+		proxy.addObserver(first);
+		proxy.addObserver(second);
+		// when
+		boolean forward = proxy.notifyMessageObservers(mock(WebSocketMessage.class));
+		// then
+		assertThat(forward, is(equalTo(false)));
+		verify(second, never()).onMessageFrame(anyInt(), any(WebSocketMessage.class));
+	}
+
+	@Test
+	public void shouldCountNotificationsOfObservers() {
+		// given
+		WebSocketObserver observer = createObserver(10);
+		when(observer.onMessageFrame(anyInt(), any(WebSocketMessage.class))).thenReturn(true);
+		proxy.addObserver(observer);
+		// when
+		proxy.notifyMessageObservers(mock(WebSocketMessage.class));
+		proxy.notifyMessageObservers(mock(WebSocketMessage.class));
+		// then
+		ObserverTiming timing = proxy.getObserverTimings().get(0);
+		assertThat(timing.getNotificationCount(), is(equalTo(2L)));
+		assertThat(timing.getMaxTime() <= timing.getTotalTime(), is(equalTo(true)));
+	}
+
+	@Test
+	public void shouldKeepInflaterInSyncWhenRelayingFragmentedCompressedMessage() throws Exception {
+		// given
+		WebSocketPermessageDeflate permessageDeflate = new WebSocketPermessageDeflate("");
+		proxy.setPermessageDeflate(permessageDeflate);
+		proxy.setForwardOnly(true);
+		Deflater peer = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		byte[] frames = createFragmentedFrames(peerDeflate(peer, "Hello World"));
+		byte[] nextMessage = peerDeflate(peer, "Hello World");
+		peer.end();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// when
+		relayFrames(frames, out);
+		// then
+		assertThat(out.toByteArray(), is(equalTo(frames)));
+		byte[] payload = permessageDeflate.inflate(Direction.INCOMING, nextMessage);
+		assertThat(new String(payload, StandardCharsets.UTF_8), is(equalTo("Hello World")));
+	}
+
+	@Test
+	public void shouldReencodeFragmentedCompressedMessageOnForwardOnlyChannel() throws Exception {
+		// given
+		WebSocketPermessageDeflate permessageDeflate = new WebSocketPermessageDeflate("");
+		permessageDeflate.markChanged(Direction.INCOMING);
+		proxy.setPermessageDeflate(permessageDeflate);
+		proxy.setForwardOnly(true);
+		Deflater peer = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		byte[] frames = createFragmentedFrames(peerDeflate(peer, "Hello World"));
+		peer.end();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// when
+		relayFrames(frames, out);
+		// then
+		byte[] frame = out.toByteArray();
+		assertThat(frame[0], is(equalTo((byte) (FIN | RSV1 | WebSocketMessage.OPCODE_TEXT))));
+		assertThat(frame.length, is(equalTo(2 + frame[1])));
+		byte[] payload = new WebSocketPermessageDeflate("").inflate(
+				Direction.INCOMING, Arrays.copyOfRange(frame, 2, frame.length));
+		assertThat(new String(payload, StandardCharsets.UTF_8), is(equalTo("Hello World")));
+	}
+
+	@Test(expected = WebSocketException.class)
+	public void shouldRejectRelayedFrameWithNegativePayloadLength() throws Exception {
+		// given
+		proxy.setForwardOnly(true);
+		byte[] frame = { (byte) (FIN | WebSocketMessage.OPCODE_BINARY), 127,
+				(byte) 0x80, 0, 0, 0, 0, 0, 0, 1 };
+		// when
+		relayFrames(frame, new ByteArrayOutputStream());
+		// then = WebSocketException
+	}
+
+	private void relayFrames(byte[] frames, ByteArrayOutputStream out) throws Exception {
+		ByteArrayInputStream in = new ByteArrayInputStream(frames);
+		int frameHeader;
+		while ((frameHeader = in.read()) != -1) {
+			proxy.processRead(in, out, (byte) frameHeader);
+		}
+	}
+
+	/**
+	 * @param compressed at most 250 bytes
+	 * @return two unmasked frames, each with half of the payload
+	 */
+	private static byte[] createFragmentedFrames(byte[] compressed) {
+		int split = compressed.length / 2;
+		ByteArrayOutputStream frames = new ByteArrayOutputStream();
+		frames.write(RSV1 | WebSocketMessage.OPCODE_TEXT);
+		frames.write(split);
+		frames.write(compressed, 0, split);
+		frames.write(FIN | WebSocketMessage.OPCODE_CONTINUATION);
+		frames.write(compressed.length - split);
+		frames.write(compressed, split, compressed.length - split);
+		return frames.toByteArray();
+	}
+
+	/**
+	 * Compresses the payload as a peer with context takeover.
+	 */
+	private static byte[] peerDeflate(Deflater peer, String payload) {
+		peer.setInput(payload.getBytes(StandardCharsets.UTF_8));
+		byte[] buffer = new byte[1024];
+		int length = peer.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+		// strip 0x00 0x00 0xFF 0xFF as mandated by RFC 7692
+		return Arrays.copyOf(buffer, length - 4);
+	}
+
+	private static WebSocketObserver createObserver(int observingOrder) {
+		WebSocketObserver observer = mock(WebSocketObserver.class);
+		when(observer.getObservingOrder()).thenReturn(observingOrder);
+		return observer;
+	}
+
+	private List<WebSocketObserver> getObservers() {
+		List<WebSocketObserver> observers = new ArrayList<>();
+		for (ObserverTiming timing : proxy.getObserverTimings()) {
+			observers.add(timing.getObserver());
+		}
+		return observers;
+	}
+}
@@ -0,0 +1,729 @@
+package org.zaproxy.zap.extension.websocket;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.parosproxy.paros.Constant;
+import org.parosproxy.paros.db.DatabaseException;
+import org.zaproxy.zap.extension.brk.BreakpointManagementInterface;
+import org.zaproxy.zap.extension.brk.BreakpointMessageInterface;
+import org.zaproxy.zap.extension.websocket.brk.WebSocketBreakpointMessage;
+import org.zaproxy.zap.extension.websocket.brk.WebSocketBreakpointMessageHandler;
+import org.zaproxy.zap.extension.websocket.brk.WebSocketProxyListenerBreak;
+import org.zaproxy.zap.extension.websocket.db.TableWebSocket;
+import org.zaproxy.zap.extension.websocket.db.WebSocketStorage;
+import org.zaproxy.zap.extension.websocket.ui.OptionsParamWebSocket;
+import org.zaproxy.zap.extension.websocket.ui.WebSocketMessagesViewModel;
+import org.zaproxy.zap.utils.I18N;
+
+/**
+ * Measures the relay of {@link WebSocketProxy}: clients send messages through
+ * proxied channels to a local echo server and wait for the echo. Reports the
+ * frames relayed per second, the round trip latency (p50/p99) added by the
+ * proxy, compared with the clients talking to the echo server directly, and
+ * the bytes allocated per message by the threads of the proxies and of the
+ * echo server (also compared with the direct connections).
+ * <p>
+ * Runs the channels with each of the given observer sets:
+ * <ul>
+ * <li>{@code none} - no observers;</li>
+ * <li>{@code storage} - {@link WebSocketStorage}, with a session in a
+ * temporary directory;</li>
+ * <li>{@code ui} - {@link WebSocketMessagesViewModel}, notified as done by the
+ * WebSockets tab;</li>
+ * <li>{@code breakpoints} - {@link WebSocketProxyListenerBreak} with breakpoints
+ * that never match;</li>
+ * <li>{@code all} - all of the above.</li>
+ * </ul>
+ * <p>
+ * Not run as part of the unit tests, start it manually (after compiling the
+ * tests) with:
+ *
+ * <pre>
+ * java -cp &lt;classpath&gt; org.zaproxy.zap.extension.websocket.WebSocketRelayBenchmark [name=value ...]
+ * </pre>
+ *
+ * where the names (and defaults) are: {@code sizes} ({@code 125,4096,65536})
+ * payload sizes in bytes, {@code fragments} ({@code 1}) frames per message,
+ * {@code channels} ({@code 4}), {@code messages} ({@code 20000}) per channel,
+ * {@code window} ({@code 1}) messages sent per channel before waiting for
+ * their echo, and {@code observers} ({@code none,storage,ui,breakpoints,all}).
+ */
+public class WebSocketRelayBenchmark {
+
+	private static final int WARMUP_ROUNDS = 1;
+
+	private static final int BREAKPOINTS = 10;
+
+	private static final byte FIN = (byte) 0x80;
+
+	private static final byte MASKED = (byte) 0x80;
+
+	/**
+	 * Prevents that the JIT removes the reading of the echo as dead code.
+	 */
+	private static int sink;
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new LinkedHashMap<>();
+		options.put("sizes", "125,4096,65536");
+		options.put("fragments", "1");
+		options.put("channels", "4");
+		options.put("messages", "20000");
+		options.put("window", "1");
+		options.put("observers", "none,storage,ui,breakpoints,all");
+		for (String arg : args) {
+			int idx = arg.indexOf('=');
+			if (idx == -1 || !options.containsKey(arg.substring(0, idx))) {
+				throw new IllegalArgumentException("Unknown option: " + arg + ", known options: " + options.keySet());
+			}
+			options.put(arg.substring(0, idx), arg.substring(idx + 1));
+		}
+		int fragments = Integer.parseInt(options.get("fragments"));
+		int channels = Integer.parseInt(options.get("channels"));
+		int messages = Integer.parseInt(options.get("messages"));
+		int window = Integer.parseInt(options.get("window"));
+		List<String> observerSets = Arrays.asList(options.get("observers").split(","));
+		System.out.println("Options: " + options);
+
+		// used by the DTOs
+		Constant.messages = mock(I18N.class);
+		when(Constant.messages.getLocal()).thenReturn(Locale.ENGLISH);
+
+		File dir = Files.createTempDirectory("zap-websocket-relay-benchmark").toFile();
+		Connection conn = DriverManager.getConnection(
+				"jdbc:hsqldb:file:" + new File(dir, "session").getAbsolutePath(), "sa", "");
+		EchoServer echoServer = new EchoServer();
+		ExecutorService listenerPool = Executors.newCachedThreadPool();
+		try {
+			Statement stmt = conn.createStatement();
+			// not needed for a throwaway session
+			stmt.execute("SET FILES LOG FALSE");
+			// referenced by the channels table
+			stmt.execute("CREATE CACHED TABLE history (historyid INTEGER PRIMARY KEY)");
+			stmt.close();
+			BenchmarkTable table = new BenchmarkTable(conn);
+
+			System.out.println(String.format(
+					Locale.ROOT,
+					"%-12s %8s %12s %12s %12s %12s %12s",
+					"observers",
+					"payload",
+					"frames/s",
+					"p50 (us)",
+					"p99 (us)",
+					"+p50 (us)",
+					"+B/msg"));
+
+			for (String size : options.get("sizes").split(",")) {
+				int payloadSize = Integer.parseInt(size);
+				Scenario scenario = new Scenario(payloadSize, fragments, channels, messages, window);
+
+				Result direct = null;
+				for (int i = 0; i <= WARMUP_ROUNDS; i++) {
+					direct = scenario.run(echoServer, null, null);
+				}
+				print("direct", payloadSize, direct, direct);
+
+				for (String observerSet : observerSets) {
+					List<WebSocketObserver> observers = createObservers(observerSet.trim(), table);
+					Result relayed = null;
+					for (int i = 0; i <= WARMUP_ROUNDS; i++) {
+						relayed = scenario.run(echoServer, listenerPool, observers);
+					}
+					print(observerSet, payloadSize, relayed, direct);
+				}
+			}
+			System.out.println("(" + sink + ")");
+		} finally {
+			listenerPool.shutdownNow();
+			echoServer.close();
+			Statement stmt = conn.createStatement();
+			stmt.execute("SHUTDOWN");
+			stmt.close();
+			conn.close();
+			deleteRecursively(dir);
+		}
+	}
+
+	private static void print(String name, int payloadSize, Result result, Result direct) {
+		System.out.println(String.format(
+				Locale.ROOT,
+				"%-12s %8d %12.0f %12.1f %12.1f %12.1f %12s",
+				name,
+				payloadSize,
+				result.getFramesPerSecond(),
+				result.getLatencyPercentile(50) / 1000.0,
+				result.getLatencyPercentile(99) / 1000.0,
+				(result.getLatencyPercentile(50) - direct.getLatencyPercentile(50)) / 1000.0,
+				(result.allocatedBytes < 0)
+						? "n/a"
+						: Long.toString((result.allocatedBytes - direct.allocatedBytes) / result.messages)));
+	}
+
+	private static List<WebSocketObserver> createObservers(String observerSet, TableWebSocket table) throws Exception {
+		List<WebSocketObserver> observers = new ArrayList<>();
+		boolean all = "all".equals(observerSet);
+		if (all || "storage".equals(observerSet)) {
+			observers.add(new WebSocketStorage(table));
+		}
+		if (all || "ui".equals(observerSet)) {
+			observers.add(createUiObserver(table));
+		}
+		if (all || "breakpoints".equals(observerSet)) {
+			observers.add(createBreakpointsObserver());
+		}
+		if (!all && observers.isEmpty() && !"none".equals(observerSet)) {
+			throw new IllegalArgumentException("Unknown observer set: " + observerSet);
+		}
+		return observers;
+	}
+
+	/**
+	 * Notifies the model of the messages as done by the {@code WebSocketPanel}.
+	 */
+	private static WebSocketObserver createUiObserver(TableWebSocket table) {
+		final WebSocketMessagesViewModel model = new WebSocketMessagesViewModel(table, null);
+		return new WebSocketObserver() {
+
+			@Override
+			public int getObservingOrder() {
+				return 0;
+			}
+
+			@Override
+			public boolean onMessageFrame(int channelId, WebSocketMessage message) {
+				if (message.isFinished()) {
+					model.fireMessageArrived(message.getDTO());
+				}
+				return true;
+			}
+
+			@Override
+			public void onStateChange(WebSocketProxy.State state, WebSocketProxy proxy) {
+			}
+		};
+	}
+
+	/**
+	 * Creates the break observer without mocks, which would keep each message
+	 * passed to them.
+	 */
+	private static WebSocketObserver createBreakpointsObserver() {
+		ExtensionWebSocket extension = new ExtensionWebSocket() {
+
+			@Override
+			public boolean isSafe(WebSocketMessageDTO message) {
+				return true;
+			}
+		};
+		WebSocketBreakpointMessageHandler handler = new WebSocketBreakpointMessageHandler(
+				createBreakpointManagement(),
+				new OptionsParamWebSocket());
+		List<BreakpointMessageInterface> breakpoints = new ArrayList<>();
+		for (int i = 0; i < BREAKPOINTS; i++) {
+			// literal and regular expression patterns
+			String pattern = (i % 2 == 0) ? "never-" + i : "never\\d+-" + i;
+			breakpoints.add(new WebSocketBreakpointMessage(null, null, pattern, null));
+		}
+		handler.setEnabledBreakpoints(breakpoints);
+		return new WebSocketProxyListenerBreak(extension, handler);
+	}
+
+	/**
+	 * @return a break management that never breaks, answering with default
+	 *         values
+	 */
+	private static BreakpointManagementInterface createBreakpointManagement() {
+		return (BreakpointManagementInterface) Proxy.newProxyInstance(
+				BreakpointManagementInterface.class.getClassLoader(),
+				new Class<?>[] { BreakpointManagementInterface.class },
+				new InvocationHandler() {
+
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+					}
+				});
+	}
+
+	/**
+	 * The traffic of one measurement, sent either through proxies or directly
+	 * to the echo server.
+	 */
+	private static class Scenario {
+
+		private final int payloadSize;
+		private final int fragments;
+		private final int channels;
+		private final int messages;
+		private final int window;
+
+		Scenario(int payloadSize, int fragments, int channels, int messages, int window) {
+			if (fragments < 1 || fragments > Math.max(1, payloadSize)) {
+				throw new IllegalArgumentException("Fragments must be between 1 and the payload size.");
+			}
+			this.payloadSize = payloadSize;
+			this.fragments = fragments;
+			this.channels = channels;
+			this.messages = messages;
+			this.window = window;
+		}
+
+		/**
+		 * @param listenerPool {@code null} to connect directly
+		 */
+		Result run(EchoServer echoServer, ExecutorService listenerPool, List<WebSocketObserver> observers)
+				throws Exception {
+			List<Client> clients = new ArrayList<>(channels);
+			List<WebSocketProxy> proxies = new ArrayList<>(channels);
+			try {
+				for (int i = 0; i < channels; i++) {
+					Socket clientSocket;
+					if (listenerPool == null) {
+						clientSocket = echoServer.connect();
+					} else {
+						clientSocket = connectThroughProxy(echoServer, listenerPool, observers, proxies);
+					}
+					clients.add(new Client(clientSocket, this));
+				}
+
+				Map<Long, Long> allocatedBefore = getAllocatedBytes();
+				long start = System.nanoTime();
+				for (Client client : clients) {
+					client.start();
+				}
+				long[] latencies = new long[channels * messages];
+				int offset = 0;
+				for (Client client : clients) {
+					client.join();
+					System.arraycopy(client.latencies, 0, latencies, offset, messages);
+					offset += messages;
+				}
+				long elapsed = System.nanoTime() - start;
+				long allocated = getAllocatedBytesSince(allocatedBefore);
+
+				Arrays.sort(latencies);
+				// every frame relayed twice, to the echo server and back
+				long frames = 2L * channels * messages * fragments;
+				return new Result(frames, elapsed, latencies, allocated, channels * messages);
+			} finally {
+				for (Client client : clients) {
+					client.close();
+				}
+				for (WebSocketProxy proxy : proxies) {
+					proxy.shutdown();
+				}
+			}
+		}
+
+		private static Socket connectThroughProxy(EchoServer echoServer, ExecutorService listenerPool,
+				List<WebSocketObserver> observers, List<WebSocketProxy> proxies) throws Exception {
+			try (ServerSocket zapSide = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+				Socket clientSocket = new Socket(InetAddress.getLoopbackAddress(), zapSide.getLocalPort());
+				Socket localSocket = zapSide.accept();
+				Socket remoteSocket = echoServer.connect();
+
+				WebSocketProxy proxy = WebSocketProxy.create(
+						"13",
+						localSocket,
+						remoteSocket,
+						"localhost",
+						remoteSocket.getPort(),
+						null,
+						null);
+				for (WebSocketObserver observer : observers) {
+					proxy.addObserver(observer);
+				}
+				proxy.startListeners(listenerPool, new BufferedInputStream(remoteSocket.getInputStream()));
+				proxies.add(proxy);
+				return clientSocket;
+			}
+		}
+	}
+
+	private static class Result {
+
+		private final long frames;
+		private final long elapsed;
+		private final long[] latencies;
+		private final long allocatedBytes;
+		private final int messages;
+
+		Result(long frames, long elapsed, long[] latencies, long allocatedBytes, int messages) {
+			this.frames = frames;
+			this.elapsed = elapsed;
+			this.latencies = latencies;
+			this.allocatedBytes = allocatedBytes;
+			this.messages = messages;
+		}
+
+		double getFramesPerSecond() {
+			return frames / (elapsed / 1e9);
+		}
+
+		long getLatencyPercentile(int percentile) {
+			int idx = (int) Math.ceil(percentile / 100.0 * latencies.length) - 1;
+			return latencies[Math.max(0, idx)];
+		}
+	}
+
+	/**
+	 * Sends masked text messages and reads their echo, on its own threads.
+	 */
+	private static class Client {
+
+		private final Socket socket;
+		private final Scenario scenario;
+		private final long[] latencies;
+		private final long[] sendTimes;
+		private final Semaphore window;
+		private final Thread sender;
+		private final Thread receiver;
+		private volatile Exception failure;
+
+		Client(Socket socket, Scenario scenario) throws IOException {
+			this.socket = socket;
+			this.scenario = scenario;
+			this.latencies = new long[scenario.messages];
+			this.sendTimes = new long[scenario.messages];
+			this.window = new Semaphore(scenario.window);
+			socket.setTcpNoDelay(true);
+
+			final OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+			sender = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						send(out);
+					} catch (Exception e) {
+						failure = e;
+					}
+				}
+			}, "benchmark-client-sender");
+			receiver = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						receive(in);
+					} catch (Exception e) {
+						failure = e;
+					}
+				}
+			}, "benchmark-client-receiver");
+		}
+
+		void start() {
+			sender.start();
+			receiver.start();
+		}
+
+		void join() throws Exception {
+			receiver.join();
+			sender.join();
+			if (failure != null) {
+				throw failure;
+			}
+		}
+
+		void close() throws IOException {
+			socket.close();
+		}
+
+		private void send(OutputStream out) throws IOException, InterruptedException {
+			byte[] payload = new byte[scenario.payloadSize];
+			for (int i = 0; i < payload.length; i++) {
+				payload[i] = (byte) ('a' + i % 26);
+			}
+			byte[] mask = { 0x12, 0x34, 0x56, 0x78 };
+			byte[] masked = new byte[payload.length];
+			for (int i = 0; i < payload.length; i++) {
+				masked[i] = (byte) (payload[i] ^ mask[i % 4]);
+			}
+
+			int fragmentSize = (payload.length + scenario.fragments - 1) / Math.max(1, scenario.fragments);
+			for (int n = 0; n < scenario.messages; n++) {
+				if (!window.tryAcquire(30, TimeUnit.SECONDS)) {
+					throw new IOException("No echo received within 30 seconds.");
+				}
+				sendTimes[n] = System.nanoTime();
+				int offset = 0;
+				for (int f = 0; f < scenario.fragments; f++) {
+					int length = (f == scenario.fragments - 1) ? payload.length - offset : fragmentSize;
+					int opcode = (f == 0) ? WebSocketMessage.OPCODE_TEXT : WebSocketMessage.OPCODE_CONTINUATION;
+					boolean fin = f == scenario.fragments - 1;
+					// mask starts again with each frame
+					byte[] frame = (scenario.fragments == 1) ? masked : mask(payload, offset, length, mask);
+					writeFrame(out, fin, opcode, mask, frame);
+					offset += length;
+				}
+				out.flush();
+			}
+		}
+
+		/**
+		 * @return the payload of a frame masked from its first byte
+		 */
+		private static byte[] mask(byte[] payload, int offset, int length, byte[] mask) {
+			byte[] frame = new byte[length];
+			for (int i = 0; i < length; i++) {
+				frame[i] = (byte) (payload[offset + i] ^ mask[i % 4]);
+			}
+			return frame;
+		}
+
+		private void receive(DataInputStream in) throws IOException {
+			for (int n = 0; n < scenario.messages; n++) {
+				boolean fin;
+				do {
+					int header = in.readUnsignedByte();
+					fin = (header & FIN) != 0;
+					byte[] payload = readPayload(in, in.readUnsignedByte());
+					sink += payload.length;
+				} while (!fin);
+				latencies[n] = System.nanoTime() - sendTimes[n];
+				window.release();
+			}
+		}
+	}
+
+	/**
+	 * Echoes each frame unmasked, as servers do.
+	 */
+	private static class EchoServer implements Runnable {
+
+		private final ServerSocket serverSocket;
+		private final List<Socket> sockets;
+		private final Thread thread;
+
+		EchoServer() throws IOException {
+			serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			sockets = Collections.synchronizedList(new ArrayList<Socket>());
+			thread = new Thread(this, "benchmark-echo-server");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		Socket connect() throws IOException {
+			Socket socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+			socket.setTcpNoDelay(true);
+			return socket;
+		}
+
+		@Override
+		public void run() {
+			while (!serverSocket.isClosed()) {
+				try {
+					final Socket socket = serverSocket.accept();
+					socket.setTcpNoDelay(true);
+					sockets.add(socket);
+					Thread echo = new Thread(new Runnable() {
+
+						@Override
+						public void run() {
+							echo(socket);
+						}
+					}, "benchmark-echo");
+					echo.setDaemon(true);
+					echo.start();
+				} catch (IOException e) {
+					// closed
+				}
+			}
+		}
+
+		private static void echo(Socket socket) {
+			try {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+				OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+				while (true) {
+					int header = in.read();
+					if (header == -1) {
+						return;
+					}
+					int lengthByte = in.readUnsignedByte();
+					byte[] payload = readPayload(in, lengthByte);
+					writeFrame(out, (header & FIN) != 0, header & 0x0F, null, payload);
+					if (in.available() == 0) {
+						out.flush();
+					}
+				}
+			} catch (IOException e) {
+				// connection closed
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+
+		void close() throws IOException {
+			serverSocket.close();
+			synchronized (sockets) {
+				for (Socket socket : sockets) {
+					socket.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the (unmasked) payload of a frame.
+	 *
+	 * @param lengthByte the second byte of the frame
+	 */
+	private static byte[] readPayload(DataInputStream in, int lengthByte) throws IOException {
+		long length = lengthByte & 0x7F;
+		if (length == 126) {
+			length = in.readUnsignedShort();
+		} else if (length == 127) {
+			length = in.readLong();
+		}
+		byte[] mask = null;
+		if ((lengthByte & MASKED) != 0) {
+			mask = new byte[4];
+			in.readFully(mask);
+		}
+		byte[] payload = new byte[(int) length];
+		in.readFully(payload);
+		if (mask != null) {
+			for (int i = 0; i < payload.length; i++) {
+				payload[i] ^= mask[i % 4];
+			}
+		}
+		return payload;
+	}
+
+	/**
+	 * @param mask {@code null} for an unmasked frame, otherwise the payload has
+	 *            to be masked already
+	 */
+	private static void writeFrame(OutputStream out, boolean fin, int opcode, byte[] mask, byte[] payload)
+			throws IOException {
+		out.write((fin ? FIN : 0) | opcode);
+		int maskBit = (mask != null) ? MASKED & 0xFF : 0;
+		if (payload.length < 126) {
+			out.write(maskBit | payload.length);
+		} else if (payload.length <= 0xFFFF) {
+			out.write(maskBit | 126);
+			out.write(payload.length >>> 8);
+			out.write(payload.length);
+		} else {
+			out.write(maskBit | 127);
+			for (int i = 7; i >= 0; i--) {
+				out.write((int) ((long) payload.length >>> (8 * i)));
+			}
+		}
+		if (mask != null) {
+			out.write(mask);
+		}
+		out.write(payload);
+	}
+
+	/**
+	 * @return bytes allocated by each live thread, keyed by thread id,
+	 *         {@code null} if not supported by the JVM
+	 */
+	private static Map<Long, Long> getAllocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		if (!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled()) {
+			return null;
+		}
+		long[] ids = threads.getAllThreadIds();
+		long[] allocated = allocations.getThreadAllocatedBytes(ids);
+		Map<Long, Long> allocatedByThread = new HashMap<>();
+		for (int i = 0; i < ids.length; i++) {
+			if (allocated[i] >= 0) {
+				allocatedByThread.put(ids[i], allocated[i]);
+			}
+		}
+		return allocatedByThread;
+	}
+
+	/**
+	 * Threads that ended meanwhile (i.e. the clients) are not counted.
+	 *
+	 * @return bytes allocated by the live threads since the given snapshot, -1
+	 *         if not supported by the JVM
+	 */
+	private static long getAllocatedBytesSince(Map<Long, Long> before) {
+		Map<Long, Long> after = getAllocatedBytes();
+		if (before == null || after == null) {
+			return -1;
+		}
+		long total = 0;
+		for (Map.Entry<Long, Long> entry : after.entrySet()) {
+			Long previous = before.get(entry.getKey());
+			total += entry.getValue() - ((previous != null) ? previous : 0);
+		}
+		return total;
+	}
+
+	private static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Gives access to the table creation, done by the database otherwise.
+	 */
+	private static class BenchmarkTable extends TableWebSocket {
+
+		private final Connection conn;
+
+		BenchmarkTable(Connection conn) throws DatabaseException {
+			this.conn = conn;
+			reconnect(conn);
+		}
+
+		@Override
+		protected Connection getConnection() {
+			return conn;
+		}
+	}
+}
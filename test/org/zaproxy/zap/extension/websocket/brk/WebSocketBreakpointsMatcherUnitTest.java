@@ -0,0 +1,167 @@
+package org.zaproxy.zap.extension.websocket.brk;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.parosproxy.paros.Constant;
+import org.zaproxy.zap.extension.brk.BreakpointMessageInterface;
+import org.zaproxy.zap.extension.websocket.WebSocketChannelDTO;
+import org.zaproxy.zap.extension.websocket.WebSocketMessage;
+import org.zaproxy.zap.extension.websocket.WebSocketMessage.Direction;
+import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+import org.zaproxy.zap.utils.I18N;
+
+public class WebSocketBreakpointsMatcherUnitTest {
+
+	private static final String TEXT = WebSocketMessage.opcode2string(WebSocketMessage.OPCODE_TEXT);
+	private static final String BINARY = WebSocketMessage.opcode2string(WebSocketMessage.OPCODE_BINARY);
+
+	@BeforeClass
+	public static void setUpClass() {
+		// used by the DTOs
+		Constant.messages = mock(I18N.class);
+		when(Constant.messages.getLocal()).thenReturn(Locale.ENGLISH);
+	}
+
+	@Test
+	public void shouldNotMatchWithoutBreakpoints() {
+		// given
+		WebSocketBreakpointsMatcher matcher = createMatcher();
+		// when
+		boolean match = matcher.match(createMessage(1, true, TEXT, "Hello"), true, false);
+		// then
+		assertThat(match, is(equalTo(false)));
+	}
+
+	@Test
+	public void shouldMatchLiteralPatternAnywhereInPayload() {
+		// given
+		WebSocketBreakpointsMatcher matcher = createMatcher(
+				new WebSocketBreakpointMessage(null, null, "token", null),
+				new WebSocketBreakpointMessage(null, null, "session", null));
+		// when
+		boolean match = matcher.match(createMessage(1, true, TEXT, "{\"session\": 1}"), true, false);
+		// then
+		assertThat(match, is(equalTo(true)));
+	}
+
+	@Test
+	public void shouldMatchRegexPattern() {
+		// given
+		WebSocketBreakpointsMatcher matcher = createMatcher(
+				new WebSocketBreakpointMessage(null, null, "token", null),
+				new WebSocketBreakpointMessage(null, null, "^id=\\d+$", null));
+		// when
+		boolean match = matcher.match(createMessage(1, true, TEXT, "name=a\nid=12"), true, false);
+		// then
+		assertThat(match, is(equalTo(true)));
+	}
+
+	@Test
+	public void shouldNotMatchPatternOfOtherChannel() {
+		// given
+		WebSocketBreakpointsMatcher matcher = createMatcher(
+				new WebSocketBreakpointMessage(null, 2, "token", null),
+				new WebSocketBreakpointMessage(null, 1, "other", null));
+		// when
+		boolean match = matcher.match(createMessage(1, true, TEXT, "token"), true, false);
+		// then
+		assertThat(match, is(equalTo(false)));
+	}
+
+	@Test
+	public void shouldMatchSameAsBreakpoints() {
+		// given
+		WebSocketBreakpointMessage[] breakpoints = {
+				new WebSocketBreakpointMessage(TEXT, null, "abc", Direction.OUTGOING),
+				new WebSocketBreakpointMessage(null, 2, "b.d", null),
+				new WebSocketBreakpointMessage(BINARY, null, null, Direction.INCOMING),
+				new WebSocketBreakpointMessage(null, 3, null, Direction.OUTGOING),
+				new WebSocketBreakpointMessage(TEXT, 4, "cab", null) };
+		String[] payloads = { "abc", "xbzd", "cabc", "zzz", "" };
+		String[] opcodes = { TEXT, BINARY };
+		for (int i = 0; i < (1 << breakpoints.length); i++) {
+			List<WebSocketBreakpointMessage> enabled = new ArrayList<>();
+			for (int j = 0; j < breakpoints.length; j++) {
+				if ((i & (1 << j)) != 0) {
+					enabled.add(breakpoints[j]);
+				}
+			}
+			WebSocketBreakpointsMatcher matcher =
+					createMatcher(enabled.toArray(new WebSocketBreakpointMessage[enabled.size()]));
+			for (int channel = 1; channel <= 4; channel++) {
+				for (String opcode : opcodes) {
+					for (String payload : payloads) {
+						for (boolean outgoing : new boolean[] { true, false }) {
+							WebSocketMessageDTO message = createMessage(channel, outgoing, opcode, payload);
+							// when
+							boolean match = matcher.match(message, outgoing, false);
+							// then
+							assertThat(match, is(equalTo(matchOneByOne(enabled, message))));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void shouldNotBeUpToDateIfBreakpointsChanged() {
+		// given
+		WebSocketBreakpointMessage breakpoint = new WebSocketBreakpointMessage(null, null, "token", null);
+		List<BreakpointMessageInterface> enabled = new ArrayList<>();
+		enabled.add(breakpoint);
+		WebSocketBreakpointsMatcher matcher = new WebSocketBreakpointsMatcher(enabled);
+		boolean upToDate = matcher.isUpToDate(enabled);
+		// when
+		breakpoint.setPayloadPattern("other");
+		// then
+		assertThat(upToDate, is(equalTo(true)));
+		assertThat(matcher.isUpToDate(enabled), is(equalTo(false)));
+	}
+
+	@Test
+	public void shouldNotBeUpToDateIfBreakpointsAddedOrRemoved() {
+		// given
+		List<BreakpointMessageInterface> enabled = new ArrayList<>();
+		enabled.add(new WebSocketBreakpointMessage(null, null, "token", null));
+		WebSocketBreakpointsMatcher matcher = new WebSocketBreakpointsMatcher(enabled);
+		// when
+		enabled.add(new WebSocketBreakpointMessage(null, null, "other", null));
+		// then
+		assertThat(matcher.isUpToDate(enabled), is(equalTo(false)));
+	}
+
+	private static boolean matchOneByOne(List<WebSocketBreakpointMessage> breakpoints, WebSocketMessageDTO message) {
+		for (WebSocketBreakpointMessage breakpoint : breakpoints) {
+			if (breakpoint.match(message, message.isOutgoing, false)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static WebSocketBreakpointsMatcher createMatcher(WebSocketBreakpointMessage... breakpoints) {
+		return new WebSocketBreakpointsMatcher(new ArrayList<BreakpointMessageInterface>(Arrays.asList(breakpoints)));
+	}
+
+	private static WebSocketMessageDTO createMessage(int channelId, boolean outgoing, String opcode, String payload) {
+		WebSocketChannelDTO channel = new WebSocketChannelDTO();
+		channel.id = channelId;
+		WebSocketMessageDTO message = new WebSocketMessageDTO(channel);
+		message.isOutgoing = outgoing;
+		message.readableOpcode = opcode;
+		message.payload = BINARY.equals(opcode) ? payload.getBytes() : payload;
+		return message;
+	}
+}
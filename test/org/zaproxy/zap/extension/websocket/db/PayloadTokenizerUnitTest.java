@@ -0,0 +1,74 @@
+package org.zaproxy.zap.extension.websocket.db;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Set;
+
+import org.junit.Test;
+
+public class PayloadTokenizerUnitTest {
+
+	@Test
+	public void shouldSplitIntoDistinctLowerCaseWords() {
+		// given
+		String payload = "{\"sessionId\":\"A1b2\",\"type\":\"update\",\"Type\":x}";
+		// when
+		Set<String> tokens = PayloadTokenizer.tokenize(payload);
+		// then
+		assertThat(tokens, contains("sessionid", "a1b2", "type", "update"));
+	}
+
+	@Test
+	public void shouldKeepUnderscoresAndLetters() {
+		// given
+		String payload = "user_name=J\u00fcrgen;";
+		// when
+		Set<String> tokens = PayloadTokenizer.tokenize(payload);
+		// then
+		assertThat(tokens, contains("user_name", "j\u00fcrgen"));
+	}
+
+	@Test
+	public void shouldTruncateLongWords() {
+		// given
+		StringBuilder payload = new StringBuilder();
+		for (int i = 0; i < PayloadTokenizer.MAX_TOKEN_LENGTH + 10; i++) {
+			payload.append('a');
+		}
+		// when
+		Set<String> tokens = PayloadTokenizer.tokenize(payload);
+		// then
+		assertThat(tokens.iterator().next().length(), is(equalTo(PayloadTokenizer.MAX_TOKEN_LENGTH)));
+	}
+
+	@Test
+	public void shouldStopAtMaxLengthAndTokens() {
+		// given
+		String payload = "one two three four";
+		// when
+		Set<String> limitedLength = PayloadTokenizer.tokenize(payload, 7, 10);
+		Set<String> limitedTokens = PayloadTokenizer.tokenize(payload, 100, 2);
+		// then
+		assertThat(limitedLength, contains("one", "two"));
+		assertThat(limitedTokens, contains("one", "two"));
+	}
+
+	@Test
+	public void shouldIgnoreNullText() {
+		assertThat(PayloadTokenizer.tokenize(null), is(empty()));
+	}
+
+	@Test
+	public void shouldMatchIfAllQueryWordsArePrefixes() {
+		// given
+		String payload = "{\"sessionId\":\"abc\",\"type\":\"update\"}";
+		// when / then
+		assertThat(PayloadTokenizer.matches(payload, PayloadTokenizer.tokenize("SESS upd")), is(true));
+		assertThat(PayloadTokenizer.matches(payload, PayloadTokenizer.tokenize("sess delete")), is(false));
+		assertThat(PayloadTokenizer.matches(payload, PayloadTokenizer.tokenize("{}")), is(true));
+	}
+}
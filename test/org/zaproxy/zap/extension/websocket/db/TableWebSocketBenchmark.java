@@ -0,0 +1,210 @@
+package org.zaproxy.zap.extension.websocket.db;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.parosproxy.paros.Constant;
+import org.parosproxy.paros.db.DatabaseException;
+import org.zaproxy.zap.extension.websocket.WebSocketMessage;
+import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+import org.zaproxy.zap.utils.I18N;
+
+/**
+ * Generates a session with many messages (5 million by default) and compares
+ * paging with an offset and keyset paging of {@link TableWebSocket}, for all
+ * messages and for the messages of one channel, as done by the messages
+ * panel.
+ * <p>
+ * Not run as part of the unit tests, start it manually (after compiling the
+ * tests) with:
+ *
+ * <pre>
+ * java -cp &lt;classpath&gt; org.zaproxy.zap.extension.websocket.db.TableWebSocketBenchmark [messages] [channels]
+ * </pre>
+ */
+public class TableWebSocketBenchmark {
+
+	private static final int DEFAULT_MESSAGE_COUNT = 5000000;
+
+	private static final int DEFAULT_CHANNEL_COUNT = 50;
+
+	private static final int PAGE_SIZE = 50;
+
+	private static final int PAGES = 200;
+
+	private static final int INSERT_BATCH_SIZE = 10000;
+
+	private static final int PAYLOAD_PREVIEW_LENGTH = 150;
+
+	public static void main(String[] args) throws Exception {
+		int messageCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MESSAGE_COUNT;
+		int channelCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CHANNEL_COUNT;
+		// used by the messages
+		Constant.messages = mock(I18N.class);
+		when(Constant.messages.getLocal()).thenReturn(Locale.ENGLISH);
+
+		File dir = Files.createTempDirectory("zap-websocket-benchmark").toFile();
+		Connection conn = DriverManager.getConnection("jdbc:hsqldb:file:" + new File(dir, "session").getAbsolutePath(), "sa", "");
+		try {
+			Statement stmt = conn.createStatement();
+			// not needed for a throwaway session, speeds up the generation
+			stmt.execute("SET FILES LOG FALSE");
+			// referenced by the channels table
+			stmt.execute("CREATE CACHED TABLE history (historyid INTEGER PRIMARY KEY)");
+			stmt.close();
+
+			TableWebSocket table = createTable(conn);
+
+			long start = System.nanoTime();
+			generateMessages(conn, messageCount, channelCount);
+			System.out.println(String.format(Locale.ROOT, "Generated %d messages in %d channels: %d ms", messageCount,
+					channelCount, millis(start)));
+
+			WebSocketMessageDTO all = new WebSocketMessageDTO();
+			WebSocketMessageDTO oneChannel = new WebSocketMessageDTO();
+			oneChannel.channel.id = channelCount / 2;
+			List<Integer> opcodes = Arrays.asList(WebSocketMessage.OPCODE_TEXT, WebSocketMessage.OPCODE_BINARY);
+
+			System.out.println(String.format(Locale.ROOT, "%-28s %14s %14s", "", "offset (ms)", "keyset (ms)"));
+			for (int round = 0; round < 2; round++) {
+				benchmark(table, "all messages", all, null, messageCount);
+				benchmark(table, "one channel", oneChannel, null, messageCount / channelCount);
+				benchmark(table, "one channel, text & binary", oneChannel, opcodes, messageCount / channelCount);
+			}
+
+			start = System.nanoTime();
+			int count = table.getMessageCount(oneChannel, opcodes);
+			System.out.println(String.format(Locale.ROOT, "Count one channel (%d): %d ms", count, millis(start)));
+		} finally {
+			Statement stmt = conn.createStatement();
+			stmt.execute("SHUTDOWN");
+			stmt.close();
+			conn.close();
+			deleteRecursively(dir);
+		}
+	}
+
+	private static TableWebSocket createTable(final Connection conn) throws DatabaseException {
+		TableWebSocket table = new TableWebSocket() {
+
+			@Override
+			protected Connection getConnection() {
+				return conn;
+			}
+		};
+		table.reconnect(conn);
+		return table;
+	}
+
+	private static void generateMessages(Connection conn, int messageCount, int channelCount) throws Exception {
+		long now = System.currentTimeMillis() - messageCount;
+
+		PreparedStatement psChannel = conn.prepareStatement("INSERT INTO websocket_channel "
+				+ "(channel_id, host, port, url, start_timestamp) VALUES (?,?,?,?,?)");
+		for (int i = 0; i < channelCount; i++) {
+			psChannel.setInt(1, i);
+			psChannel.setString(2, "example.com");
+			psChannel.setInt(3, 443);
+			psChannel.setString(4, "https://example.com/socket/" + i);
+			psChannel.setTimestamp(5, new Timestamp(now));
+			psChannel.addBatch();
+		}
+		psChannel.executeBatch();
+		psChannel.close();
+
+		conn.setAutoCommit(false);
+		PreparedStatement psMessage = conn.prepareStatement("INSERT INTO websocket_message "
+				+ "(message_id, channel_id, timestamp, opcode, payload_utf8, payload_length, is_outgoing) "
+				+ "VALUES (?,?,?,?,?,?,?)");
+		int[] messageIds = new int[channelCount];
+		for (int i = 0; i < messageCount; i++) {
+			int channelId = i % channelCount;
+			String payload = "{\"message\":" + i + ",\"channel\":" + channelId + "}";
+			psMessage.setInt(1, ++messageIds[channelId]);
+			psMessage.setInt(2, channelId);
+			// a few messages share the same timestamp
+			psMessage.setTimestamp(3, new Timestamp(now + i / 4));
+			psMessage.setInt(4, (i % 10 == 0) ? WebSocketMessage.OPCODE_PING : WebSocketMessage.OPCODE_TEXT);
+			psMessage.setString(5, payload);
+			psMessage.setInt(6, payload.length());
+			psMessage.setBoolean(7, i % 2 == 0);
+			psMessage.addBatch();
+
+			if ((i + 1) % INSERT_BATCH_SIZE == 0) {
+				psMessage.executeBatch();
+				conn.commit();
+			}
+		}
+		if (messageCount % INSERT_BATCH_SIZE != 0) {
+			psMessage.executeBatch();
+		}
+		conn.commit();
+		psMessage.close();
+		conn.setAutoCommit(true);
+	}
+
+	/**
+	 * Pages through the last {@link #PAGES} pages, where the offset is the
+	 * most expensive.
+	 */
+	private static void benchmark(TableWebSocket table, String name, WebSocketMessageDTO criteria,
+			List<Integer> opcodes, int rowCount) throws DatabaseException {
+		int firstOffset = Math.max(0, rowCount - PAGES * PAGE_SIZE);
+
+		long start = System.nanoTime();
+		long checksum = 0;
+		for (int offset = firstOffset; offset < rowCount; offset += PAGE_SIZE) {
+			checksum += checksum(table.getMessages(criteria, opcodes, null, offset, PAGE_SIZE, PAYLOAD_PREVIEW_LENGTH));
+		}
+		long offsetTime = millis(start);
+
+		start = System.nanoTime();
+		List<WebSocketMessageDTO> page = table.getMessages(criteria, opcodes, null, firstOffset, PAGE_SIZE,
+				PAYLOAD_PREVIEW_LENGTH);
+		long keysetChecksum = checksum(page);
+		while (!page.isEmpty()) {
+			page = table.getMessages(criteria, opcodes, null, page.get(page.size() - 1), PAGE_SIZE,
+					PAYLOAD_PREVIEW_LENGTH);
+			keysetChecksum += checksum(page);
+		}
+		long keysetTime = millis(start);
+
+		if (checksum != keysetChecksum) {
+			throw new IllegalStateException("Keyset paging returned other messages than offset paging.");
+		}
+		System.out.println(String.format(Locale.ROOT, "%-28s %14d %14d", name, offsetTime, keysetTime));
+	}
+
+	private static long checksum(List<WebSocketMessageDTO> messages) {
+		long checksum = 0;
+		for (WebSocketMessageDTO message : messages) {
+			checksum = checksum * 31 + message.id * 17 + message.channel.id;
+		}
+		return checksum;
+	}
+
+	private static long millis(long start) {
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	private static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+}
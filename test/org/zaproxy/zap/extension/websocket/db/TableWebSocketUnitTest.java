@@ -0,0 +1,300 @@
+package org.zaproxy.zap.extension.websocket.db;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.parosproxy.paros.Constant;
+import org.parosproxy.paros.db.DbUtils;
+import org.zaproxy.zap.extension.websocket.WebSocketChannelDTO;
+import org.zaproxy.zap.extension.websocket.WebSocketMessage;
+import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+import org.zaproxy.zap.extension.websocket.ui.OptionsParamWebSocket;
+import org.zaproxy.zap.utils.I18N;
+
+public class TableWebSocketUnitTest {
+
+	private static int databaseCount;
+
+	private Connection conn;
+
+	private TableWebSocket table;
+
+	@BeforeClass
+	public static void setUpClass() {
+		Constant.messages = mock(I18N.class);
+		when(Constant.messages.getLocal()).thenReturn(Locale.ENGLISH);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		conn = DriverManager.getConnection("jdbc:hsqldb:mem:websocket" + (databaseCount++), "sa", "");
+		Statement stmt = conn.createStatement();
+		stmt.execute("CREATE TABLE history (historyid INTEGER PRIMARY KEY)");
+		stmt.close();
+
+		table = new TableWebSocket() {
+
+			@Override
+			protected Connection getConnection() {
+				return conn;
+			}
+		};
+		table.reconnect(conn);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Statement stmt = conn.createStatement();
+		stmt.execute("SHUTDOWN");
+		stmt.close();
+		conn.close();
+	}
+
+	@Test
+	public void shouldCreateIndexes() throws Exception {
+		// given
+		// tables and indexes created on setup
+		// when
+		table.reconnect(conn);
+		// then
+		assertThat(DbUtils.hasIndex(conn, "WEBSOCKET_MESSAGE", "WEBSOCKET_MESSAGE_TIMESTAMP"), is(true));
+		assertThat(DbUtils.hasIndex(conn, "WEBSOCKET_MESSAGE", "WEBSOCKET_MESSAGE_CHANNEL_TIMESTAMP"), is(true));
+		assertThat(DbUtils.hasIndex(conn, "WEBSOCKET_MESSAGE", "WEBSOCKET_MESSAGE_OPCODE"), is(true));
+		assertThat(DbUtils.hasIndex(conn, "WEBSOCKET_MESSAGE", "WEBSOCKET_MESSAGE_OUTGOING"), is(true));
+	}
+
+	@Test
+	public void shouldPageWithKeysetLikeWithOffset() throws Exception {
+		// given
+		insertMessages(3, 25);
+		WebSocketMessageDTO criteria = new WebSocketMessageDTO();
+		List<WebSocketMessageDTO> expected = table.getMessages(criteria, null, null, 0, 100, 10);
+		// when
+		List<WebSocketMessageDTO> paged = new ArrayList<>();
+		List<WebSocketMessageDTO> page = table.getMessages(criteria, null, null, 0, 7, 10);
+		while (!page.isEmpty()) {
+			paged.addAll(page);
+			page = table.getMessages(criteria, null, null, page.get(page.size() - 1), 7, 10);
+		}
+		// then
+		assertThat(expected.size(), is(equalTo(75)));
+		assertThat(keys(paged), is(equalTo(keys(expected))));
+	}
+
+	@Test
+	public void shouldPageWithKeysetUsingCriteria() throws Exception {
+		// given
+		insertMessages(3, 25);
+		WebSocketMessageDTO criteria = new WebSocketMessageDTO();
+		criteria.channel.id = 2;
+		List<Integer> opcodes = Arrays.asList(WebSocketMessage.OPCODE_TEXT);
+		List<WebSocketMessageDTO> firstPage = table.getMessages(criteria, opcodes, null, 0, 5, 10);
+		// when
+		List<WebSocketMessageDTO> secondPage = table.getMessages(criteria, opcodes, null, firstPage.get(4), 5, 10);
+		// then
+		assertThat(keys(secondPage), is(equalTo(keys(table.getMessages(criteria, opcodes, null, 5, 5, 10)))));
+		assertThat(table.getMessageCount(criteria, opcodes), is(equalTo(20)));
+	}
+
+	@Test
+	public void shouldSearchPayloadWords() throws Exception {
+		// given
+		insertMessages(3, 25);
+		WebSocketMessageDTO criteria = new WebSocketMessageDTO();
+		criteria.channel.id = 2;
+		// when
+		criteria.payload = "Message 1";
+		int prefixCount = table.getMessageCount(criteria, null);
+		criteria.payload = "message_1";
+		int noneCount = table.getMessageCount(criteria, null);
+		criteria.payload = "12";
+		List<WebSocketMessageDTO> messages = table.getMessages(criteria, null, null, 0, 10, 10);
+		// then
+		assertThat(prefixCount, is(equalTo(25)));
+		assertThat(noneCount, is(equalTo(0)));
+		assertThat(keys(messages), is(equalTo(Arrays.asList("2.12"))));
+	}
+
+	@Test
+	public void shouldDeleteWordsOfPurgedChannel() throws Exception {
+		// given
+		insertMessages(2, 5);
+		WebSocketMessageDTO criteria = new WebSocketMessageDTO();
+		criteria.payload = "message";
+		// when
+		table.purgeChannel(1);
+		// then
+		assertThat(table.getMessageCount(criteria, null), is(equalTo(5)));
+	}
+
+	@Test
+	public void shouldStoreTruncatedPayloadWithOriginalLength() throws Exception {
+		// given
+		OptionsParamWebSocket options = mock(OptionsParamWebSocket.class);
+		when(options.getStorageMaxPayloadSize()).thenReturn(5);
+		table.setOptions(options);
+		// when
+		insertMessages(1, 1);
+		// then
+		WebSocketMessageDTO message = table.getMessage(1, 1);
+		assertThat((String) message.payload, is(equalTo("messa")));
+		assertThat(message.payloadLength, is(equalTo(10)));
+	}
+
+	@Test
+	public void shouldReadCompressedPayloads() throws Exception {
+		// given
+		OptionsParamWebSocket options = mock(OptionsParamWebSocket.class);
+		when(options.isStorageCompressPayloads()).thenReturn(true);
+		table.setOptions(options);
+		insertMessages(1, 2);
+		WebSocketMessageDTO binary = createMessage(1, 3, 1000000);
+		binary.opcode = WebSocketMessage.OPCODE_BINARY;
+		binary.payload = "binary \u00fc".getBytes(StandardCharsets.UTF_8);
+		binary.payloadLength = ((byte[]) binary.payload).length;
+		binary.isOutgoing = false;
+		table.insertMessage(binary);
+		// when
+		List<WebSocketMessageDTO> previews = table.getMessages(new WebSocketMessageDTO(), null, null, 0, 10, 3);
+		WebSocketMessageDTO text = table.getMessage(2, 1);
+		WebSocketMessageDTO full = table.getMessage(3, 1);
+		// then
+		assertThat((String) previews.get(0).payload, is(equalTo("mes")));
+		assertThat((String) text.payload, is(equalTo("message 2")));
+		assertThat((byte[]) full.payload, is(equalTo("binary \u00fc".getBytes(StandardCharsets.UTF_8))));
+	}
+
+	@Test
+	public void shouldDeleteMessagesOlderThanTimestamp() throws Exception {
+		// given
+		insertMessages(2, 5);
+		// when
+		int deleted = table.deleteMessagesOlderThan(1000002, 100);
+		// then
+		assertThat(deleted, is(equalTo(6)));
+		assertThat(table.getMessageCount(new WebSocketMessageDTO(), null), is(equalTo(4)));
+	}
+
+	@Test
+	public void shouldDeleteOldestMessagesOfChannel() throws Exception {
+		// given
+		insertMessages(2, 5);
+		Map<Integer, Integer> channels = table.getChannelsExceedingMessages(4);
+		// when
+		int deleted = table.deleteOldestMessages(1, 2);
+		// then
+		assertThat(channels.size(), is(equalTo(2)));
+		assertThat(channels.get(1), is(equalTo(5)));
+		assertThat(deleted, is(equalTo(2)));
+		WebSocketMessageDTO criteria = new WebSocketMessageDTO();
+		criteria.channel.id = 1;
+		assertThat(keys(table.getMessages(criteria, null, null, 0, 10, 10)), is(equalTo(Arrays.asList("1.3", "1.4", "1.5"))));
+	}
+
+	@Test
+	public void shouldDeleteOldestMessagesUntilSizeFreed() throws Exception {
+		// given
+		insertMessages(2, 5);
+		long size = table.getStoredPayloadsSize();
+		// when
+		int deleted = table.deleteOldestMessagesBySize(25, 100);
+		// then
+		assertThat(size, is(equalTo(100L)));
+		assertThat(deleted, is(equalTo(3)));
+		assertThat(table.getStoredPayloadsSize(), is(equalTo(70L)));
+	}
+
+	@Test
+	public void shouldAddFreedSizeOfDeletedMessages() throws Exception {
+		// given
+		insertMessages(2, 5);
+		AtomicLong freedSize = new AtomicLong(5);
+		// when
+		table.deleteOldestMessagesBySize(25, 100, freedSize);
+		// then
+		assertThat(freedSize.get(), is(equalTo(35L)));
+	}
+
+	@Test
+	public void shouldMaintainStoredPayloadsSizeOnInsertAndDelete() throws Exception {
+		// given
+		insertMessages(2, 5);
+		long initialSize = table.getStoredPayloadsSize();
+		WebSocketMessageDTO message = createMessage(1, 6, 2000000);
+		message.opcode = WebSocketMessage.OPCODE_TEXT;
+		message.payload = "message 6";
+		message.payloadLength = 15;
+		message.isOutgoing = true;
+		// when
+		table.insertMessage(message);
+		table.deleteMessagesOlderThan(1000002, 100);
+		table.deleteOldestMessages(2, 1);
+		// then
+		assertThat(initialSize, is(equalTo(100L)));
+		assertThat(table.getStoredPayloadsSize(), is(equalTo(45L)));
+		table.purgeChannel(2);
+		assertThat(table.getStoredPayloadsSize(), is(equalTo(35L)));
+	}
+
+	private void insertMessages(int channelCount, int messagesPerChannel) throws Exception {
+		long timestamp = 1000000;
+		for (int channelId = 1; channelId <= channelCount; channelId++) {
+			WebSocketChannelDTO channel = new WebSocketChannelDTO();
+			channel.id = channelId;
+			channel.host = "example.com";
+			channel.port = 80;
+			channel.url = "ws://example.com/" + channelId;
+			channel.startTimestamp = timestamp;
+			table.insertOrUpdateChannel(channel);
+		}
+
+		List<WebSocketMessageDTO> messages = new ArrayList<>();
+		for (int messageId = 1; messageId <= messagesPerChannel; messageId++) {
+			for (int channelId = 1; channelId <= channelCount; channelId++) {
+				// some messages share the same timestamp
+				WebSocketMessageDTO message = createMessage(channelId, messageId, timestamp + messageId / 2);
+				message.opcode = (messageId % 5 == 0) ? WebSocketMessage.OPCODE_PING : WebSocketMessage.OPCODE_TEXT;
+				message.payload = "message " + messageId;
+				message.payloadLength = 10;
+				message.isOutgoing = messageId % 2 == 0;
+				messages.add(message);
+			}
+		}
+		table.insertMessages(messages);
+	}
+
+	private static WebSocketMessageDTO createMessage(int channelId, int messageId, long timestamp) {
+		WebSocketChannelDTO channel = new WebSocketChannelDTO();
+		channel.id = channelId;
+		WebSocketMessageDTO message = new WebSocketMessageDTO(channel);
+		message.id = messageId;
+		message.timestamp = timestamp;
+		return message;
+	}
+
+	private static List<String> keys(List<WebSocketMessageDTO> messages) {
+		List<String> keys = new ArrayList<>(messages.size());
+		for (WebSocketMessageDTO message : messages) {
+			keys.add(message.channel.id + "." + message.id);
+		}
+		return keys;
+	}
+}
@@ -0,0 +1,278 @@
+package org.zaproxy.zap.extension.websocket.db;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.parosproxy.paros.Constant;
+import org.zaproxy.zap.extension.websocket.WebSocketChannelDTO;
+import org.zaproxy.zap.extension.websocket.WebSocketMessage;
+import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+import org.zaproxy.zap.utils.I18N;
+
+public class WebSocketMessagesImporterUnitTest {
+
+	private static int databaseCount;
+
+	private List<Connection> connections;
+
+	@BeforeClass
+	public static void setUpClass() {
+		Constant.messages = mock(I18N.class);
+		when(Constant.messages.getLocal()).thenReturn(Locale.ENGLISH);
+	}
+
+	@Before
+	public void setUp() {
+		connections = new ArrayList<>();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (Connection conn : connections) {
+			Statement stmt = conn.createStatement();
+			stmt.execute("SHUTDOWN");
+			stmt.close();
+			conn.close();
+		}
+	}
+
+	@Test
+	public void shouldRoundTripJsonLines() throws Exception {
+		shouldRoundTrip(WebSocketMessagesFormat.JSON_LINES);
+	}
+
+	@Test
+	public void shouldRoundTripColumnar() throws Exception {
+		shouldRoundTrip(WebSocketMessagesFormat.COLUMNAR);
+	}
+
+	private void shouldRoundTrip(WebSocketMessagesFormat format) throws Exception {
+		// given
+		TableWebSocket source = createTable();
+		// more than one chunk
+		insertMessages(source, 3, 400);
+		insertMessage(source, createBinaryMessage(2, 401, new byte[] { 0, 1, (byte) 0xff }));
+		insertMessage(source, createTextMessage(1, 401, "{\"json\":\"\\u00e4\\n\"}\r\n\t\u0001 \u00fc"));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TableWebSocket target = createTable();
+		// when
+		long exported = new WebSocketMessagesExporter(source).export(out, format);
+		long imported = new WebSocketMessagesImporter(target)
+				.importMessages(new ByteArrayInputStream(out.toByteArray()), format);
+		// then
+		assertThat(exported, is(equalTo(1202L)));
+		assertThat(imported, is(equalTo(1202L)));
+		assertThat(target.getChannelItems().size(), is(equalTo(3)));
+		assertThat(target.getChannelItems().get(0).url, is(equalTo("ws://example.com/1")));
+		assertThat(describe(allMessages(target)), is(equalTo(describe(allMessages(source)))));
+	}
+
+	@Test
+	public void shouldAssignNewChannelIdsOnImport() throws Exception {
+		// given
+		TableWebSocket source = createTable();
+		insertMessages(source, 2, 3);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new WebSocketMessagesExporter(source).export(out, WebSocketMessagesFormat.COLUMNAR);
+		// when
+		new WebSocketMessagesImporter(source).importMessages(
+				new ByteArrayInputStream(out.toByteArray()),
+				WebSocketMessagesFormat.COLUMNAR);
+		// then
+		assertThat(source.getChannelItems().size(), is(equalTo(4)));
+		WebSocketMessageDTO criteria = new WebSocketMessageDTO();
+		criteria.channel.id = 4;
+		assertThat(source.getMessageCount(criteria, null), is(equalTo(3)));
+	}
+
+	@Test
+	public void shouldUseReservedChannelIdsOnImport() throws Exception {
+		// given
+		TableWebSocket source = createTable();
+		insertMessages(source, 2, 3);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new WebSocketMessagesExporter(source).export(out, WebSocketMessagesFormat.COLUMNAR);
+		final int[] reservation = new int[2];
+		WebSocketMessagesImporter.ChannelIdReserver reserver = new WebSocketMessagesImporter.ChannelIdReserver() {
+
+			@Override
+			public int reserve(int minimumOffset, int count) {
+				reservation[0] = minimumOffset;
+				reservation[1] = count;
+				// ids already handed out to live channels
+				return 10;
+			}
+		};
+		// when
+		new WebSocketMessagesImporter(source, reserver).importMessages(
+				new ByteArrayInputStream(out.toByteArray()),
+				WebSocketMessagesFormat.COLUMNAR);
+		// then
+		assertThat(reservation[0], is(equalTo(2)));
+		assertThat(reservation[1], is(equalTo(2)));
+		WebSocketMessageDTO criteria = new WebSocketMessageDTO();
+		criteria.channel.id = 12;
+		assertThat(source.getMessageCount(criteria, null), is(equalTo(3)));
+	}
+
+	@Test
+	public void shouldImportEmptyExport() throws Exception {
+		// given
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new WebSocketMessagesExporter(createTable()).export(out, WebSocketMessagesFormat.COLUMNAR);
+		// when
+		long imported = new WebSocketMessagesImporter(createTable()).importMessages(
+				new ByteArrayInputStream(out.toByteArray()),
+				WebSocketMessagesFormat.COLUMNAR);
+		// then
+		assertThat(imported, is(equalTo(0L)));
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldFailToImportMalformedJsonLines() throws Exception {
+		// given
+		String content = "{\"type\":\"channel\",\"id\":1,\"host\":\"example.com\",\"port\":80,\"url\":\"ws://example.com/\",\"start\":1,\"end\":null}\n"
+				+ "{\"type\":\"message\",\"channel\":1,\"id\":\"1\"}\n";
+		// when
+		new WebSocketMessagesImporter(createTable()).importMessages(
+				new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)),
+				WebSocketMessagesFormat.JSON_LINES);
+		// then = IOException
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldFailToImportMessageOfUnknownChannel() throws Exception {
+		// given
+		String content = "{\"type\":\"message\",\"channel\":1,\"id\":1,\"timestamp\":1,\"opcode\":1,\"outgoing\":true,\"length\":1,\"payload\":\"a\"}\n";
+		// when
+		new WebSocketMessagesImporter(createTable()).importMessages(
+				new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)),
+				WebSocketMessagesFormat.JSON_LINES);
+		// then = IOException
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldFailToImportColumnarBlockWithTooManyMessages() throws Exception {
+		// given
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new WebSocketMessagesExporter(createTable()).export(out, WebSocketMessagesFormat.COLUMNAR);
+		byte[] export = out.toByteArray();
+		// replace the end of the messages with a block of Integer.MAX_VALUE messages
+		byte[] content = Arrays.copyOf(export, export.length + 4);
+		content[export.length - 1] = (byte) 0xFF;
+		content[export.length] = (byte) 0xFF;
+		content[export.length + 1] = (byte) 0xFF;
+		content[export.length + 2] = (byte) 0xFF;
+		content[export.length + 3] = (byte) 0x07;
+		// when
+		new WebSocketMessagesImporter(createTable()).importMessages(
+				new ByteArrayInputStream(content),
+				WebSocketMessagesFormat.COLUMNAR);
+		// then = IOException
+	}
+
+	private TableWebSocket createTable() throws SQLException, Exception {
+		final Connection conn = DriverManager.getConnection("jdbc:hsqldb:mem:websocketimport" + (databaseCount++), "sa", "");
+		connections.add(conn);
+		Statement stmt = conn.createStatement();
+		stmt.execute("CREATE TABLE history (historyid INTEGER PRIMARY KEY)");
+		stmt.close();
+
+		TableWebSocket table = new TableWebSocket() {
+
+			@Override
+			protected Connection getConnection() {
+				return conn;
+			}
+		};
+		table.reconnect(conn);
+		return table;
+	}
+
+	private static void insertMessages(TableWebSocket table, int channelCount, int messagesPerChannel) throws Exception {
+		for (int channelId = 1; channelId <= channelCount; channelId++) {
+			WebSocketChannelDTO channel = new WebSocketChannelDTO();
+			channel.id = channelId;
+			channel.host = "example.com";
+			channel.port = 80;
+			channel.url = "ws://example.com/" + channelId;
+			channel.startTimestamp = 1000000L;
+			channel.endTimestamp = (channelId == 1) ? null : 2000000L;
+			table.insertOrUpdateChannel(channel);
+		}
+
+		List<WebSocketMessageDTO> messages = new ArrayList<>();
+		for (int messageId = 1; messageId <= messagesPerChannel; messageId++) {
+			for (int channelId = 1; channelId <= channelCount; channelId++) {
+				messages.add(createTextMessage(channelId, messageId, "message " + messageId));
+			}
+		}
+		table.insertMessages(messages);
+	}
+
+	private static void insertMessage(TableWebSocket table, WebSocketMessageDTO message) throws Exception {
+		table.insertMessages(Arrays.asList(message));
+	}
+
+	private static WebSocketMessageDTO createTextMessage(int channelId, int messageId, String payload) {
+		WebSocketMessageDTO message = createMessage(channelId, messageId);
+		message.opcode = WebSocketMessage.OPCODE_TEXT;
+		message.payload = payload;
+		message.payloadLength = payload.getBytes(StandardCharsets.UTF_8).length;
+		return message;
+	}
+
+	private static WebSocketMessageDTO createBinaryMessage(int channelId, int messageId, byte[] payload) {
+		WebSocketMessageDTO message = createMessage(channelId, messageId);
+		message.opcode = WebSocketMessage.OPCODE_BINARY;
+		message.payload = payload;
+		message.payloadLength = payload.length;
+		return message;
+	}
+
+	private static WebSocketMessageDTO createMessage(int channelId, int messageId) {
+		WebSocketChannelDTO channel = new WebSocketChannelDTO();
+		channel.id = channelId;
+		WebSocketMessageDTO message = new WebSocketMessageDTO(channel);
+		message.id = messageId;
+		message.timestamp = 1000000L + messageId * 10 + channelId;
+		message.isOutgoing = messageId % 2 == 0;
+		return message;
+	}
+
+	private static List<WebSocketMessageDTO> allMessages(TableWebSocket table) throws Exception {
+		return table.getMessagesAfter(-1, -1, 10000);
+	}
+
+	private static List<String> describe(List<WebSocketMessageDTO> messages) {
+		List<String> descriptions = new ArrayList<>(messages.size());
+		for (WebSocketMessageDTO message : messages) {
+			Object payload = (message.payload instanceof byte[])
+					? Arrays.toString((byte[]) message.payload)
+					: message.payload;
+			descriptions.add(message.channel.id + "." + message.id + " " + message.timestamp + " " + message.opcode + " "
+					+ message.isOutgoing + " " + message.payloadLength + " " + payload);
+		}
+		return descriptions;
+	}
+}
@@ -0,0 +1,196 @@
+package org.zaproxy.zap.extension.websocket.db;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.parosproxy.paros.Constant;
+import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+import org.zaproxy.zap.extension.websocket.ui.OptionsParamWebSocket;
+import org.zaproxy.zap.extension.websocket.ui.OptionsParamWebSocket.StorageOverflowPolicy;
+import org.zaproxy.zap.utils.I18N;
+
+public class WebSocketStorageWriterUnitTest {
+
+	private TableWebSocket table;
+	private OptionsParamWebSocket config;
+	private WebSocketStorageWriter writer;
+
+	/**
+	 * Ids of the messages stored, in order.
+	 */
+	private List<Integer> storedIds;
+
+	/**
+	 * Sizes of the batches stored, in order.
+	 */
+	private List<Integer> batchSizes;
+
+	/**
+	 * Counted down when the writer thread started to store its first batch.
+	 */
+	private CountDownLatch writing;
+
+	/**
+	 * Stores are blocked until counted down.
+	 */
+	private CountDownLatch proceed;
+
+	@BeforeClass
+	public static void setUpClass() {
+		// used by the DTOs
+		Constant.messages = mock(I18N.class);
+		when(Constant.messages.getLocal()).thenReturn(Locale.ENGLISH);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		storedIds = new ArrayList<>();
+		batchSizes = new ArrayList<>();
+		writing = new CountDownLatch(1);
+		proceed = new CountDownLatch(1);
+
+		table = mock(TableWebSocket.class);
+		doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				@SuppressWarnings("unchecked")
+				List<WebSocketMessageDTO> batch = (List<WebSocketMessageDTO>) invocation.getArguments()[0];
+				writing.countDown();
+				proceed.await(5, TimeUnit.SECONDS);
+				synchronized (storedIds) {
+					batchSizes.add(batch.size());
+					for (WebSocketMessageDTO message : batch) {
+						storedIds.add(message.id);
+					}
+				}
+				return null;
+			}
+		}).when(table).insertMessages(anyListOf(WebSocketMessageDTO.class));
+
+		config = mock(OptionsParamWebSocket.class);
+		when(config.getStorageBatchSize()).thenReturn(2);
+		when(config.getStorageFlushInterval()).thenReturn(10);
+	}
+
+	@After
+	public void tearDown() {
+		proceed.countDown();
+		if (writer != null) {
+			writer.stop();
+		}
+	}
+
+	@Test
+	public void shouldDropMessagesIfQueueFullWithDropPolicy() throws Exception {
+		// given
+		createWriter(1, StorageOverflowPolicy.DROP);
+		writer.enqueue(createMessage(1));
+		writing.await(5, TimeUnit.SECONDS);
+		// when
+		boolean queued = writer.enqueue(createMessage(2));
+		boolean dropped = writer.enqueue(createMessage(3));
+		proceed.countDown();
+		writer.stop();
+		// then
+		assertThat(queued, is(equalTo(true)));
+		assertThat(dropped, is(equalTo(true)));
+		assertThat(writer.getDroppedCount(), is(equalTo(1L)));
+		assertThat(storedIds, contains(1, 2));
+	}
+
+	@Test
+	public void shouldWaitForSpaceIfQueueFullWithBlockPolicy() throws Exception {
+		// given
+		createWriter(1, StorageOverflowPolicy.BLOCK);
+		writer.enqueue(createMessage(1));
+		writing.await(5, TimeUnit.SECONDS);
+		writer.enqueue(createMessage(2));
+		Thread blocked = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				writer.enqueue(createMessage(3));
+			}
+		});
+		// when
+		blocked.start();
+		blocked.join(200);
+		boolean waited = blocked.isAlive();
+		proceed.countDown();
+		blocked.join(5000);
+		writer.stop();
+		// then
+		assertThat(waited, is(equalTo(true)));
+		assertThat(blocked.isAlive(), is(equalTo(false)));
+		assertThat(writer.getDroppedCount(), is(equalTo(0L)));
+		assertThat(storedIds, contains(1, 2, 3));
+	}
+
+	@Test
+	public void shouldWriteQueuedMessagesInBatchesOnStop() throws Exception {
+		// given
+		createWriter(10, StorageOverflowPolicy.BLOCK);
+		writer.enqueue(createMessage(1));
+		writing.await(5, TimeUnit.SECONDS);
+		for (int id = 2; id <= 6; id++) {
+			writer.enqueue(createMessage(id));
+		}
+		// when
+		proceed.countDown();
+		writer.stop();
+		// then
+		assertThat(storedIds, contains(1, 2, 3, 4, 5, 6));
+		for (int batchSize : batchSizes) {
+			assertThat(batchSize <= 2, is(equalTo(true)));
+		}
+	}
+
+	@Test
+	public void shouldNotQueueMessagesAfterStop() throws Exception {
+		// given
+		createWriter(10, StorageOverflowPolicy.BLOCK);
+		proceed.countDown();
+		writer.stop();
+		// when
+		boolean queued = writer.enqueue(createMessage(1));
+		// then
+		assertThat(queued, is(equalTo(false)));
+		assertThat(writer.getQueuedCount(), is(equalTo(0)));
+		verify(table, never()).insertMessages(anyListOf(WebSocketMessageDTO.class));
+	}
+
+	private void createWriter(int queueSize, StorageOverflowPolicy policy) {
+		when(config.getStorageQueueSize()).thenReturn(queueSize);
+		when(config.getStorageOverflowPolicy()).thenReturn(policy);
+		writer = new WebSocketStorageWriter(new WebSocketStorage(table), config);
+		writer.start();
+	}
+
+	private static WebSocketMessageDTO createMessage(int id) {
+		WebSocketMessageDTO message = new WebSocketMessageDTO();
+		message.id = id;
+		message.payload = "message " + id;
+		return message;
+	}
+}
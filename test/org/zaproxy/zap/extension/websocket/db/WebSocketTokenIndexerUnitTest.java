@@ -0,0 +1,108 @@
+package org.zaproxy.zap.extension.websocket.db;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.parosproxy.paros.Constant;
+import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+import org.zaproxy.zap.utils.I18N;
+
+public class WebSocketTokenIndexerUnitTest {
+
+	private TableWebSocket table;
+	private WebSocketStorage storage;
+	private WebSocketTokenIndexer indexer;
+
+	/**
+	 * Ids of the messages indexed, in order.
+	 */
+	private List<Integer> indexedIds;
+
+	@BeforeClass
+	public static void setUpClass() {
+		// used by the DTOs
+		Constant.messages = mock(I18N.class);
+		when(Constant.messages.getLocal()).thenReturn(Locale.ENGLISH);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		indexedIds = new ArrayList<>();
+
+		table = mock(TableWebSocket.class);
+		doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				@SuppressWarnings("unchecked")
+				List<WebSocketMessageDTO> batch = (List<WebSocketMessageDTO>) invocation.getArguments()[0];
+				synchronized (indexedIds) {
+					for (WebSocketMessageDTO message : batch) {
+						indexedIds.add(message.id);
+					}
+				}
+				return null;
+			}
+		}).when(table).insertTokens(anyListOf(WebSocketMessageDTO.class));
+
+		storage = new WebSocketStorage(table);
+		indexer = new WebSocketTokenIndexer(storage);
+	}
+
+	@After
+	public void tearDown() {
+		indexer.stop();
+		storage.stop();
+	}
+
+	@Test
+	public void shouldIndexQueuedMessagesInOrder() throws Exception {
+		// given
+		indexer.start();
+		// when
+		for (int id = 1; id <= 3; id++) {
+			indexer.enqueue(createMessage(id));
+		}
+		indexer.stop();
+		// then
+		assertThat(indexedIds, contains(1, 2, 3));
+		assertThat(indexer.getDroppedCount(), is(equalTo(0L)));
+	}
+
+	@Test
+	public void shouldNotQueueMessagesAfterStop() throws Exception {
+		// given
+		indexer.start();
+		indexer.stop();
+		// when
+		boolean queued = indexer.enqueue(createMessage(1));
+		// then
+		assertThat(queued, is(equalTo(false)));
+		verify(table, never()).insertTokens(anyListOf(WebSocketMessageDTO.class));
+	}
+
+	private static WebSocketMessageDTO createMessage(int id) {
+		WebSocketMessageDTO message = new WebSocketMessageDTO();
+		message.id = id;
+		message.payload = "message " + id;
+		return message;
+	}
+}
@@ -0,0 +1,168 @@
+package org.zaproxy.zap.extension.websocket.filter;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.zaproxy.zap.extension.websocket.WebSocketException;
+import org.zaproxy.zap.extension.websocket.WebSocketMessage;
+
+public class WebSocketPayloadReplacerUnitTest {
+
+	/**
+	 * The flags of the patterns of the filter.
+	 */
+	private static final int FILTER_FLAGS = Pattern.MULTILINE | Pattern.CASE_INSENSITIVE;
+
+	@Test
+	public void shouldNotChangePayloadWithoutMatches() throws Exception {
+		// given
+		WebSocketMessage message = createMessage("Hello World");
+		WebSocketPayloadReplacer replacer = createReplacer("moon", "sun");
+		// when
+		boolean changed = replacer.apply(message);
+		// then
+		assertThat(changed, is(equalTo(false)));
+		verify(message, never()).setPayload(any(byte[].class));
+		verify(message, never()).getReadablePayload();
+	}
+
+	@Test
+	public void shouldReplaceLiteralIgnoringCase() throws Exception {
+		// given
+		WebSocketMessage message = createMessage("World, world, WORLD!");
+		WebSocketPayloadReplacer replacer = createReplacer("world", "Moon");
+		// when
+		boolean changed = replacer.apply(message);
+		// then
+		assertThat(changed, is(equalTo(true)));
+		assertThat(getNewPayload(message), is(equalTo("Moon, Moon, Moon!")));
+	}
+
+	@Test
+	public void shouldReplaceNonAsciiLiterals() throws Exception {
+		// given
+		WebSocketMessage message = createMessage("gr\u00fc\u00dfe aus M\u00fcnchen");
+		WebSocketPayloadReplacer replacer = createReplacer("\u00fc", "ue");
+		// when
+		replacer.apply(message);
+		// then
+		assertThat(getNewPayload(message), is(equalTo("grue\u00dfe aus Muenchen")));
+	}
+
+	@Test
+	public void shouldReplaceMultipleLiteralsInSinglePass() throws Exception {
+		// given
+		WebSocketMessage message = createMessage("user=alice;role=user");
+		WebSocketPayloadReplacer replacer = createReplacer("alice", "bob", "role=user", "role=admin");
+		// when
+		replacer.apply(message);
+		// then
+		assertThat(getNewPayload(message), is(equalTo("user=bob;role=admin")));
+	}
+
+	@Test
+	public void shouldReplaceLiteralsSameAsRegex() throws Exception {
+		// given
+		String[] payloads = { "aaa", "abab", "xaax", "", "a", "AaAa" };
+		String[] literals = { "a", "aa", "ab", "ba", "xa" };
+		for (String payload : payloads) {
+			for (String literal : literals) {
+				WebSocketMessage message = createMessage(payload);
+				String expected = Pattern.compile(literal, FILTER_FLAGS).matcher(payload).replaceAll("_");
+				// when
+				boolean changed = createReplacer(literal, "_").apply(message);
+				// then
+				assertThat(changed ? getNewPayload(message) : payload, is(equalTo(expected)));
+			}
+		}
+	}
+
+	@Test
+	public void shouldReplaceRegex() throws Exception {
+		// given
+		WebSocketMessage message = createMessage("id=12;id=345");
+		WebSocketPayloadReplacer replacer = createReplacer("id=(\\d+)", "key=$1");
+		// when
+		boolean changed = replacer.apply(message);
+		// then
+		assertThat(changed, is(equalTo(true)));
+		verify(message).setReadablePayload("key=12;key=345");
+	}
+
+	@Test
+	public void shouldNotSetReadablePayloadIfRegexDoesNotMatch() throws Exception {
+		// given
+		WebSocketMessage message = createMessage("Hello");
+		WebSocketPayloadReplacer replacer = createReplacer("\\d+", "0");
+		// when
+		boolean changed = replacer.apply(message);
+		// then
+		assertThat(changed, is(equalTo(false)));
+		verify(message, never()).setReadablePayload(anyString());
+	}
+
+	@Test
+	public void shouldNotChangeInvalidUtf8Payload() throws Exception {
+		// given
+		WebSocketMessage message = createMessage(new byte[] { 'a', (byte) 0xff });
+		WebSocketPayloadReplacer replacer = createReplacer("a", "b");
+		// when
+		boolean changed = replacer.apply(message);
+		// then
+		assertThat(changed, is(equalTo(false)));
+		verify(message, never()).setPayload(any(byte[].class));
+	}
+
+	@Test(expected = WebSocketException.class)
+	public void shouldFailIfReplacementHasNonEscapedDollarSign() throws Exception {
+		// given
+		WebSocketMessage message = createMessage("Hello");
+		WebSocketPayloadReplacer replacer = createReplacer("Hello", "$");
+		// when
+		replacer.apply(message);
+		// then = WebSocketException
+	}
+
+	private static WebSocketPayloadReplacer createReplacer(String... patternsAndReplacements) {
+		List<WebSocketPayloadReplacer.Rule> rules = new ArrayList<>();
+		for (int i = 0; i < patternsAndReplacements.length; i += 2) {
+			rules.add(new WebSocketPayloadReplacer.Rule(
+					Pattern.compile(patternsAndReplacements[i], FILTER_FLAGS),
+					patternsAndReplacements[i + 1]));
+		}
+		return new WebSocketPayloadReplacer(rules);
+	}
+
+	private static WebSocketMessage createMessage(String payload) {
+		WebSocketMessage message = createMessage(payload.getBytes(StandardCharsets.UTF_8));
+		when(message.getReadablePayload()).thenReturn(payload);
+		return message;
+	}
+
+	private static WebSocketMessage createMessage(byte[] payload) {
+		WebSocketMessage message = mock(WebSocketMessage.class);
+		when(message.getPayloadView()).thenReturn(ByteBuffer.wrap(payload).asReadOnlyBuffer());
+		return message;
+	}
+
+	private static String getNewPayload(WebSocketMessage message) throws Exception {
+		ArgumentCaptor<byte[]> payload = ArgumentCaptor.forClass(byte[].class);
+		verify(message).setPayload(payload.capture());
+		return new String(payload.getValue(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,80 @@
+package org.zaproxy.zap.extension.websocket.fuzz;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TokenBucketUnitTest {
+
+    private static final long START = 1000L;
+    private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailToCreateWithZeroRate() {
+        // given
+        int tokensPerSecond = 0;
+        // when
+        new TokenBucket(tokensPerSecond);
+        // then = IllegalArgumentException
+    }
+
+    @Test
+    public void shouldAllowBurstUpToCapacity() {
+        // given
+        TokenBucket bucket = new TokenBucket(1000, 3, START);
+        // when
+        long first = bucket.reserve(START);
+        long second = bucket.reserve(START);
+        long third = bucket.reserve(START);
+        long fourth = bucket.reserve(START);
+        // then
+        assertThat(first, is(equalTo(0L)));
+        assertThat(second, is(equalTo(0L)));
+        assertThat(third, is(equalTo(0L)));
+        assertThat(fourth, is(greaterThan(0L)));
+    }
+
+    @Test
+    public void shouldReturnTimeUntilNextToken() {
+        // given
+        TokenBucket bucket = new TokenBucket(1000, 1, START);
+        bucket.reserve(START);
+        // when
+        long wait = bucket.reserve(START);
+        // then
+        assertThat(wait, is(equalTo(MILLISECOND)));
+    }
+
+    @Test
+    public void shouldRefillAtConfiguredRate() {
+        // given
+        TokenBucket bucket = new TokenBucket(1000, 1, START);
+        bucket.reserve(START);
+        // when
+        long beforeRefill = bucket.reserve(START + MILLISECOND / 2);
+        long afterRefill = bucket.reserve(START + MILLISECOND);
+        // then
+        assertThat(beforeRefill, is(equalTo(MILLISECOND / 2)));
+        assertThat(afterRefill, is(equalTo(0L)));
+    }
+
+    @Test
+    public void shouldNotRefillBeyondCapacity() {
+        // given
+        TokenBucket bucket = new TokenBucket(1000, 2, START);
+        long later = START + TimeUnit.SECONDS.toNanos(10);
+        // when
+        long first = bucket.reserve(later);
+        long second = bucket.reserve(later);
+        long third = bucket.reserve(later);
+        // then
+        assertThat(first, is(equalTo(0L)));
+        assertThat(second, is(equalTo(0L)));
+        assertThat(third, is(greaterThan(0L)));
+    }
+}
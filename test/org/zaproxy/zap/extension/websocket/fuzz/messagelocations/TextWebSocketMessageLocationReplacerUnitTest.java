@@ -0,0 +1,209 @@
+package org.zaproxy.zap.extension.websocket.fuzz.messagelocations;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.parosproxy.paros.Constant;
+import org.zaproxy.zap.extension.fuzz.messagelocations.MessageLocationReplacement;
+import org.zaproxy.zap.extension.websocket.WebSocketMessage;
+import org.zaproxy.zap.extension.websocket.WebSocketMessageDTO;
+import org.zaproxy.zap.extension.websocket.WebSocketPayloadSpool;
+import org.zaproxy.zap.extension.websocket.messagelocations.BinaryWebSocketMessageLocation;
+import org.zaproxy.zap.extension.websocket.messagelocations.TextWebSocketMessageLocation;
+import org.zaproxy.zap.model.MessageLocation;
+import org.zaproxy.zap.utils.I18N;
+
+public class TextWebSocketMessageLocationReplacerUnitTest {
+
+    private TextWebSocketMessageLocationReplacer replacer;
+
+    @BeforeClass
+    public static void setUpClass() {
+        // used by the DTOs
+        Constant.messages = mock(I18N.class);
+        when(Constant.messages.getLocal()).thenReturn(Locale.ENGLISH);
+    }
+
+    @Before
+    public void setUp() {
+        replacer = new TextWebSocketMessageLocationReplacer();
+    }
+
+    @Test
+    public void shouldSupportTextAndBinaryLocations() {
+        // given / when / then
+        assertThat(replacer.supports(TextWebSocketMessageLocation.class), is(equalTo(true)));
+        assertThat(replacer.supports(BinaryWebSocketMessageLocation.class), is(equalTo(true)));
+    }
+
+    @Test
+    public void shouldReplaceMultipleTextLocations() throws Exception {
+        // given
+        replacer.init(createTextMessage("Hello World!"));
+        SortedSet<Replacement> replacements = replacements(
+                new Replacement(new TextWebSocketMessageLocation(0, 5, "Hello"), "Bye"),
+                new Replacement(new TextWebSocketMessageLocation(6, 11, "World"), "Moon"),
+                new Replacement(new TextWebSocketMessageLocation(12), "?"));
+        // when
+        WebSocketMessageDTO message = replacer.replace(replacements);
+        // then
+        assertThat((String) message.payload, is(equalTo("Bye Moon!?")));
+        assertThat(message.payloadLength, is(equalTo(10)));
+    }
+
+    @Test
+    public void shouldReuseLocationsBetweenReplacements() throws Exception {
+        // given
+        replacer.init(createTextMessage("Hello World!"));
+        TextWebSocketMessageLocation location = new TextWebSocketMessageLocation(6, 11, "World");
+        replacer.replace(replacements(new Replacement(location, "Moon")));
+        // when
+        WebSocketMessageDTO message = replacer.replace(replacements(new Replacement(location, "Sun")));
+        // then
+        assertThat((String) message.payload, is(equalTo("Hello Sun!")));
+    }
+
+    @Test
+    public void shouldReplaceDifferentLocationsBetweenReplacements() throws Exception {
+        // given
+        replacer.init(createTextMessage("Hello World!"));
+        replacer.replace(replacements(
+                new Replacement(new TextWebSocketMessageLocation(0, 5, "Hello"), "Bye"),
+                new Replacement(new TextWebSocketMessageLocation(6, 11, "World"), "Moon")));
+        // when
+        WebSocketMessageDTO message = replacer.replace(
+                replacements(new Replacement(new TextWebSocketMessageLocation(11, 12, "!"), ".")));
+        // then
+        assertThat((String) message.payload, is(equalTo("Hello World.")));
+    }
+
+    @Test
+    public void shouldReplaceMultipleBinaryLocations() throws Exception {
+        // given
+        replacer.init(createBinaryMessage(new byte[] { 1, 2, 3, 4, 5, 6 }));
+        SortedSet<Replacement> replacements = replacements(
+                new Replacement(new BinaryWebSocketMessageLocation(0, 2, new byte[] { 1, 2 }), new byte[] { 9 }),
+                new Replacement(new BinaryWebSocketMessageLocation(4, 5, new byte[] { 5 }), "AB"));
+        // when
+        WebSocketMessageDTO message = replacer.replace(replacements);
+        // then
+        assertThat((byte[]) message.payload, is(equalTo(new byte[] { 9, 3, 4, 'A', 'B', 6 })));
+        assertThat(message.payloadLength, is(equalTo(6)));
+    }
+
+    @Test
+    public void shouldIgnoreTextLocationsOfBinaryMessages() throws Exception {
+        // given
+        byte[] payload = "Hello".getBytes(StandardCharsets.UTF_8);
+        replacer.init(createBinaryMessage(payload));
+        // when
+        WebSocketMessageDTO message = replacer.replace(
+                replacements(new Replacement(new TextWebSocketMessageLocation(0, 5, "Hello"), "Bye")));
+        // then
+        assertThat((byte[]) message.payload, is(equalTo(payload)));
+    }
+
+    @Test
+    public void shouldIgnoreBinaryLocationsOfTextMessages() throws Exception {
+        // given
+        replacer.init(createTextMessage("Hello"));
+        // when
+        WebSocketMessageDTO message = replacer.replace(
+                replacements(new Replacement(new BinaryWebSocketMessageLocation(0, 1, new byte[] { 'H' }), "J")));
+        // then
+        assertThat((String) message.payload, is(equalTo("Hello")));
+    }
+
+    @Test
+    public void shouldFuzzWholeSpooledPayload() throws Exception {
+        // given
+        WebSocketMessageDTO spooled = createTextMessage("Hello");
+        spooled.spooledPayload = WebSocketPayloadSpool.create();
+        byte[] wholePayload = "Hello World!".getBytes(StandardCharsets.UTF_8);
+        spooled.spooledPayload.append(wholePayload, 0, wholePayload.length);
+        try {
+            replacer.init(spooled);
+        } finally {
+            spooled.spooledPayload.release();
+        }
+        // when
+        WebSocketMessageDTO message = replacer.replace(
+                replacements(new Replacement(new TextWebSocketMessageLocation(6, 11, "World"), "Moon")));
+        // then
+        assertThat((String) message.payload, is(equalTo("Hello Moon!")));
+        assertThat(message.spooledPayload, is(nullValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotFuzzReleasedSpooledPayload() throws Exception {
+        // given
+        WebSocketMessageDTO spooled = createTextMessage("Hello");
+        spooled.spooledPayload = WebSocketPayloadSpool.create();
+        spooled.spooledPayload.release();
+        // when
+        replacer.init(spooled);
+        // then = IllegalArgumentException
+    }
+
+    private static WebSocketMessageDTO createTextMessage(String payload) {
+        WebSocketMessageDTO message = new WebSocketMessageDTO();
+        message.opcode = WebSocketMessage.OPCODE_TEXT;
+        message.payload = payload;
+        message.payloadLength = payload.length();
+        return message;
+    }
+
+    private static WebSocketMessageDTO createBinaryMessage(byte[] payload) {
+        WebSocketMessageDTO message = new WebSocketMessageDTO();
+        message.opcode = WebSocketMessage.OPCODE_BINARY;
+        message.payload = payload;
+        message.payloadLength = payload.length;
+        return message;
+    }
+
+    private static SortedSet<Replacement> replacements(Replacement... replacements) {
+        SortedSet<Replacement> set = new TreeSet<>();
+        for (Replacement replacement : replacements) {
+            set.add(replacement);
+        }
+        return set;
+    }
+
+    private static class Replacement implements MessageLocationReplacement<Object> {
+
+        private final MessageLocation location;
+        private final Object value;
+
+        Replacement(MessageLocation location, Object value) {
+            this.location = location;
+            this.value = value;
+        }
+
+        @Override
+        public MessageLocation getMessageLocation() {
+            return location;
+        }
+
+        @Override
+        public Object getReplacement() {
+            return value;
+        }
+
+        @Override
+        public int compareTo(MessageLocationReplacement<?> other) {
+            return location.compareTo(other.getMessageLocation());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.zaproxy.zap.extension.websocket.utility;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares {@link MaskingUtil} with the former byte by byte masking loop, for
+ * small, medium and 16 MiB payloads.
+ * <p>
+ * Not run as part of the unit tests, start it manually (after compiling the
+ * tests) with:
+ *
+ * <pre>
+ * java -cp &lt;classpath&gt; org.zaproxy.zap.extension.websocket.utility.MaskingUtilBenchmark
+ * </pre>
+ */
+public class MaskingUtilBenchmark {
+
+	private static final int[] PAYLOAD_SIZES = { 125, 64 * 1024, 16 * 1024 * 1024 };
+
+	/**
+	 * Number of bytes masked per measurement, to get comparable timings for
+	 * all payload sizes.
+	 */
+	private static final long BYTES_PER_ROUND = 512L * 1024 * 1024;
+
+	private static final int WARMUP_ROUNDS = 3;
+
+	private static final int MEASURED_ROUNDS = 5;
+
+	private static final int MASK = 0x37FA213D;
+
+	private static final byte[] MASK_BYTES = { 0x37, (byte) 0xFA, 0x21, 0x3D };
+
+	/**
+	 * Prevents that the JIT removes the masking as dead code.
+	 */
+	private static int sink;
+
+	public static void main(String[] args) {
+		System.out.println(String.format(Locale.ROOT, "%12s %16s %16s", "payload", "byte (MB/s)", "word (MB/s)"));
+
+		for (int size : PAYLOAD_SIZES) {
+			byte[] payload = new byte[size];
+			new Random(size).nextBytes(payload);
+			long iterations = Math.max(1, BYTES_PER_ROUND / size);
+
+			for (int i = 0; i < WARMUP_ROUNDS; i++) {
+				runByteLoop(payload, iterations);
+				runWordLoop(payload, iterations);
+			}
+
+			double byteLoop = 0;
+			double wordLoop = 0;
+			for (int i = 0; i < MEASURED_ROUNDS; i++) {
+				byteLoop = Math.max(byteLoop, throughput(size * iterations, runByteLoop(payload, iterations)));
+				wordLoop = Math.max(wordLoop, throughput(size * iterations, runWordLoop(payload, iterations)));
+			}
+
+			System.out.println(String.format(Locale.ROOT, "%12d %16.1f %16.1f", size, byteLoop, wordLoop));
+		}
+		System.out.println("(" + sink + ")");
+	}
+
+	private static double throughput(long bytes, long nanos) {
+		return (bytes / (1024.0 * 1024.0)) / (nanos / 1e9);
+	}
+
+	private static long runByteLoop(byte[] payload, long iterations) {
+		long start = System.nanoTime();
+		for (long n = 0; n < iterations; n++) {
+			int maskPosition = 0;
+			for (int i = 0; i < payload.length; i++) {
+				payload[i] = (byte) (payload[i] ^ MASK_BYTES[maskPosition]);
+				maskPosition = (maskPosition + 1) % 4;
+			}
+		}
+		long time = System.nanoTime() - start;
+		sink += payload[0];
+		return time;
+	}
+
+	private static long runWordLoop(byte[] payload, long iterations) {
+		long start = System.nanoTime();
+		for (long n = 0; n < iterations; n++) {
+			MaskingUtil.mask(payload, 0, payload.length, MASK);
+		}
+		long time = System.nanoTime() - start;
+		sink += payload[0];
+		return time;
+	}
+}
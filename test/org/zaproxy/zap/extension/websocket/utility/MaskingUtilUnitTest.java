@@ -0,0 +1,81 @@
+package org.zaproxy.zap.extension.websocket.utility;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MaskingUtilUnitTest {
+
+	private static final byte[] MASK = { 0x37, (byte) 0xFA, 0x21, 0x3D };
+
+	private static final int INT_MASK = 0x37FA213D;
+
+	@Test
+	public void shouldMaskAsSpecifiedInRfc() {
+		// given
+		// example of RFC6455, section 5.7: masked "Hello"
+		byte[] payload = { 'H', 'e', 'l', 'l', 'o' };
+		// when
+		MaskingUtil.mask(payload, 0, payload.length, INT_MASK);
+		// then
+		assertThat(payload, is(equalTo(new byte[] { 0x7f, (byte) 0x9f, 0x4d, 0x51, 0x58 })));
+	}
+
+	@Test
+	public void shouldMaskLikeByteByByteLoopForAllLengths() {
+		for (int length = 0; length < 40; length++) {
+			// given
+			byte[] payload = randomBytes(length);
+			byte[] expected = maskByteByByte(payload);
+			// when
+			MaskingUtil.mask(payload, 0, payload.length, INT_MASK);
+			// then
+			assertThat("Length " + length, payload, is(equalTo(expected)));
+		}
+	}
+
+	@Test
+	public void shouldCopyAndMaskWithOffsets() {
+		// given
+		byte[] payload = randomBytes(1000);
+		byte[] src = new byte[payload.length + 3];
+		System.arraycopy(payload, 0, src, 3, payload.length);
+		byte[] dest = new byte[payload.length + 5];
+		// when
+		MaskingUtil.mask(src, 3, dest, 5, payload.length, INT_MASK);
+		// then
+		assertThat(Arrays.copyOfRange(dest, 5, dest.length), is(equalTo(maskByteByByte(payload))));
+		assertThat(Arrays.copyOfRange(src, 3, src.length), is(equalTo(payload)));
+	}
+
+	@Test
+	public void shouldUnmaskMaskedPayload() {
+		// given
+		byte[] payload = randomBytes(100);
+		byte[] data = payload.clone();
+		MaskingUtil.mask(data, 0, data.length, INT_MASK);
+		// when
+		MaskingUtil.mask(data, 0, data.length, INT_MASK);
+		// then
+		assertThat(data, is(equalTo(payload)));
+	}
+
+	private static byte[] randomBytes(int length) {
+		byte[] bytes = new byte[length];
+		new Random(length).nextBytes(bytes);
+		return bytes;
+	}
+
+	private static byte[] maskByteByByte(byte[] payload) {
+		byte[] masked = new byte[payload.length];
+		for (int i = 0; i < payload.length; i++) {
+			masked[i] = (byte) (payload[i] ^ MASK[i % 4]);
+		}
+		return masked;
+	}
+}